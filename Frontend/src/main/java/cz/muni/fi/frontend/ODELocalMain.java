@@ -0,0 +1,140 @@
+package cz.muni.fi.frontend;
+
+import cz.muni.fi.ctl.FormulaNormalizer;
+import cz.muni.fi.ctl.FormulaParser;
+import cz.muni.fi.ctl.formula.Formula;
+import cz.muni.fi.modelchecker.ModelChecker;
+import cz.muni.fi.modelchecker.OperatorFolder;
+import cz.muni.fi.modelchecker.mpi.tasks.LocalTaskMessenger;
+import cz.muni.fi.modelchecker.mpi.termination.LocalTokenMessenger;
+import cz.muni.fi.modelchecker.mpi.termination.Terminator;
+import cz.muni.fi.ode.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the ODE model checker with several partitions inside one JVM, without MPI.
+ * Every partition has its own node factory and runs on its own thread, model is shared.
+ * Usage: [--partitions=K] [--workers=N] [--lanes=L] [--partitioner=hash|modulo|block|morton|hilbert] [--pregenerate=THREADS] [--tree-colors] [--cache=DIR] [--purge] [--all|--none|(print nothing)] model formula
+ */
+public class ODELocalMain {
+
+    static {
+        NativeUtils.loadLibrary("ODE");
+    }
+
+    public static void main(@NotNull String[] args) throws InterruptedException, IOException {
+
+        //prepare benchmark
+        long start = System.currentTimeMillis();
+
+        int partitionCount = Options.intOption(args, "--partitions=", Runtime.getRuntime().availableProcessors());
+        final int workerCount = Options.intOption(args, "--workers=", 1);
+        //number of sub formulas verified at the same time, every lane has its own networks
+        int laneCount = Options.intOption(args, "--lanes=", 1);
+        @NotNull String partitionerType = Options.stringOption(args, "--partitioner=", "hash");
+        //number of threads used to generate edges of every partition before verification, 0 means on demand
+        int pregenerate = Options.intOption(args, "--pregenerate=", 0);
+        System.out.println("Running "+partitionCount+" partitions in one process.");
+
+        //read and normalize formula
+        @NotNull FormulaParser parser = new FormulaParser();
+        @NotNull FormulaNormalizer normalizer = new FormulaNormalizer();
+        @NotNull Formula parsed = parser.parse(new File(args[args.length - 1]));
+        //EF, AF and EG are verified directly, not through until and negations
+        @NotNull final Formula formula = OperatorFolder.fold(normalizer.normalize(parsed));
+        System.out.println("Formula prepared for verification: "+formula);
+
+        //read and prepare model (model is read only after load, so it can be shared by all partitions)
+        @NotNull final OdeModel model = new OdeModel(args[args.length - 2],
+                Arrays.asList(args).contains("--tree-colors") ? TreeColorSet.FACTORY : IntervalColorSet.FACTORY
+        );
+        model.load();
+
+        @NotNull final List<LocalTokenMessenger.Network> tokenNetworks = new ArrayList<>();
+        @NotNull final List<LocalTaskMessenger.Network<CoordinateNode, OdeColorSet>> taskNetworks = new ArrayList<>();
+        for (int lane = 0; lane < laneCount; lane++) {
+            tokenNetworks.add(new LocalTokenMessenger.Network(partitionCount));
+            taskNetworks.add(new LocalTaskMessenger.Network<CoordinateNode, OdeColorSet>(partitionCount));
+        }
+
+        @NotNull final List<NodeFactory> factories = new ArrayList<>();
+        @NotNull List<Thread> partitions = new ArrayList<>();
+        for (int i = 0; i < partitionCount; i++) {
+            @NotNull CoordinatePartitioner partitioner = CoordinatePartitioner.create(partitionerType, model, partitionCount, i);
+            if (i == 0) {
+                System.out.println("Partitioner "+partitionerType+", estimated edge cut: "+partitioner.estimateEdgeCut());
+            }
+            @NotNull final NodeFactory factory = new NodeFactory(model, partitioner);
+            @NotNull StateSpaceGenerator generator = new StateSpaceGenerator(model, factory, partitioner.getMyLimit());
+            factory.setGenerator(generator);
+            if (pregenerate > 0) {
+                factory.pregenerate(pregenerate);
+            }
+            factories.add(factory);
+
+            //nodes of other partitions are replaced by nodes of this partition's factory
+            @NotNull LocalTaskMessenger.NodeResolver<CoordinateNode> resolver = new LocalTaskMessenger.NodeResolver<CoordinateNode>() {
+                @NotNull
+                @Override
+                public CoordinateNode resolve(@NotNull CoordinateNode node) {
+                    return factory.getNode(node.coordinates);
+                }
+            };
+            @NotNull final List<LocalTaskMessenger<CoordinateNode, OdeColorSet>> taskMessengers = new ArrayList<>();
+            @NotNull List<ModelChecker.Lane<CoordinateNode, OdeColorSet>> lanes = new ArrayList<>();
+            for (int lane = 0; lane < laneCount; lane++) {
+                @NotNull LocalTaskMessenger<CoordinateNode, OdeColorSet> taskMessenger = new LocalTaskMessenger<>(taskNetworks.get(lane), i, resolver);
+                taskMessengers.add(taskMessenger);
+                lanes.add(new ModelChecker.Lane<>(taskMessenger, new Terminator.TerminatorFactory(new LocalTokenMessenger(tokenNetworks.get(lane), i))));
+            }
+            @NotNull final ModelChecker<CoordinateNode, OdeColorSet> modelChecker = new ModelChecker<>(factory, partitioner, lanes, workerCount);
+            modelChecker.setResultCache(Options.resultCache(args, model, factory, partitionerType, i, partitionCount));
+            modelChecker.setPurgeResults(Arrays.asList(args).contains("--purge"));
+            final int partitionId = i;
+            partitions.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    modelChecker.verify(formula);
+                    if (modelChecker.getPurgedBytes() > 0) {
+                        System.err.println(partitionId+" Purged results of sub formulas, freed bytes: "+modelChecker.getPurgedBytes());
+                    }
+                    for (@NotNull LocalTaskMessenger<CoordinateNode, OdeColorSet> taskMessenger : taskMessengers) {
+                        taskMessenger.close();
+                    }
+                }
+            }));
+        }
+        for (@NotNull Thread partition : partitions) {
+            partition.start();
+        }
+        for (@NotNull Thread partition : partitions) {
+            partition.join();
+        }
+
+        //print results
+        for (@NotNull NodeFactory factory : factories) {
+            if (args.length >= 3 && args[args.length - 3].equals("--all")) {
+                for (@NotNull CoordinateNode node : factory.getNodes()) {
+                    System.out.println(factory.fullString(node));
+                }
+            } else if (args.length >= 3 && !args[args.length - 3].equals("--none")) {
+                for (@NotNull CoordinateNode node : factory.getNodes()) {
+                    @NotNull OdeColorSet colorSet = factory.validColorsFor(node, formula);
+                    if (!colorSet.isEmpty()) {
+                        System.out.println(model.coordinateString(node.coordinates)+" "+colorSet);
+                    }
+                }
+            }
+        }
+
+        System.err.println("Duration: "+(System.currentTimeMillis() - start));
+        System.exit(0);
+    }
+
+}
@@ -4,7 +4,7 @@ import cz.muni.fi.ctl.FormulaNormalizer;
 import cz.muni.fi.ctl.FormulaParser;
 import cz.muni.fi.ctl.formula.Formula;
 import cz.muni.fi.modelchecker.ModelChecker;
-import cz.muni.fi.modelchecker.mpi.tasks.TaskMessenger;
+import cz.muni.fi.modelchecker.OperatorFolder;
 import cz.muni.fi.modelchecker.mpi.termination.MPITokenMessenger;
 import cz.muni.fi.modelchecker.mpi.termination.Terminator;
 import cz.muni.fi.ode.*;
@@ -14,6 +14,9 @@ import org.jetbrains.annotations.NotNull;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class ODEMain {
 
@@ -38,33 +41,60 @@ public class ODEMain {
         @NotNull FormulaParser parser = new FormulaParser();
         @NotNull FormulaNormalizer normalizer = new FormulaNormalizer();
         @NotNull Formula formula = parser.parse(new File(args[args.length - 1]));
-        formula = normalizer.normalize(formula);
+        //EF, AF and EG are verified directly, not through until and negations
+        formula = OperatorFolder.fold(normalizer.normalize(formula));
         if (MPI.COMM_WORLD.Rank() == 0) {
             System.out.println("Formula prepared for verification: "+formula);
         }
 
-        //read and prepare model
-        @NotNull OdeModel model = new OdeModel(args[args.length - 2]);
+        //read and prepare model (guava range sets can be still requested for comparison)
+        @NotNull OdeModel model = new OdeModel(args[args.length - 2],
+                Arrays.asList(args).contains("--tree-colors") ? TreeColorSet.FACTORY : IntervalColorSet.FACTORY
+        );
         model.load();
 
-        //@NotNull CoordinatePartitioner partitioner = new RectangularPartitioner(model, MPI.COMM_WORLD.Size(), MPI.COMM_WORLD.Rank());
-        @NotNull HashPartitioner partitioner = new HashPartitioner(model, MPI.COMM_WORLD.Size(), MPI.COMM_WORLD.Rank());
+        @NotNull String partitionerType = Options.stringOption(args, "--partitioner=", "hash");
+        @NotNull CoordinatePartitioner partitioner = CoordinatePartitioner.create(partitionerType, model, MPI.COMM_WORLD.Size(), MPI.COMM_WORLD.Rank());
+        if (MPI.COMM_WORLD.Rank() == 0) {
+            System.out.println("Partitioner "+partitionerType+", estimated edge cut: "+partitioner.estimateEdgeCut());
+        }
         @NotNull NodeFactory factory = new NodeFactory(model, partitioner);
         @NotNull StateSpaceGenerator generator = new StateSpaceGenerator(model, factory, partitioner.getMyLimit());
         factory.setGenerator(generator);
+        int pregenerate = Options.intOption(args, "--pregenerate=", 0);
+        if (pregenerate > 0) {
+            long pregenerateStart = System.currentTimeMillis();
+            factory.pregenerate(pregenerate);
+            System.err.println("State space generated in "+(System.currentTimeMillis() - pregenerateStart)+"ms using "+pregenerate+" threads, edges have "+factory.getDistinctColorCount()+" distinct colors.");
+        }
 
         //prepare MPI communication environment
-        @NotNull Terminator.TerminatorFactory terminatorFactory = new Terminator.TerminatorFactory(new MPITokenMessenger(MPI.COMM_WORLD));
-        @NotNull TaskMessenger<CoordinateNode, TreeColorSet> taskMessenger = new MpiTaskMessenger(MPI.COMM_WORLD, model.getVariableCount(), factory, model);
+        //every lane verifies one sub formula at a time using its own task and token tags
+        int laneCount = Options.intOption(args, "--lanes=", 1);
+        @NotNull TaskCodec codec = Options.taskCodec(args, model, factory);
+        @NotNull List<MpiTaskMessenger> taskMessengers = new ArrayList<>();
+        @NotNull List<ModelChecker.Lane<CoordinateNode, OdeColorSet>> lanes = new ArrayList<>();
+        for (int lane = 0; lane < laneCount; lane++) {
+            @NotNull MpiTaskMessenger taskMessenger = new MpiTaskMessenger(MPI.COMM_WORLD, codec,
+                    MpiTaskMessenger.DEFAULT_BATCH_SIZE, MpiTaskMessenger.DEFAULT_MAX_DELAY, MpiTaskMessenger.DEFAULT_TAG + lane
+            );
+            taskMessengers.add(taskMessenger);
+            lanes.add(new ModelChecker.Lane<>(taskMessenger, new Terminator.TerminatorFactory(new MPITokenMessenger(MPI.COMM_WORLD, -1 - lane))));
+        }
 
         //prepare model checker and run verification
-        @NotNull ModelChecker<CoordinateNode, TreeColorSet> modelChecker = new ModelChecker<>(factory, partitioner, taskMessenger, terminatorFactory);
+        @NotNull ModelChecker<CoordinateNode, OdeColorSet> modelChecker = new ModelChecker<>(factory, partitioner, lanes, Options.intOption(args, "--workers=", 1));
+        modelChecker.setResultCache(Options.resultCache(args, model, factory, partitionerType, MPI.COMM_WORLD.Rank(), MPI.COMM_WORLD.Size()));
+        modelChecker.setPurgeResults(Arrays.asList(args).contains("--purge"));
         modelChecker.verify(formula);
+        if (modelChecker.getPurgedBytes() > 0) {
+            System.err.println(MPI.COMM_WORLD.Rank()+" Purged results of sub formulas, freed bytes: "+modelChecker.getPurgedBytes());
+        }
 
         /*for (CoordinateNode node : factory.getNodes()) {
-            TreeColorSet result = model.getFullColorSet();
-            Map<CoordinateNode, TreeColorSet> successors = generator.getSuccessors(node, model.getFullColorSet());
-            for (Map.Entry<CoordinateNode, TreeColorSet> suc : successors.entrySet()) {
+            OdeColorSet result = model.getFullColorSet();
+            Map<CoordinateNode, OdeColorSet> successors = generator.getSuccessors(node, model.getFullColorSet());
+            for (Map.Entry<CoordinateNode, OdeColorSet> suc : successors.entrySet()) {
                 if (!suc.getKey().equals(node)) {
                     result.subtract(suc.getValue());
                 }
@@ -77,17 +107,20 @@ public class ODEMain {
         //print results
         if (args.length >= 3 && args[args.length - 3].equals("--all")) {
             for (@NotNull CoordinateNode node : factory.getNodes()) {
-                System.out.println(node.fullString());
+                System.out.println(factory.fullString(node));
             }
         } else if (args.length >= 3 && !args[args.length - 3].equals("--none")) {
             for (@NotNull CoordinateNode node : factory.getNodes()) {
-                @NotNull TreeColorSet colorSet = factory.validColorsFor(node, formula);
+                @NotNull OdeColorSet colorSet = factory.validColorsFor(node, formula);
                 if (!colorSet.isEmpty()) {
                     System.out.println(model.coordinateString(node.coordinates)+" "+colorSet);
                 }
             }
         }
 
+        for (@NotNull MpiTaskMessenger taskMessenger : taskMessengers) {
+            taskMessenger.close();
+        }
         MPI.Buffer_detach();
 
         MPI.Finalize();
@@ -0,0 +1,142 @@
+package cz.muni.fi.frontend;
+
+import cz.muni.fi.ctl.FormulaNormalizer;
+import cz.muni.fi.ctl.FormulaParser;
+import cz.muni.fi.ctl.formula.Formula;
+import cz.muni.fi.modelchecker.ModelChecker;
+import cz.muni.fi.modelchecker.OperatorFolder;
+import cz.muni.fi.modelchecker.mpi.socket.SocketTransport;
+import cz.muni.fi.modelchecker.mpi.termination.SocketTokenMessenger;
+import cz.muni.fi.modelchecker.mpi.termination.Terminator;
+import cz.muni.fi.ode.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the ODE model checker on processes connected by TCP sockets instead of MPI.
+ * Every process is started with the same peer list and its own rank, for example on localhost:
+ * --peers=localhost:5000,localhost:5001 --rank=0 model formula
+ * --peers=localhost:5000,localhost:5001 --rank=1 model formula
+ * Usage: --peers=host:port,... --rank=R [--workers=N] [--lanes=L] [--partitioner=hash|modulo|block|morton|hilbert] [--pregenerate=THREADS] [--tree-colors] [--raw-tasks|--quantize-tasks] [--cache=DIR] [--purge] [--all|--none|(print nothing)] model formula
+ */
+public class ODESocketMain {
+
+    //lane i uses tags TASK_TAG + 2i and TOKEN_TAG + 2i
+    private static final int TASK_TAG = 0;
+    private static final int TOKEN_TAG = 1;
+
+    static {
+        NativeUtils.loadLibrary("ODE");
+    }
+
+    public static void main(@NotNull String[] args) throws InterruptedException, IOException {
+
+        //prepare benchmark
+        long start = System.currentTimeMillis();
+
+        //connect to other processes
+        int laneCount = Options.intOption(args, "--lanes=", 1);
+        @NotNull SocketTransport transport = new SocketTransport(peersOption(args), Options.intOption(args, "--rank=", 0), 2 * laneCount);
+        transport.connect();
+        if (transport.getRank() == 0) {
+            System.out.println("Connected to "+transport.getSize()+" processes.");
+        }
+
+        //read and normalize formula
+        @NotNull FormulaParser parser = new FormulaParser();
+        @NotNull FormulaNormalizer normalizer = new FormulaNormalizer();
+        @NotNull Formula formula = parser.parse(new File(args[args.length - 1]));
+        //EF, AF and EG are verified directly, not through until and negations
+        formula = OperatorFolder.fold(normalizer.normalize(formula));
+        if (transport.getRank() == 0) {
+            System.out.println("Formula prepared for verification: "+formula);
+        }
+
+        //read and prepare model
+        @NotNull OdeModel model = new OdeModel(args[args.length - 2],
+                Arrays.asList(args).contains("--tree-colors") ? TreeColorSet.FACTORY : IntervalColorSet.FACTORY
+        );
+        model.load();
+
+        @NotNull String partitionerType = Options.stringOption(args, "--partitioner=", "hash");
+        @NotNull CoordinatePartitioner partitioner = CoordinatePartitioner.create(partitionerType, model, transport.getSize(), transport.getRank());
+        if (transport.getRank() == 0) {
+            System.out.println("Partitioner "+partitionerType+", estimated edge cut: "+partitioner.estimateEdgeCut());
+        }
+        @NotNull NodeFactory factory = new NodeFactory(model, partitioner);
+        @NotNull StateSpaceGenerator generator = new StateSpaceGenerator(model, factory, partitioner.getMyLimit());
+        factory.setGenerator(generator);
+        int pregenerate = Options.intOption(args, "--pregenerate=", 0);
+        if (pregenerate > 0) {
+            long pregenerateStart = System.currentTimeMillis();
+            factory.pregenerate(pregenerate);
+            System.err.println("State space generated in "+(System.currentTimeMillis() - pregenerateStart)+"ms using "+pregenerate+" threads, edges have "+factory.getDistinctColorCount()+" distinct colors.");
+        }
+
+        //prepare communication environment, every lane verifies one sub formula at a time
+        @NotNull TaskCodec codec = Options.taskCodec(args, model, factory);
+        @NotNull List<SocketTaskMessenger> taskMessengers = new ArrayList<>();
+        @NotNull List<ModelChecker.Lane<CoordinateNode, OdeColorSet>> lanes = new ArrayList<>();
+        for (int lane = 0; lane < laneCount; lane++) {
+            @NotNull SocketTaskMessenger taskMessenger = new SocketTaskMessenger(transport, TASK_TAG + 2 * lane, codec);
+            taskMessengers.add(taskMessenger);
+            lanes.add(new ModelChecker.Lane<>(taskMessenger, new Terminator.TerminatorFactory(new SocketTokenMessenger(transport, TOKEN_TAG + 2 * lane))));
+        }
+
+        //prepare model checker and run verification
+        @NotNull ModelChecker<CoordinateNode, OdeColorSet> modelChecker = new ModelChecker<>(factory, partitioner, lanes, Options.intOption(args, "--workers=", 1));
+        modelChecker.setResultCache(Options.resultCache(args, model, factory, partitionerType, transport.getRank(), transport.getSize()));
+        modelChecker.setPurgeResults(Arrays.asList(args).contains("--purge"));
+        modelChecker.verify(formula);
+        if (modelChecker.getPurgedBytes() > 0) {
+            System.err.println(transport.getRank()+" Purged results of sub formulas, freed bytes: "+modelChecker.getPurgedBytes());
+        }
+
+        //print results
+        if (args.length >= 3 && args[args.length - 3].equals("--all")) {
+            for (@NotNull CoordinateNode node : factory.getNodes()) {
+                System.out.println(factory.fullString(node));
+            }
+        } else if (args.length >= 3 && !args[args.length - 3].equals("--none")) {
+            for (@NotNull CoordinateNode node : factory.getNodes()) {
+                @NotNull OdeColorSet colorSet = factory.validColorsFor(node, formula);
+                if (!colorSet.isEmpty()) {
+                    System.out.println(model.coordinateString(node.coordinates)+" "+colorSet);
+                }
+            }
+        }
+
+        for (@NotNull SocketTaskMessenger taskMessenger : taskMessengers) {
+            taskMessenger.close();
+        }
+        transport.close();
+
+        System.err.println(transport.getRank()+" Duration: "+(System.currentTimeMillis() - start));
+        System.exit(0);
+    }
+
+    /** Read comma separated list of host:port pairs from the --peers= option. */
+    @NotNull
+    private static List<InetSocketAddress> peersOption(@NotNull String[] args) {
+        @NotNull List<InetSocketAddress> peers = new ArrayList<>();
+        for (@NotNull String arg : args) {
+            if (arg.startsWith("--peers=")) {
+                for (@NotNull String peer : arg.substring("--peers=".length()).split(",")) {
+                    int colon = peer.lastIndexOf(':');
+                    peers.add(new InetSocketAddress(peer.substring(0, colon), Integer.parseInt(peer.substring(colon + 1))));
+                }
+            }
+        }
+        if (peers.isEmpty()) {
+            throw new IllegalArgumentException("Missing peer list, use --peers=host:port,host:port,...");
+        }
+        return peers;
+    }
+
+}
@@ -0,0 +1,77 @@
+package cz.muni.fi.frontend;
+
+import cz.muni.fi.modelchecker.ResultCache;
+import cz.muni.fi.ode.CompactTaskCodec;
+import cz.muni.fi.ode.CoordinateNode;
+import cz.muni.fi.ode.NodeFactory;
+import cz.muni.fi.ode.OdeColorSet;
+import cz.muni.fi.ode.OdeModel;
+import cz.muni.fi.ode.RawTaskCodec;
+import cz.muni.fi.ode.TaskCodec;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Command line options shared by all frontends.
+ */
+class Options {
+
+    private Options() {
+    }
+
+    /** Find option in form "prefix<value>" or return default value if it is not present. */
+    @NotNull
+    static String stringOption(@NotNull String[] args, @NotNull String prefix, @NotNull String defaultValue) {
+        for (@NotNull String arg : args) {
+            if (arg.startsWith(prefix)) {
+                return arg.substring(prefix.length());
+            }
+        }
+        return defaultValue;
+    }
+
+    /** Find option in form "prefix<number>" or return default value if it is not present. */
+    static int intOption(@NotNull String[] args, @NotNull String prefix, int defaultValue) {
+        for (@NotNull String arg : args) {
+            if (arg.startsWith(prefix)) {
+                return Integer.parseInt(arg.substring(prefix.length()));
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Create codec of ODE tasks: raw with "--raw-tasks", lossy compact with "--quantize-tasks", lossless compact otherwise.
+     */
+    @NotNull
+    static TaskCodec taskCodec(@NotNull String[] args, @NotNull OdeModel model, @NotNull NodeFactory factory) {
+        if (Arrays.asList(args).contains("--raw-tasks")) {
+            return new RawTaskCodec(model, factory);
+        }
+        return new CompactTaskCodec(model, factory, Arrays.asList(args).contains("--quantize-tasks"));
+    }
+
+    /**
+     * Create result cache of ODE model from "--cache=DIR" option or return null if it is not present.
+     * Results depend on the model, its parameter ranges and on how the state space is divided between processes.
+     * Model file is expected as the second last argument.
+     */
+    @Nullable
+    static ResultCache<CoordinateNode, OdeColorSet> resultCache(
+            @NotNull String[] args, @NotNull OdeModel model, @NotNull NodeFactory factory,
+            @NotNull String partitionerType, int rank, int processCount
+    ) throws IOException {
+        @NotNull String directory = stringOption(args, "--cache=", "");
+        if (directory.isEmpty()) return null;
+        @NotNull String fingerprint = ResultCache.fingerprint(new File(args[args.length - 2]),
+                model.getParameterRange().toString(), model.getColorSetFactory().getClass().getName(), partitionerType, String.valueOf(processCount),
+                String.valueOf(RawTaskCodec.VERSION)
+        );
+        //raw codec keeps values and bound types of all endpoints, so reloaded results are exact
+        return new ResultCache<>(new File(directory), fingerprint, rank, processCount, new RawTaskCodec(model, factory));
+    }
+}
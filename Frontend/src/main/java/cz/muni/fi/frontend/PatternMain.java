@@ -2,10 +2,15 @@ package cz.muni.fi.frontend;
 
 
 import cz.muni.fi.ctl.formula.proposition.Tautology;
+import cz.muni.fi.modelchecker.mpi.tasks.LocalTaskMessenger;
+import cz.muni.fi.modelchecker.mpi.termination.LocalTokenMessenger;
+import cz.muni.fi.modelchecker.mpi.termination.Terminator;
+import cz.muni.fi.modelchecker.verification.TerminalComponents;
 import cz.muni.fi.ode.*;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -29,33 +34,32 @@ public class PatternMain {
         @NotNull StateSpaceGenerator generator = new StateSpaceGenerator(model, factory, partitioner.getMyLimit());
         factory.setGenerator(generator);
 
-        Map<CoordinateNode, TreeColorSet> sinks = new HashMap<>();
-        Map<CoordinateNode, TreeColorSet> sources = new HashMap<>();
+        Map<CoordinateNode, OdeColorSet> sinks = new HashMap<>();
+        Map<CoordinateNode, OdeColorSet> sources = new HashMap<>();
 
-        Map<CoordinateNode, TreeColorSet> initial = factory.initialNodes(Tautology.INSTANCE);
-        for (Map.Entry<CoordinateNode, TreeColorSet> entry : initial.entrySet()) {
+        Map<CoordinateNode, OdeColorSet> initial = factory.initialNodes(Tautology.INSTANCE);
+        for (Map.Entry<CoordinateNode, OdeColorSet> entry : initial.entrySet()) {
 
 
             CoordinateNode node = entry.getKey();
 
-            Map<CoordinateNode, TreeColorSet> successors = factory.successorsFor(node, null);
-            Map<CoordinateNode, TreeColorSet> predecessors = factory.predecessorsFor(node, null);
+            Map<CoordinateNode, OdeColorSet> successors = factory.successorsFor(node, null);
+            Map<CoordinateNode, OdeColorSet> predecessors = factory.predecessorsFor(node, null);
 
             //if we have enough edges
             if (args.length > 1 || predecessors.size() >= 2*model.getVariableCount()) {
-                TreeColorSet sinkColours = model.getFullColorSet();
+                OdeColorSet sinkColours = model.getFullColorSet();
 
-                for (Map.Entry<CoordinateNode, TreeColorSet> predecessor : predecessors.entrySet()) {
+                for (Map.Entry<CoordinateNode, OdeColorSet> predecessor : predecessors.entrySet()) {
                     if (predecessor.getKey().equals(node)) continue;    //skip self loops
                     sinkColours.intersect(predecessor.getValue());
                     if (sinkColours.isEmpty()) break;
                 }
 
                 if (!sinkColours.isEmpty()) {
-                    for (Map.Entry<CoordinateNode, TreeColorSet> successor : successors.entrySet()) {
+                    for (Map.Entry<CoordinateNode, OdeColorSet> successor : successors.entrySet()) {
                         if (successor.getKey().equals(node)) continue;    //skip self loops
-                        sinkColours.subtract(successor.getValue());
-                        if (sinkColours.isEmpty()) break;
+                        if (sinkColours.subtractAndTestEmpty(successor.getValue())) break;
                     }
 
                     if (!sinkColours.isEmpty()) {
@@ -67,9 +71,9 @@ public class PatternMain {
             }
 
             if (args.length > 1 || successors.size() >= 2*model.getVariableCount()) {
-                TreeColorSet sourceColours = model.getFullColorSet();
+                OdeColorSet sourceColours = model.getFullColorSet();
 
-                for (Map.Entry<CoordinateNode, TreeColorSet> successor : successors.entrySet()) {
+                for (Map.Entry<CoordinateNode, OdeColorSet> successor : successors.entrySet()) {
                     if (successor.getKey().equals(node)) continue;    //skip self loops
                     sourceColours.intersect(successor.getValue());
                     if (sourceColours.isEmpty()) break;
@@ -77,10 +81,9 @@ public class PatternMain {
 
                 if (!sourceColours.isEmpty()) {
 
-                    for (Map.Entry<CoordinateNode, TreeColorSet> predecessor : predecessors.entrySet()) {
+                    for (Map.Entry<CoordinateNode, OdeColorSet> predecessor : predecessors.entrySet()) {
                         if (predecessor.getKey().equals(node)) continue;    //skip self loops
-                        sourceColours.subtract(predecessor.getValue());
-                        if (sourceColours.isEmpty()) break;
+                        if (sourceColours.subtractAndTestEmpty(predecessor.getValue())) break;
                     }
 
                     if (!sourceColours.isEmpty()) {
@@ -96,20 +99,58 @@ public class PatternMain {
         }
 
         System.out.println(" Sink nodes: ");
-        for (Map.Entry<CoordinateNode, TreeColorSet> sink : sinks.entrySet()) {
+        for (Map.Entry<CoordinateNode, OdeColorSet> sink : sinks.entrySet()) {
             System.out.println(model.coordinateString(sink.getKey().coordinates)+" "+sink.getValue());
         }
 
         System.out.println(" Source nodes: ");
-        for (Map.Entry<CoordinateNode, TreeColorSet> source : sources.entrySet()) {
+        for (Map.Entry<CoordinateNode, OdeColorSet> source : sources.entrySet()) {
             System.out.println(model.coordinateString(source.getKey().coordinates)+" "+source.getValue());
         }
 
         System.out.println(" Multi-sinks: ");
-        List<Map.Entry<CoordinateNode, TreeColorSet>> nodes = new ArrayList<>(sinks.entrySet());
+        printMultiStable(model, new ArrayList<>(sinks.entrySet()));
+
+        //sinks are only attractors of size one, cycles are found by the decomposition
+        if (model.parameterCount() > 1) {
+            //terminal components are computed with unions of boxes, which over-approximate in more dimensions
+            System.err.println("Skipping attractor decomposition: only exact for models with one parameter.");
+            return;
+        }
+        @NotNull LocalTaskMessenger<CoordinateNode, OdeColorSet> taskMessenger = new LocalTaskMessenger<>(
+                new LocalTaskMessenger.Network<CoordinateNode, OdeColorSet>(1), 0, new NodeResolver(factory));
+        @NotNull TerminalComponents<CoordinateNode, OdeColorSet> decomposition = new TerminalComponents<>(
+                factory, partitioner, 1, factory.getColorFactory(), taskMessenger,
+                new Terminator.TerminatorFactory(new LocalTokenMessenger(new LocalTokenMessenger.Network(1), 0)),
+                Runtime.getRuntime().availableProcessors()
+        );
+        @NotNull List<Map.Entry<CoordinateNode, OdeColorSet>> attractorNodes = new ArrayList<>();
+        System.out.println(" Attractors: ");
+        for (@NotNull Map<CoordinateNode, OdeColorSet> attractor : decomposition.decompose(initial)) {
+            if (attractor.isEmpty()) continue;
+            //union is exact here, since there is only one parameter
+            @NotNull OdeColorSet attractorColors = model.getEmptyColorSet();
+            for (@NotNull Map.Entry<CoordinateNode, OdeColorSet> entry : attractor.entrySet()) {
+                attractorColors.union(entry.getValue());
+                System.out.println(model.coordinateString(entry.getKey().coordinates)+" "+entry.getValue());
+            }
+            //one component can contain different attractors for different colors, but never two for one color
+            attractorNodes.add(new AbstractMap.SimpleEntry<>(attractor.keySet().iterator().next(), attractorColors));
+            System.out.println();
+        }
+        taskMessenger.close();
+
+        System.out.println(" Multi-stable colors: ");
+        printMultiStable(model, attractorNodes);
+    }
+
+    /**
+     * Print colors shared by each pair of given entries, together with both entries.
+     */
+    private static void printMultiStable(@NotNull OdeModel model, @NotNull List<Map.Entry<CoordinateNode, OdeColorSet>> nodes) {
         for (int i=0; i<nodes.size(); i++) {
             for (int j=i+1; j<nodes.size(); j++) {
-                TreeColorSet common = TreeColorSet.createCopy(nodes.get(i).getValue());
+                @NotNull OdeColorSet common = nodes.get(i).getValue().copy();
                 common.intersect(nodes.get(j).getValue());
                 if (!common.isEmpty()) {
                     System.out.println(
@@ -123,5 +164,22 @@ public class PatternMain {
     }
 
 
+    private static class NodeResolver implements LocalTaskMessenger.NodeResolver<CoordinateNode> {
+
+        @NotNull
+        private final NodeFactory factory;
+
+        private NodeResolver(@NotNull NodeFactory factory) {
+            this.factory = factory;
+        }
+
+        @NotNull
+        @Override
+        public CoordinateNode resolve(@NotNull CoordinateNode node) {
+            return factory.getNode(node.coordinates);
+        }
+    }
+
+
 
 }
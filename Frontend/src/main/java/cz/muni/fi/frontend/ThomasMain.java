@@ -4,22 +4,18 @@ import cz.muni.fi.ctl.FormulaNormalizer;
 import cz.muni.fi.ctl.FormulaParser;
 import cz.muni.fi.ctl.formula.Formula;
 import cz.muni.fi.modelchecker.ModelChecker;
-import cz.muni.fi.modelchecker.StateSpacePartitioner;
-import cz.muni.fi.modelchecker.mpi.tasks.BlockingTaskMessenger;
-import cz.muni.fi.modelchecker.mpi.tasks.OnTaskListener;
-import cz.muni.fi.modelchecker.mpi.tasks.TaskMessenger;
+import cz.muni.fi.modelchecker.OperatorFolder;
 import cz.muni.fi.modelchecker.mpi.termination.MPITokenMessenger;
 import cz.muni.fi.modelchecker.mpi.termination.Terminator;
-import cz.muni.fi.thomas.BitMapColorSet;
-import cz.muni.fi.thomas.LevelNode;
-import cz.muni.fi.thomas.NativeModel;
-import cz.muni.fi.thomas.NetworkModel;
+import cz.muni.fi.thomas.*;
 import mpi.MPI;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * Created by daemontus on 09/02/15.
@@ -46,50 +42,40 @@ public class ThomasMain {
         @NotNull FormulaParser parser = new FormulaParser();
         @NotNull FormulaNormalizer normalizer = new FormulaNormalizer();
         @NotNull Formula formula = parser.parse(new File(args[args.length - 1]));
-        formula = normalizer.normalize(formula);
+        //EF, AF and EG are verified directly, not through until and negations
+        formula = OperatorFolder.fold(normalizer.normalize(formula));
         if (MPI.COMM_WORLD.Rank() == 0) {
             System.out.println("Formula prepared for verification: "+formula);
         }
 
         //read and prepare model
         NativeModel model = new NativeModel(args[args.length - 2]);
-        @NotNull StateSpacePartitioner<LevelNode> partitioner = new StateSpacePartitioner<LevelNode>() {
-            @Override
-            public int getNodeOwner(@NotNull LevelNode node) throws IllegalArgumentException {
-                return 0;
-            }
-
-            @Override
-            public int getMyId() {
-                return 0;
-            }
-        };
+        @NotNull LevelPartitioner partitioner = new LevelPartitioner(MPI.COMM_WORLD.Size(), MPI.COMM_WORLD.Rank());
         @NotNull NetworkModel factory = new NetworkModel(partitioner);
         model.loadModel(factory);
+        System.err.println(MPI.COMM_WORLD.Rank()+" Loaded "+factory.getNodes().size()+" local nodes and "+factory.getBorderNodeCount()+" border nodes, edges have "+factory.getDistinctColorCount()+" distinct colors.");
       //  factory.printOut();
 
         //prepare MPI communication environment
-        @NotNull Terminator.TerminatorFactory terminatorFactory = new Terminator.TerminatorFactory(new MPITokenMessenger(MPI.COMM_WORLD));
-        @NotNull TaskMessenger<LevelNode, BitMapColorSet> taskMessenger = new BlockingTaskMessenger<LevelNode, BitMapColorSet>() {
-            @Override
-            protected boolean blockingReceiveTask(@NotNull OnTaskListener<LevelNode, BitMapColorSet> taskListener) {
-                return false;
-            }
-
-            @Override
-            protected void finishSelf() {
-
-            }
-
-            @Override
-            public void sendTask(int destinationProcess, @NotNull LevelNode internal, @NotNull LevelNode external, @NotNull BitMapColorSet colors) {
-
-            }
-        };
+        //every lane verifies one sub formula at a time using its own task and token tags
+        int laneCount = Options.intOption(args, "--lanes=", 1);
+        @NotNull List<MpiTaskMessenger> taskMessengers = new ArrayList<>();
+        @NotNull List<ModelChecker.Lane<LevelNode, BitMapColorSet>> lanes = new ArrayList<>();
+        for (int lane = 0; lane < laneCount; lane++) {
+            @NotNull MpiTaskMessenger taskMessenger = new MpiTaskMessenger(MPI.COMM_WORLD, factory,
+                    MpiTaskMessenger.DEFAULT_BATCH_SIZE, MpiTaskMessenger.DEFAULT_MAX_DELAY, MpiTaskMessenger.DEFAULT_TAG + lane
+            );
+            taskMessengers.add(taskMessenger);
+            lanes.add(new ModelChecker.Lane<>(taskMessenger, new Terminator.TerminatorFactory(new MPITokenMessenger(MPI.COMM_WORLD, -1 - lane))));
+        }
 
         //prepare model checker and run verification
-        @NotNull ModelChecker<LevelNode, BitMapColorSet> modelChecker = new ModelChecker<>(factory, partitioner, taskMessenger, terminatorFactory);
+        @NotNull ModelChecker<LevelNode, BitMapColorSet> modelChecker = new ModelChecker<>(factory, partitioner, lanes, 1);
+        modelChecker.setPurgeResults(Arrays.asList(args).contains("--purge"));
         modelChecker.verify(formula);
+        if (modelChecker.getPurgedBytes() > 0) {
+            System.err.println(MPI.COMM_WORLD.Rank()+" Purged results of sub formulas, freed bytes: "+modelChecker.getPurgedBytes());
+        }
 
        /* System.out.println(" ---------  PARAMETER KEY --------- ");
         int[] stepSizes = new int[factory.variableOrdering.size()];
@@ -128,6 +114,9 @@ public class ThomasMain {
             }
         }
 
+        for (@NotNull MpiTaskMessenger taskMessenger : taskMessengers) {
+            taskMessenger.close();
+        }
         MPI.Finalize();
         System.err.println(MPI.COMM_WORLD.Rank()+" Duration: "+(System.currentTimeMillis() - start));
         System.exit(0);
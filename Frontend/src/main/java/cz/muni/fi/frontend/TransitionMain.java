@@ -1,6 +1,5 @@
 package cz.muni.fi.frontend;
 
-import com.google.common.collect.Range;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import cz.muni.fi.ctl.formula.proposition.Tautology;
@@ -13,7 +12,6 @@ import org.jetbrains.annotations.NotNull;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Map;
-import java.util.Set;
 
 public class TransitionMain {
 
@@ -45,20 +43,17 @@ public class TransitionMain {
             exported.variables.add(variable);
         }
 
-        for (Map.Entry<CoordinateNode, TreeColorSet> entry : factory.initialNodes(Tautology.INSTANCE).entrySet()) {
-            for (Map.Entry<CoordinateNode, TreeColorSet> succ : factory.successorsFor(entry.getKey(), null).entrySet()) {
+        for (Map.Entry<CoordinateNode, OdeColorSet> entry : factory.initialNodes(Tautology.INSTANCE).entrySet()) {
+            for (Map.Entry<CoordinateNode, OdeColorSet> succ : factory.successorsFor(entry.getKey(), null).entrySet()) {
                 Transition transition = new Transition();
                 transition.source = convertNode(entry.getKey());
                 transition.destination = convertNode(succ.getKey());
-                transition.colours = new double[succ.getValue().size()][2];
-                for (int i=0; i < succ.getValue().size(); i++) {
-                    Set<Range<Double>> ranges = succ.getValue().get(i).asRanges();
-                    if (ranges.size() != 1) {
+                transition.colours = new double[succ.getValue().parameterCount()][2];
+                for (int i=0; i < succ.getValue().parameterCount(); i++) {
+                    if (succ.getValue().endpointCount(i) != 2) {
                         throw new IllegalStateException(" A transition has more than one interval per parameter ");
                     }
-                    Range<Double> range = ranges.iterator().next();
-                    transition.colours[i][0] = range.lowerEndpoint();
-                    transition.colours[i][1] = range.upperEndpoint();
+                    succ.getValue().writeEndpoints(i, transition.colours[i], 0);
                 }
                 exported.transitions.add(transition);
             }
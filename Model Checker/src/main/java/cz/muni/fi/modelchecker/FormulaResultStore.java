@@ -0,0 +1,219 @@
+package cz.muni.fi.modelchecker;
+
+import cz.muni.fi.ctl.formula.Formula;
+import cz.muni.fi.modelchecker.graph.ColorSet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stores colors for which verified formulas hold in local nodes.
+ *
+ * Nodes are identified by a dense local id (0, 1, 2, ...) assigned by the model adapter.
+ * Every formula gets a small integer slot and results of one formula are stored in one
+ * paged array indexed by node id, so no per node maps are needed.
+ *
+ * Formulas are matched by identity first and by equality only when a new instance is seen,
+ * so slot lookup does not hash formula trees during the computation.
+ *
+ * This class is thread safe. Colors of one node are guarded by a lock striped by node id.
+ */
+public class FormulaResultStore<C extends ColorSet> {
+
+    /**
+     * Creates copies of color sets, so that the store never shares sets with the caller.
+     */
+    public interface Copier<C extends ColorSet> {
+        @NotNull C copy(@NotNull C colors);
+
+        /** @return Approximate number of bytes used by given set, used only to report freed memory. */
+        long sizeOf(@NotNull C colors);
+    }
+
+    private static final int PAGE_BITS = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int LOCK_COUNT = 256;
+
+    @NotNull
+    private final Copier<C> copier;
+
+    //known formula instances and their slots, replaced as a whole when a new instance is seen
+    @NotNull
+    private volatile Formula[] knownFormulas = new Formula[0];
+    @NotNull
+    private volatile int[] knownSlots = new int[0];
+    //guarded by this
+    @NotNull
+    private final Map<Formula, Integer> slots = new HashMap<>();
+    //columns[slot], replaced as a whole when a new slot is assigned
+    @NotNull
+    private volatile Column[] columns = new Column[0];
+
+    @NotNull
+    private final Object[] locks = new Object[LOCK_COUNT];
+
+    public FormulaResultStore(@NotNull Copier<C> copier) {
+        this.copier = copier;
+        for (int i = 0; i < LOCK_COUNT; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * @return Slot assigned to given formula. Equal formulas share one slot.
+     */
+    public int slotFor(@NotNull Formula formula) {
+        @NotNull Formula[] formulas = knownFormulas;
+        for (int i = 0; i < formulas.length; i++) {
+            if (formulas[i] == formula) return knownSlots[i];
+        }
+        synchronized (this) {
+            Integer slot = slots.get(formula);
+            if (slot == null) {
+                slot = columns.length;
+                @NotNull Column[] newColumns = new Column[slot + 1];
+                System.arraycopy(columns, 0, newColumns, 0, slot);
+                newColumns[slot] = new Column();
+                columns = newColumns;
+                slots.put(formula, slot);
+            }
+            //remember this instance for fast lookup (slots are updated first, so they are never shorter)
+            int count = knownFormulas.length;
+            @NotNull Formula[] newFormulas = new Formula[count + 1];
+            @NotNull int[] newSlots = new int[count + 1];
+            System.arraycopy(knownFormulas, 0, newFormulas, 0, count);
+            System.arraycopy(knownSlots, 0, newSlots, 0, count);
+            newFormulas[count] = formula;
+            newSlots[count] = slot;
+            knownSlots = newSlots;
+            knownFormulas = newFormulas;
+            return slot;
+        }
+    }
+
+    @NotNull
+    private Column column(int slot) {
+        return columns[slot];
+    }
+
+    /**
+     * Mark formula as valid in given node for given colors. Colors are merged with previous results.
+     * @param nodeId Local id of the node.
+     * @return True if any new colors have been added, false otherwise.
+     */
+    public boolean add(int slot, int nodeId, @NotNull C colors) {
+        if (nodeId < 0) throw new IllegalArgumentException("Node without local id can't hold results: "+nodeId);
+        if (colors.isEmpty()) return false;
+        @NotNull Object[] page = column(slot).page(nodeId >>> PAGE_BITS, true);
+        int index = nodeId & (PAGE_SIZE - 1);
+        synchronized (locks[nodeId % LOCK_COUNT]) {
+            @SuppressWarnings("unchecked")
+            C stored = (C) page[index];
+            if (stored == null) {
+                page[index] = copier.copy(colors);
+                return true;
+            } else {
+                return stored.union(colors);
+            }
+        }
+    }
+
+    /**
+     * @param nodeId Local id of the node.
+     * @return Copy of colors for which formula holds in given node or null if it does not hold at all.
+     */
+    @Nullable
+    public C get(int slot, int nodeId) {
+        if (nodeId < 0) return null;
+        @Nullable Object[] page = column(slot).page(nodeId >>> PAGE_BITS, false);
+        if (page == null) return null;
+        synchronized (locks[nodeId % LOCK_COUNT]) {
+            @SuppressWarnings("unchecked")
+            C stored = (C) page[nodeId & (PAGE_SIZE - 1)];
+            return stored == null ? null : copier.copy(stored);
+        }
+    }
+
+    /**
+     * Drop all results of given formula. Formula keeps its slot, so it can be stored again later.
+     * @return Approximate number of freed bytes.
+     */
+    public long purge(@NotNull Formula formula) {
+        @NotNull Object[][] pages = column(slotFor(formula)).clear();
+        long freed = 16 + 8 * pages.length;
+        for (int p = 0; p < pages.length; p++) {
+            @Nullable Object[] page = pages[p];
+            if (page == null) continue;
+            freed += 16 + 8 * PAGE_SIZE;
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                //colors are read under the node lock, because a late writer could still be merging into them
+                synchronized (locks[((p << PAGE_BITS) + i) % LOCK_COUNT]) {
+                    @SuppressWarnings("unchecked")
+                    C colors = (C) page[i];
+                    if (colors != null) freed += copier.sizeOf(colors);
+                }
+            }
+        }
+        return freed;
+    }
+
+    /**
+     * @return Readable representation of all results stored for given node.
+     */
+    @NotNull
+    public String describe(int nodeId) {
+        @NotNull Map<Formula, Integer> copy;
+        synchronized (this) {
+            copy = new HashMap<>(slots);
+        }
+        @NotNull StringBuilder builder = new StringBuilder("{");
+        for (@NotNull Map.Entry<Formula, Integer> entry : copy.entrySet()) {
+            @Nullable C colors = get(entry.getValue(), nodeId);
+            if (colors != null) {
+                if (builder.length() > 1) builder.append(", ");
+                builder.append(entry.getKey()).append("=").append(colors);
+            }
+        }
+        return builder.append("}").toString();
+    }
+
+    /**
+     * Results of one formula, stored in pages of fixed size that are allocated on first write.
+     */
+    private static class Column {
+
+        @NotNull
+        private volatile Object[][] pages = new Object[0][];
+
+        @Nullable
+        private Object[] page(int index, boolean create) {
+            @NotNull Object[][] current = pages;
+            if (index < current.length && current[index] != null) return current[index];
+            if (!create) return null;
+            synchronized (this) {
+                current = pages;
+                if (index >= current.length) {
+                    @NotNull Object[][] larger = new Object[Math.max(index + 1, 2 * current.length)][];
+                    System.arraycopy(current, 0, larger, 0, current.length);
+                    current = larger;
+                }
+                if (current[index] == null) {
+                    current[index] = new Object[PAGE_SIZE];
+                }
+                //publish the page array again, so that the new page is visible to readers
+                pages = current;
+                return current[index];
+            }
+        }
+
+        /** @return Pages that have been dropped. */
+        @NotNull
+        private synchronized Object[][] clear() {
+            @NotNull Object[][] dropped = pages;
+            pages = new Object[0][];
+            return dropped;
+        }
+    }
+}
@@ -17,6 +17,20 @@ import java.util.Map;
  */
 public interface ModelAdapter<N extends Node, C extends ColorSet> {
 
+    /**
+     * Receives edges one by one from forEachPredecessor and forEachSuccessor.
+     */
+    interface EdgeConsumer<N extends Node, C extends ColorSet> {
+
+        /**
+         * @param node Other end of the edge.
+         * @param colors Colors of the edge restricted by borders, never empty. Consumer can modify them.
+         * @return True if consumer keeps given set (for example in a queue), false if the set is not
+         * used after this call, so that the model adapter can reuse it for next edge.
+         */
+        boolean accept(@NotNull N node, @NotNull C colors);
+    }
+
     /**
      * Compute predecessors for provided node with respect to provided parametric bounds.
      * @param to Destination node.
@@ -33,10 +47,28 @@ public interface ModelAdapter<N extends Node, C extends ColorSet> {
      */
     @NotNull Map<N, C> successorsFor(@NotNull N from, @Nullable C borders);
 
+    /**
+     * Pass predecessors of provided node to the consumer. Unlike predecessorsFor, no map is created
+     * and color sets that consumer does not keep are reused for next edges.
+     * Consumer is called by the invoking thread while no locks of the adapter are held, so it can use the adapter again.
+     * @param to Destination node.
+     * @param borders Parameter bounds.
+     * @param consumer Receives predecessors with colors that are valid along the paths from them.
+     */
+    void forEachPredecessor(@NotNull N to, @Nullable C borders, @NotNull EdgeConsumer<N, C> consumer);
+
+    /**
+     * Pass successors of provided node to the consumer, see forEachPredecessor.
+     * @param from Source node.
+     * @param borders Parameter bounds.
+     * @param consumer Receives successors with colors that are valid along the paths to them.
+     */
+    void forEachSuccessor(@NotNull N from, @Nullable C borders, @NotNull EdgeConsumer<N, C> consumer);
+
     /**
      * Find all nodes where formula is valid and for which colors.
      * @param formula Some formula.
-     * @return Nodes where formula holds with respective colors.
+     * @return Nodes where formula holds with respective colors. Returned sets are new, so caller can modify them.
      */
     @NotNull Map<N, C> initialNodes(@NotNull Formula formula);
 
@@ -52,7 +84,7 @@ public interface ModelAdapter<N extends Node, C extends ColorSet> {
      * Set formula on given node as valid for given parameter set.
      * @param node Node
      * @param formula A valid formula.
-     * @param parameters Parameter set where formula is valid.
+     * @param parameters Parameter set where formula is valid. Adapter does not keep the set, so it can be reused.
      * @return True if any actual change has been made, false otherwise.
      */
     boolean addFormula(@NotNull N node, @NotNull Formula formula, @NotNull C parameters);
@@ -63,10 +95,14 @@ public interface ModelAdapter<N extends Node, C extends ColorSet> {
      * <p>If given formula is not a proposition, results should match data provided in previous addFormula calls.</p>
      * @param node Node
      * @param formula Requested formula
-     * @return Set of colors where given formula holds on specified node.
+     * @return Set of colors where given formula holds on specified node. Returned set is new, so caller can modify it.
      */
     @NotNull C validColorsFor(@NotNull N node, @NotNull Formula formula);
 
-    void purge(Formula formula);
+    /**
+     * Drop all results of given formula, it is not going to be queried anymore.
+     * @return Approximate number of freed bytes.
+     */
+    long purge(@NotNull Formula formula);
 
 }
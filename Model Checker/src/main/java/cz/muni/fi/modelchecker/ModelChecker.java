@@ -8,25 +8,62 @@ import cz.muni.fi.modelchecker.mpi.tasks.TaskMessenger;
 import cz.muni.fi.modelchecker.mpi.termination.Terminator;
 import cz.muni.fi.modelchecker.verification.FormulaVerificator;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
 
 /**
  * Main class representing one fully configured model checker.
+ *
+ * Sub formulas are verified before the formulas that use them. If more lanes are given, formulas that do not
+ * depend on each other (for example both operands of a conjunction) are verified at the same time, each in its own lane.
+ * Formulas are assigned to lanes deterministically, so all processes verify the same formulas in the same lanes.
+ * With a result cache, cached formulas are loaded instead of verified (together with all their sub formulas)
+ * and results of verified formulas are stored for later runs.
+ * With purging enabled, results of a sub formula are dropped as soon as all formulas that use it are verified,
+ * so only results of the verified formula itself are kept.
  */
 @SuppressWarnings("UnusedDeclaration")  //this is a library class
 public class ModelChecker<N extends Node, C extends ColorSet> {
 
+    /**
+     * Communication channels of one lane. Messages of different lanes must not interfere,
+     * so every lane needs its own task messenger and token messenger (for example with different MPI tags).
+     */
+    public static class Lane<N extends Node, C extends ColorSet> {
+
+        @NotNull
+        private final TaskMessenger<N, C> taskMessenger;
+        @NotNull
+        private final Terminator.TerminatorFactory terminatorFactory;
+
+        public Lane(@NotNull TaskMessenger<N, C> taskMessenger, @NotNull Terminator.TerminatorFactory terminatorFactory) {
+            this.taskMessenger = taskMessenger;
+            this.terminatorFactory = terminatorFactory;
+        }
+    }
+
+    //guarded by progressLock, lanes wait on it for sub formulas verified by other lanes
     @NotNull
     private final Set<Formula> processedFormulas = new HashSet<>();
+    @NotNull
+    private final Object progressLock = new Object();
+    @Nullable
+    private Throwable failure;
+    //number of scheduled formulas that still need given sub formula, guarded by progressLock
+    @NotNull
+    private final Map<Formula, Integer> references = new HashMap<>();
+    private boolean purgeResults = false;
+    private long purgedBytes = 0;
 
     @NotNull
-    private final FormulaVerificator<N, C> verificator;
+    private final List<FormulaVerificator<N, C>> verificators = new ArrayList<>();
     @NotNull
     private final ModelAdapter<N,C> model;
     @NotNull
     private final StateSpacePartitioner<N> partitioner;
+    @Nullable
+    private ResultCache<N, C> resultCache;
 
     /**
      * Create new model checker with given properties.
@@ -40,34 +77,226 @@ public class ModelChecker<N extends Node, C extends ColorSet> {
             @NotNull StateSpacePartitioner<N> partitioner,
             @NotNull TaskMessenger<N, C> taskMessenger,
             @NotNull Terminator.TerminatorFactory terminatorFactory) {
-        verificator = new FormulaVerificator<>(model, partitioner, taskMessenger, terminatorFactory);
+        this(model, partitioner, taskMessenger, terminatorFactory, 1);
+    }
+
+    /**
+     * Create new model checker with given properties.
+     * @param model Providing node info and storage. Not null. Has to be thread safe if workerCount is greater than one.
+     * @param partitioner Divides the graph into separate processes.
+     * @param taskMessenger Provides communication channels between processes.
+     * @param terminatorFactory Creates new pre-configured terminators.
+     * @param workerCount Number of local threads used to process until operators.
+     */
+    public ModelChecker(
+            @NotNull ModelAdapter<N, C> model,
+            @NotNull StateSpacePartitioner<N> partitioner,
+            @NotNull TaskMessenger<N, C> taskMessenger,
+            @NotNull Terminator.TerminatorFactory terminatorFactory,
+            int workerCount) {
+        this(model, partitioner, Collections.singletonList(new Lane<>(taskMessenger, terminatorFactory)), workerCount);
+    }
+
+    /**
+     * Create new model checker that verifies independent sub formulas concurrently.
+     * @param model Providing node info and storage. Has to be thread safe if there is more than one lane or worker.
+     * @param partitioner Divides the graph into separate processes.
+     * @param lanes Independent communication channels. All processes must use the same number of lanes.
+     * @param workerCount Number of local threads used to process until operators in every lane.
+     */
+    public ModelChecker(
+            @NotNull ModelAdapter<N, C> model,
+            @NotNull StateSpacePartitioner<N> partitioner,
+            @NotNull List<Lane<N, C>> lanes,
+            int workerCount) {
+        if (lanes.isEmpty()) throw new IllegalArgumentException("At least one lane is needed.");
+        for (@NotNull Lane<N, C> lane : lanes) {
+            verificators.add(new FormulaVerificator<>(model, partitioner, lane.taskMessenger, lane.terminatorFactory, workerCount));
+        }
         this.model = model;
         this.partitioner = partitioner;
     }
 
+    /**
+     * @param resultCache Cache used by following verifications, null disables caching.
+     * All processes must use caches with the same content.
+     */
+    public void setResultCache(@Nullable ResultCache<N, C> resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    /**
+     * @param purgeResults If true, results of sub formulas are dropped when they are no longer needed.
+     * Results of the verified formula itself are always kept.
+     */
+    public void setPurgeResults(boolean purgeResults) {
+        this.purgeResults = purgeResults;
+    }
+
+    /**
+     * @return Approximate number of bytes freed by purging so far.
+     */
+    public long getPurgedBytes() {
+        synchronized (progressLock) {
+            return purgedBytes;
+        }
+    }
+
     /**
      * Verify given formula recursively over available model and previously computed data.
      * @param formula Formula that should be verified. Not null.
      */
     public void verify(@NotNull Formula formula) {
+        //sub formulas first, every formula only once
+        @NotNull List<Formula> schedule = new ArrayList<>();
+        @NotNull final Map<Formula, Integer> heights = new HashMap<>();
+        synchronized (progressLock) {
+            collect(formula, heights, schedule);
+            if (purgeResults) {
+                //every formula counts each of its sub formulas once, propositions are never purged
+                for (@NotNull Formula scheduled : schedule) {
+                    for (@NotNull Formula sub : new HashSet<>(scheduled.getSubFormulas())) {
+                        if (sub instanceof Proposition) continue;
+                        Integer count = references.get(sub);
+                        references.put(sub, count == null ? 1 : count + 1);
+                    }
+                }
+            }
+        }
+        //formulas of the same height never depend on each other, so they can run in different lanes (sort is stable)
+        Collections.sort(schedule, new Comparator<Formula>() {
+            @Override
+            public int compare(@NotNull Formula o1, @NotNull Formula o2) {
+                return Integer.compare(heights.get(o1), heights.get(o2));
+            }
+        });
+
+        //formulas are dealt round robin, every lane verifies its formulas in order of the schedule
+        int laneCount = Math.min(verificators.size(), schedule.size());
+        if (laneCount <= 1) {
+            for (@NotNull Formula scheduled : schedule) {
+                verifyFormula(scheduled, verificators.get(0));
+            }
+            return;
+        }
+        @NotNull Thread[] lanes = new Thread[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            @NotNull final List<Formula> assigned = new ArrayList<>();
+            for (int j = i; j < schedule.size(); j += laneCount) {
+                assigned.add(schedule.get(j));
+            }
+            @NotNull final FormulaVerificator<N, C> verificator = verificators.get(i);
+            lanes[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (@NotNull Formula scheduled : assigned) {
+                            if (!awaitSubFormulas(scheduled)) return;
+                            verifyFormula(scheduled, verificator);
+                        }
+                    } catch (Throwable e) {
+                        synchronized (progressLock) {
+                            if (failure == null) failure = e;
+                            progressLock.notifyAll();
+                        }
+                    }
+                }
+            });
+            lanes[i].start();
+        }
+        for (@NotNull Thread lane : lanes) {
+            try {
+                lane.join();
+            } catch (InterruptedException e) {
+                //OK?
+                e.printStackTrace();
+            }
+        }
+        synchronized (progressLock) {
+            if (failure != null) {
+                throw new IllegalStateException("Verification of "+formula+" failed.", failure);
+            }
+        }
+    }
 
-        //return from proposition or from formula that has been already processed
-        if (formula instanceof Proposition || processedFormulas.contains(formula)) return;
-        //process formulas recursively
+    /**
+     * Add all formulas that have not been verified yet to the schedule, sub formulas before their parents.
+     * Cached formulas are loaded right away, their sub formulas are not needed.
+     * @return Height of given formula (propositions, verified and cached formulas have zero).
+     */
+    private int collect(@NotNull Formula formula, @NotNull Map<Formula, Integer> heights, @NotNull List<Formula> schedule) {
+        if (formula instanceof Proposition || processedFormulas.contains(formula)) return 0;
+        Integer known = heights.get(formula);
+        if (known != null) return known;
+        if (resultCache != null && resultCache.contains(formula)) {
+            int loaded = resultCache.load(formula, model);
+            System.out.println(partitioner.getMyId()+" Loaded cached results: "+formula+" Found Nodes: "+loaded);
+            processedFormulas.add(formula);
+            return 0;
+        }
+        int height = 0;
         for (@NotNull Formula sub : formula.getSubFormulas()) {
-            verify(sub);
+            height = Math.max(height, collect(sub, heights, schedule));
+        }
+        heights.put(formula, height + 1);
+        schedule.add(formula);
+        return height + 1;
+    }
+
+    /**
+     * Wait until all sub formulas of given formula are verified (possibly by other lanes).
+     * @return False if some other lane has failed.
+     */
+    private boolean awaitSubFormulas(@NotNull Formula formula) throws InterruptedException {
+        synchronized (progressLock) {
+            for (@NotNull Formula sub : formula.getSubFormulas()) {
+                while (!(sub instanceof Proposition) && !processedFormulas.contains(sub)) {
+                    if (failure != null) return false;
+                    progressLock.wait();
+                }
+            }
+            return failure == null;
         }
+    }
+
+    private void verifyFormula(@NotNull Formula formula, @NotNull FormulaVerificator<N, C> verificator) {
         System.out.println(partitioner.getMyId()+" Verification started: "+formula);
 
         verificator.verifyFormula(formula);
 
-        System.out.println(partitioner.getMyId()+ " " + formula.getOperator() + " Found Nodes: "+model.initialNodes(formula).size());
-
-       /* for (@NotNull Formula sub : formula.getSubFormulas()) {
-            model.purge(sub);
-        }*/
+        @NotNull Map<N, C> results = model.initialNodes(formula);
+        System.out.println(partitioner.getMyId()+ " " + formula.getOperator() + " Found Nodes: "+results.size());
+        if (resultCache != null) {
+            resultCache.store(formula, results);
+        }
 
-        processedFormulas.add(formula);
+        @NotNull List<Formula> unused = new ArrayList<>();
+        synchronized (progressLock) {
+            processedFormulas.add(formula);
+            if (purgeResults) {
+                for (@NotNull Formula sub : new HashSet<>(formula.getSubFormulas())) {
+                    Integer count = references.get(sub);
+                    if (count == null) continue;
+                    if (count == 1) {
+                        references.remove(sub);
+                        //purged formula has to be verified again if some later formula needs it
+                        processedFormulas.remove(sub);
+                        unused.add(sub);
+                    } else {
+                        references.put(sub, count - 1);
+                    }
+                }
+            }
+            progressLock.notifyAll();
+        }
+        //nobody is going to read these results (all their parents are verified), so they can be dropped outside of the lock
+        for (@NotNull Formula sub : unused) {
+            long freed = model.purge(sub);
+            System.out.println(partitioner.getMyId()+" Purged "+sub+" Freed bytes: "+freed);
+            synchronized (progressLock) {
+                purgedBytes += freed;
+            }
+        }
     }
 
 }
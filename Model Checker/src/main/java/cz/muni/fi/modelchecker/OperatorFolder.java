@@ -0,0 +1,57 @@
+package cz.muni.fi.modelchecker;
+
+import cz.muni.fi.ctl.formula.Formula;
+import cz.muni.fi.ctl.formula.FormulaImpl;
+import cz.muni.fi.ctl.formula.operator.BinaryOperator;
+import cz.muni.fi.ctl.formula.operator.UnaryOperator;
+import cz.muni.fi.ctl.formula.proposition.Tautology;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Folds until and negation chains created by the normalizer back into operators that are verified directly:
+ * E(True U f) = EF f, A(True U f) = AF f, !AF !f = EG f and !!f = f.
+ * Every removed negation saves a pass over all nodes and EG saves a whole fixpoint computation.
+ */
+public class OperatorFolder {
+
+    private OperatorFolder() {}
+
+    /**
+     * @param formula Normalized formula.
+     * @return Equivalent formula with folded operators.
+     */
+    @NotNull
+    public static Formula fold(@NotNull Formula formula) {
+        if (formula.getSubFormulaCount() == 0) return formula;
+        @NotNull List<Formula> subFormulas = new ArrayList<>();
+        boolean changed = false;
+        for (@NotNull Formula sub : formula.getSubFormulas()) {
+            @NotNull Formula folded = fold(sub);
+            changed |= folded != sub;
+            subFormulas.add(folded);
+        }
+        if (formula.getOperator() == UnaryOperator.NEGATION) {
+            @NotNull Formula negated = subFormulas.get(0);
+            if (negated.getOperator() == UnaryOperator.NEGATION) {
+                return negated.getSubFormulaAt(0);
+            }
+            if (negated.getOperator() == UnaryOperator.ALL_FUTURE
+                    && negated.getSubFormulaAt(0).getOperator() == UnaryOperator.NEGATION) {
+                return new FormulaImpl(UnaryOperator.EXISTS_GLOBAL, negated.getSubFormulaAt(0).getSubFormulaAt(0));
+            }
+        }
+        if (subFormulas.size() == 2 && subFormulas.get(0) instanceof Tautology) {
+            if (formula.getOperator() == BinaryOperator.EXISTS_UNTIL) {
+                return new FormulaImpl(UnaryOperator.EXISTS_FUTURE, subFormulas.get(1));
+            }
+            if (formula.getOperator() == BinaryOperator.ALL_UNTIL) {
+                return new FormulaImpl(UnaryOperator.ALL_FUTURE, subFormulas.get(1));
+            }
+        }
+        if (!changed) return formula;
+        return new FormulaImpl(formula.getOperator(), subFormulas.toArray(new Formula[subFormulas.size()]));
+    }
+}
@@ -0,0 +1,237 @@
+package cz.muni.fi.modelchecker;
+
+import cz.muni.fi.ctl.formula.Formula;
+import cz.muni.fi.ctl.formula.operator.BinaryOperator;
+import cz.muni.fi.ctl.formula.proposition.Contradiction;
+import cz.muni.fi.ctl.formula.proposition.FloatProposition;
+import cz.muni.fi.ctl.formula.proposition.Tautology;
+import cz.muni.fi.modelchecker.graph.ColorSet;
+import cz.muni.fi.modelchecker.graph.Node;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Stores results of verified formulas in a directory, so that later runs over the same model can reuse them.
+ *
+ * Results are identified by a canonical form of the formula (operands of conjunctions and disjunctions are sorted)
+ * and a model fingerprint, which has to cover everything that changes the results: model file, parameter ranges,
+ * partitioning of the state space, number of processes...
+ * Every process stores only its own nodes into its own file. Formula counts as cached only when files of all
+ * processes are present, so with a directory shared by all processes, all of them make the same decision.
+ *
+ * File format: magic|canonical formula (length, UTF-8)|number of entries|entries written by the codec (node, colors).
+ */
+public class ResultCache<N extends Node, C extends ColorSet> {
+
+    private static final int MAGIC = 0x43544c52;
+    @NotNull
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Binary format of nodes and colors. Nodes have to be written in a form that does not depend on the run
+     * (for example coordinates instead of ids).
+     */
+    public interface Codec<N extends Node, C extends ColorSet> {
+
+        /** @return Upper bound on the number of bytes written by writeNode. */
+        int nodeSize(@NotNull N node);
+
+        void writeNode(@NotNull ByteBuffer buffer, @NotNull N node);
+
+        @NotNull N readNode(@NotNull ByteBuffer buffer);
+
+        /** @return Upper bound on the number of bytes written by writeColors. */
+        int colorsSize(@NotNull C colors);
+
+        void writeColors(@NotNull ByteBuffer buffer, @NotNull C colors);
+
+        @NotNull C readColors(@NotNull ByteBuffer buffer);
+    }
+
+    @NotNull
+    private final File directory;
+    @NotNull
+    private final String fingerprint;
+    private final int myId;
+    private final int processCount;
+    @NotNull
+    private final Codec<N, C> codec;
+
+    /**
+     * @param directory Directory with cached results, created if it does not exist.
+     * @param fingerprint Identifies the model and everything else that affects the results, see fingerprint.
+     * @param myId Id of this process.
+     * @param processCount Number of processes that verify the formulas.
+     */
+    public ResultCache(@NotNull File directory, @NotNull String fingerprint, int myId, int processCount, @NotNull Codec<N, C> codec) {
+        this.directory = directory;
+        this.fingerprint = fingerprint;
+        this.myId = myId;
+        this.processCount = processCount;
+        this.codec = codec;
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+            throw new IllegalArgumentException("Can't create cache directory "+directory);
+        }
+    }
+
+    /**
+     * @param modelFile File with the model, its whole content is part of the fingerprint.
+     * @param settings Other things that affect the results (parameter ranges, partitioner...).
+     * @return Hash of the model file and settings.
+     */
+    @NotNull
+    public static String fingerprint(@NotNull File modelFile, @NotNull String... settings) throws IOException {
+        @NotNull MessageDigest digest = sha1();
+        digest.update(Files.readAllBytes(modelFile.toPath()));
+        for (@NotNull String setting : settings) {
+            digest.update((byte) 0);
+            digest.update(setting.getBytes(UTF_8));
+        }
+        return hex(digest.digest());
+    }
+
+    /**
+     * @return Text form of the formula that is the same for all formulas that differ only in the order
+     * of operands of commutative operators.
+     */
+    @NotNull
+    public static String canonical(@NotNull Formula formula) {
+        if (formula instanceof Tautology) return "True";
+        if (formula instanceof Contradiction) return "False";
+        if (formula instanceof FloatProposition) {
+            @NotNull FloatProposition proposition = (FloatProposition) formula;
+            return proposition.getVariable()+" "+proposition.getFloatOperator()+" "+proposition.getThreshold();
+        }
+        if (formula.getSubFormulaCount() == 0) return formula.toString();
+        @NotNull List<String> operands = new ArrayList<>();
+        for (@NotNull Formula sub : formula.getSubFormulas()) {
+            operands.add(canonical(sub));
+        }
+        if (formula.getOperator() == BinaryOperator.AND || formula.getOperator() == BinaryOperator.OR) {
+            Collections.sort(operands);
+        }
+        @NotNull StringBuilder builder = new StringBuilder().append(formula.getOperator()).append('(');
+        for (int i = 0; i < operands.size(); i++) {
+            if (i > 0) builder.append(", ");
+            builder.append(operands.get(i));
+        }
+        return builder.append(')').toString();
+    }
+
+    /**
+     * @return True if results of all processes are cached for given formula.
+     */
+    public boolean contains(@NotNull Formula formula) {
+        @NotNull String key = key(canonical(formula));
+        for (int process = 0; process < processCount; process++) {
+            if (!file(key, process).isFile()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Mark formula as valid in cached nodes of this process.
+     * @return Number of loaded nodes.
+     * @throws IllegalStateException When the cached file can't be read. Other processes may have loaded their
+     * results already, so the formula can't be simply verified again.
+     */
+    public int load(@NotNull Formula formula, @NotNull ModelAdapter<N, C> model) {
+        @NotNull String canonical = canonical(formula);
+        @NotNull File file = file(key(canonical), myId);
+        try (@NotNull FileInputStream input = new FileInputStream(file)) {
+            @NotNull FileChannel channel = input.getChannel();
+            @NotNull MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC) throw new IllegalStateException("File "+file+" is not a result cache file.");
+            @NotNull byte[] stored = new byte[buffer.getInt()];
+            buffer.get(stored);
+            if (!canonical.equals(new String(stored, UTF_8))) {
+                throw new IllegalStateException("File "+file+" contains results of "+new String(stored, UTF_8)+", expected "+canonical);
+            }
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                @NotNull N node = codec.readNode(buffer);
+                model.addFormula(node, formula, codec.readColors(buffer));
+            }
+            return count;
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't read cached results from "+file, e);
+        }
+    }
+
+    /**
+     * Write results of this process for given formula. Cache is only an optimization,
+     * so failures are reported and otherwise ignored.
+     * @param results Nodes of this process where formula holds with respective colors.
+     */
+    public void store(@NotNull Formula formula, @NotNull Map<N, C> results) {
+        @NotNull String canonical = canonical(formula);
+        @NotNull File file = file(key(canonical), myId);
+        try {
+            //other processes must never see an incomplete file, so it is written under temporary name first
+            @NotNull File temporary = File.createTempFile(file.getName(), ".tmp", directory);
+            try (@NotNull DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+                @NotNull byte[] name = canonical.getBytes(UTF_8);
+                output.writeInt(MAGIC);
+                output.writeInt(name.length);
+                output.write(name);
+                output.writeInt(results.size());
+                @NotNull ByteBuffer buffer = ByteBuffer.allocate(1024);
+                for (@NotNull Map.Entry<N, C> entry : results.entrySet()) {
+                    int size = codec.nodeSize(entry.getKey()) + codec.colorsSize(entry.getValue());
+                    if (buffer.capacity() < size) {
+                        buffer = ByteBuffer.allocate(2 * size);
+                    }
+                    buffer.clear();
+                    codec.writeNode(buffer, entry.getKey());
+                    codec.writeColors(buffer, entry.getValue());
+                    output.write(buffer.array(), 0, buffer.position());
+                }
+            }
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println(myId+" Can't store results of "+canonical+" to "+file+": "+e.getMessage());
+        }
+    }
+
+    @NotNull
+    private String key(@NotNull String canonical) {
+        @NotNull MessageDigest digest = sha1();
+        digest.update(fingerprint.getBytes(UTF_8));
+        digest.update((byte) 0);
+        digest.update(canonical.getBytes(UTF_8));
+        return hex(digest.digest());
+    }
+
+    @NotNull
+    private File file(@NotNull String key, int process) {
+        return new File(directory, key+"."+process+"of"+processCount+".results");
+    }
+
+    @NotNull
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not supported.", e);
+        }
+    }
+
+    @NotNull
+    private static String hex(@NotNull byte[] bytes) {
+        @NotNull StringBuilder builder = new StringBuilder();
+        for (byte b : bytes) {
+            builder.append(String.format("%02x", b));
+        }
+        return builder.toString();
+    }
+}
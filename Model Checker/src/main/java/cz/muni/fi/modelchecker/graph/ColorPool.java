@@ -0,0 +1,163 @@
+package cz.muni.fi.modelchecker.graph;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Pool of canonical color sets. Equal sets (by equals and hashCode of the implementation) are replaced by one
+ * shared instance with a small integer id, so they are stored only once and can be compared by id.
+ *
+ * Pooled sets must never be modified. Anyone who needs to modify a pooled set has to copy it first.
+ *
+ * Intersections of pooled sets are memoized by pairs of ids in a fixed size cache, colliding pairs replace each other.
+ * Lookups do not lock, only new sets are added under the pool monitor.
+ */
+public class ColorPool<C extends ColorSet> {
+
+    private static final int MEMO_SIZE = 1 << 16;
+
+    private static class Interned {
+
+        @NotNull
+        private final Object colors;
+        private final boolean empty;
+
+        private Interned(@NotNull Object colors, boolean empty) {
+            this.colors = colors;
+            this.empty = empty;
+        }
+    }
+
+    private static class Memo {
+
+        private final long key;
+        private final int result;
+
+        private Memo(long key, int result) {
+            this.key = key;
+            this.result = result;
+        }
+    }
+
+    @NotNull
+    private final CsrGraph.ColorFactory<C> factory;
+
+    @NotNull
+    private final Map<C, Integer> ids = new ConcurrentHashMap<>();
+    //pooled sets by id, array is replaced when it grows
+    @NotNull
+    private volatile Interned[] pooled = new Interned[64];
+    private volatile int size = 0;
+
+    @NotNull
+    private final AtomicReferenceArray<Memo> memo = new AtomicReferenceArray<>(MEMO_SIZE);
+
+    /**
+     * @param factory Used to create copies of pooled sets.
+     */
+    public ColorPool(@NotNull CsrGraph.ColorFactory<C> factory) {
+        this.factory = factory;
+    }
+
+    @NotNull
+    public CsrGraph.ColorFactory<C> getFactory() {
+        return factory;
+    }
+
+    /**
+     * @param colors Color set that is not going to be modified anymore.
+     * @return Id of a pooled set equal to given set. If there is no such set, given set becomes pooled.
+     */
+    public int intern(@NotNull C colors) {
+        Integer id = ids.get(colors);
+        if (id != null) return id;
+        synchronized (this) {
+            id = ids.get(colors);
+            if (id != null) return id;
+            id = size;
+            if (id == pooled.length) {
+                @NotNull Interned[] larger = new Interned[2 * pooled.length];
+                System.arraycopy(pooled, 0, larger, 0, id);
+                pooled = larger;
+            }
+            pooled[id] = new Interned(colors, colors.isEmpty());
+            //size is written after the set, so every id that can be seen is valid
+            size = id + 1;
+            ids.put(colors, id);
+            return id;
+        }
+    }
+
+    /**
+     * @return Id of pooled set equal to given set or -1 if there is no such set. Given set is never pooled.
+     */
+    public int find(@NotNull C colors) {
+        Integer id = ids.get(colors);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @return Pooled set with given id. It must not be modified.
+     */
+    @NotNull
+    public C get(int id) {
+        @SuppressWarnings("unchecked")
+        C colors = (C) interned(id).colors;
+        return colors;
+    }
+
+    /**
+     * @return Copy of pooled set with given id that can be modified.
+     */
+    @NotNull
+    public C copy(int id) {
+        return factory.copy(get(id));
+    }
+
+    public boolean isEmpty(int id) {
+        return interned(id).empty;
+    }
+
+    /**
+     * @return Number of pooled sets.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Id of pooled intersection of two pooled sets.
+     */
+    public int intersect(int first, int second) {
+        if (first == second) return first;
+        //intersection is commutative
+        long key = first < second ? ((long) first << 32) | second : ((long) second << 32) | first;
+        int slot = slot(key);
+        @Nullable Memo cached = memo.get(slot);
+        if (cached != null && cached.key == key) return cached.result;
+        @NotNull C result = factory.copy(get(first));
+        result.intersect(get(second));
+        int id = intern(result);
+        memo.set(slot, new Memo(key, id));
+        return id;
+    }
+
+    @NotNull
+    private Interned interned(int id) {
+        //size is read before the array, so the array contains all sets counted by size
+        int count = size;
+        if (id < 0 || id >= count) throw new IndexOutOfBoundsException("Color set "+id+" is not pooled, pool size: "+count);
+        return pooled[id];
+    }
+
+    private static int slot(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key & (MEMO_SIZE - 1);
+    }
+}
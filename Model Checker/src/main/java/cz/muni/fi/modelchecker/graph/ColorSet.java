@@ -2,6 +2,7 @@ package cz.muni.fi.modelchecker.graph;
 
 /**
  * Represents a set of colors/parameters.
+ * Note: All operations assume that both sets are of the same implementation.
  */
 public interface ColorSet {
 
@@ -9,7 +10,32 @@ public interface ColorSet {
 
     public void subtract(ColorSet set);
 
+    /**
+     * Add given colors to this set. Implementations should detect enclosed sets during the
+     * union itself, so there is no need to call encloses beforehand.
+     * @return True if this set has been changed, false if given set was already enclosed.
+     */
     public boolean union(ColorSet set);
 
     public boolean isEmpty();
+
+    /**
+     * @return True if given set is a subset of this set.
+     */
+    public boolean encloses(ColorSet set);
+
+    /**
+     * Replace contents of target with the intersection of this and given set.
+     * Neither this nor given set is modified, so there is no need to copy them before the operation.
+     * @param set Set that is intersected with this set.
+     * @param target Set where result is stored. Its previous contents are discarded.
+     * @return True if the result is empty.
+     */
+    public boolean intersectInto(ColorSet set, ColorSet target);
+
+    /**
+     * Subtract given set from this set and check the result.
+     * @return True if this set is empty after the subtraction.
+     */
+    public boolean subtractAndTestEmpty(ColorSet set);
 }
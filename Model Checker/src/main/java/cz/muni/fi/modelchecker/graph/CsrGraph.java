@@ -0,0 +1,277 @@
+package cz.muni.fi.modelchecker.graph;
+
+import cz.muni.fi.modelchecker.ModelAdapter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable graph of local nodes stored in compressed sparse row format.
+ *
+ * Every node gets a dense index: local nodes (sources) are indexed by their position in the list given to the builder,
+ * other nodes that appear only as targets of edges follow after them. For both directions, edges of source i
+ * are stored in targets[offsets[i]] to targets[offsets[i+1] - 1] with colors at the same positions, so one edge costs
+ * two ints instead of a hash map entry.
+ *
+ * Colors of edges are ids of sets from a color pool, so equal colors of different edges are stored only once.
+ * Pooled sets are never returned, they are copied or intersected into new sets. When the restricting colors
+ * are also pooled, intersections are memoized by the pool.
+ * Graph is read only, so it can be used by several threads at once.
+ */
+public class CsrGraph<N extends Node, C extends ColorSet> {
+
+    /**
+     * Creates color sets returned by the graph.
+     */
+    public interface ColorFactory<C extends ColorSet> {
+        @NotNull C createEmpty();
+        @NotNull C copy(@NotNull C colors);
+    }
+
+    /**
+     * Collects edges of all sources and builds the graph. Edges of different sources can be set by different threads
+     * at once, but build must be called only after all of them are done (for example after joining the threads).
+     */
+    public static class Builder<N extends Node, C extends ColorSet> {
+
+        @NotNull
+        private final List<N> sources;
+        //edges of every source, maps can't be stored in a generic array
+        @NotNull
+        private final Object[] successors;
+        @NotNull
+        private final Object[] predecessors;
+
+        /**
+         * @param sources Local nodes, position of the node in the list is its index.
+         */
+        public Builder(@NotNull List<N> sources) {
+            this.sources = sources;
+            this.successors = new Object[sources.size()];
+            this.predecessors = new Object[sources.size()];
+        }
+
+        public void setSuccessors(int source, @NotNull Map<N, C> edges) {
+            successors[source] = edges;
+        }
+
+        public void setPredecessors(int source, @NotNull Map<N, C> edges) {
+            predecessors[source] = edges;
+        }
+
+        /**
+         * @param pool Colors of all edges are added to this pool, so they must not be modified afterwards.
+         * @return Graph with all edges that have been set. Sources without edges have no edges.
+         */
+        @NotNull
+        public CsrGraph<N, C> build(@NotNull ColorPool<C> pool) {
+            @NotNull Map<N, Integer> indexes = new HashMap<>();
+            for (int i = 0; i < sources.size(); i++) {
+                indexes.put(sources.get(i), i);
+            }
+            @NotNull Edges successorEdges = pack(successors, indexes, pool);
+            @NotNull Edges predecessorEdges = pack(predecessors, indexes, pool);
+            @NotNull Object[] nodes = new Object[indexes.size()];
+            for (@NotNull Map.Entry<N, Integer> entry : indexes.entrySet()) {
+                nodes[entry.getValue()] = entry.getKey();
+            }
+            return new CsrGraph<>(nodes, sources.size(), successorEdges, predecessorEdges, pool);
+        }
+
+        /**
+         * Translate edge maps into CSR arrays. Targets without index get next free index.
+         */
+        @NotNull
+        private Edges pack(@NotNull Object[] edges, @NotNull Map<N, Integer> indexes, @NotNull ColorPool<C> pool) {
+            @NotNull int[] offsets = new int[edges.length + 1];
+            for (int i = 0; i < edges.length; i++) {
+                offsets[i + 1] = offsets[i] + (edges[i] == null ? 0 : ((Map<?, ?>) edges[i]).size());
+            }
+            @NotNull int[] targets = new int[offsets[edges.length]];
+            @NotNull int[] colors = new int[offsets[edges.length]];
+            for (int i = 0; i < edges.length; i++) {
+                if (edges[i] == null) continue;
+                @SuppressWarnings("unchecked")
+                Map<N, C> map = (Map<N, C>) edges[i];
+                int position = offsets[i];
+                for (@NotNull Map.Entry<N, C> edge : map.entrySet()) {
+                    Integer index = indexes.get(edge.getKey());
+                    if (index == null) {
+                        index = indexes.size();
+                        indexes.put(edge.getKey(), index);
+                    }
+                    targets[position] = index;
+                    colors[position] = pool.intern(edge.getValue());
+                    position++;
+                }
+                //maps are no longer needed
+                edges[i] = null;
+            }
+            return new Edges(offsets, targets, colors);
+        }
+    }
+
+    private static class Edges {
+
+        @NotNull private final int[] offsets;
+        @NotNull private final int[] targets;
+        @NotNull private final int[] colors;
+
+        private Edges(@NotNull int[] offsets, @NotNull int[] targets, @NotNull int[] colors) {
+            this.offsets = offsets;
+            this.targets = targets;
+            this.colors = colors;
+        }
+    }
+
+    @NotNull
+    private final Object[] nodes;
+    private final int sourceCount;
+    @NotNull
+    private final Edges successors;
+    @NotNull
+    private final Edges predecessors;
+    @NotNull
+    private final ColorPool<C> pool;
+
+    private CsrGraph(@NotNull Object[] nodes, int sourceCount, @NotNull Edges successors, @NotNull Edges predecessors, @NotNull ColorPool<C> pool) {
+        this.nodes = nodes;
+        this.sourceCount = sourceCount;
+        this.successors = successors;
+        this.predecessors = predecessors;
+        this.pool = pool;
+    }
+
+    /**
+     * @return Pool with colors of all edges.
+     */
+    @NotNull
+    public ColorPool<C> getColorPool() {
+        return pool;
+    }
+
+    /**
+     * @return True if given index belongs to a local node whose edges are stored in this graph.
+     */
+    public boolean isSource(int index) {
+        return index >= 0 && index < sourceCount;
+    }
+
+    public int getSourceCount() {
+        return sourceCount;
+    }
+
+    /**
+     * @return Number of all nodes, including targets that are not local.
+     */
+    public int getNodeCount() {
+        return nodes.length;
+    }
+
+    public int getEdgeCount() {
+        return successors.targets.length + predecessors.targets.length;
+    }
+
+    /**
+     * @return Node with given index.
+     */
+    @NotNull
+    public N getNode(int index) {
+        @SuppressWarnings("unchecked")
+        N node = (N) nodes[index];
+        return node;
+    }
+
+    /**
+     * @param source Index of local node.
+     * @param borders Colors that restrict the edges, null means no restriction.
+     * @return Successors of given node with non empty colors.
+     */
+    @NotNull
+    public Map<N, C> successorsOf(int source, @Nullable C borders) {
+        return edgesOf(successors, source, borders);
+    }
+
+    /**
+     * @param source Index of local node.
+     * @param borders Colors that restrict the edges, null means no restriction.
+     * @return Predecessors of given node with non empty colors.
+     */
+    @NotNull
+    public Map<N, C> predecessorsOf(int source, @Nullable C borders) {
+        return edgesOf(predecessors, source, borders);
+    }
+
+    /**
+     * Pass successors of given node with non empty colors to the consumer, see ModelAdapter.forEachSuccessor.
+     * @param source Index of local node.
+     * @param borders Colors that restrict the edges, null means no restriction.
+     */
+    public void forEachSuccessor(int source, @Nullable C borders, @NotNull ModelAdapter.EdgeConsumer<N, C> consumer) {
+        visitEdges(successors, source, borders, consumer);
+    }
+
+    /**
+     * Pass predecessors of given node with non empty colors to the consumer, see ModelAdapter.forEachPredecessor.
+     * @param source Index of local node.
+     * @param borders Colors that restrict the edges, null means no restriction.
+     */
+    public void forEachPredecessor(int source, @Nullable C borders, @NotNull ModelAdapter.EdgeConsumer<N, C> consumer) {
+        visitEdges(predecessors, source, borders, consumer);
+    }
+
+    private void visitEdges(@NotNull Edges edges, int source, @Nullable C borders, @NotNull ModelAdapter.EdgeConsumer<N, C> consumer) {
+        @Nullable C colorSet = null;
+        for (int i = edges.offsets[source]; i < edges.offsets[source + 1]; i++) {
+            if (pool.isEmpty(edges.colors[i])) continue;
+            if (colorSet == null) {
+                colorSet = pool.getFactory().createEmpty();
+            }
+            @NotNull C colors = pool.get(edges.colors[i]);
+            //intersection of a set with itself is a copy of the set, so the same color set can be reused for both cases
+            if (!colors.intersectInto(borders == null ? colors : borders, colorSet)
+                    && consumer.accept(getNode(edges.targets[i]), colorSet)) {
+                colorSet = null;
+            }
+        }
+    }
+
+    @NotNull
+    private Map<N, C> edgesOf(@NotNull Edges edges, int source, @Nullable C borders) {
+        @NotNull Map<N, C> results = new HashMap<>();
+        if (borders == null) {
+            for (int i = edges.offsets[source]; i < edges.offsets[source + 1]; i++) {
+                if (!pool.isEmpty(edges.colors[i])) {
+                    results.put(getNode(edges.targets[i]), pool.copy(edges.colors[i]));
+                }
+            }
+            return results;
+        }
+        int bordersId = pool.find(borders);
+        if (bordersId >= 0) {
+            for (int i = edges.offsets[source]; i < edges.offsets[source + 1]; i++) {
+                int colors = pool.intersect(edges.colors[i], bordersId);
+                if (!pool.isEmpty(colors)) {
+                    results.put(getNode(edges.targets[i]), pool.copy(colors));
+                }
+            }
+            return results;
+        }
+        //borders are not pooled, pooling them would fill the pool with sets used only once
+        @Nullable C colorSet = null;
+        for (int i = edges.offsets[source]; i < edges.offsets[source + 1]; i++) {
+            if (colorSet == null) {
+                colorSet = pool.getFactory().createEmpty();
+            }
+            //empty results are not returned, so their color set can be reused for next edge
+            if (!pool.get(edges.colors[i]).intersectInto(borders, colorSet)) {
+                results.put(getNode(edges.targets[i]), colorSet);
+                colorSet = null;
+            }
+        }
+        return results;
+    }
+}
@@ -0,0 +1,171 @@
+package cz.muni.fi.modelchecker.graph;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Open addressing hash table of nodes with primitive long keys.
+ *
+ * Nodes are also numbered in order of insertion (0, 1, 2, ...), so the index of a node can be used
+ * as a dense local id. Nodes can't be removed.
+ *
+ * Readers do not lock: keys and nodes are stored in atomic arrays (node is written before its key)
+ * and the whole table is replaced when it grows, so a reader either finds a fully inserted node or nothing.
+ * Writers are serialized by the table monitor.
+ */
+public class NodeTable<N extends Node> {
+
+    //marks free slot, keys equal to this value are remapped
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final long EMPTY_REPLACEMENT = Long.MIN_VALUE + 1;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    @NotNull
+    private volatile Table table = new Table(INITIAL_CAPACITY);
+
+    //nodes in order of insertion, only the first size items are valid
+    @NotNull
+    private volatile Object[] ordered = new Object[INITIAL_CAPACITY];
+    private volatile int size = 0;
+
+    /**
+     * @return Node stored under given key or null if there is no such node.
+     */
+    @Nullable
+    public N get(long key) {
+        return table.get(normalize(key));
+    }
+
+    /**
+     * Insert node unless there already is a node with the same key.
+     * @return Node stored under given key after the operation.
+     */
+    @NotNull
+    public synchronized N putIfAbsent(long key, @NotNull N node) {
+        key = normalize(key);
+        @Nullable N existing = table.get(key);
+        if (existing != null) return existing;
+        if (2 * (size + 1) > table.capacity()) {
+            //new table is fully built before it is published, old one is never modified again
+            @NotNull Table larger = new Table(2 * table.capacity());
+            for (int i = 0; i < table.capacity(); i++) {
+                long k = table.keys.get(i);
+                if (k != EMPTY) {
+                    larger.insert(k, table.nodes.get(i));
+                }
+            }
+            table = larger;
+        }
+        table.insert(key, node);
+        if (size == ordered.length) {
+            @NotNull Object[] copy = new Object[2 * ordered.length];
+            System.arraycopy(ordered, 0, copy, 0, size);
+            ordered = copy;
+        }
+        ordered[size] = node;
+        //size is written last, so readers that see the new size also see the node
+        size = size + 1;
+        return node;
+    }
+
+    /**
+     * @return Number of nodes in the table.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Node with given insertion index.
+     */
+    @NotNull
+    public N getByIndex(int index) {
+        int count = size;
+        if (index < 0 || index >= count) throw new IndexOutOfBoundsException("Index: "+index+" size: "+count);
+        @SuppressWarnings("unchecked")
+        N node = (N) ordered[index];
+        return node;
+    }
+
+    /**
+     * @return Nodes that are present in the table at the time of the call, in order of insertion.
+     */
+    @NotNull
+    public List<N> values() {
+        final int count = size;
+        @NotNull final Object[] nodes = ordered;
+        return new AbstractList<N>() {
+            @Override
+            public N get(int index) {
+                if (index < 0 || index >= count) throw new IndexOutOfBoundsException("Index: "+index+" size: "+count);
+                @SuppressWarnings("unchecked")
+                N node = (N) nodes[index];
+                return node;
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+    }
+
+    private static long normalize(long key) {
+        return key == EMPTY ? EMPTY_REPLACEMENT : key;
+    }
+
+    private static int slot(long key, int mask) {
+        //finalizer of murmur hash, mixed radix keys are not random enough on their own
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key & mask;
+    }
+
+    private class Table {
+
+        @NotNull
+        private final AtomicLongArray keys;
+        @NotNull
+        private final AtomicReferenceArray<N> nodes;
+        private final int mask;
+
+        private Table(int capacity) {
+            keys = new AtomicLongArray(capacity);
+            nodes = new AtomicReferenceArray<>(capacity);
+            mask = capacity - 1;
+            for (int i = 0; i < capacity; i++) {
+                keys.set(i, EMPTY);
+            }
+        }
+
+        private int capacity() {
+            return mask + 1;
+        }
+
+        @Nullable
+        private N get(long key) {
+            int i = slot(key, mask);
+            while (true) {
+                long k = keys.get(i);
+                if (k == key) return nodes.get(i);
+                if (k == EMPTY) return null;
+                i = (i + 1) & mask;
+            }
+        }
+
+        private void insert(long key, @NotNull N node) {
+            int i = slot(key, mask);
+            while (keys.get(i) != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            nodes.set(i, node);
+            keys.set(i, key);
+        }
+    }
+}
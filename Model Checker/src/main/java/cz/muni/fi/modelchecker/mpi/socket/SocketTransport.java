@@ -0,0 +1,366 @@
+package cz.muni.fi.modelchecker.mpi.socket;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Message transport between processes connected by TCP, used instead of MPI.
+ *
+ * Every process knows addresses of all processes (static peer list) and its own rank in that list.
+ * Each pair of processes is connected by one socket channel: process connects to all processes with
+ * lower rank and accepts connections from processes with higher rank. Messages sent to itself
+ * are delivered without a socket.
+ *
+ * Message format: tag (int)|length (int)|data. Messages with the same tag from one source
+ * are received in the order in which they were sent. Every connection is read by one thread
+ * which puts messages to queues, so sending never waits for the receiver.
+ *
+ * Close sends a goodbye message (reserved tag) to all processes before the connections are closed.
+ * If a connection fails or is closed without a goodbye, all receivers are woken up and every following
+ * send, receive and poll throws an exception, so that a broken peer fails the whole run instead of blocking it.
+ */
+public class SocketTransport {
+
+    private static final int HEADER_SIZE = 8;
+    //tag of the last message sent by a process that is closing its transport
+    private static final int GOODBYE_TAG = -1;
+
+    //how long to wait for processes that are not listening yet
+    private static final long CONNECT_TIMEOUT = 60 * 1000;
+    private static final long CONNECT_RETRY = 50;
+
+    /**
+     * One received message.
+     */
+    public static class Message {
+
+        public final int source;
+        @NotNull
+        public final byte[] data;
+
+        private Message(int source, @NotNull byte[] data) {
+            this.source = source;
+            this.data = data;
+        }
+    }
+
+    @NotNull
+    private final List<InetSocketAddress> peers;
+    private final int rank;
+    private final int tagCount;
+
+    //channels[peer], null for this process
+    @NotNull
+    private final SocketChannel[] channels;
+    //direct buffers used to write to channels[peer], guarded by sendLocks[peer]
+    @NotNull
+    private final ByteBuffer[] sendBuffers;
+    @NotNull
+    private final Object[] sendLocks;
+    //inboxes.get(tag).get(source)
+    @NotNull
+    private final List<List<BlockingQueue<Message>>> inboxes = new ArrayList<>();
+    @NotNull
+    private final List<Thread> readers = new ArrayList<>();
+
+    private volatile boolean closed = false;
+
+    //first connection failure, reported to all callers
+    @Nullable
+    private volatile IllegalStateException failure = null;
+    //put to all inboxes when a connection fails, so that blocked receivers wake up
+    @NotNull
+    private static final Message FAILED = new Message(-1, new byte[0]);
+
+    /**
+     * @param peers Addresses of all processes, the same list for all of them.
+     * @param rank Position of this process in the peer list.
+     * @param tagCount Messages can use tags from 0 to tagCount - 1.
+     */
+    public SocketTransport(@NotNull List<InetSocketAddress> peers, int rank, int tagCount) {
+        if (rank < 0 || rank >= peers.size()) {
+            throw new IllegalArgumentException("Rank "+rank+" is not a part of peer list with "+peers.size()+" processes.");
+        }
+        this.peers = new ArrayList<>(peers);
+        this.rank = rank;
+        this.tagCount = tagCount;
+        this.channels = new SocketChannel[peers.size()];
+        this.sendBuffers = new ByteBuffer[peers.size()];
+        this.sendLocks = new Object[peers.size()];
+        for (int i = 0; i < peers.size(); i++) {
+            sendLocks[i] = new Object();
+        }
+        for (int tag = 0; tag < tagCount; tag++) {
+            @NotNull List<BlockingQueue<Message>> byTag = new ArrayList<>();
+            for (int source = 0; source < peers.size(); source++) {
+                byTag.add(new LinkedBlockingQueue<Message>());
+            }
+            inboxes.add(byTag);
+        }
+    }
+
+    public int getRank() {
+        return rank;
+    }
+
+    public int getSize() {
+        return peers.size();
+    }
+
+    /**
+     * Connect to all other processes. Blocks until all connections are established.
+     */
+    public void connect() throws IOException {
+        @NotNull ServerSocketChannel server = ServerSocketChannel.open();
+        try {
+            server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            server.bind(peers.get(rank), peers.size());
+            //connections are accepted by the server socket even before accept is called, so no process waits for the others
+            for (int peer = 0; peer < rank; peer++) {
+                @NotNull SocketChannel channel = connectTo(peers.get(peer));
+                @NotNull ByteBuffer handshake = ByteBuffer.allocate(4);
+                handshake.putInt(rank).flip();
+                writeFully(channel, handshake);
+                register(peer, channel);
+            }
+            for (int i = rank + 1; i < peers.size(); i++) {
+                @NotNull SocketChannel channel = server.accept();
+                @NotNull ByteBuffer handshake = ByteBuffer.allocate(4);
+                if (!readFully(channel, handshake)) throw new EOFException("Connection closed before handshake.");
+                int peer = handshake.getInt(0);
+                if (peer <= rank || peer >= peers.size() || channels[peer] != null) {
+                    channel.close();
+                    throw new IOException("Unexpected connection from process "+peer);
+                }
+                register(peer, channel);
+            }
+        } finally {
+            server.close();
+        }
+        for (int peer = 0; peer < peers.size(); peer++) {
+            if (peer != rank) {
+                startReader(peer);
+            }
+        }
+    }
+
+    @NotNull
+    private static SocketChannel connectTo(@NotNull InetSocketAddress address) throws IOException {
+        long start = System.currentTimeMillis();
+        while (true) {
+            @NotNull SocketChannel channel = SocketChannel.open();
+            try {
+                channel.connect(address);
+                return channel;
+            } catch (IOException e) {
+                channel.close();
+                //other process is probably not listening yet
+                if (System.currentTimeMillis() - start > CONNECT_TIMEOUT) throw e;
+                try {
+                    Thread.sleep(CONNECT_RETRY);
+                } catch (InterruptedException e1) {
+                    throw new IOException("Interrupted while connecting to "+address, e1);
+                }
+            }
+        }
+    }
+
+    private void register(int peer, @NotNull SocketChannel channel) throws IOException {
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channels[peer] = channel;
+        sendBuffers[peer] = ByteBuffer.allocateDirect(64 * 1024);
+    }
+
+    private void startReader(final int peer) {
+        @NotNull Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                @NotNull ByteBuffer header = ByteBuffer.allocateDirect(HEADER_SIZE);
+                @NotNull ByteBuffer body = ByteBuffer.allocateDirect(64 * 1024);
+                try {
+                    while (true) {
+                        header.clear();
+                        if (!readFully(channels[peer], header)) {
+                            throw new EOFException("Connection closed without goodbye.");
+                        }
+                        int tag = header.getInt(0);
+                        if (tag == GOODBYE_TAG) return; //peer has finished, nothing else will arrive
+                        int length = header.getInt(4);
+                        if (body.capacity() < length) {
+                            body = ByteBuffer.allocateDirect(Math.max(length, 2 * body.capacity()));
+                        }
+                        body.clear();
+                        body.limit(length);
+                        if (!readFully(channels[peer], body)) throw new EOFException("Connection closed in the middle of a message.");
+                        body.flip();
+                        @NotNull byte[] data = new byte[length];
+                        body.get(data);
+                        inboxes.get(tag).get(peer).add(new Message(peer, data));
+                    }
+                } catch (IOException e) {
+                    if (!closed) {
+                        fail(new IllegalStateException("Connection to process "+peer+" failed.", e));
+                    }
+                }
+            }
+        });
+        reader.setDaemon(true);
+        reader.start();
+        readers.add(reader);
+    }
+
+    /**
+     * Send message to given process. Does not wait for the receiver.
+     * Can be called concurrently, messages are not interleaved.
+     */
+    public void send(int destination, int tag, @NotNull byte[] data, int offset, int length) {
+        if (tag < 0 || tag >= tagCount) throw new IllegalArgumentException("Unknown tag "+tag);
+        checkFailure();
+        if (destination == rank) {
+            byte[] copy = new byte[length];
+            System.arraycopy(data, offset, copy, 0, length);
+            inboxes.get(tag).get(rank).add(new Message(rank, copy));
+            return;
+        }
+        synchronized (sendLocks[destination]) {
+            @NotNull ByteBuffer buffer = sendBuffers[destination];
+            if (buffer.capacity() < length + HEADER_SIZE) {
+                buffer = ByteBuffer.allocateDirect(Math.max(length + HEADER_SIZE, 2 * buffer.capacity()));
+                sendBuffers[destination] = buffer;
+            }
+            buffer.clear();
+            buffer.putInt(tag).putInt(length).put(data, offset, length).flip();
+            try {
+                writeFully(channels[destination], buffer);
+            } catch (IOException e) {
+                @NotNull IllegalStateException error = new IllegalStateException("Can't send message to process "+destination, e);
+                fail(error);
+                throw error;
+            }
+        }
+    }
+
+    /**
+     * Block until a message with given tag is received from given process.
+     */
+    @NotNull
+    public Message receive(int source, int tag) {
+        checkFailure();
+        try {
+            @NotNull BlockingQueue<Message> inbox = inboxes.get(tag).get(source);
+            @NotNull Message message = inbox.take();
+            if (message == FAILED) {
+                //leave it there for other receivers
+                inbox.add(FAILED);
+                checkFailure();
+            }
+            return message;
+        } catch (InterruptedException e) {
+            throw new IllegalStateException("Interrupted while waiting for message from "+source, e);
+        }
+    }
+
+    /**
+     * @return Message with given tag from any process or null if no such message has arrived.
+     */
+    @Nullable
+    public Message poll(int tag) {
+        checkFailure();
+        @NotNull List<BlockingQueue<Message>> byTag = inboxes.get(tag);
+        for (int i = 1; i <= byTag.size(); i++) {
+            //start with the next process, so that no process is starved
+            @Nullable Message message = byTag.get((rank + i) % byTag.size()).poll();
+            if (message == FAILED) checkFailure();
+            if (message != null) return message;
+        }
+        return null;
+    }
+
+    /** Remember the first failure and wake up all receivers. */
+    private void fail(@NotNull IllegalStateException error) {
+        synchronized (inboxes) {
+            if (failure != null) return;
+            failure = error;
+        }
+        for (@NotNull List<BlockingQueue<Message>> byTag : inboxes) {
+            for (@NotNull BlockingQueue<Message> inbox : byTag) {
+                inbox.add(FAILED);
+            }
+        }
+    }
+
+    /** Throw an exception if some connection has failed. */
+    private void checkFailure() {
+        @Nullable IllegalStateException error = failure;
+        if (error != null) {
+            throw new IllegalStateException(error.getMessage(), error);
+        }
+    }
+
+    /**
+     * Say goodbye to all processes and close all connections. Messages that have not been received are lost.
+     */
+    public void close() {
+        closed = true;
+        for (int peer = 0; peer < channels.length; peer++) {
+            if (channels[peer] == null) continue;
+            synchronized (sendLocks[peer]) {
+                @NotNull ByteBuffer buffer = sendBuffers[peer];
+                buffer.clear();
+                buffer.putInt(GOODBYE_TAG).putInt(0).flip();
+                try {
+                    writeFully(channels[peer], buffer);
+                } catch (IOException e) {
+                    //OK, peer is already gone
+                }
+            }
+        }
+        for (@Nullable SocketChannel channel : channels) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    //OK, closing anyway
+                }
+            }
+        }
+        for (@NotNull Thread reader : readers) {
+            try {
+                reader.join();
+            } catch (InterruptedException e) {
+                //OK
+            }
+        }
+    }
+
+    private static void writeFully(@NotNull SocketChannel channel, @NotNull ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /** @return False if the channel has been closed before anything was read. */
+    private static boolean readFully(@NotNull SocketChannel channel, @NotNull ByteBuffer buffer) throws IOException {
+        boolean any = false;
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                if (!any) return false;
+                throw new EOFException("Connection closed in the middle of a message.");
+            }
+            any = true;
+        }
+        return true;
+    }
+}
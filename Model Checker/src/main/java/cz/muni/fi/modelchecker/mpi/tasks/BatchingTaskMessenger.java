@@ -0,0 +1,256 @@
+package cz.muni.fi.modelchecker.mpi.tasks;
+
+import cz.muni.fi.modelchecker.graph.ColorSet;
+import cz.muni.fi.modelchecker.graph.Node;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Task messenger that packs tasks for one destination into a batch and sends the whole batch as one message.
+ *
+ * Batch is sent when it reaches given size, when its oldest task is older than given delay or when
+ * flush is called. Batch format: number of tasks (int) followed by tasks written by encodeTask.
+ *
+ * Incoming batches are polled by one long lived progress thread that is shared by all sessions.
+ * Between sessions, nothing is received, so tasks of the next session wait in the transport until
+ * the session is started. Progress thread is stopped by close.
+ *
+ * Termination: Tasks are counted as sent by the caller of sendTask and as received by the listener
+ * of each unpacked task, so tasks waiting in a batch keep the message count positive and prevent termination
+ * until they are delivered. Processes have to flush before they report being idle.
+ */
+public abstract class BatchingTaskMessenger<N extends Node, C extends ColorSet> implements TaskMessenger<N, C> {
+
+    private static final int HEADER_SIZE = 4;
+
+    //bounds of the pause between two unsuccessful polls
+    private static final long MIN_PARK_NANOS = 10 * 1000;
+    private static final long MAX_PARK_NANOS = 1000 * 1000;
+
+    private final int batchSize;
+    private final long maxDelay;
+
+    @NotNull
+    private final Batch[] batches;
+
+    //guards session state
+    @NotNull
+    private final Object sessionLock = new Object();
+    @Nullable
+    private OnTaskListener<N, C> callback;
+    //true while progress thread is passing a batch to the listener
+    private boolean dispatching = false;
+    private boolean closed = false;
+    @Nullable
+    private Thread progress;
+
+    /**
+     * @param processCount Number of processes that can receive tasks.
+     * @param batchSize Size of batch in bytes that is sent immediately.
+     * @param maxDelay Time in milliseconds after which batch is sent even if it is not full.
+     */
+    protected BatchingTaskMessenger(int processCount, int batchSize, long maxDelay) {
+        this.batchSize = batchSize;
+        this.maxDelay = maxDelay;
+        this.batches = new Batch[processCount];
+        for (int i = 0; i < processCount; i++) {
+            batches[i] = new Batch(batchSize);
+        }
+    }
+
+    @Override
+    public void startSession(@NotNull OnTaskListener<N, C> taskListener) {
+        synchronized (sessionLock) {
+            if (closed) throw new IllegalStateException("Starting session on closed Task Messenger.");
+            if (callback != null) throw new IllegalStateException("Task Messenger already has an active session.");
+            callback = taskListener;
+            if (progress == null) {
+                progress = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        progressLoop();
+                    }
+                });
+                progress.setDaemon(true);
+                progress.start();
+            }
+            sessionLock.notifyAll();
+        }
+    }
+
+    @Override
+    public void closeSession() {
+        flush();
+        synchronized (sessionLock) {
+            if (callback == null) throw new IllegalStateException("Closing session on Task Messenger with no active session.");
+            callback = null;
+            //termination has been detected, so this should not take long
+            while (dispatching) {
+                try {
+                    sessionLock.wait();
+                } catch (InterruptedException e) {
+                    //OK
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop the progress thread. Messenger can't be used afterwards.
+     * Should be called before the transport is shut down.
+     */
+    public void close() {
+        @Nullable Thread thread;
+        synchronized (sessionLock) {
+            closed = true;
+            thread = progress;
+            sessionLock.notifyAll();
+        }
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                //OK
+            }
+        }
+    }
+
+    private void progressLoop() {
+        long park = MIN_PARK_NANOS;
+        while (true) {
+            @Nullable OnTaskListener<N, C> listener;
+            synchronized (sessionLock) {
+                while (callback == null && !closed) {
+                    try {
+                        sessionLock.wait();
+                    } catch (InterruptedException e) {
+                        //OK
+                    }
+                }
+                if (closed) return;
+                listener = callback;
+                dispatching = true;
+            }
+            boolean received = receiveBatch(listener);
+            synchronized (sessionLock) {
+                dispatching = false;
+                sessionLock.notifyAll();
+            }
+            flushOlderThan(maxDelay);
+            if (received) {
+                park = MIN_PARK_NANOS;
+            } else {
+                LockSupport.parkNanos(park);
+                park = Math.min(2 * park, MAX_PARK_NANOS);
+            }
+        }
+    }
+
+    @Override
+    public void sendTask(int destinationProcess, @NotNull N internal, @NotNull N external, @NotNull C colors) {
+        @NotNull Batch batch = batches[destinationProcess];
+        synchronized (batch) {
+            batch.ensureRemaining(encodedSize(internal, external, colors));
+            encodeTask(batch.buffer, internal, external, colors);
+            if (batch.taskCount == 0) {
+                batch.created = System.currentTimeMillis();
+            }
+            batch.taskCount++;
+            if (batch.buffer.position() >= batchSize) {
+                send(destinationProcess, batch);
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+        for (int i = 0; i < batches.length; i++) {
+            synchronized (batches[i]) {
+                if (batches[i].taskCount > 0) {
+                    send(i, batches[i]);
+                }
+            }
+        }
+    }
+
+    private void flushOlderThan(long delay) {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < batches.length; i++) {
+            synchronized (batches[i]) {
+                if (batches[i].taskCount > 0 && now - batches[i].created >= delay) {
+                    send(i, batches[i]);
+                }
+            }
+        }
+    }
+
+    /** Send batch and replace its buffer with an empty one. Has to be called while holding batch lock. */
+    private void send(int destination, @NotNull Batch batch) {
+        @NotNull ByteBuffer buffer = batch.buffer;
+        buffer.putInt(0, batch.taskCount);
+        //sent array is handed over to the transport, so it does not have to wait for the send to complete
+        batch.buffer = ByteBuffer.allocate(buffer.capacity());
+        batch.buffer.position(HEADER_SIZE);
+        batch.taskCount = 0;
+        sendBatch(destination, buffer.array(), buffer.position());
+    }
+
+    /**
+     * Unpack all tasks of received batch and pass them to the listener.
+     * @param data Buffer positioned at the beginning of the batch.
+     */
+    protected void dispatchBatch(int sender, @NotNull ByteBuffer data, @NotNull OnTaskListener<N, C> taskListener) {
+        int taskCount = data.getInt();
+        for (int i = 0; i < taskCount; i++) {
+            decodeTask(sender, data, taskListener);
+        }
+    }
+
+    /**
+     * Check whether a batch has arrived and if so, receive it and pass it to dispatchBatch. Must not block.
+     * Called only from the progress thread.
+     * @return True if a batch has been received.
+     */
+    protected abstract boolean receiveBatch(@NotNull OnTaskListener<N, C> taskListener);
+
+    /** @return Upper bound on the number of bytes written by encodeTask for given task. */
+    protected abstract int encodedSize(@NotNull N internal, @NotNull N external, @NotNull C colors);
+
+    /** Write given task to the buffer. Buffer has at least encodedSize bytes remaining. */
+    protected abstract void encodeTask(@NotNull ByteBuffer buffer, @NotNull N internal, @NotNull N external, @NotNull C colors);
+
+    /** Read one task written by encodeTask from the buffer and pass it to the listener. */
+    protected abstract void decodeTask(int sender, @NotNull ByteBuffer buffer, @NotNull OnTaskListener<N, C> taskListener);
+
+    /**
+     * Send batch data to destination process. Array is not reused after this call.
+     * Can be called concurrently for different destinations.
+     */
+    protected abstract void sendBatch(int destination, @NotNull byte[] data, int length);
+
+    private static class Batch {
+
+        @NotNull
+        private ByteBuffer buffer;
+        private int taskCount = 0;
+        //time when first task of this batch has been written
+        private long created;
+
+        private Batch(int size) {
+            buffer = ByteBuffer.allocate(size + HEADER_SIZE);
+            buffer.position(HEADER_SIZE);
+        }
+
+        private void ensureRemaining(int size) {
+            if (buffer.remaining() < size) {
+                @NotNull ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.position() + size, 2 * buffer.capacity()));
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+    }
+}
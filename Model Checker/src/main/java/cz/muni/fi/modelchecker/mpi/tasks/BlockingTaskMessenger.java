@@ -46,6 +46,11 @@ public abstract class BlockingTaskMessenger<N extends Node, C extends ColorSet>
         }
     }
 
+    /** Tasks are sent right away by default, so there is nothing to flush. */
+    @Override
+    public void flush() {
+    }
+
     /**
      * Receive a new task and if such task is valid, notify the given task listener about this event.
      * This method should return false at least once in finite time after finishSelf has been called.
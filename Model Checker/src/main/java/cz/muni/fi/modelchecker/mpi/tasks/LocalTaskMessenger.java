@@ -0,0 +1,195 @@
+package cz.muni.fi.modelchecker.mpi.tasks;
+
+import cz.muni.fi.modelchecker.graph.ColorSet;
+import cz.muni.fi.modelchecker.graph.Node;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Task messenger for processes running as threads of one JVM.
+ * All messengers taking part in one computation have to share the same network.
+ *
+ * Tasks are passed as objects, without any serialization. Since every process has its own model,
+ * received nodes are first translated to the nodes of local model using a node resolver.
+ * Color sets are handed over to the receiver, so sender must not use them after sendTask.
+ *
+ * Tasks are delivered by one long lived thread that is shared by all sessions.
+ * Between sessions, nothing is delivered, so tasks of the next session wait in the queue until
+ * the session is started. Delivery thread is stopped by close.
+ */
+public class LocalTaskMessenger<N extends Node, C extends ColorSet> implements TaskMessenger<N, C> {
+
+    //how long delivery thread waits for a task before checking the session again
+    private static final long POLL_TIMEOUT_MILLIS = 10;
+
+    /**
+     * Translates node of other process to a node of local model.
+     */
+    public interface NodeResolver<N extends Node> {
+        @NotNull N resolve(@NotNull N node);
+    }
+
+    /**
+     * Task queues of all processes.
+     */
+    public static class Network<N extends Node, C extends ColorSet> {
+
+        @NotNull
+        private final List<BlockingQueue<Task<N, C>>> inboxes = new ArrayList<>();
+
+        public Network(int processCount) {
+            for (int i = 0; i < processCount; i++) {
+                inboxes.add(new LinkedBlockingQueue<Task<N, C>>());
+            }
+        }
+
+        public int getProcessCount() {
+            return inboxes.size();
+        }
+    }
+
+    private static class Task<N, C> {
+
+        private final int sender;
+        @NotNull
+        private final N internal;
+        @NotNull
+        private final N external;
+        @NotNull
+        private final C colors;
+
+        private Task(int sender, @NotNull N internal, @NotNull N external, @NotNull C colors) {
+            this.sender = sender;
+            this.internal = internal;
+            this.external = external;
+            this.colors = colors;
+        }
+    }
+
+    @NotNull
+    private final Network<N, C> network;
+    private final int id;
+    @NotNull
+    private final NodeResolver<N> resolver;
+
+    //guards session state
+    @NotNull
+    private final Object sessionLock = new Object();
+    @Nullable
+    private OnTaskListener<N, C> callback;
+    //true while delivery thread is passing a task to the listener
+    private boolean dispatching = false;
+    private boolean closed = false;
+    @Nullable
+    private Thread delivery;
+
+    public LocalTaskMessenger(@NotNull Network<N, C> network, int id, @NotNull NodeResolver<N> resolver) {
+        if (id < 0 || id >= network.getProcessCount()) {
+            throw new IllegalArgumentException("Process id "+id+" is not a part of network with "+network.getProcessCount()+" processes.");
+        }
+        this.network = network;
+        this.id = id;
+        this.resolver = resolver;
+    }
+
+    @Override
+    public void startSession(@NotNull OnTaskListener<N, C> taskListener) {
+        synchronized (sessionLock) {
+            if (closed) throw new IllegalStateException("Starting session on closed Task Messenger.");
+            if (callback != null) throw new IllegalStateException("Task Messenger already has an active session.");
+            callback = taskListener;
+            if (delivery == null) {
+                delivery = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        deliveryLoop();
+                    }
+                });
+                delivery.setDaemon(true);
+                delivery.start();
+            }
+            sessionLock.notifyAll();
+        }
+    }
+
+    @Override
+    public void closeSession() {
+        synchronized (sessionLock) {
+            if (callback == null) throw new IllegalStateException("Closing session on Task Messenger with no active session.");
+            callback = null;
+            while (dispatching) {
+                try {
+                    sessionLock.wait();
+                } catch (InterruptedException e) {
+                    //OK
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop the delivery thread. Messenger can't be used afterwards.
+     */
+    public void close() {
+        @Nullable Thread thread;
+        synchronized (sessionLock) {
+            closed = true;
+            thread = delivery;
+            sessionLock.notifyAll();
+        }
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                //OK
+            }
+        }
+    }
+
+    @Override
+    public void sendTask(int destinationProcess, @NotNull N internal, @NotNull N external, @NotNull C colors) {
+        network.inboxes.get(destinationProcess).add(new Task<>(id, internal, external, colors));
+    }
+
+    /** Tasks are delivered right away, so there is nothing to flush. */
+    @Override
+    public void flush() {
+    }
+
+    private void deliveryLoop() {
+        @NotNull BlockingQueue<Task<N, C>> inbox = network.inboxes.get(id);
+        while (true) {
+            @Nullable OnTaskListener<N, C> listener;
+            synchronized (sessionLock) {
+                while (callback == null && !closed) {
+                    try {
+                        sessionLock.wait();
+                    } catch (InterruptedException e) {
+                        //OK
+                    }
+                }
+                if (closed) return;
+                listener = callback;
+                dispatching = true;
+            }
+            try {
+                @Nullable Task<N, C> task = inbox.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (task != null) {
+                    listener.onTask(task.sender, resolver.resolve(task.internal), resolver.resolve(task.external), task.colors);
+                }
+            } catch (InterruptedException e) {
+                //OK
+            }
+            synchronized (sessionLock) {
+                dispatching = false;
+                sessionLock.notifyAll();
+            }
+        }
+    }
+}
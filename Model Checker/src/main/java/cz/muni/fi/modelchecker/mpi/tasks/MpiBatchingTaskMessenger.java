@@ -0,0 +1,102 @@
+package cz.muni.fi.modelchecker.mpi.tasks;
+
+import cz.muni.fi.modelchecker.graph.ColorSet;
+import cz.muni.fi.modelchecker.graph.Node;
+import mpi.Comm;
+import mpi.MPI;
+import mpi.Request;
+import mpi.Status;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Batching task messenger that sends batches between MPI processes. Subclasses only encode and decode tasks.
+ * Batches are sent with Isend and received by polling with Iprobe.
+ * Unfinished send requests are completed by the progress thread and by close.
+ */
+public abstract class MpiBatchingTaskMessenger<N extends Node, C extends ColorSet> extends BatchingTaskMessenger<N, C> {
+
+    //messengers of different lanes (see ModelChecker.Lane) have to use different tags
+    public static final int DEFAULT_TAG = 1;
+
+    public static final int DEFAULT_BATCH_SIZE = 64 * 1024;
+    public static final long DEFAULT_MAX_DELAY = 5;
+
+    private final Comm COMM;
+    private final int tag;
+
+    private byte[] recvBuffer;
+
+    //unfinished send requests for every destination, each list is guarded by itself
+    @NotNull
+    private final List<List<Request>> pending = new ArrayList<>();
+
+    /**
+     * @param batchSize Size of batch in bytes that is sent immediately.
+     * @param maxDelay Time in milliseconds after which batch is sent even if it is not full.
+     * @param tag MPI tag of the batches, different for every messenger using the same communicator.
+     */
+    protected MpiBatchingTaskMessenger(Comm comm, int batchSize, long maxDelay, int tag) {
+        super(comm.Size(), batchSize, maxDelay);
+        this.COMM = comm;
+        this.tag = tag;
+        this.recvBuffer = new byte[batchSize];
+        for (int i = 0; i < comm.Size(); i++) {
+            pending.add(new ArrayList<Request>());
+        }
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        //progress thread is stopped, so remaining requests have to be completed before MPI is finalized
+        for (@NotNull List<Request> requests : pending) {
+            synchronized (requests) {
+                Request.Waitall(requests.toArray(new Request[requests.size()]));
+                requests.clear();
+            }
+        }
+    }
+
+    @Override
+    protected void sendBatch(int destination, @NotNull byte[] data, int length) {
+        @NotNull List<Request> requests = pending.get(destination);
+        synchronized (requests) {
+            requests.add(COMM.Isend(data, 0, length, MPI.BYTE, destination, tag));
+        }
+    }
+
+    /** Remove requests that have been completed. */
+    private void testPending() {
+        for (@NotNull List<Request> requests : pending) {
+            synchronized (requests) {
+                @NotNull Iterator<Request> iterator = requests.iterator();
+                while (iterator.hasNext()) {
+                    if (iterator.next().Test() != null) {
+                        iterator.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    protected boolean receiveBatch(@NotNull OnTaskListener<N, C> taskListener) {
+        //no need to synchronize - this method is only called from one thread
+        testPending();
+        Status status = COMM.Iprobe(MPI.ANY_SOURCE, tag);
+        if (status == null) return false;
+        int size = status.Get_count(MPI.BYTE);
+        if (recvBuffer.length < size) {
+            recvBuffer = new byte[size];
+        }
+        COMM.Recv(recvBuffer, 0, size, MPI.BYTE, status.source, tag);
+        dispatchBatch(status.source, ByteBuffer.wrap(recvBuffer, 0, size), taskListener);
+        return true;
+    }
+
+}
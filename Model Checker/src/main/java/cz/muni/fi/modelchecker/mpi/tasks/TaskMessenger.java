@@ -23,4 +23,11 @@ public interface TaskMessenger<N extends Node, C extends ColorSet> {
      * @param colors Additional info about request colors.
      */
     public void sendTask(int destinationProcess, @NotNull N internal, @NotNull N external, @NotNull C colors);
+
+    /**
+     * Make sure all tasks created by previous sendTask calls are on their way to destination.
+     * Tasks are counted as sent when sendTask is called, so every process has to flush
+     * before it reports being idle, otherwise termination may never be detected.
+     */
+    public void flush();
 }
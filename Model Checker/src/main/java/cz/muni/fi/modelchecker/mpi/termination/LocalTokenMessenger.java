@@ -0,0 +1,76 @@
+package cz.muni.fi.modelchecker.mpi.termination;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Ensures token passing between processes running as threads of one JVM.
+ * All messengers taking part in one computation have to share the same network.
+ */
+public class LocalTokenMessenger implements TokenMessenger {
+
+    /**
+     * Token channels between all pairs of processes.
+     */
+    public static class Network {
+
+        //channels.get(source).get(destination)
+        @NotNull
+        private final List<List<BlockingQueue<Token>>> channels = new ArrayList<>();
+
+        public Network(int processCount) {
+            for (int i = 0; i < processCount; i++) {
+                @NotNull List<BlockingQueue<Token>> fromProcess = new ArrayList<>();
+                for (int j = 0; j < processCount; j++) {
+                    fromProcess.add(new LinkedBlockingQueue<Token>());
+                }
+                channels.add(fromProcess);
+            }
+        }
+
+        public int getProcessCount() {
+            return channels.size();
+        }
+    }
+
+    @NotNull
+    private final Network network;
+    private final int id;
+
+    public LocalTokenMessenger(@NotNull Network network, int id) {
+        if (id < 0 || id >= network.getProcessCount()) {
+            throw new IllegalArgumentException("Process id "+id+" is not a part of network with "+network.getProcessCount()+" processes.");
+        }
+        this.network = network;
+        this.id = id;
+    }
+
+    @Override
+    public int getProcessCount() {
+        return network.getProcessCount();
+    }
+
+    @Override
+    public int getMyId() {
+        return id;
+    }
+
+    @Override
+    public void sendTokenAsync(int destination, @NotNull Token token) {
+        network.channels.get(id).get(destination).add(token);
+    }
+
+    @NotNull
+    @Override
+    public Token waitForToken(int source) {
+        try {
+            return network.channels.get(source).get(id).take();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException("Interrupted while waiting for token from "+source, e);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package cz.muni.fi.modelchecker.mpi.termination;
+
+import cz.muni.fi.modelchecker.mpi.socket.SocketTransport;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Ensures token passing between processes connected by a socket transport.
+ */
+public class SocketTokenMessenger implements TokenMessenger {
+
+    @NotNull
+    private final SocketTransport transport;
+    private final int TAG;
+
+    /**
+     * @param tag Tag of token messages, must not be used by other messages of the transport.
+     */
+    public SocketTokenMessenger(@NotNull SocketTransport transport, int tag) {
+        this.transport = transport;
+        this.TAG = tag;
+    }
+
+    @Override
+    public int getProcessCount() {
+        return transport.getSize();
+    }
+
+    @Override
+    public int getMyId() {
+        return transport.getRank();
+    }
+
+    @Override
+    public void sendTokenAsync(int destination, @NotNull Token token) {
+        @NotNull byte[] data = ByteBuffer.allocate(8).putInt(token.flag).putInt(token.count).array();
+        transport.send(destination, TAG, data, 0, data.length);
+    }
+
+    @NotNull
+    @Override
+    public Token waitForToken(int source) {
+        @NotNull ByteBuffer data = ByteBuffer.wrap(transport.receive(source, TAG).data);
+        int flag = data.getInt();
+        return new Token(flag, data.getInt());
+    }
+}
@@ -8,99 +8,145 @@ import cz.muni.fi.modelchecker.graph.Node;
 import cz.muni.fi.modelchecker.mpi.tasks.TaskMessenger;
 import cz.muni.fi.modelchecker.mpi.termination.Terminator;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Verificator for all until operator.
+ * Also verifies all future operator, which is all until with no restriction on the path.
  */
 class AllUntilVerificator<N extends Node, C extends ColorSet> extends MergeQueueProcessor<N, C> {
 
-    private final Map<N, Map<N, C>> successorsAndUncoveredColors = new HashMap<>();
+    private final Map<N, Map<N, C>> successorsAndUncoveredColors = new ConcurrentHashMap<>();
 
+    //formula that has to hold on the path, null if it always holds
+    @Nullable
+    private final Formula path;
+    @NotNull
+    private final Formula target;
+
+    AllUntilVerificator(
+            @NotNull ModelAdapter<N, C> model,
+            @NotNull StateSpacePartitioner<N> partitioner,
+            @NotNull Formula formula,
+            @NotNull Terminator.TerminatorFactory terminatorFactory,
+            @NotNull TaskMessenger<N, C> taskMessenger,
+            int workerCount
+    ) {
+        this(model, partitioner, formula, formula.getSubFormulaAt(0), formula.getSubFormulaAt(1), terminatorFactory, taskMessenger, workerCount);
+    }
+
+    /**
+     * @param path Formula that has to hold on all paths to target, null if it always holds.
+     * @param target Formula that has to hold at the end of all paths.
+     */
     AllUntilVerificator(
             @NotNull ModelAdapter<N, C> model,
             @NotNull StateSpacePartitioner<N> partitioner,
             @NotNull Formula formula,
+            @Nullable Formula path,
+            @NotNull Formula target,
             @NotNull Terminator.TerminatorFactory terminatorFactory,
-            @NotNull TaskMessenger<N, C> taskMessenger
+            @NotNull TaskMessenger<N, C> taskMessenger,
+            int workerCount
     ) {
-        super(model, partitioner, formula, terminatorFactory, taskMessenger);
+        super(model, partitioner, formula, terminatorFactory, taskMessenger, workerCount);
+        this.path = path;
+        this.target = target;
     }
 
     //candidates represents colors that are pushed down to predecessor node but only through given edge
-    //only one node can be processed at a time, because we need to synchronize access to successors
-    private void processAllUntilNode(N inspected, @NotNull N predecessor, @NotNull C candidates) {
-        synchronized (queue) {  //bit overkill, but meh
+    //only one thread can process given predecessor at a time, because we need to synchronize access to its successors
+    //returns true if candidates have been added to the queue
+    private boolean processAllUntilNode(N inspected, @NotNull N predecessor, @NotNull C candidates) {
+        synchronized (lockFor(predecessor)) {
             //if local successor cache does not contain given node, we have to compute the successors first
             if (!successorsAndUncoveredColors.containsKey(predecessor)) {
-                successorsAndUncoveredColors.put(predecessor, model.successorsFor(predecessor, null));
+                @NotNull final Map<N, C> successors = new HashMap<>();
+                model.forEachSuccessor(predecessor, null, new ModelAdapter.EdgeConsumer<N, C>() {
+                    @Override
+                    public boolean accept(@NotNull N successor, @NotNull C colors) {
+                        successors.put(successor, colors);
+                        return true;
+                    }
+                });
+                successorsAndUncoveredColors.put(predecessor, successors);
             }
             Map<N, C> predecessorsSuccessors = successorsAndUncoveredColors.get(predecessor);
             //subtract colors pushed from inspected node from colors on edge between him and his predecessor
             C inspectedEdgeColors = predecessorsSuccessors.get(inspected);
-            if (inspectedEdgeColors != null) {  //can be null in case of a self loop on a node
-                inspectedEdgeColors.subtract(candidates);
-                //if the whole edge is now covered, remove it from uncovered colors
-                if (inspectedEdgeColors.isEmpty()) {
-                    predecessorsSuccessors.remove(inspected);
-                }
+            //if the whole edge is now covered, remove it from uncovered colors
+            //(edge can be null in case of a self loop on a node)
+            if (inspectedEdgeColors != null && inspectedEdgeColors.subtractAndTestEmpty(candidates)) {
+                predecessorsSuccessors.remove(inspected);
             }
             //go through all edges from predecessor and subtract uncovered colors from our candidate
             for (C uncoveredEdgeColors : predecessorsSuccessors.values()) {
-                candidates.subtract(uncoveredEdgeColors);
-                if (candidates.isEmpty()) { //if candidate is already empty, just stop
+                if (candidates.subtractAndTestEmpty(uncoveredEdgeColors)) { //if candidate is already empty, just stop
                     break;
                 }
             }
             //if there are colors covered by every edge, intersect them
-            //with valid colors for sub formula 0, add them as valid and enqueue them for inspection
+            //with valid colors for path formula, add them as valid and enqueue them for inspection
             if (!candidates.isEmpty()) {
-                candidates.intersect(model.validColorsFor(predecessor, formula.getSubFormulaAt(0)));
+                if (path != null) {
+                    candidates.intersect(model.validColorsFor(predecessor, path));
+                }
                 if (model.addFormula(predecessor, formula, candidates)) {
                     addToQueue(predecessor, candidates);
+                    return true;
                 }
             }
+            return false;
         }
     }
 
     @Override
-    public void onTask(int sourceProcess, N external, @NotNull N internal, @NotNull C candidates) {
-        synchronized (queue) {  //must be synchronized because we are accessing model
-            processAllUntilNode(external, internal, candidates);
-            queue.notify();
-            terminator.messageReceived();
-        }
+    protected void processTask(N external, @NotNull N internal, @NotNull C candidates) {
+        processAllUntilNode(external, internal, candidates);
     }
 
     @Override
     protected void prepareQueue() {
-        //enqueue all nodes where second formula holds, but do not mark them as true yet
-        for(@NotNull Map.Entry<N, C> entry : model.initialNodes(formula.getSubFormulaAt(1)).entrySet()) {
-            addToQueue(entry.getKey(), entry.getValue());
+        //all until holds in all nodes where target formula holds, enqueue them for inspection
+        for(@NotNull Map.Entry<N, C> entry : model.initialNodes(target).entrySet()) {
+            if (model.addFormula(entry.getKey(), formula, entry.getValue())) {
+                addToQueue(entry.getKey(), entry.getValue());
+            }
         }
     }
 
     @Override
     protected void processQueue() {
-        while (!queue.isEmpty()) {
-            Map.Entry<N,C> inspected;
-            synchronized (queue) {
-                inspected = queue.entrySet().iterator().next();
-                queue.remove(inspected.getKey());
-            }
-            //go through all predecessors of an inspected node and
-            //1) push new color to them through given edge
-            //2) test if the AU actually holds now in the predecessor, if so, enqueue him for further inspection
-            for (@NotNull Map.Entry<N,C> predecessor : model.predecessorsFor(inspected.getKey(), inspected.getValue()).entrySet()) {
-                int owner = partitioner.getNodeOwner(predecessor.getKey());
-                if (myId == owner) {
-                    processAllUntilNode(inspected.getKey(), predecessor.getKey(), predecessor.getValue());
-                } else {
-                    terminator.messageSent();
-                    taskMessenger.sendTask(owner, inspected.getKey(), predecessor.getKey(), predecessor.getValue());
-                }
+        //one consumer is reused for all nodes processed by this worker
+        @NotNull PredecessorVisitor visitor = new PredecessorVisitor();
+        Map.Entry<N,C> inspected;
+        while ((inspected = pollQueue()) != null) {
+            visitor.inspected = inspected.getKey();
+            model.forEachPredecessor(inspected.getKey(), inspected.getValue(), visitor);
+        }
+    }
+
+    //go through all predecessors of an inspected node and
+    //1) push new color to them through given edge
+    //2) test if the AU actually holds now in the predecessor, if so, enqueue him for further inspection
+    private class PredecessorVisitor implements ModelAdapter.EdgeConsumer<N, C> {
+
+        private N inspected;
+
+        @Override
+        public boolean accept(@NotNull N predecessor, @NotNull C candidates) {
+            int owner = partitioner.getNodeOwner(predecessor);
+            if (myId == owner) {
+                return processAllUntilNode(inspected, predecessor, candidates);
+            } else {
+                terminator.messageSent();
+                //messenger can keep the colors until the task is delivered
+                taskMessenger.sendTask(owner, inspected, predecessor, candidates);
+                return true;
             }
         }
     }
@@ -0,0 +1,87 @@
+package cz.muni.fi.modelchecker.verification;
+
+import cz.muni.fi.ctl.formula.proposition.Tautology;
+import cz.muni.fi.modelchecker.ModelAdapter;
+import cz.muni.fi.modelchecker.StateSpacePartitioner;
+import cz.muni.fi.modelchecker.graph.ColorSet;
+import cz.muni.fi.modelchecker.graph.CsrGraph;
+import cz.muni.fi.modelchecker.graph.Node;
+import cz.muni.fi.modelchecker.mpi.tasks.TaskMessenger;
+import cz.muni.fi.modelchecker.mpi.termination.Terminator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sends one color set of every process to all other processes, so that all of them can make the same decision.
+ * Sets travel as ordinary tasks, carried by some local node of the sender, which identifies the sender.
+ */
+class ColorExchange<N extends Node, C extends ColorSet> extends MergeQueueProcessor<N, C> {
+
+    @Nullable
+    private final N carrier;
+    @NotNull
+    private final C local;
+    private final int processCount;
+    //sets by process, guarded by this
+    @NotNull
+    private final List<C> received = new ArrayList<>();
+
+    /**
+     * @param carrier Any local node or null if local set is empty (nothing is sent then).
+     * @param local Colors of this process, not modified.
+     */
+    ColorExchange(
+            @NotNull ModelAdapter<N, C> model,
+            @NotNull StateSpacePartitioner<N> partitioner,
+            @Nullable N carrier,
+            @NotNull C local,
+            int processCount,
+            @NotNull CsrGraph.ColorFactory<C> colors,
+            @NotNull Terminator.TerminatorFactory terminatorFactory,
+            @NotNull TaskMessenger<N, C> taskMessenger
+    ) {
+        //exchange is not bound to any formula
+        super(model, partitioner, Tautology.INSTANCE, terminatorFactory, taskMessenger, 1);
+        this.carrier = carrier;
+        this.local = local;
+        this.processCount = processCount;
+        for (int i = 0; i < processCount; i++) {
+            received.add(i == myId ? colors.copy(local) : colors.createEmpty());
+        }
+    }
+
+    /**
+     * @return Colors of every process indexed by process id. Valid only after verify.
+     */
+    @NotNull
+    synchronized List<C> getReceived() {
+        return received;
+    }
+
+    @Override
+    protected void prepareQueue() {
+        if (carrier == null || local.isEmpty()) return;
+        for (int process = 0; process < processCount; process++) {
+            if (process == myId) continue;
+            terminator.messageSent();
+            taskMessenger.sendTask(process, carrier, carrier, local);
+        }
+    }
+
+    @Override
+    protected void processQueue() {
+        //all work is done by sending and receiving
+    }
+
+    @Override
+    protected void processTask(N external, @NotNull N internal, @NotNull C colors) {
+        //carrier is a local node of the sender
+        int source = partitioner.getNodeOwner(external);
+        synchronized (this) {
+            received.get(source).union(colors);
+        }
+    }
+}
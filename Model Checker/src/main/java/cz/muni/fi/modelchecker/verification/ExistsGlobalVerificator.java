@@ -0,0 +1,170 @@
+package cz.muni.fi.modelchecker.verification;
+
+import cz.muni.fi.ctl.formula.Formula;
+import cz.muni.fi.modelchecker.ModelAdapter;
+import cz.muni.fi.modelchecker.StateSpacePartitioner;
+import cz.muni.fi.modelchecker.graph.ColorSet;
+import cz.muni.fi.modelchecker.graph.Node;
+import cz.muni.fi.modelchecker.mpi.tasks.TaskMessenger;
+import cz.muni.fi.modelchecker.mpi.termination.Terminator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Verificator for exists global operator, computed as a greatest fixpoint without negations.
+ *
+ * Every local node starts with colors where sub formula holds. Queue contains colors that have been removed
+ * from a node (or never were there). Removed colors are pushed to predecessors, which remember for every successor
+ * the colors of the edge that may still continue the path. Predecessor loses colors that are not supported
+ * by any of its edges anymore and those are pushed further. When nothing changes, remaining colors are the result.
+ */
+class ExistsGlobalVerificator<N extends Node, C extends ColorSet> extends MergeQueueProcessor<N, C> {
+
+    //colors of local nodes where exists global may still hold, guarded by node locks
+    private final Map<N, C> remaining = new ConcurrentHashMap<>();
+    //for every local node in remaining: successors and colors of edges that still lead to remaining colors
+    private final Map<N, Map<N, C>> supportingSuccessors = new ConcurrentHashMap<>();
+    //removals received from other processes must wait until local colors are known
+    @NotNull
+    private final CountDownLatch prepared = new CountDownLatch(1);
+
+    ExistsGlobalVerificator(
+            @NotNull ModelAdapter<N, C> model,
+            @NotNull StateSpacePartitioner<N> partitioner,
+            @NotNull Formula formula,
+            @NotNull Terminator.TerminatorFactory terminatorFactory,
+            @NotNull TaskMessenger<N, C> taskMessenger,
+            int workerCount
+    ) {
+        super(model, partitioner, formula, terminatorFactory, taskMessenger, workerCount);
+    }
+
+    @Override
+    public void verify() {
+        super.verify();
+        //fixpoint is reached in all processes, only now the remaining colors are valid
+        for (@NotNull Map.Entry<N, C> entry : remaining.entrySet()) {
+            model.addFormula(entry.getKey(), formula, entry.getValue());
+        }
+        remaining.clear();
+        supportingSuccessors.clear();
+    }
+
+    @Override
+    protected void prepareQueue() {
+        @NotNull Map<N, C> initialNodes = model.initialNodes(formula.getSubFormulaAt(0));
+        remaining.putAll(initialNodes);
+        //colors where sub formula does not hold are removed right away
+        for (@NotNull Map.Entry<N, C> removed : model.invertNodeSet(initialNodes).entrySet()) {
+            addToQueue(removed.getKey(), removed.getValue());
+        }
+        //colors without any outgoing edge can't continue the path
+        for (@NotNull Map.Entry<N, C> entry : initialNodes.entrySet()) {
+            @NotNull N node = entry.getKey();
+            @NotNull C unsupported = model.validColorsFor(node, formula.getSubFormulaAt(0));
+            for (@NotNull C edgeColors : successorsOf(node).values()) {
+                if (unsupported.subtractAndTestEmpty(edgeColors)) break;
+            }
+            if (!unsupported.isEmpty()) {
+                entry.getValue().subtract(unsupported);
+                addToQueue(node, unsupported);
+            }
+        }
+        prepared.countDown();
+    }
+
+    @Override
+    protected void processQueue() {
+        //one consumer is reused for all nodes processed by this worker
+        @NotNull PredecessorVisitor visitor = new PredecessorVisitor();
+        Map.Entry<N,C> inspected;
+        while ((inspected = pollQueue()) != null) {
+            visitor.inspected = inspected.getKey();
+            model.forEachPredecessor(inspected.getKey(), inspected.getValue(), visitor);
+        }
+    }
+
+    @Override
+    protected void processTask(N external, @NotNull N internal, @NotNull C removed) {
+        try {
+            prepared.await();
+        } catch (InterruptedException e) {
+            //OK?
+            e.printStackTrace();
+        }
+        processRemoval(external, internal, removed);
+    }
+
+    //removed colors are pushed to the predecessor only through the edge between them
+    private class PredecessorVisitor implements ModelAdapter.EdgeConsumer<N, C> {
+
+        private N inspected;
+
+        @Override
+        public boolean accept(@NotNull N predecessor, @NotNull C removed) {
+            int owner = partitioner.getNodeOwner(predecessor);
+            if (myId == owner) {
+                return processRemoval(inspected, predecessor, removed);
+            } else {
+                terminator.messageSent();
+                //messenger can keep the colors until the task is delivered
+                taskMessenger.sendTask(owner, inspected, predecessor, removed);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Remove colors of successor from the edges of predecessor and remove colors of predecessor that are not supported
+     * by any edge anymore.
+     * @return True if removed colors have been added to the queue.
+     */
+    private boolean processRemoval(@NotNull N successor, @NotNull N predecessor, @NotNull C removed) {
+        synchronized (lockFor(predecessor)) {
+            @Nullable C colors = remaining.get(predecessor);
+            //sub formula does not hold here, there is nothing to remove
+            if (colors == null) return false;
+            @NotNull Map<N, C> successors = successorsOf(predecessor);
+            @Nullable C edgeColors = successors.get(successor);
+            if (edgeColors != null && edgeColors.subtractAndTestEmpty(removed)) {
+                successors.remove(successor);
+            }
+            //colors still supported by some edge stay
+            for (@NotNull C supported : successors.values()) {
+                if (removed.subtractAndTestEmpty(supported)) return false;
+            }
+            removed.intersect(colors);
+            if (removed.isEmpty()) return false;
+            colors.subtract(removed);
+            addToQueue(predecessor, removed);
+            return true;
+        }
+    }
+
+    /**
+     * @return Successors of given local node with colors of edges that are still supported. Has to be called
+     * while holding the node lock or while preparing the queue (nobody else touches the nodes then).
+     */
+    @NotNull
+    private Map<N, C> successorsOf(@NotNull N node) {
+        @Nullable Map<N, C> successors = supportingSuccessors.get(node);
+        if (successors == null) {
+            @NotNull final Map<N, C> generated = new HashMap<>();
+            model.forEachSuccessor(node, null, new ModelAdapter.EdgeConsumer<N, C>() {
+                @Override
+                public boolean accept(@NotNull N successor, @NotNull C colors) {
+                    generated.put(successor, colors);
+                    return true;
+                }
+            });
+            supportingSuccessors.put(node, generated);
+            successors = generated;
+        }
+        return successors;
+    }
+}
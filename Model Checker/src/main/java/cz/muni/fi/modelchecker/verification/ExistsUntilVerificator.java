@@ -8,6 +8,7 @@ import cz.muni.fi.modelchecker.graph.Node;
 import cz.muni.fi.modelchecker.mpi.tasks.TaskMessenger;
 import cz.muni.fi.modelchecker.mpi.termination.Terminator;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.Map;
 
@@ -16,20 +17,46 @@ import java.util.Map;
  */
 class ExistsUntilVerificator<N extends Node, C extends ColorSet> extends MergeQueueProcessor<N, C> {
 
+    //formula that has to hold on the path, null if it always holds
+    @Nullable
+    private final Formula path;
+    @NotNull
+    private final Formula target;
+
+    ExistsUntilVerificator(
+            @NotNull ModelAdapter<N, C> model,
+            @NotNull StateSpacePartitioner<N> partitioner,
+            @NotNull Formula formula,
+            @NotNull Terminator.TerminatorFactory terminatorFactory,
+            @NotNull TaskMessenger<N, C> taskMessenger,
+            int workerCount
+    ) {
+        this(model, partitioner, formula, formula.getSubFormulaAt(0), formula.getSubFormulaAt(1), terminatorFactory, taskMessenger, workerCount);
+    }
+
+    /**
+     * @param path Formula that has to hold on the path to target, null if it always holds.
+     * @param target Formula that has to hold at the end of the path.
+     */
     ExistsUntilVerificator(
             @NotNull ModelAdapter<N, C> model,
             @NotNull StateSpacePartitioner<N> partitioner,
             @NotNull Formula formula,
+            @Nullable Formula path,
+            @NotNull Formula target,
             @NotNull Terminator.TerminatorFactory terminatorFactory,
-            @NotNull TaskMessenger<N, C> taskMessenger
+            @NotNull TaskMessenger<N, C> taskMessenger,
+            int workerCount
     ) {
-        super(model, partitioner, formula, terminatorFactory, taskMessenger);
+        super(model, partitioner, formula, terminatorFactory, taskMessenger, workerCount);
+        this.path = path;
+        this.target = target;
     }
 
     @Override
     protected void prepareQueue() {
         //fill queue with initial nodes
-        @NotNull Map<N, C> initialNodes = model.initialNodes(formula.getSubFormulaAt(1));
+        @NotNull Map<N, C> initialNodes = model.initialNodes(target);
         System.out.println("Initial nodes: "+initialNodes.size());
         for (@NotNull Map.Entry<N, C> initial : initialNodes.entrySet()) {
             if (model.addFormula(initial.getKey(), formula, initial.getValue())) {  //add formula to all initial nodes
@@ -41,42 +68,53 @@ class ExistsUntilVerificator<N extends Node, C extends ColorSet> extends MergeQu
 
     @Override
     protected void processQueue() {
-        //examine all predecessors
-        while (!queue.isEmpty()) {
-            Map.Entry<N,C> inspected;
-            synchronized (queue) {
-                inspected = queue.entrySet().iterator().next();
-                queue.remove(inspected.getKey());
-            }
-            for (@NotNull Map.Entry<N, C> predecessor : model.predecessorsFor(inspected.getKey(), inspected.getValue()).entrySet()) {
-                int owner = partitioner.getNodeOwner(predecessor.getKey());
-                if (myId == owner) {
-                    //if predecessor is mine, intersect colors where sub formula 0 holds and add them
-                    //if addition has changed anything, proceed evaluation with reduced colors
-                    C candidates = predecessor.getValue();
-                    candidates.intersect(model.validColorsFor(predecessor.getKey(), formula.getSubFormulaAt(0)));
-                    if (model.addFormula(predecessor.getKey(), formula, candidates)) {
-                        addToQueue(predecessor.getKey(), candidates);
-                    }
-                } else {
-                    terminator.messageSent();
-                    taskMessenger.sendTask(owner, inspected.getKey(), predecessor.getKey(), predecessor.getValue());
+        //examine all predecessors, one consumer is reused for all nodes processed by this worker
+        @NotNull PredecessorVisitor visitor = new PredecessorVisitor();
+        Map.Entry<N,C> inspected;
+        while ((inspected = pollQueue()) != null) {
+            visitor.inspected = inspected.getKey();
+            model.forEachPredecessor(inspected.getKey(), inspected.getValue(), visitor);
+        }
+    }
+
+    private class PredecessorVisitor implements ModelAdapter.EdgeConsumer<N, C> {
+
+        private N inspected;
+
+        @Override
+        public boolean accept(@NotNull N predecessor, @NotNull C candidates) {
+            int owner = partitioner.getNodeOwner(predecessor);
+            if (myId == owner) {
+                //if predecessor is mine, intersect colors where path formula holds and add them
+                //if addition has changed anything, proceed evaluation with reduced colors
+                restrictToPath(predecessor, candidates);
+                if (model.addFormula(predecessor, formula, candidates)) {
+                    addToQueue(predecessor, candidates);
+                    return true;
                 }
+                return false;
+            } else {
+                terminator.messageSent();
+                //messenger can keep the colors until the task is delivered
+                taskMessenger.sendTask(owner, inspected, predecessor, candidates);
+                return true;
             }
         }
     }
 
     @Override
-    public void onTask(int sourceProcess, N external, @NotNull N internal, @NotNull C candidates) {
-        synchronized (queue) {  //must be synchronized because we are accessing model
-            //intersect received colors with my colors in node,
-            //if this is not empty and there are new colors, run back
-            candidates.intersect(model.validColorsFor(internal, formula.getSubFormulaAt(0)));
-            if (model.addFormula(internal, formula, candidates)) {
-                addToQueue(internal, candidates);
-            }
-            queue.notify();
-            terminator.messageReceived();
+    protected void processTask(N external, @NotNull N internal, @NotNull C candidates) {
+        //intersect received colors with my colors in node,
+        //if this is not empty and there are new colors, run back
+        restrictToPath(internal, candidates);
+        if (model.addFormula(internal, formula, candidates)) {
+            addToQueue(internal, candidates);
+        }
+    }
+
+    private void restrictToPath(@NotNull N node, @NotNull C candidates) {
+        if (path != null) {
+            candidates.intersect(model.validColorsFor(node, path));
         }
     }
 
@@ -25,6 +25,7 @@ public class FormulaVerificator<N extends Node, C extends ColorSet> {
     private final TaskMessenger<N, C> taskMessenger;
     @NotNull
     private final Terminator.TerminatorFactory terminatorFactory;
+    private final int workerCount;
 
 
     public FormulaVerificator(
@@ -32,11 +33,26 @@ public class FormulaVerificator<N extends Node, C extends ColorSet> {
             @NotNull StateSpacePartitioner<N> partitioner,
             @NotNull TaskMessenger<N, C> taskMessenger,
             @NotNull Terminator.TerminatorFactory terminatorFactory
+    ) {
+        this(model, partitioner, taskMessenger, terminatorFactory, 1);
+    }
+
+    /**
+     * @param workerCount Number of threads processing the queue of until operators.
+     * Model adapter has to be thread safe if more than one worker is used.
+     */
+    public FormulaVerificator(
+            @NotNull ModelAdapter<N, C> model,
+            @NotNull StateSpacePartitioner<N> partitioner,
+            @NotNull TaskMessenger<N, C> taskMessenger,
+            @NotNull Terminator.TerminatorFactory terminatorFactory,
+            int workerCount
     ) {
         this.partitioner = partitioner;
         this.model = model;
         this.taskMessenger = taskMessenger;
         this.terminatorFactory = terminatorFactory;
+        this.workerCount = workerCount;
     }
 
     public void verifyFormula(@NotNull Formula formula) {
@@ -49,11 +65,19 @@ public class FormulaVerificator<N extends Node, C extends ColorSet> {
         } else if(operator == BinaryOperator.OR) {
             processor = new OrVerificator<>(model, formula, terminatorFactory.createNew());
         } else if(operator == BinaryOperator.EXISTS_UNTIL) {
-            processor = new ExistsUntilVerificator<>(model, partitioner, formula, terminatorFactory, taskMessenger);
+            processor = new ExistsUntilVerificator<>(model, partitioner, formula, terminatorFactory, taskMessenger, workerCount);
         } else if(operator == BinaryOperator.ALL_UNTIL) {
-            processor = new AllUntilVerificator<>(model, partitioner, formula, terminatorFactory, taskMessenger);
+            processor = new AllUntilVerificator<>(model, partitioner, formula, terminatorFactory, taskMessenger, workerCount);
         } else if(operator == UnaryOperator.EXISTS_NEXT) {
             processor = new NextVerificator<>(model, partitioner, formula, terminatorFactory, taskMessenger);
+        } else if(operator == UnaryOperator.EXISTS_FUTURE) {
+            //exists until without the path formula
+            processor = new ExistsUntilVerificator<>(model, partitioner, formula, null, formula.getSubFormulaAt(0), terminatorFactory, taskMessenger, workerCount);
+        } else if(operator == UnaryOperator.ALL_FUTURE) {
+            //all until without the path formula
+            processor = new AllUntilVerificator<>(model, partitioner, formula, null, formula.getSubFormulaAt(0), terminatorFactory, taskMessenger, workerCount);
+        } else if(operator == UnaryOperator.EXISTS_GLOBAL) {
+            processor = new ExistsGlobalVerificator<>(model, partitioner, formula, terminatorFactory, taskMessenger, workerCount);
         } else {
             throw new IllegalArgumentException("Cannot verify operator: "+operator);
         }
@@ -0,0 +1,125 @@
+package cz.muni.fi.modelchecker.verification;
+
+import cz.muni.fi.modelchecker.graph.ColorSet;
+import cz.muni.fi.modelchecker.graph.Node;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * Work queue of nodes and colors where every node is present at most once.
+ * Colors offered for a node that is already waiting in the queue are merged into the waiting entry.
+ *
+ * Entries are kept in a concurrent deque, so pop is O(1) and does not need to search the table.
+ * Table of waiting entries is only touched under a lock from a fixed array of locks selected by node hash,
+ * so offers and pops of different nodes do not block each other.
+ *
+ * Note: Offered color sets are owned by the queue and can be modified by subsequent offers,
+ * so they should not be used by the caller afterwards.
+ */
+class MergeQueue<N extends Node, C extends ColorSet> {
+
+    /** Order in which entries are removed from the queue. */
+    enum Order { FIFO, LIFO }
+
+    //number of locks, must be a power of two
+    private static final int LOCK_STRIPES = 64;
+
+    @NotNull
+    private final Order order;
+
+    @NotNull
+    private final Map<N, Entry<N, C>> waiting = new ConcurrentHashMap<>();
+    @NotNull
+    private final ConcurrentLinkedDeque<Entry<N, C>> entries = new ConcurrentLinkedDeque<>();
+    @NotNull
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    MergeQueue(@NotNull Order order) {
+        this.order = order;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Add colors to the queue. If the node is already waiting, colors are merged into the waiting entry.
+     * @return True if new entry has been created, false if colors have been merged into existing one.
+     */
+    boolean offer(@NotNull N node, @NotNull C colors) {
+        synchronized (lockFor(node)) {
+            Entry<N, C> present = waiting.get(node);
+            if (present != null) {
+                present.colors.union(colors);
+                return false;
+            }
+            @NotNull Entry<N, C> entry = new Entry<>(node, colors);
+            //entry is inserted into the deque first, so a non empty table always means there is something to pop
+            entries.offerLast(entry);
+            waiting.put(node, entry);
+            return true;
+        }
+    }
+
+    /**
+     * Remove next entry from the queue. After this, node can be offered again as a new entry.
+     * @return Removed entry or null if the queue is empty.
+     */
+    @Nullable
+    Map.Entry<N, C> poll() {
+        @Nullable Entry<N, C> entry = order == Order.FIFO ? entries.pollFirst() : entries.pollLast();
+        if (entry == null) return null;
+        //wait for pending merges into this entry
+        synchronized (lockFor(entry.node)) {
+            waiting.remove(entry.node);
+        }
+        return entry;
+    }
+
+    boolean isEmpty() {
+        return waiting.isEmpty();
+    }
+
+    int size() {
+        return waiting.size();
+    }
+
+    @NotNull
+    private Object lockFor(@NotNull N node) {
+        int hash = node.hashCode();
+        return locks[(hash ^ (hash >>> 16)) & (locks.length - 1)];
+    }
+
+    private static class Entry<N, C> implements Map.Entry<N, C> {
+
+        @NotNull
+        private final N node;
+        @NotNull
+        private final C colors;
+
+        private Entry(@NotNull N node, @NotNull C colors) {
+            this.node = node;
+            this.colors = colors;
+        }
+
+        @NotNull
+        @Override
+        public N getKey() {
+            return node;
+        }
+
+        @NotNull
+        @Override
+        public C getValue() {
+            return colors;
+        }
+
+        @Override
+        public C setValue(C value) {
+            throw new UnsupportedOperationException("Merge queue entries are read only.");
+        }
+    }
+}
@@ -9,15 +9,22 @@ import cz.muni.fi.modelchecker.mpi.tasks.OnTaskListener;
 import cz.muni.fi.modelchecker.mpi.tasks.TaskMessenger;
 import cz.muni.fi.modelchecker.mpi.termination.Terminator;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.HashMap;
 import java.util.Map;
 
 /**
  * Common functionality of the until operator processors.
+ *
+ * Queue is processed by a pool of worker threads. Access to the data of one node (outside of the queue itself)
+ * is guarded by a lock from a fixed array of locks (lockFor), so workers processing different nodes do not block each other.
+ * Terminator is marked as done only when all workers are idle, no external task is being processed
+ * and the queue is empty.
  */
 abstract class MergeQueueProcessor<N extends Node, C extends ColorSet> implements FormulaProcessor, OnTaskListener<N,C> {
 
+    //number of node locks, must be a power of two
+    private static final int LOCK_STRIPES = 256;
 
     @NotNull
     private final Terminator.TerminatorFactory terminatorFactory;
@@ -34,88 +41,162 @@ abstract class MergeQueueProcessor<N extends Node, C extends ColorSet> implement
 
     Terminator terminator;
 
-    final Map<N,C> queue = new HashMap<>();
-    private boolean terminated;
+    @NotNull
+    private final MergeQueue<N,C> queue = new MergeQueue<>(MergeQueue.Order.FIFO);
+
+    @NotNull
+    private final Object[] nodeLocks = new Object[LOCK_STRIPES];
+
+    private final int workerCount;
+
+    //guards idle worker accounting and is used to wake up idle workers
+    @NotNull
+    private final Object workerLock = new Object();
+    //number of workers waiting for new work (written only while holding worker lock)
+    private volatile int idleWorkers;
+    //number of external tasks that are being processed right now
+    private int activeTasks;
+    private volatile boolean terminated;
 
     MergeQueueProcessor(
             @NotNull ModelAdapter<N, C> model,
             @NotNull StateSpacePartitioner<N> partitioner,
             @NotNull Formula formula,
             @NotNull Terminator.TerminatorFactory terminatorFactory,
-            @NotNull TaskMessenger<N, C> taskMessenger
+            @NotNull TaskMessenger<N, C> taskMessenger,
+            int workerCount
     ) {
+        if (workerCount < 1) throw new IllegalArgumentException("At least one worker is needed, "+workerCount+" given.");
         this.terminatorFactory = terminatorFactory;
         this.partitioner = partitioner;
         this.model = model;
         this.formula = formula;
         this.taskMessenger = taskMessenger;
         this.myId = partitioner.getMyId();
+        this.workerCount = workerCount;
+        for (int i = 0; i < nodeLocks.length; i++) {
+            nodeLocks[i] = new Object();
+        }
     }
 
     @Override
     public void verify() {
         terminated = false;
+        idleWorkers = 0;
+        activeTasks = 0;
         terminator = terminatorFactory.createNew();
         taskMessenger.startSession(this);
 
         prepareQueue();
 
-        //start worker thread to process all queue entries
-        @NotNull Thread worker = new Thread(new Runnable() {
-            @Override
-            public void run() {
-                while (!terminated) {
-                    processQueue();
-                    synchronized (queue) {
-                        if (queue.isEmpty() && !terminated) {
-                            try {
-                                terminator.setDone();
-                                queue.wait();
-                            } catch (InterruptedException e) {
-                                //OK?
-                                e.printStackTrace();
+        //start worker threads to process all queue entries
+        @NotNull Thread[] workers = new Thread[workerCount];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (!terminated) {
+                        processQueue();
+                        //buffered tasks have to leave before this worker can be counted as idle
+                        taskMessenger.flush();
+                        synchronized (workerLock) {
+                            //worker is marked as idle before the queue is checked, so that addToQueue
+                            //can't miss it when deciding whether to wake somebody up
+                            idleWorkers++;
+                            if (queue.isEmpty() && !terminated) {
+                                try {
+                                    checkDone();
+                                    workerLock.wait();
+                                } catch (InterruptedException e) {
+                                    //OK?
+                                    e.printStackTrace();
+                                }
                             }
+                            idleWorkers--;
                         }
                     }
                 }
-            }
-        });
-        worker.start();
+            });
+            workers[i].start();
+        }
 
         //wait for the work to finish
         terminator.waitForTermination();
-        //finalize worker thread and task messenger session
+        //finalize worker threads and task messenger session
         terminator = terminatorFactory.createNew();
         taskMessenger.closeSession();
-        synchronized (queue) {
+        synchronized (workerLock) {
             terminated = true;
-            queue.notify();
+            workerLock.notifyAll();
         }
-        try {
-            worker.join();
-        } catch (InterruptedException e) {
-            //OK?
-            e.printStackTrace();
+        for (@NotNull Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                //OK?
+                e.printStackTrace();
+            }
         }
         terminator.setDone();
         terminator.waitForTermination();
     }
 
+    @Override
+    public void onTask(int sourceProcess, N external, @NotNull N internal, @NotNull C colors) {
+        //task is counted as active work, so that terminator can't be marked as done while it's being processed
+        synchronized (workerLock) {
+            terminator.messageReceived();
+            activeTasks++;
+        }
+        processTask(external, internal, colors);
+        synchronized (workerLock) {
+            activeTasks--;
+            //if task produced no new work and everybody is idle, nobody else would mark terminator as done
+            checkDone();
+        }
+    }
+
+    /** Mark terminator as done if there is no work left. Has to be called while holding worker lock. */
+    private void checkDone() {
+        if (idleWorkers == workerCount && activeTasks == 0 && queue.isEmpty() && !terminated) {
+            terminator.setDone();
+        }
+    }
+
+    /** @return Lock guarding the data of given node. */
+    @NotNull
+    Object lockFor(@NotNull N node) {
+        int hash = node.hashCode();
+        return nodeLocks[(hash ^ (hash >>> 16)) & (nodeLocks.length - 1)];
+    }
+
     /** Add data to the "merge queue" */
-    void addToQueue(N node, C colors) {
-        synchronized (queue) {
-            if (queue.containsKey(node)) {
-                queue.get(node).union(colors);
-            } else {
-                queue.put(node, colors);
+    void addToQueue(@NotNull N node, @NotNull C colors) {
+        //merged colors do not create new work for idle workers
+        //queue is modified before idle workers are checked, see worker loop
+        if (queue.offer(node, colors) && idleWorkers > 0) {
+            synchronized (workerLock) {
+                workerLock.notify();
             }
         }
     }
 
+    /**
+     * Remove one entry from the queue. Can be called concurrently by all workers.
+     * @return Removed entry or null if the queue is empty.
+     */
+    @Nullable
+    Map.Entry<N, C> pollQueue() {
+        return queue.poll();
+    }
+
     /** Load initial data into the queue */
     protected abstract void prepareQueue();
 
-    /** Process all data stored in the queue */
+    /** Process all data stored in the queue. Executed concurrently by all workers. */
     protected abstract void processQueue();
 
+    /** Process task received from other process. */
+    protected abstract void processTask(N external, @NotNull N internal, @NotNull C colors);
+
 }
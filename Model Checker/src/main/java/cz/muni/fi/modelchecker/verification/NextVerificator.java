@@ -62,25 +62,28 @@ class NextVerificator<N extends Node, C extends ColorSet> implements FormulaProc
         Set<Map.Entry<N, C>> entries;
         entries = model.initialNodes(formula.getSubFormulaAt(0)).entrySet();
 
-        for (@NotNull Map.Entry<N, C> initial : entries) {
+        for (@NotNull final Map.Entry<N, C> initial : entries) {
             //for each node, find it's predecessors
-            Set<Map.Entry<N, C>> predecessors;
-            predecessors = model.predecessorsFor(initial.getKey(), initial.getValue()).entrySet();
-
-            for (@NotNull Map.Entry<N, C> predecessor : predecessors) {
-                //no need to intersect colors, since predecessorsFor respects color bounds
-                int owner = partitioner.getNodeOwner(predecessor.getKey());
-                if (owner == myId) {
-                    model.addFormula(predecessor.getKey(), formula, predecessor.getValue());
-                } else {
-                    terminator.messageSent();
-                    taskMessenger.sendTask(owner, initial.getKey(), predecessor.getKey(), predecessor.getValue());
+            model.forEachPredecessor(initial.getKey(), initial.getValue(), new ModelAdapter.EdgeConsumer<N, C>() {
+                @Override
+                public boolean accept(@NotNull N predecessor, @NotNull C colors) {
+                    //no need to intersect colors, since predecessors respect color bounds
+                    int owner = partitioner.getNodeOwner(predecessor);
+                    if (owner == myId) {
+                        //stored results are copied, so colors can be reused
+                        model.addFormula(predecessor, formula, colors);
+                        return false;
+                    } else {
+                        terminator.messageSent();
+                        taskMessenger.sendTask(owner, initial.getKey(), predecessor, colors);
+                        return true;
+                    }
                 }
-            }
-
+            });
         }
 
         //wait for all tasks to finish
+        taskMessenger.flush();
         working = false;
         terminator.setDone();
         terminator.waitForTermination();
@@ -0,0 +1,136 @@
+package cz.muni.fi.modelchecker.verification;
+
+import cz.muni.fi.ctl.formula.proposition.Tautology;
+import cz.muni.fi.modelchecker.ModelAdapter;
+import cz.muni.fi.modelchecker.StateSpacePartitioner;
+import cz.muni.fi.modelchecker.graph.ColorSet;
+import cz.muni.fi.modelchecker.graph.CsrGraph;
+import cz.muni.fi.modelchecker.graph.Node;
+import cz.muni.fi.modelchecker.mpi.tasks.TaskMessenger;
+import cz.muni.fi.modelchecker.mpi.termination.Terminator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Computes colored forward or backward reachability from given seeds inside given set of nodes.
+ * Color c of node n is reached if there is a path from some seed with color c to n (or from n to the seed when
+ * going backward) that uses only nodes of the set with color c and edges with color c.
+ * Results are kept in the processor, model is not modified.
+ */
+class ReachabilityProcessor<N extends Node, C extends ColorSet> extends MergeQueueProcessor<N, C> {
+
+    @NotNull
+    private final Map<N, C> seeds;
+    @NotNull
+    private final Map<N, C> within;
+    private final boolean forward;
+    @NotNull
+    private final CsrGraph.ColorFactory<C> colors;
+
+    //guarded by node locks
+    @NotNull
+    private final Map<N, C> reached = new ConcurrentHashMap<>();
+
+    /**
+     * @param seeds Local nodes where the search starts, not modified.
+     * @param within Local nodes and colors the search can't leave, not modified.
+     * @param forward True for successors, false for predecessors.
+     */
+    ReachabilityProcessor(
+            @NotNull ModelAdapter<N, C> model,
+            @NotNull StateSpacePartitioner<N> partitioner,
+            @NotNull Map<N, C> seeds,
+            @NotNull Map<N, C> within,
+            boolean forward,
+            @NotNull CsrGraph.ColorFactory<C> colors,
+            @NotNull Terminator.TerminatorFactory terminatorFactory,
+            @NotNull TaskMessenger<N, C> taskMessenger,
+            int workerCount
+    ) {
+        //reachability is not bound to any formula
+        super(model, partitioner, Tautology.INSTANCE, terminatorFactory, taskMessenger, workerCount);
+        this.seeds = seeds;
+        this.within = within;
+        this.forward = forward;
+        this.colors = colors;
+    }
+
+    /**
+     * @return Reached local nodes with reached colors. Valid only after verify.
+     */
+    @NotNull
+    Map<N, C> getReached() {
+        return reached;
+    }
+
+    @Override
+    protected void prepareQueue() {
+        //tasks from other processes may already be merged into reached, so seeds are added the same way
+        for (@NotNull Map.Entry<N, C> seed : seeds.entrySet()) {
+            extend(seed.getKey(), colors.copy(seed.getValue()));
+        }
+    }
+
+    @Override
+    protected void processQueue() {
+        //one consumer is reused for all nodes processed by this worker
+        @NotNull EdgeVisitor visitor = new EdgeVisitor();
+        Map.Entry<N,C> inspected;
+        while ((inspected = pollQueue()) != null) {
+            visitor.inspected = inspected.getKey();
+            if (forward) {
+                model.forEachSuccessor(inspected.getKey(), inspected.getValue(), visitor);
+            } else {
+                model.forEachPredecessor(inspected.getKey(), inspected.getValue(), visitor);
+            }
+        }
+    }
+
+    @Override
+    protected void processTask(N external, @NotNull N internal, @NotNull C candidates) {
+        extend(internal, candidates);
+    }
+
+    private class EdgeVisitor implements ModelAdapter.EdgeConsumer<N, C> {
+
+        private N inspected;
+
+        @Override
+        public boolean accept(@NotNull N node, @NotNull C candidates) {
+            int owner = partitioner.getNodeOwner(node);
+            if (myId == owner) {
+                return extend(node, candidates);
+            } else {
+                terminator.messageSent();
+                //messenger can keep the colors until the task is delivered
+                taskMessenger.sendTask(owner, inspected, node, candidates);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Add candidate colors that are allowed and not reached yet to given node.
+     * @return True if candidates have been added to the queue.
+     */
+    private boolean extend(@NotNull N node, @NotNull C candidates) {
+        synchronized (lockFor(node)) {
+            @Nullable C allowed = within.get(node);
+            if (allowed == null) return false;
+            candidates.intersect(allowed);
+            @Nullable C known = reached.get(node);
+            if (known != null && candidates.subtractAndTestEmpty(known)) return false;
+            if (candidates.isEmpty()) return false;
+            if (known == null) {
+                reached.put(node, colors.copy(candidates));
+            } else {
+                known.union(candidates);
+            }
+            addToQueue(node, candidates);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package cz.muni.fi.modelchecker.verification;
+
+import cz.muni.fi.modelchecker.ModelAdapter;
+import cz.muni.fi.modelchecker.StateSpacePartitioner;
+import cz.muni.fi.modelchecker.graph.ColorSet;
+import cz.muni.fi.modelchecker.graph.CsrGraph;
+import cz.muni.fi.modelchecker.graph.Node;
+import cz.muni.fi.modelchecker.mpi.tasks.TaskMessenger;
+import cz.muni.fi.modelchecker.mpi.termination.Terminator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Distributed decomposition of a colored state space into terminal strongly connected components (attractors).
+ *
+ * Uses colored forward-backward algorithm: in every sub-problem one pivot is chosen for every color, forward
+ * reachable nodes F and backward reachable nodes B (inside F) of the pivot are computed. B is the component
+ * of the pivot and it's terminal exactly for colors where F = B in all processes. Remaining terminal components
+ * are either in F \ B or in the nodes that can't reach F, both are again closed under successors and are processed
+ * as new sub-problems. Every color is handled independently, but all colors share the same searches.
+ *
+ * All processes have to call decompose at the same time, the decisions are agreed on by exchanging color sets.
+ */
+public class TerminalComponents<N extends Node, C extends ColorSet> {
+
+    @NotNull
+    private final ModelAdapter<N, C> model;
+    @NotNull
+    private final StateSpacePartitioner<N> partitioner;
+    private final int processCount;
+    @NotNull
+    private final CsrGraph.ColorFactory<C> colors;
+    @NotNull
+    private final TaskMessenger<N, C> taskMessenger;
+    @NotNull
+    private final Terminator.TerminatorFactory terminatorFactory;
+    private final int workerCount;
+
+    public TerminalComponents(
+            @NotNull ModelAdapter<N, C> model,
+            @NotNull StateSpacePartitioner<N> partitioner,
+            int processCount,
+            @NotNull CsrGraph.ColorFactory<C> colors,
+            @NotNull TaskMessenger<N, C> taskMessenger,
+            @NotNull Terminator.TerminatorFactory terminatorFactory,
+            int workerCount
+    ) {
+        this.model = model;
+        this.partitioner = partitioner;
+        this.processCount = processCount;
+        this.colors = colors;
+        this.taskMessenger = taskMessenger;
+        this.terminatorFactory = terminatorFactory;
+        this.workerCount = workerCount;
+    }
+
+    /**
+     * @param states Local nodes and colors closed under successors (for example all nodes with all colors). Not modified.
+     * @return Terminal components, every one maps local nodes to colors where the node belongs to the component.
+     * For every color, a component is one terminal SCC (colors of one component may belong to different SCCs
+     * for different colors). Components are returned in the same order in all processes, some can be locally empty.
+     */
+    @NotNull
+    public List<Map<N, C>> decompose(@NotNull Map<N, C> states) {
+        @NotNull List<Map<N, C>> components = new ArrayList<>();
+        @NotNull Deque<Map<N, C>> problems = new ArrayDeque<>();
+        problems.push(copy(states));
+        while (!problems.isEmpty()) {
+            @NotNull Map<N, C> universe = problems.pop();
+            @NotNull List<C> present = exchange(universe);
+            @NotNull C all = colors.createEmpty();
+            @NotNull C lower = colors.createEmpty();
+            for (int i = 0; i < present.size(); i++) {
+                all.union(present.get(i));
+                if (i < partitioner.getMyId()) lower.union(present.get(i));
+            }
+            if (all.isEmpty()) continue;
+
+            //each color is pivoted by the first process that has it
+            @NotNull Map<N, C> pivots = new HashMap<>();
+            @NotNull C unpivoted = present.get(partitioner.getMyId());
+            unpivoted.subtract(lower);
+            for (@NotNull Map.Entry<N, C> entry : universe.entrySet()) {
+                if (unpivoted.isEmpty()) break;
+                @NotNull C pivot = colors.copy(entry.getValue());
+                pivot.intersect(unpivoted);
+                if (!pivot.isEmpty()) {
+                    unpivoted.subtract(pivot);
+                    pivots.put(entry.getKey(), pivot);
+                }
+            }
+
+            @NotNull Map<N, C> forward = reach(pivots, universe, true);
+            @NotNull Map<N, C> component = reach(pivots, forward, false);
+            @NotNull Map<N, C> rest = minus(forward, component);
+
+            //component is terminal for colors that can't leave it in any process
+            @NotNull C terminal = all;
+            for (@NotNull C open : exchange(rest)) {
+                terminal.subtract(open);
+            }
+            if (!terminal.isEmpty()) {
+                components.add(restrict(component, terminal));
+            }
+
+            @NotNull Map<N, C> basin = reach(forward, universe, false);
+            problems.push(minus(universe, basin));
+            problems.push(rest);
+        }
+        return components;
+    }
+
+    @NotNull
+    private Map<N, C> reach(@NotNull Map<N, C> seeds, @NotNull Map<N, C> within, boolean forward) {
+        @NotNull ReachabilityProcessor<N, C> processor = new ReachabilityProcessor<>(model, partitioner, seeds, within,
+                forward, colors, terminatorFactory, taskMessenger, workerCount);
+        processor.verify();
+        return processor.getReached();
+    }
+
+    /**
+     * @return Union of colors of given local nodes for every process, indexed by process id.
+     */
+    @NotNull
+    private List<C> exchange(@NotNull Map<N, C> nodes) {
+        @NotNull C local = colors.createEmpty();
+        @Nullable N carrier = null;
+        for (@NotNull Map.Entry<N, C> entry : nodes.entrySet()) {
+            if (local.union(entry.getValue()) && carrier == null) {
+                carrier = entry.getKey();
+            }
+        }
+        @NotNull ColorExchange<N, C> exchange = new ColorExchange<>(model, partitioner, carrier, local,
+                processCount, colors, terminatorFactory, taskMessenger);
+        exchange.verify();
+        return exchange.getReceived();
+    }
+
+    @NotNull
+    private Map<N, C> copy(@NotNull Map<N, C> nodes) {
+        @NotNull Map<N, C> results = new HashMap<>();
+        for (@NotNull Map.Entry<N, C> entry : nodes.entrySet()) {
+            if (!entry.getValue().isEmpty()) results.put(entry.getKey(), colors.copy(entry.getValue()));
+        }
+        return results;
+    }
+
+    /**
+     * @return Nodes of first map with colors that are not in the second map, empty nodes are left out.
+     */
+    @NotNull
+    private Map<N, C> minus(@NotNull Map<N, C> nodes, @NotNull Map<N, C> removed) {
+        @NotNull Map<N, C> results = new HashMap<>();
+        for (@NotNull Map.Entry<N, C> entry : nodes.entrySet()) {
+            @NotNull C remaining = colors.copy(entry.getValue());
+            @Nullable C minus = removed.get(entry.getKey());
+            if (minus == null || !remaining.subtractAndTestEmpty(minus)) {
+                results.put(entry.getKey(), remaining);
+            }
+        }
+        return results;
+    }
+
+    @NotNull
+    private Map<N, C> restrict(@NotNull Map<N, C> nodes, @NotNull C allowed) {
+        @NotNull Map<N, C> results = new HashMap<>();
+        for (@NotNull Map.Entry<N, C> entry : nodes.entrySet()) {
+            @NotNull C restricted = colors.createEmpty();
+            if (!entry.getValue().intersectInto(allowed, restricted)) {
+                results.put(entry.getKey(), restricted);
+            }
+        }
+        return results;
+    }
+}
@@ -0,0 +1,93 @@
+package cz.muni.fi.modelchecker;
+
+import cz.muni.fi.ctl.formula.proposition.Contradiction;
+import cz.muni.fi.ctl.formula.proposition.Tautology;
+import cz.muni.fi.modelchecker.verification.MergeQueueTest.BitColorSet;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class for formula result store.
+ */
+public class FormulaResultStoreTest {
+
+    @NotNull
+    private static FormulaResultStore<BitColorSet> store() {
+        return new FormulaResultStore<>(new FormulaResultStore.Copier<BitColorSet>() {
+            @NotNull
+            @Override
+            public BitColorSet copy(@NotNull BitColorSet colors) {
+                @NotNull BitColorSet copy = new BitColorSet();
+                copy.bits.or(colors.bits);
+                return copy;
+            }
+
+            @Override
+            public long sizeOf(@NotNull BitColorSet colors) {
+                return 100;
+            }
+        });
+    }
+
+    @Test
+    public void resultsAreMergedPerFormulaAndNode() {
+        @NotNull FormulaResultStore<BitColorSet> store = store();
+        int first = store.slotFor(Tautology.INSTANCE);
+        int second = store.slotFor(Contradiction.INSTANCE);
+        assertNotEquals(first, second);
+        assertEquals(first, store.slotFor(Tautology.INSTANCE));
+
+        @NotNull BitColorSet colors = new BitColorSet(1, 2);
+        assertTrue(store.add(first, 5000, colors));
+        //stored set is a copy
+        colors.bits.set(3);
+        assertEquals(new BitColorSet(1, 2).bits, store.get(first, 5000).bits);
+        assertFalse(store.add(first, 5000, new BitColorSet(2)));
+        assertTrue(store.add(first, 5000, new BitColorSet(3)));
+        assertFalse(store.add(first, 5000, new BitColorSet()));
+        assertEquals(3, store.get(first, 5000).bits.cardinality());
+
+        assertNull(store.get(second, 5000));
+        assertNull(store.get(first, 4999));
+        assertNull(store.get(first, 100000));
+
+        //one page with one set
+        assertTrue(store.purge(Tautology.INSTANCE) > 100);
+        assertNull(store.get(first, 5000));
+        assertTrue(store.add(first, 5000, new BitColorSet(7)));
+        assertEquals(1, store.get(first, 5000).bits.cardinality());
+    }
+
+    @Test(timeout = 10000)
+    public void concurrentAdditions() throws InterruptedException {
+        @NotNull final FormulaResultStore<BitColorSet> store = store();
+        final int slot = store.slotFor(Tautology.INSTANCE);
+        final int nodes = 10000;
+        @NotNull List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int color = t;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int node = 0; node < nodes; node++) {
+                        store.add(slot, node, new BitColorSet(color));
+                    }
+                }
+            }));
+        }
+        for (@NotNull Thread thread : threads) {
+            thread.start();
+        }
+        for (@NotNull Thread thread : threads) {
+            thread.join();
+        }
+        for (int node = 0; node < nodes; node++) {
+            assertEquals(4, store.get(slot, node).bits.cardinality());
+        }
+    }
+}
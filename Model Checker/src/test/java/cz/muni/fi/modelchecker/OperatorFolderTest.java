@@ -0,0 +1,49 @@
+package cz.muni.fi.modelchecker;
+
+import cz.muni.fi.ctl.formula.Formula;
+import cz.muni.fi.ctl.formula.FormulaImpl;
+import cz.muni.fi.ctl.formula.operator.BinaryOperator;
+import cz.muni.fi.ctl.formula.operator.UnaryOperator;
+import cz.muni.fi.ctl.formula.proposition.Contradiction;
+import cz.muni.fi.ctl.formula.proposition.Tautology;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Test class for operator folding.
+ */
+public class OperatorFolderTest {
+
+    @NotNull
+    private static Formula not(@NotNull Formula formula) {
+        return new FormulaImpl(UnaryOperator.NEGATION, formula);
+    }
+
+    @Test
+    public void normalizedOperatorsAreFolded() {
+        @NotNull Formula p = Contradiction.INSTANCE;
+        assertEquals(new FormulaImpl(UnaryOperator.EXISTS_FUTURE, p),
+                OperatorFolder.fold(new FormulaImpl(BinaryOperator.EXISTS_UNTIL, Tautology.INSTANCE, p)));
+        assertEquals(new FormulaImpl(UnaryOperator.ALL_FUTURE, p),
+                OperatorFolder.fold(new FormulaImpl(BinaryOperator.ALL_UNTIL, Tautology.INSTANCE, p)));
+        //EG p = !AF !p = !A(True U !p)
+        assertEquals(new FormulaImpl(UnaryOperator.EXISTS_GLOBAL, p),
+                OperatorFolder.fold(not(new FormulaImpl(BinaryOperator.ALL_UNTIL, Tautology.INSTANCE, not(p)))));
+        //AG p = !EF !p, only the future is folded
+        assertEquals(not(new FormulaImpl(UnaryOperator.EXISTS_FUTURE, not(p))),
+                OperatorFolder.fold(not(new FormulaImpl(BinaryOperator.EXISTS_UNTIL, Tautology.INSTANCE, not(p)))));
+        assertSame(p, OperatorFolder.fold(not(not(p))));
+    }
+
+    @Test
+    public void otherFormulasAreKept() {
+        @NotNull Formula formula = new FormulaImpl(BinaryOperator.AND,
+                new FormulaImpl(BinaryOperator.EXISTS_UNTIL, Contradiction.INSTANCE, Tautology.INSTANCE),
+                not(new FormulaImpl(UnaryOperator.EXISTS_NEXT, Tautology.INSTANCE))
+        );
+        assertSame(formula, OperatorFolder.fold(formula));
+    }
+}
@@ -0,0 +1,58 @@
+package cz.muni.fi.modelchecker.graph;
+
+import cz.muni.fi.modelchecker.verification.MergeQueueTest.BitColorSet;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class for color pool.
+ */
+public class ColorPoolTest {
+
+    @Test
+    public void equalSetsShareId() {
+        @NotNull ColorPool<BitColorSet> pool = new ColorPool<>(CsrGraphTest.COLORS);
+        @NotNull BitColorSet first = new BitColorSet(1, 2);
+        int id = pool.intern(first);
+        assertEquals(id, pool.intern(new BitColorSet(1, 2)));
+        assertSame(first, pool.get(id));
+        assertEquals(-1, pool.find(new BitColorSet(3)));
+        assertEquals(1, pool.size());
+
+        //copies are independent of pooled set
+        @NotNull BitColorSet copy = pool.copy(id);
+        copy.bits.clear();
+        assertEquals(new BitColorSet(1, 2).bits, pool.get(id).bits);
+        assertFalse(pool.isEmpty(id));
+    }
+
+    @Test
+    public void intersectionsArePooled() {
+        @NotNull ColorPool<BitColorSet> pool = new ColorPool<>(CsrGraphTest.COLORS);
+        int first = pool.intern(new BitColorSet(1, 2, 3));
+        int second = pool.intern(new BitColorSet(2, 3, 4));
+        int disjoint = pool.intern(new BitColorSet(7));
+
+        int both = pool.intersect(first, second);
+        assertEquals(new BitColorSet(2, 3).bits, pool.get(both).bits);
+        assertEquals(both, pool.intersect(second, first));
+        assertEquals(both, pool.find(new BitColorSet(2, 3)));
+        assertTrue(pool.isEmpty(pool.intersect(first, disjoint)));
+        assertEquals(first, pool.intersect(first, first));
+        //operands are not modified
+        assertEquals(new BitColorSet(1, 2, 3).bits, pool.get(first).bits);
+    }
+
+    @Test
+    public void poolGrows() {
+        @NotNull ColorPool<BitColorSet> pool = new ColorPool<>(CsrGraphTest.COLORS);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, pool.intern(new BitColorSet(i)));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(new BitColorSet(i).bits, pool.get(i).bits);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package cz.muni.fi.modelchecker.graph;
+
+import cz.muni.fi.modelchecker.ModelAdapter;
+import cz.muni.fi.modelchecker.verification.MergeQueueTest.BitColorSet;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class for CSR graph.
+ */
+public class CsrGraphTest {
+
+    private static class NamedNode implements Node {
+
+        @NotNull
+        private final String name;
+
+        private NamedNode(@NotNull String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    static final CsrGraph.ColorFactory<BitColorSet> COLORS = new CsrGraph.ColorFactory<BitColorSet>() {
+        @NotNull
+        @Override
+        public BitColorSet createEmpty() {
+            return new BitColorSet();
+        }
+
+        @NotNull
+        @Override
+        public BitColorSet copy(@NotNull BitColorSet colors) {
+            @NotNull BitColorSet copy = new BitColorSet();
+            copy.bits.or(colors.bits);
+            return copy;
+        }
+    };
+
+    @Test
+    public void edgesAreRestrictedAndCopied() {
+        @NotNull NamedNode a = new NamedNode("a");
+        @NotNull NamedNode b = new NamedNode("b");
+        @NotNull NamedNode remote = new NamedNode("remote");
+        @NotNull List<NamedNode> sources = Arrays.asList(a, b);
+        @NotNull CsrGraph.Builder<NamedNode, BitColorSet> builder = new CsrGraph.Builder<>(sources);
+
+        @NotNull Map<NamedNode, BitColorSet> successors = new HashMap<>();
+        @NotNull BitColorSet stored = new BitColorSet(1, 2);
+        successors.put(b, stored);
+        successors.put(remote, new BitColorSet(3));
+        successors.put(a, new BitColorSet());
+        builder.setSuccessors(0, successors);
+        @NotNull Map<NamedNode, BitColorSet> predecessors = new HashMap<>();
+        predecessors.put(a, new BitColorSet(1, 2));
+        builder.setPredecessors(1, predecessors);
+        @NotNull ColorPool<BitColorSet> pool = new ColorPool<>(COLORS);
+        @NotNull CsrGraph<NamedNode, BitColorSet> graph = builder.build(pool);
+
+        assertEquals(2, graph.getSourceCount());
+        assertEquals(3, graph.getNodeCount());
+        assertEquals(4, graph.getEdgeCount());
+        assertTrue(graph.isSource(1));
+        assertFalse(graph.isSource(2));
+        assertSame(a, graph.getNode(0));
+        assertSame(remote, graph.getNode(2));
+
+        //empty edges are not returned, stored sets are copied
+        @NotNull final Map<NamedNode, BitColorSet> all = graph.successorsOf(0, null);
+        assertEquals(2, all.size());
+        assertEquals(stored.bits, all.get(b).bits);
+        assertNotSame(stored, all.get(b));
+
+        @NotNull Map<NamedNode, BitColorSet> restricted = graph.successorsOf(0, new BitColorSet(2, 3, 4));
+        assertEquals(new BitColorSet(2).bits, restricted.get(b).bits);
+        assertEquals(new BitColorSet(3).bits, restricted.get(remote).bits);
+        assertTrue(graph.successorsOf(0, new BitColorSet(7)).isEmpty());
+
+        //equal colors of edges are pooled once, pooled borders use memoized intersections
+        assertEquals(3, pool.size());
+        @NotNull BitColorSet pooledBorders = new BitColorSet(1);
+        pool.intern(pooledBorders);
+        assertEquals(new BitColorSet(1).bits, graph.successorsOf(0, pooledBorders).get(b).bits);
+        assertNotSame(pool.get(pool.find(pooledBorders)), graph.successorsOf(0, pooledBorders).get(b));
+
+        //visited sets are reused unless consumer keeps them
+        @NotNull final Map<NamedNode, BitColorSet> kept = new HashMap<>();
+        graph.forEachSuccessor(0, new BitColorSet(2, 3, 4), new ModelAdapter.EdgeConsumer<NamedNode, BitColorSet>() {
+            @Override
+            public boolean accept(@NotNull NamedNode node, @NotNull BitColorSet colors) {
+                kept.put(node, colors);
+                return true;
+            }
+        });
+        assertEquals(restricted, kept);
+        @NotNull final int[] visited = new int[1];
+        graph.forEachSuccessor(0, null, new ModelAdapter.EdgeConsumer<NamedNode, BitColorSet>() {
+            @Override
+            public boolean accept(@NotNull NamedNode node, @NotNull BitColorSet colors) {
+                assertEquals(all.get(node), colors);
+                visited[0]++;
+                return false;
+            }
+        });
+        assertEquals(2, visited[0]);
+
+        assertTrue(graph.successorsOf(1, null).isEmpty());
+        assertTrue(graph.predecessorsOf(0, null).isEmpty());
+        assertEquals(1, graph.predecessorsOf(1, null).size());
+    }
+}
@@ -0,0 +1,84 @@
+package cz.muni.fi.modelchecker.graph;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class for node table.
+ */
+public class NodeTableTest {
+
+    private static class LongNode implements Node {
+
+        private final long key;
+
+        private LongNode(long key) {
+            this.key = key;
+        }
+    }
+
+    @Test
+    public void nodesAreFoundAndIndexed() {
+        @NotNull NodeTable<LongNode> table = new NodeTable<>();
+        //enough nodes to force several resizes, including the key used for empty slots
+        for (long key = -5000; key < 5000; key++) {
+            @NotNull LongNode node = new LongNode(key * 1000);
+            assertSame(node, table.putIfAbsent(node.key, node));
+        }
+        @NotNull LongNode min = new LongNode(Long.MIN_VALUE);
+        assertSame(min, table.putIfAbsent(Long.MIN_VALUE, min));
+        assertEquals(10001, table.size());
+        for (long key = -5000; key < 5000; key++) {
+            @NotNull LongNode node = table.getByIndex((int) key + 5000);
+            assertEquals(key * 1000, node.key);
+            assertSame(node, table.get(key * 1000));
+            assertSame(node, table.putIfAbsent(node.key, new LongNode(node.key)));
+        }
+        assertSame(min, table.get(Long.MIN_VALUE));
+        assertNull(table.get(1));
+        assertEquals(10001, table.values().size());
+        assertEquals(10001, table.size());
+    }
+
+    @Test
+    public void readersDoNotMissInsertedNodes() throws InterruptedException {
+        @NotNull final NodeTable<LongNode> table = new NodeTable<>();
+        final int count = 100000;
+        @NotNull final AtomicInteger errors = new AtomicInteger();
+        @NotNull List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int offset = t;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = offset; i < count; i += 4) {
+                        @NotNull LongNode node = new LongNode(i);
+                        table.putIfAbsent(i, node);
+                        //every inserted node must be visible to the thread that inserted it
+                        if (table.get(i) != node) errors.incrementAndGet();
+                        //nodes of other threads are either missing or complete
+                        LongNode other = table.get(i / 2);
+                        if (other != null && other.key != i / 2) errors.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (@NotNull Thread thread : threads) {
+            thread.start();
+        }
+        for (@NotNull Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, errors.get());
+        assertEquals(count, table.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, table.get(i).key);
+        }
+    }
+}
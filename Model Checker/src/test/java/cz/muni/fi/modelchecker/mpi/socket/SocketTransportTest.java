@@ -0,0 +1,222 @@
+package cz.muni.fi.modelchecker.mpi.socket;
+
+import cz.muni.fi.modelchecker.mpi.termination.SocketTokenMessenger;
+import cz.muni.fi.modelchecker.mpi.termination.Terminator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs several ranks connected by sockets on localhost, each on its own thread.
+ */
+public class SocketTransportTest {
+
+    private static final int PROCESSES = 3;
+    private static final int MESSAGES = 100;
+
+    private static final int DATA_TAG = 0;
+    private static final int TOKEN_TAG = 1;
+
+    @NotNull
+    private static List<InetSocketAddress> freeAddresses(int count) throws IOException {
+        @NotNull List<ServerSocket> sockets = new ArrayList<>();
+        @NotNull List<InetSocketAddress> addresses = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            @NotNull ServerSocket socket = new ServerSocket(0);
+            sockets.add(socket);
+            addresses.add(new InetSocketAddress("localhost", socket.getLocalPort()));
+        }
+        for (@NotNull ServerSocket socket : sockets) {
+            socket.close();
+        }
+        return addresses;
+    }
+
+    /** Body of one rank, transport is already connected. */
+    private interface Rank {
+        void run(@NotNull SocketTransport transport) throws Exception;
+    }
+
+    private static void runRanks(@NotNull final Rank rank) throws Exception {
+        @NotNull final List<InetSocketAddress> peers = freeAddresses(PROCESSES);
+        @NotNull final AtomicReference<Throwable> error = new AtomicReference<>();
+        @NotNull List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < PROCESSES; i++) {
+            final int id = i;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    @NotNull SocketTransport transport = new SocketTransport(peers, id, 2);
+                    try {
+                        transport.connect();
+                        rank.run(transport);
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    } finally {
+                        transport.close();
+                    }
+                }
+            }));
+        }
+        for (@NotNull Thread thread : threads) {
+            thread.start();
+        }
+        for (@NotNull Thread thread : threads) {
+            thread.join();
+        }
+        @Nullable Throwable e = error.get();
+        if (e instanceof Exception) throw (Exception) e;
+        if (e != null) throw new AssertionError(e);
+    }
+
+    @Test(timeout = 20000)
+    public void messagesArriveInOrder() throws Exception {
+        runRanks(new Rank() {
+            @Override
+            public void run(@NotNull SocketTransport transport) throws Exception {
+                for (int i = 0; i < MESSAGES; i++) {
+                    for (int destination = 0; destination < PROCESSES; destination++) {
+                        //message length grows so that some messages do not fit into the initial buffers
+                        @NotNull ByteBuffer data = ByteBuffer.allocate(4 + i * 1024);
+                        data.putInt(0, i);
+                        transport.send(destination, DATA_TAG, data.array(), 0, data.capacity());
+                    }
+                }
+                for (int source = 0; source < PROCESSES; source++) {
+                    for (int i = 0; i < MESSAGES; i++) {
+                        @NotNull SocketTransport.Message message = transport.receive(source, DATA_TAG);
+                        assertEquals(source, message.source);
+                        assertEquals(4 + i * 1024, message.data.length);
+                        assertEquals(i, ByteBuffer.wrap(message.data).getInt());
+                    }
+                }
+                assertNull(transport.poll(DATA_TAG));
+            }
+        });
+    }
+
+    @Test(timeout = 20000)
+    public void terminationOverSockets() throws Exception {
+        runRanks(new Rank() {
+            @Override
+            public void run(@NotNull SocketTransport transport) throws Exception {
+                //several rounds, so that tokens of one round can't be mistaken for the next one
+                for (int round = 0; round < 3; round++) {
+                    @NotNull Terminator terminator = new Terminator.TerminatorFactory(new SocketTokenMessenger(transport, TOKEN_TAG)).createNew();
+                    int next = (transport.getRank() + 1) % PROCESSES;
+                    terminator.messageSent();
+                    transport.send(next, DATA_TAG, new byte[] { (byte) round }, 0, 1);
+                    @NotNull SocketTransport.Message message = transport.receive((transport.getRank() + PROCESSES - 1) % PROCESSES, DATA_TAG);
+                    assertEquals(round, message.data[0]);
+                    terminator.messageReceived();
+                    terminator.setDone();
+                    terminator.waitForTermination();
+                }
+            }
+        });
+    }
+
+    /**
+     * Connect transport of the first process to the second process, which is faked by a plain socket.
+     * @return Socket of the second process, handshake is already done.
+     */
+    @NotNull
+    private static SocketChannel fakePeer(@NotNull List<InetSocketAddress> peers, @NotNull final SocketTransport transport) throws Exception {
+        @NotNull Thread connecting = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    transport.connect();
+                } catch (IOException e) {
+                    //OK?
+                    e.printStackTrace();
+                }
+            }
+        });
+        connecting.start();
+        @Nullable SocketChannel channel = null;
+        while (channel == null) {
+            try {
+                channel = SocketChannel.open(peers.get(0));
+            } catch (IOException e) {
+                //not listening yet
+                Thread.sleep(10);
+            }
+        }
+        @NotNull ByteBuffer handshake = ByteBuffer.allocate(4);
+        handshake.putInt(1).flip();
+        while (handshake.hasRemaining()) {
+            channel.write(handshake);
+        }
+        connecting.join();
+        return channel;
+    }
+
+    private static void assertBroken(@NotNull SocketTransport transport) {
+        try {
+            //waits for a different tag, so it can only be woken up by the failure
+            transport.receive(1, TOKEN_TAG);
+            fail("Receive should fail when the connection is broken.");
+        } catch (IllegalStateException e) {
+            //OK
+        }
+        try {
+            transport.poll(DATA_TAG);
+            fail("Poll should fail when the connection is broken.");
+        } catch (IllegalStateException e) {
+            //OK
+        }
+        try {
+            transport.send(1, DATA_TAG, new byte[1], 0, 1);
+            fail("Send should fail when the connection is broken.");
+        } catch (IllegalStateException e) {
+            //OK
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void brokenPeerFailsReceivers() throws Exception {
+        @NotNull List<InetSocketAddress> peers = freeAddresses(2);
+        @NotNull SocketTransport transport = new SocketTransport(peers, 0, 2);
+        //fake process dies in the middle of a message
+        @NotNull SocketChannel channel = fakePeer(peers, transport);
+        @NotNull ByteBuffer data = ByteBuffer.allocate(10);
+        data.putInt(DATA_TAG).putInt(100).putShort((short) 1).flip();
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+        channel.close();
+        assertBroken(transport);
+        transport.close();
+    }
+
+    @Test(timeout = 20000)
+    public void peerClosedWithoutGoodbyeFailsReceivers() throws Exception {
+        @NotNull List<InetSocketAddress> peers = freeAddresses(2);
+        @NotNull SocketTransport transport = new SocketTransport(peers, 0, 2);
+        //fake process sends a whole message and then dies, so the connection is closed between messages
+        @NotNull SocketChannel channel = fakePeer(peers, transport);
+        @NotNull ByteBuffer data = ByteBuffer.allocate(10);
+        data.putInt(DATA_TAG).putInt(2).putShort((short) 1).flip();
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+        channel.close();
+        assertEquals(2, transport.receive(1, DATA_TAG).data.length);
+        assertBroken(transport);
+        transport.close();
+    }
+}
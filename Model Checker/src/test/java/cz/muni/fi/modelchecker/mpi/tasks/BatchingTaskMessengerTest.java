@@ -0,0 +1,169 @@
+package cz.muni.fi.modelchecker.mpi.tasks;
+
+import cz.muni.fi.modelchecker.mpi.tasks.TaskFixtures.IntColor;
+import cz.muni.fi.modelchecker.mpi.tasks.TaskFixtures.IntNode;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class for batching task messenger using an in-memory transport.
+ */
+public class BatchingTaskMessengerTest {
+
+    //messages waiting for each process: [sender, data]
+    @NotNull
+    private final List<Queue<Object[]>> inboxes = Arrays.<Queue<Object[]>>asList(
+            new ConcurrentLinkedQueue<Object[]>(), new ConcurrentLinkedQueue<Object[]>()
+    );
+    @NotNull
+    private final AtomicInteger batchesSent = new AtomicInteger();
+    @NotNull
+    private final List<Messenger> messengers = new ArrayList<>();
+
+    private class Messenger extends BatchingTaskMessenger<IntNode, IntColor> {
+
+        private final int id;
+
+        Messenger(int id, int batchSize, long maxDelay) {
+            super(2, batchSize, maxDelay);
+            this.id = id;
+            messengers.add(this);
+        }
+
+        @Override
+        protected int encodedSize(@NotNull IntNode internal, @NotNull IntNode external, @NotNull IntColor colors) {
+            return 12;
+        }
+
+        @Override
+        protected void encodeTask(@NotNull ByteBuffer buffer, @NotNull IntNode internal, @NotNull IntNode external, @NotNull IntColor colors) {
+            buffer.putInt(internal.id).putInt(external.id).putInt(colors.value);
+        }
+
+        @Override
+        protected void decodeTask(int sender, @NotNull ByteBuffer buffer, @NotNull OnTaskListener<IntNode, IntColor> taskListener) {
+            @NotNull IntNode external = new IntNode(buffer.getInt());
+            @NotNull IntNode internal = new IntNode(buffer.getInt());
+            taskListener.onTask(sender, external, internal, new IntColor(buffer.getInt()));
+        }
+
+        @Override
+        protected void sendBatch(int destination, @NotNull byte[] data, int length) {
+            batchesSent.incrementAndGet();
+            inboxes.get(destination).add(new Object[] { id, Arrays.copyOf(data, length) });
+        }
+
+        @Override
+        protected boolean receiveBatch(@NotNull OnTaskListener<IntNode, IntColor> taskListener) {
+            Object[] message = inboxes.get(id).poll();
+            if (message == null) return false;
+            dispatchBatch((Integer) message[0], ByteBuffer.wrap((byte[]) message[1]), taskListener);
+            return true;
+        }
+    }
+
+    /** Listener that remembers colors of all received tasks. */
+    private static class Collector implements OnTaskListener<IntNode, IntColor> {
+
+        @NotNull
+        final List<Integer> received = new ArrayList<>();
+
+        @Override
+        public synchronized void onTask(int sourceProcess, @NotNull IntNode external, @NotNull IntNode internal, @NotNull IntColor colors) {
+            received.add(colors.value);
+        }
+
+        synchronized int size() {
+            return received.size();
+        }
+
+        void waitFor(int count) throws InterruptedException {
+            long start = System.currentTimeMillis();
+            while (size() < count && System.currentTimeMillis() - start < 5000) {
+                Thread.sleep(1);
+            }
+            assertEquals(count, size());
+        }
+    }
+
+    @After
+    public void closeMessengers() {
+        for (@NotNull Messenger messenger : messengers) {
+            messenger.close();
+        }
+    }
+
+    @Test
+    public void tasksWaitForFlush() throws InterruptedException {
+        @NotNull Messenger sender = new Messenger(0, 1024, 100000);
+        @NotNull Messenger receiver = new Messenger(1, 1024, 100000);
+        @NotNull Collector collector = new Collector();
+        sender.startSession(new Collector());
+        receiver.startSession(collector);
+        for (int i = 0; i < 10; i++) {
+            sender.sendTask(1, new IntNode(i), new IntNode(i + 1), new IntColor(i));
+        }
+        Thread.sleep(50);
+        assertEquals(0, collector.size());
+        sender.flush();
+        collector.waitFor(10);
+        assertEquals(1, batchesSent.get());
+        //tasks are delivered in order
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, (int) collector.received.get(i));
+        }
+        sender.closeSession();
+        receiver.closeSession();
+    }
+
+    @Test
+    public void fullAndOldBatchesAreSent() throws InterruptedException {
+        //two tasks fill the batch
+        @NotNull Messenger sender = new Messenger(0, 24, 20);
+        @NotNull Messenger receiver = new Messenger(1, 24, 20);
+        @NotNull Collector collector = new Collector();
+        sender.startSession(new Collector());
+        receiver.startSession(collector);
+        sender.sendTask(1, new IntNode(0), new IntNode(1), new IntColor(0));
+        sender.sendTask(1, new IntNode(0), new IntNode(1), new IntColor(1));
+        assertEquals(1, batchesSent.get());
+        collector.waitFor(2);
+        //this one is sent by the progress thread after the delay
+        sender.sendTask(1, new IntNode(0), new IntNode(1), new IntColor(2));
+        collector.waitFor(3);
+        assertEquals(2, batchesSent.get());
+        sender.closeSession();
+        receiver.closeSession();
+    }
+
+    @Test
+    public void tasksWaitForNextSession() throws InterruptedException {
+        @NotNull Messenger sender = new Messenger(0, 1024, 100000);
+        @NotNull Messenger receiver = new Messenger(1, 1024, 100000);
+        @NotNull Collector first = new Collector();
+        receiver.startSession(first);
+        receiver.closeSession();
+        sender.startSession(new Collector());
+        sender.sendTask(1, new IntNode(0), new IntNode(1), new IntColor(0));
+        sender.flush();
+        Thread.sleep(50);
+        //receiver has no active session, so nothing is received
+        @NotNull Collector second = new Collector();
+        receiver.startSession(second);
+        second.waitFor(1);
+        assertEquals(0, first.size());
+        sender.closeSession();
+        receiver.closeSession();
+    }
+}
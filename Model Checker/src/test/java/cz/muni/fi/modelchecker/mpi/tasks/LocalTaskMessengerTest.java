@@ -0,0 +1,89 @@
+package cz.muni.fi.modelchecker.mpi.tasks;
+
+import cz.muni.fi.modelchecker.mpi.tasks.TaskFixtures.IntColor;
+import cz.muni.fi.modelchecker.mpi.tasks.TaskFixtures.IntNode;
+import cz.muni.fi.modelchecker.mpi.termination.LocalTokenMessenger;
+import cz.muni.fi.modelchecker.mpi.termination.Terminator;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs several processes inside one JVM using local task and token messengers.
+ */
+public class LocalTaskMessengerTest {
+
+    private static final int PROCESSES = 4;
+    private static final int INITIAL_TASKS = 50;
+    private static final int TTL = 5;
+
+    @Test(timeout = 10000)
+    public void tasksTravelUntilTermination() throws InterruptedException {
+        @NotNull final LocalTokenMessenger.Network tokens = new LocalTokenMessenger.Network(PROCESSES);
+        @NotNull final LocalTaskMessenger.Network<IntNode, IntColor> tasks = new LocalTaskMessenger.Network<>(PROCESSES);
+        @NotNull final AtomicInteger received = new AtomicInteger();
+        @NotNull List<Thread> processes = new ArrayList<>();
+        for (int i = 0; i < PROCESSES; i++) {
+            final int id = i;
+            processes.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    @NotNull final Terminator terminator = new Terminator.TerminatorFactory(new LocalTokenMessenger(tokens, id)).createNew();
+                    @NotNull final LocalTaskMessenger<IntNode, IntColor> messenger = new LocalTaskMessenger<>(tasks, id,
+                            new LocalTaskMessenger.NodeResolver<IntNode>() {
+                                @NotNull
+                                @Override
+                                public IntNode resolve(@NotNull IntNode node) {
+                                    return node;
+                                }
+                            }
+                    );
+                    messenger.startSession(new OnTaskListener<IntNode, IntColor>() {
+                        @Override
+                        public void onTask(int sourceProcess, @NotNull IntNode external, @NotNull IntNode internal, @NotNull IntColor colors) {
+                            //pass the task to the next process until it runs out of hops
+                            synchronized (terminator) { //main thread must not mark terminator as done in the meantime
+                                terminator.messageReceived();
+                                received.incrementAndGet();
+                                assertEquals(id, internal.id);
+                                if (!colors.isEmpty()) {
+                                    int next = (id + 1) % PROCESSES;
+                                    terminator.messageSent();
+                                    messenger.sendTask(next, internal, new IntNode(next), new IntColor(colors.value - 1));
+                                }
+                                terminator.setDone();
+                            }
+                        }
+                    });
+                    synchronized (terminator) {
+                        for (int j = 0; j < INITIAL_TASKS; j++) {
+                            int destination = (id + j) % PROCESSES;
+                            if (destination != id) {
+                                terminator.messageSent();
+                                messenger.sendTask(destination, new IntNode(id), new IntNode(destination), new IntColor(TTL));
+                            }
+                        }
+                        terminator.setDone();
+                    }
+                    terminator.waitForTermination();
+                    messenger.closeSession();
+                    messenger.close();
+                }
+            }));
+        }
+        for (@NotNull Thread process : processes) {
+            process.start();
+        }
+        for (@NotNull Thread process : processes) {
+            process.join();
+        }
+        //every initial task that left its process is received TTL + 1 times
+        int initialSent = PROCESSES * (INITIAL_TASKS - (INITIAL_TASKS + PROCESSES - 1) / PROCESSES);
+        assertEquals(initialSent * (TTL + 1), received.get());
+    }
+}
@@ -0,0 +1,66 @@
+package cz.muni.fi.modelchecker.mpi.tasks;
+
+import cz.muni.fi.modelchecker.graph.ColorSet;
+import cz.muni.fi.modelchecker.graph.Node;
+
+/**
+ * Nodes and colors of tasks that are only transported by messengers, not used in any computation.
+ */
+class TaskFixtures {
+
+    private TaskFixtures() {}
+
+    static class IntNode implements Node {
+
+        final int id;
+
+        IntNode(int id) {
+            this.id = id;
+        }
+    }
+
+    /** Color set carrying one number, it is empty if the number is zero. */
+    static class IntColor implements ColorSet {
+
+        final int value;
+
+        IntColor(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public void intersect(ColorSet set) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void subtract(ColorSet set) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean union(ColorSet set) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return value == 0;
+        }
+
+        @Override
+        public boolean encloses(ColorSet set) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean intersectInto(ColorSet set, ColorSet target) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean subtractAndTestEmpty(ColorSet set) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
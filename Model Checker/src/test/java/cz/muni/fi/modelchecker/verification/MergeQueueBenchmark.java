@@ -0,0 +1,129 @@
+package cz.muni.fi.modelchecker.verification;
+
+import cz.muni.fi.modelchecker.verification.MergeQueueTest.BitColorSet;
+import cz.muni.fi.modelchecker.verification.MergeQueueTest.IntNode;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares merge queue with the original synchronized hash map queue.
+ * Run main method manually, this is not a part of the test suite.
+ *
+ * Workload simulates processing of an until operator: every popped node offers colors
+ * to a few random "predecessors", some of which are already waiting in the queue.
+ */
+public class MergeQueueBenchmark {
+
+    private static final int NODES = 200000;
+    private static final int INITIAL = 50000;
+    private static final int OPERATIONS = 200000;
+    private static final int ROUNDS = 5;
+
+    /** Common interface of measured queues. */
+    private interface Queue {
+        void offer(@NotNull IntNode node, @NotNull BitColorSet colors);
+        @Nullable Map.Entry<IntNode, BitColorSet> poll();
+    }
+
+    /** Queue implemented the way MergeQueueProcessor used to do it. */
+    private static class HashMapQueue implements Queue {
+
+        @NotNull
+        private final Map<IntNode, BitColorSet> queue = new HashMap<>();
+
+        @Override
+        public void offer(@NotNull IntNode node, @NotNull BitColorSet colors) {
+            synchronized (queue) {
+                if (queue.containsKey(node)) {
+                    queue.get(node).union(colors);
+                } else {
+                    queue.put(node, colors);
+                }
+            }
+        }
+
+        @Nullable
+        @Override
+        public Map.Entry<IntNode, BitColorSet> poll() {
+            synchronized (queue) {
+                if (queue.isEmpty()) return null;
+                Map.Entry<IntNode, BitColorSet> entry = queue.entrySet().iterator().next();
+                queue.remove(entry.getKey());
+                return entry;
+            }
+        }
+    }
+
+    private static class MergeQueueAdapter implements Queue {
+
+        @NotNull
+        private final MergeQueue<IntNode, BitColorSet> queue = new MergeQueue<>(MergeQueue.Order.FIFO);
+
+        @Override
+        public void offer(@NotNull IntNode node, @NotNull BitColorSet colors) {
+            queue.offer(node, colors);
+        }
+
+        @Nullable
+        @Override
+        public Map.Entry<IntNode, BitColorSet> poll() {
+            return queue.poll();
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            for (int round = 0; round < ROUNDS; round++) {
+                //first rounds are just a warm up
+                long hashMap = measure(new HashMapQueue(), threads);
+                long mergeQueue = measure(new MergeQueueAdapter(), threads);
+                if (round >= ROUNDS / 2) {
+                    System.out.println("Threads: "+threads+" HashMap: "+hashMap+"ms MergeQueue: "+mergeQueue+"ms");
+                }
+            }
+        }
+    }
+
+    private static long measure(@NotNull final Queue queue, int threadCount) throws InterruptedException {
+        @NotNull Random random = new Random(42);
+        for (int i = 0; i < INITIAL; i++) {
+            queue.offer(new IntNode(random.nextInt(NODES)), new BitColorSet(random.nextInt(64)));
+        }
+        final int perThread = OPERATIONS / threadCount;
+        @NotNull Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            final int seed = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    @NotNull Random random = new Random(seed);
+                    for (int i = 0; i < perThread; i++) {
+                        Map.Entry<IntNode, BitColorSet> entry = queue.poll();
+                        //keep the queue size roughly stable
+                        int offers = entry == null ? 1 : random.nextInt(3);
+                        for (int j = 0; j < offers; j++) {
+                            queue.offer(new IntNode(random.nextInt(NODES)), new BitColorSet(random.nextInt(64)));
+                        }
+                    }
+                }
+            });
+        }
+        long start = System.currentTimeMillis();
+        for (@NotNull Thread thread : threads) {
+            thread.start();
+        }
+        for (@NotNull Thread thread : threads) {
+            thread.join();
+        }
+        //drain, so that sparse table behaviour of the pop is measured too
+        while (queue.poll() != null) {
+            //nothing
+        }
+        return System.currentTimeMillis() - start;
+    }
+}
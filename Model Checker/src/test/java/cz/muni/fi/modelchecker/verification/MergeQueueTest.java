@@ -0,0 +1,186 @@
+package cz.muni.fi.modelchecker.verification;
+
+import cz.muni.fi.modelchecker.graph.ColorSet;
+import cz.muni.fi.modelchecker.graph.Node;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for merge queue.
+ */
+public class MergeQueueTest {
+
+    /** Simple node identified by a number. */
+    static class IntNode implements Node {
+
+        final int id;
+
+        IntNode(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || (o instanceof IntNode && ((IntNode) o).id == id);
+        }
+
+        @Override
+        public int hashCode() {
+            return id;
+        }
+    }
+
+    /** Simple color set over integer colors. */
+    public static class BitColorSet implements ColorSet {
+
+        @NotNull
+        public final BitSet bits = new BitSet();
+
+        public BitColorSet(int... colors) {
+            for (int color : colors) {
+                bits.set(color);
+            }
+        }
+
+        @Override
+        public void intersect(ColorSet set) {
+            bits.and(((BitColorSet) set).bits);
+        }
+
+        @Override
+        public void subtract(ColorSet set) {
+            bits.andNot(((BitColorSet) set).bits);
+        }
+
+        @Override
+        public boolean union(ColorSet set) {
+            if (encloses(set)) return false;
+            bits.or(((BitColorSet) set).bits);
+            return true;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return bits.isEmpty();
+        }
+
+        @Override
+        public boolean encloses(ColorSet set) {
+            @NotNull BitSet rest = (BitSet) ((BitColorSet) set).bits.clone();
+            rest.andNot(bits);
+            return rest.isEmpty();
+        }
+
+        @Override
+        public boolean intersectInto(ColorSet set, ColorSet target) {
+            @NotNull BitSet result = ((BitColorSet) target).bits;
+            result.clear();
+            result.or(bits);
+            result.and(((BitColorSet) set).bits);
+            return result.isEmpty();
+        }
+
+        @Override
+        public boolean subtractAndTestEmpty(ColorSet set) {
+            subtract(set);
+            return isEmpty();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof BitColorSet && bits.equals(((BitColorSet) o).bits);
+        }
+
+        @Override
+        public int hashCode() {
+            return bits.hashCode();
+        }
+    }
+
+    @Test
+    public void mergesWaitingNodes() {
+        @NotNull MergeQueue<IntNode, BitColorSet> queue = new MergeQueue<>(MergeQueue.Order.FIFO);
+        assertTrue(queue.offer(new IntNode(1), new BitColorSet(1)));
+        assertTrue(queue.offer(new IntNode(2), new BitColorSet(2)));
+        assertFalse(queue.offer(new IntNode(1), new BitColorSet(3)));
+        assertEquals(2, queue.size());
+
+        Map.Entry<IntNode, BitColorSet> first = queue.poll();
+        assertEquals(new IntNode(1), first.getKey());
+        assertEquals(new BitColorSet(1, 3).bits, first.getValue().bits);
+        //node that has been removed can be offered again
+        assertTrue(queue.offer(new IntNode(1), new BitColorSet(4)));
+        assertEquals(new IntNode(2), queue.poll().getKey());
+        assertEquals(new BitColorSet(4).bits, queue.poll().getValue().bits);
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void lifoOrder() {
+        @NotNull MergeQueue<IntNode, BitColorSet> queue = new MergeQueue<>(MergeQueue.Order.LIFO);
+        for (int i = 0; i < 10; i++) {
+            queue.offer(new IntNode(i), new BitColorSet(i));
+        }
+        for (int i = 9; i >= 0; i--) {
+            assertEquals(new IntNode(i), queue.poll().getKey());
+        }
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void concurrentOffersAndPolls() throws InterruptedException {
+        final int threadCount = 4;
+        final int nodeCount = 100;
+        final int colorCount = 500;
+        @NotNull final MergeQueue<IntNode, BitColorSet> queue = new MergeQueue<>(MergeQueue.Order.FIFO);
+        @NotNull final Map<IntNode, BitSet> received = new HashMap<>();
+        @NotNull Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            final int offset = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    //every thread offers its own colors to every node and collects whatever it can poll
+                    for (int color = offset; color < colorCount; color += threadCount) {
+                        for (int node = 0; node < nodeCount; node++) {
+                            queue.offer(new IntNode(node), new BitColorSet(color));
+                        }
+                        Map.Entry<IntNode, BitColorSet> entry = queue.poll();
+                        if (entry != null) collect(received, entry);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (@NotNull Thread thread : threads) {
+            thread.join();
+        }
+        Map.Entry<IntNode, BitColorSet> entry;
+        while ((entry = queue.poll()) != null) {
+            collect(received, entry);
+        }
+        assertEquals(nodeCount, received.size());
+        for (@NotNull BitSet colors : received.values()) {
+            assertEquals(colorCount, colors.cardinality());
+        }
+    }
+
+    private static void collect(@NotNull Map<IntNode, BitSet> received, @NotNull Map.Entry<IntNode, BitColorSet> entry) {
+        synchronized (received) {
+            if (!received.containsKey(entry.getKey())) {
+                received.put(entry.getKey(), new BitSet());
+            }
+            received.get(entry.getKey()).or(entry.getValue().bits);
+        }
+    }
+}
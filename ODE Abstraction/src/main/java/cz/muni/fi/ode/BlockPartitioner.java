@@ -0,0 +1,104 @@
+package cz.muni.fi.ode;
+
+import com.google.common.collect.Range;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits state space into a grid of orthogonal blocks, one block per machine.
+ * Number of machines is factorized and every prime factor splits the dimension with the longest block side,
+ * so blocks are as close to cubes as possible and only the states on block faces have remote neighbours.
+ */
+public class BlockPartitioner extends CoordinatePartitioner {
+
+    //number of blocks along each dimension
+    @NotNull
+    private final int[] blocks;
+    //number of states along each dimension
+    @NotNull
+    private final int[] extent;
+    @NotNull
+    private final int[] lower;
+
+    @NotNull
+    private final List<Range<Integer>> limit = new ArrayList<>();
+
+    public BlockPartitioner(@NotNull OdeModel model, int size, int rank) {
+        super(model, size, rank);
+        int dimensions = model.getVariableCount();
+        blocks = new int[dimensions];
+        extent = new int[dimensions];
+        lower = new int[dimensions];
+        Arrays.fill(blocks, 1);
+        for (int i = 0; i < dimensions; i++) {
+            Range<Integer> range = model.nodeIndexRange.get(i);
+            lower[i] = range.lowerEndpoint();
+            extent[i] = range.upperEndpoint() - range.lowerEndpoint() + 1;
+        }
+        if (dimensions == 0) {
+            if (size > 1) throw new IllegalArgumentException("Model without variables can't be partitioned.");
+            return;
+        }
+        //largest factors first, so that they go to the longest dimensions
+        for (int factor : primeFactors(size)) {
+            int longest = 0;
+            for (int i = 1; i < dimensions; i++) {
+                if ((double) extent[i] / blocks[i] > (double) extent[longest] / blocks[longest]) {
+                    longest = i;
+                }
+            }
+            blocks[longest] *= factor;
+        }
+        //compute my block (rank is a mixed radix number of block indexes)
+        int remaining = rank;
+        for (int i = 0; i < dimensions; i++) {
+            int block = remaining % blocks[i];
+            remaining /= blocks[i];
+            int from = blockStart(i, block);
+            int to = blockStart(i, block + 1) - 1;
+            //more blocks than states in this dimension, so this block is empty
+            limit.add(from <= to ? Range.closed(lower[i] + from, lower[i] + to) : Range.closed(lower[i], lower[i]));
+        }
+        System.err.println(rank+" Partitioner: Blocks: "+Arrays.toString(blocks)+" My Ranges: "+Arrays.toString(limit.toArray()));
+    }
+
+    //first (relative) coordinate of given block
+    private int blockStart(int dimension, int block) {
+        return (int) (((long) block * extent[dimension] + blocks[dimension] - 1) / blocks[dimension]);
+    }
+
+    @NotNull
+    private static List<Integer> primeFactors(int number) {
+        @NotNull List<Integer> factors = new ArrayList<>();
+        for (int p = 2; (long) p * p <= number; p++) {
+            while (number % p == 0) {
+                factors.add(0, p);
+                number /= p;
+            }
+        }
+        if (number > 1) {
+            factors.add(0, number);
+        }
+        return factors;
+    }
+
+    @Override
+    public int getOwner(@NotNull int[] coordinates) {
+        int owner = 0;
+        int multiplier = 1;
+        for (int i = 0; i < coordinates.length; i++) {
+            owner += multiplier * (int) ((long) (coordinates[i] - lower[i]) * blocks[i] / extent[i]);
+            multiplier *= blocks[i];
+        }
+        return owner;
+    }
+
+    @NotNull
+    @Override
+    public List<Range<Integer>> getMyLimit() {
+        return new ArrayList<>(limit);
+    }
+}
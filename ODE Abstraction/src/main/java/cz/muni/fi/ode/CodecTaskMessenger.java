@@ -0,0 +1,63 @@
+package cz.muni.fi.ode;
+
+import cz.muni.fi.modelchecker.mpi.tasks.BatchingTaskMessenger;
+import cz.muni.fi.modelchecker.mpi.tasks.OnTaskListener;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Batching task messenger that writes tasks using a task codec. Subclasses only provide the transport.
+ * Messengers with a transport from the model checker (see MpiTaskMessenger) use the static methods instead.
+ */
+public abstract class CodecTaskMessenger extends BatchingTaskMessenger<CoordinateNode, OdeColorSet> {
+
+    @NotNull
+    private final TaskCodec codec;
+
+    /**
+     * @param codec Binary format of the tasks. Has to be the same in all processes.
+     * @param batchSize Size of batch in bytes that is sent immediately.
+     * @param maxDelay Time in milliseconds after which batch is sent even if it is not full.
+     */
+    protected CodecTaskMessenger(int processCount, @NotNull TaskCodec codec, int batchSize, long maxDelay) {
+        super(processCount, batchSize, maxDelay);
+        this.codec = codec;
+    }
+
+    /**
+     * Secondary task structure: source node|destination node|colors, as written by the codec.
+     */
+
+    @Override
+    protected int encodedSize(@NotNull CoordinateNode internal, @NotNull CoordinateNode external, @NotNull OdeColorSet colors) {
+        return encodedSize(codec, internal, external, colors);
+    }
+
+    @Override
+    protected void encodeTask(@NotNull ByteBuffer buffer, @NotNull CoordinateNode internal, @NotNull CoordinateNode external, @NotNull OdeColorSet colors) {
+        encodeTask(codec, buffer, internal, external, colors);
+    }
+
+    @Override
+    protected void decodeTask(int sender, @NotNull ByteBuffer buffer, @NotNull OnTaskListener<CoordinateNode, OdeColorSet> taskListener) {
+        decodeTask(codec, sender, buffer, taskListener);
+    }
+
+    static int encodedSize(@NotNull TaskCodec codec, @NotNull CoordinateNode internal, @NotNull CoordinateNode external, @NotNull OdeColorSet colors) {
+        return codec.nodeSize(internal) + codec.nodeSize(external) + codec.colorsSize(colors);
+    }
+
+    static void encodeTask(@NotNull TaskCodec codec, @NotNull ByteBuffer buffer, @NotNull CoordinateNode internal, @NotNull CoordinateNode external, @NotNull OdeColorSet colors) {
+        codec.writeNode(buffer, internal);
+        codec.writeNode(buffer, external);
+        codec.writeColors(buffer, colors);
+    }
+
+    static void decodeTask(@NotNull TaskCodec codec, int sender, @NotNull ByteBuffer buffer, @NotNull OnTaskListener<CoordinateNode, OdeColorSet> taskListener) {
+        @NotNull CoordinateNode source = codec.readNode(buffer);
+        @NotNull CoordinateNode dest = codec.readNode(buffer);
+        @NotNull OdeColorSet colorSet = codec.readColors(buffer);
+        taskListener.onTask(sender, source, dest, colorSet);
+    }
+}
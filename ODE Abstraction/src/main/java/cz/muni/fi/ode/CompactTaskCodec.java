@@ -0,0 +1,266 @@
+package cz.muni.fi.ode;
+
+import com.google.common.collect.Range;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Codec that minimizes the size of tasks.
+ *
+ * Node is written as a variable length encoding of its hash (see OdeModel.nodeHash).
+ * Color set is written as number of endpoints for each parameter (variable length) followed by the endpoints.
+ * Each endpoint starts with a tag byte that determines how the value is stored:
+ * bounds of the parameter range need no payload, values that lie exactly on a grid of 2^16 points
+ * over the parameter range are stored as a distance from the previous grid point of the same parameter
+ * (variable length, endpoints are sorted), values that survive conversion to float are stored as floats
+ * and everything else as raw doubles. Open endpoints have the OPEN bit set in their tag.
+ *
+ * Parameter splits computed by the state space generator almost never lie on the grid, so by default they
+ * are stored as raw doubles and the encoding (bound types included) is lossless. If quantization is enabled,
+ * such endpoints are rounded outwards to the grid first (lower endpoints down, upper endpoints up, rounded
+ * endpoints become closed), so every endpoint takes at most 4 bytes, but received sets are over-approximations
+ * of the sent ones.
+ *
+ * Codec has to be created after the model has been loaded.
+ */
+public class CompactTaskCodec implements TaskCodec {
+
+    private static final int GRID = 0xFFFF;
+
+    private static final byte LOWER = 0;
+    private static final byte UPPER = 1;
+    private static final byte QUANTIZED = 2;
+    private static final byte FLOAT = 3;
+    private static final byte DOUBLE = 4;
+    //added to the tag of open endpoints
+    private static final byte OPEN = 0x10;
+
+    @NotNull
+    private final OdeModel model;
+    @NotNull
+    private final NodeFactory factory;
+
+    @NotNull
+    private final double[] lowerBounds;
+    @NotNull
+    private final double[] upperBounds;
+    @NotNull
+    private final double[] steps;
+    private final boolean quantize;
+
+    @NotNull
+    private final ThreadLocal<double[]> endpoints = new ThreadLocal<double[]>() {
+        @NotNull
+        @Override
+        protected double[] initialValue() {
+            return new double[2];
+        }
+    };
+    @NotNull
+    private final ThreadLocal<boolean[]> openEndpoints = new ThreadLocal<boolean[]>() {
+        @NotNull
+        @Override
+        protected boolean[] initialValue() {
+            return new boolean[2];
+        }
+    };
+
+    public CompactTaskCodec(@NotNull OdeModel model, @NotNull NodeFactory factory) {
+        this(model, factory, false);
+    }
+
+    /**
+     * @param quantize If true, endpoints that are not on the grid are rounded outwards to it.
+     */
+    public CompactTaskCodec(@NotNull OdeModel model, @NotNull NodeFactory factory, boolean quantize) {
+        this.model = model;
+        this.factory = factory;
+        this.quantize = quantize;
+        @NotNull List<Range<Double>> ranges = model.getParameterRange();
+        lowerBounds = new double[ranges.size()];
+        upperBounds = new double[ranges.size()];
+        steps = new double[ranges.size()];
+        for (int i=0; i<ranges.size(); i++) {
+            lowerBounds[i] = ranges.get(i).lowerEndpoint();
+            upperBounds[i] = ranges.get(i).upperEndpoint();
+            steps[i] = (upperBounds[i] - lowerBounds[i]) / GRID;
+        }
+    }
+
+    @Override
+    public int nodeSize(@NotNull CoordinateNode node) {
+        return 10;
+    }
+
+    @Override
+    public void writeNode(@NotNull ByteBuffer buffer, @NotNull CoordinateNode node) {
+        writeVarLong(buffer, node.getHash());
+    }
+
+    @NotNull
+    @Override
+    public CoordinateNode readNode(@NotNull ByteBuffer buffer) {
+        @NotNull int[] coordinates = new int[model.getVariableCount()];
+        model.nodeCoordinates(readVarLong(buffer), coordinates);
+        return factory.getNode(coordinates);
+    }
+
+    @Override
+    public int colorsSize(@NotNull OdeColorSet colors) {
+        int size = 5 * colors.parameterCount();
+        for (int i=0; i<colors.parameterCount(); i++) {
+            size += 9 * colors.endpointCount(i);
+        }
+        return size;
+    }
+
+    @Override
+    public void writeColors(@NotNull ByteBuffer buffer, @NotNull OdeColorSet colors) {
+        double[] data = endpoints.get();
+        boolean[] open = openEndpoints.get();
+        for (int i=0; i<colors.parameterCount(); i++) {
+            int count = colors.endpointCount(i);
+            if (data.length < count) {
+                data = new double[2 * count];
+                endpoints.set(data);
+                open = new boolean[2 * count];
+                openEndpoints.set(open);
+            }
+            colors.writeEndpoints(i, data, 0);
+            colors.writeOpenEndpoints(i, open, 0);
+            if (quantize) {
+                count = quantize(i, data, open, count);
+            }
+            writeVarLong(buffer, count);
+            int previous = 0;
+            for (int j=0; j<count; j++) {
+                previous = writeEndpoint(buffer, i, data[j], open[j], previous);
+            }
+        }
+    }
+
+    @NotNull
+    @Override
+    public OdeColorSet readColors(@NotNull ByteBuffer buffer) {
+        @NotNull int[] lengths = new int[model.parameterCount()];
+        double[] data = endpoints.get();
+        boolean[] open = openEndpoints.get();
+        int offset = 0;
+        for (int i=0; i<lengths.length; i++) {
+            lengths[i] = (int) readVarLong(buffer);
+            if (data.length < offset + lengths[i]) {
+                data = Arrays.copyOf(data, 2 * (offset + lengths[i]));
+                endpoints.set(data);
+                open = Arrays.copyOf(open, data.length);
+                openEndpoints.set(open);
+            }
+            int previous = 0;
+            for (int j=0; j<lengths[i]; j++) {
+                byte tag = buffer.get();
+                open[offset] = (tag & OPEN) != 0;
+                tag &= ~OPEN;
+                if (tag == QUANTIZED) {
+                    previous += (int) readVarLong(buffer);
+                    data[offset++] = lowerBounds[i] + previous * steps[i];
+                } else {
+                    data[offset++] = readEndpoint(buffer, tag, i);
+                }
+            }
+        }
+        return model.getColorSetFactory().createFromBuffer(lengths, data, open);
+    }
+
+    /**
+     * Round endpoints of given parameter outwards to the grid, intervals that start to overlap are merged.
+     * @return Number of remaining endpoints.
+     */
+    private int quantize(int param, @NotNull double[] data, @NotNull boolean[] open, int count) {
+        int written = 0;
+        for (int j=0; j<count; j++) {
+            double value = data[j];
+            boolean isOpen = open[j];
+            double index = (value - lowerBounds[param]) / steps[param];
+            //values outside of the range and NaN index (empty range) are kept
+            if (index > 0 && index < GRID) {
+                index = j % 2 == 0 ? Math.floor(index) : Math.ceil(index);
+                value = lowerBounds[param] + index * steps[param];
+                isOpen &= value == data[j];
+            }
+            if (j % 2 == 0 && written > 0 && value <= data[written - 1]) {
+                //lower endpoint is covered by the previous interval, extend it instead
+                written--;
+            } else {
+                data[written] = value;
+                open[written++] = isOpen;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * @param previous Grid index of the last endpoint of this parameter stored as a grid point, 0 if there is none.
+     * @return Grid index of given value if it has been stored as a grid point, previous otherwise.
+     */
+    private int writeEndpoint(@NotNull ByteBuffer buffer, int param, double value, boolean open, int previous) {
+        byte bound = open ? OPEN : 0;
+        if (value == lowerBounds[param]) {
+            buffer.put((byte) (LOWER | bound));
+        } else if (value == upperBounds[param]) {
+            buffer.put((byte) (UPPER | bound));
+        } else {
+            //NaN index (empty range) fails all comparisons and falls through
+            double index = Math.rint((value - lowerBounds[param]) / steps[param]);
+            if (index >= previous && index <= GRID && lowerBounds[param] + index * steps[param] == value) {
+                buffer.put((byte) (QUANTIZED | bound));
+                writeVarLong(buffer, (long) index - previous);
+                return (int) index;
+            } else if ((float) value == value) {
+                buffer.put((byte) (FLOAT | bound));
+                buffer.putFloat((float) value);
+            } else {
+                buffer.put((byte) (DOUBLE | bound));
+                buffer.putDouble(value);
+            }
+        }
+        return previous;
+    }
+
+    private double readEndpoint(@NotNull ByteBuffer buffer, byte tag, int param) {
+        switch (tag) {
+            case LOWER:
+                return lowerBounds[param];
+            case UPPER:
+                return upperBounds[param];
+            case FLOAT:
+                return buffer.getFloat();
+            case DOUBLE:
+                return buffer.getDouble();
+            default:
+                throw new IllegalStateException("Unknown endpoint tag: "+tag);
+        }
+    }
+
+    /** Write non negative value using 7 bits per byte, highest bit marks that more bytes follow. */
+    static void writeVarLong(@NotNull ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static long readVarLong(@NotNull ByteBuffer buffer) {
+        long result = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            result |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return result;
+    }
+}
@@ -0,0 +1,157 @@
+package cz.muni.fi.ode;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Equations of the model translated into flat primitive arrays, so that they can be evaluated without
+ * iterating boxed lists and fixing variable indexes on every call.
+ *
+ * Sum members of all equations are stored one after another. Factors of one member are stored as
+ * a contiguous block in the same order as they are evaluated from SumMember: ramps, variables, steps.
+ * Sum members of the model stay the source of truth, this is only a faster copy built after the model is loaded.
+ *
+ * Evaluation does not allocate and does not modify anything, so it can be used by several threads at once.
+ */
+public class CompiledEquations {
+
+    private static final byte RAMP = 0;
+    private static final byte VAR = 1;
+    private static final byte STEP = 2;
+
+    //thresholds of variable v are stored from thresholdStart[v]
+    @NotNull private final int[] thresholdStart;
+    @NotNull private final double[] thresholds;
+
+    //members of equation for variable v are stored from memberStart[v] to memberStart[v+1]
+    @NotNull private final int[] memberStart;
+    @NotNull private final double[] constants;
+    @NotNull private final boolean[] hasParam;
+    //factors of member m are stored from factorStart[m] to factorStart[m+1], ramps end at rampEnd[m]
+    @NotNull private final int[] factorStart;
+    @NotNull private final int[] rampEnd;
+
+    @NotNull private final byte[] opcodes;
+    //variable index (from 0) of every factor
+    @NotNull private final int[] variables;
+    //ramp: min, max, min value, signed value span; step: theta, value below, value above
+    @NotNull private final double[] p0;
+    @NotNull private final double[] p1;
+    @NotNull private final double[] p2;
+    @NotNull private final double[] p3;
+
+    public CompiledEquations(@NotNull OdeModel model) {
+        int variableCount = model.getVariableCount();
+        thresholdStart = new int[variableCount + 1];
+        memberStart = new int[variableCount + 1];
+        int memberCount = 0;
+        int factorCount = 0;
+        for (int v = 0; v < variableCount; v++) {
+            thresholdStart[v + 1] = thresholdStart[v] + model.getThresholdCountForVariable(v);
+            for (@NotNull SumMember member : model.getEquationForVariable(v)) {
+                memberCount++;
+                factorCount += member.getRamps().size() + member.getVars().size() + member.getSteps().size();
+            }
+        }
+        thresholds = new double[thresholdStart[variableCount]];
+        for (int v = 0; v < variableCount; v++) {
+            for (int i = 0; i < model.getThresholdCountForVariable(v); i++) {
+                thresholds[thresholdStart[v] + i] = model.getThresholdValueForVariableByIndex(v, i);
+            }
+        }
+
+        constants = new double[memberCount];
+        hasParam = new boolean[memberCount];
+        factorStart = new int[memberCount + 1];
+        rampEnd = new int[memberCount];
+        opcodes = new byte[factorCount];
+        variables = new int[factorCount];
+        p0 = new double[factorCount];
+        p1 = new double[factorCount];
+        p2 = new double[factorCount];
+        p3 = new double[factorCount];
+
+        int m = 0;
+        int f = 0;
+        for (int v = 0; v < variableCount; v++) {
+            memberStart[v] = m;
+            @NotNull List<SumMember> equation = model.getEquationForVariable(v);
+            for (@NotNull SumMember member : equation) {
+                constants[m] = member.getConstant();
+                hasParam[m] = member.hasParam();
+                factorStart[m] = f;
+                //sum member indexes variables from 1
+                for (@NotNull Ramp ramp : member.getRamps()) {
+                    opcodes[f] = RAMP;
+                    variables[f] = ramp.dim - 1;
+                    p0[f] = ramp.min;
+                    p1[f] = ramp.max;
+                    p2[f] = ramp.min_value;
+                    double span = Math.abs(ramp.max_value - ramp.min_value);
+                    p3[f] = ramp.negative ? -span : span;
+                    f++;
+                }
+                rampEnd[m] = f;
+                for (Integer variable : member.getVars()) {
+                    opcodes[f] = VAR;
+                    variables[f] = variable - 1;
+                    f++;
+                }
+                for (@NotNull Step step : member.getSteps()) {
+                    opcodes[f] = STEP;
+                    variables[f] = step.dim - 1;
+                    p0[f] = step.theta;
+                    p1[f] = step.a;
+                    p2[f] = step.b;
+                    f++;
+                }
+                m++;
+            }
+        }
+        memberStart[variableCount] = m;
+        factorStart[m] = f;
+    }
+
+    /**
+     * Compute derivation in given vertex for specified dimension, the same way as StateSpaceGenerator does it with sum members.
+     * @param vertex Coordinates of thresholds where the computation should be performed.
+     * @param dim Index of variable whose function should be evaluated.
+     * @param result Derivation without parametrised members is written to index 0, sum of parametrised members to index 1.
+     */
+    public void evaluate(@NotNull int[] vertex, int dim, @NotNull double[] result) {
+        double derivationValue = 0;
+        double denominator = 0;
+        for (int m = memberStart[dim]; m < memberStart[dim + 1]; m++) {
+            double partialSum = constants[m];
+            for (int f = factorStart[m]; f < rampEnd[m]; f++) {
+                int variable = variables[f];
+                double x = thresholds[thresholdStart[variable] + vertex[variable]];
+                if (x >= p0[f] && x < p1[f]) {
+                    partialSum *= p2[f] + ((x - p0[f]) / (p1[f] - p0[f])) * p3[f];
+                } else {
+                    partialSum *= 0;
+                }
+                if (partialSum == 0) break;
+            }
+            if (partialSum != 0) {
+                for (int f = rampEnd[m]; f < factorStart[m + 1]; f++) {
+                    int variable = variables[f];
+                    double x = thresholds[thresholdStart[variable] + vertex[variable]];
+                    if (opcodes[f] == VAR) {
+                        partialSum *= x;
+                    } else {
+                        partialSum *= x < p0[f] ? p1[f] : p2[f];
+                    }
+                }
+            }
+            if (hasParam[m]) {
+                denominator += partialSum;
+            } else {
+                derivationValue += partialSum;
+            }
+        }
+        result[0] = derivationValue;
+        result[1] = denominator;
+    }
+}
@@ -1,7 +1,7 @@
 package cz.muni.fi.ode;
 
 
-import cz.muni.fi.ctl.formula.Formula;
+import cz.muni.fi.modelchecker.ModelAdapter;
 import cz.muni.fi.modelchecker.graph.Node;
 import org.jetbrains.annotations.NotNull;
 
@@ -16,10 +16,10 @@ public class CoordinateNode implements Node {
 
     private int owner = -1;
 
-    @NotNull
-    private final Map<Formula, TreeColorSet> formulae = new HashMap<>();
+    //dense id of local node used by formula result store, -1 for nodes of other machines
+    private int id = -1;
 
-    private Map<CoordinateNode, TreeColorSet> predecessors;
+    private Map<CoordinateNode, OdeColorSet> predecessors;
 
     public CoordinateNode(@NotNull int[] coordinates, long hash) {
         this.coordinates = new int[coordinates.length];
@@ -31,52 +31,46 @@ public class CoordinateNode implements Node {
         return predecessors != null;
     }
 
-    public synchronized void savePredecessors(@NotNull Map<CoordinateNode, TreeColorSet> predecessors) {
+    public synchronized void savePredecessors(@NotNull Map<CoordinateNode, OdeColorSet> predecessors) {
         this.predecessors = new HashMap<>();
         this.predecessors.putAll(predecessors);
     }
 
     @NotNull
-    public synchronized Map<CoordinateNode, TreeColorSet> getPredecessors(TreeColorSet borders) {
-        @NotNull Map<CoordinateNode, TreeColorSet> results = new HashMap<>();
-        for (@NotNull Map.Entry<CoordinateNode, TreeColorSet> entry : predecessors.entrySet()) {
-            @NotNull TreeColorSet colorSet = TreeColorSet.createCopy(entry.getValue());
-            colorSet.intersect(borders);
-            if (!colorSet.isEmpty()) {
+    public synchronized Map<CoordinateNode, OdeColorSet> getPredecessors(OdeColorSet borders, @NotNull OdeColorSet.Factory factory) {
+        @NotNull Map<CoordinateNode, OdeColorSet> results = new HashMap<>();
+        @NotNull OdeColorSet colorSet = factory.createEmpty(borders.parameterCount());
+        for (@NotNull Map.Entry<CoordinateNode, OdeColorSet> entry : predecessors.entrySet()) {
+            //empty results are not returned, so their color set can be reused for next edge
+            if (!entry.getValue().intersectInto(borders, colorSet)) {
                 results.put(entry.getKey(), colorSet);
+                colorSet = factory.createEmpty(borders.parameterCount());
             }
         }
         return results;
     }
 
-    public int getCoordinate(int dim) {
-        return coordinates[dim];
-    }
-
-    public void purgeFormula(Formula formula) {
-        formulae.remove(formula);
-    }
-
-    public synchronized TreeColorSet getValidColors(Formula formula) {
-        return formulae.get(formula);
-    }
-
-    public synchronized boolean addFormula(Formula formula, @NotNull TreeColorSet colors) {
-        if (colors.isEmpty()) return false;
-        TreeColorSet colorSet = formulae.get(formula);
-        if (colorSet == null) {
-            formulae.put(formula, TreeColorSet.createCopy(colors));
-            return true;
-        } else {
-            if (colorSet.encloses(colors)) {
-                return false;
-            } else {
-                colorSet.union(colors);
-                return true;
+    /**
+     * Pass saved predecessors restricted by borders to the consumer, see ModelAdapter.forEachPredecessor.
+     */
+    public void forEachPredecessor(@NotNull OdeColorSet borders, @NotNull OdeColorSet.Factory factory, @NotNull ModelAdapter.EdgeConsumer<CoordinateNode, OdeColorSet> consumer) {
+        //saved map is never modified, so it can be read without holding the lock while consumer runs
+        @NotNull Map<CoordinateNode, OdeColorSet> saved;
+        synchronized (this) {
+            saved = predecessors;
+        }
+        @NotNull OdeColorSet colorSet = factory.createEmpty(borders.parameterCount());
+        for (@NotNull Map.Entry<CoordinateNode, OdeColorSet> entry : saved.entrySet()) {
+            if (!entry.getValue().intersectInto(borders, colorSet) && consumer.accept(entry.getKey(), colorSet)) {
+                colorSet = factory.createEmpty(borders.parameterCount());
             }
         }
     }
 
+    public int getCoordinate(int dim) {
+        return coordinates[dim];
+    }
+
     @Override
     public int hashCode() {
         return (int) hash;
@@ -101,8 +95,12 @@ public class CoordinateNode implements Node {
         return Arrays.toString(coordinates) /*+" formulae: "+formulae.toString()*/;
     }
 
-    public String fullString() {
-        return Arrays.toString(coordinates) +" formulae: "+formulae.toString();
+    public int getId() {
+        return id;
+    }
+
+    void setId(int id) {
+        this.id = id;
     }
 
     public int getOwner() {
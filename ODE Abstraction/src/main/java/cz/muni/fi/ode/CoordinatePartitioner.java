@@ -0,0 +1,122 @@
+package cz.muni.fi.ode;
+
+import com.google.common.collect.Range;
+import cz.muni.fi.modelchecker.StateSpacePartitioner;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Partitioner that assigns owners to nodes based on their coordinates.
+ * Also provides a minimal orthogonal enclosure around assigned state space for purposes of proposition evaluation.
+ */
+public abstract class CoordinatePartitioner implements StateSpacePartitioner<CoordinateNode> {
+
+    //maximal number of states inspected when state space is too large to be inspected whole
+    static final int SAMPLE_SIZE = 1 << 20;
+
+    @NotNull
+    protected final OdeModel model;
+    protected final int size;
+    protected final int rank;
+
+    protected CoordinatePartitioner(@NotNull OdeModel model, int size, int rank) {
+        if (rank < 0 || rank >= size) {
+            throw new IllegalArgumentException("Rank "+rank+" is not valid for "+size+" partitions.");
+        }
+        this.model = model;
+        this.size = size;
+        this.rank = rank;
+    }
+
+    /**
+     * Create partitioner by name: hash (contiguous chunks of node hash), modulo (node hash modulo partition count),
+     * block (multi-dimensional block decomposition), morton or hilbert (contiguous chunks of space filling curve).
+     */
+    @NotNull
+    public static CoordinatePartitioner create(@NotNull String type, @NotNull OdeModel model, int size, int rank) {
+        switch (type) {
+            case "hash":
+                return new HashPartitioner(model, size, rank);
+            case "modulo":
+                return new ModuloPartitioner(model, size, rank);
+            case "block":
+                return new BlockPartitioner(model, size, rank);
+            case "morton":
+                return new CurvePartitioner(model, size, rank, CurvePartitioner.Curve.MORTON);
+            case "hilbert":
+                return new CurvePartitioner(model, size, rank, CurvePartitioner.Curve.HILBERT);
+            default:
+                throw new IllegalArgumentException("Unknown partitioner: "+type);
+        }
+    }
+
+    /**
+     * @param coordinates Coordinates of a node.
+     * @return Id of partition that owns the node.
+     */
+    public abstract int getOwner(@NotNull int[] coordinates);
+
+    /**
+     * @return Bounds of the coordinates of all nodes owned by this partition, represented by list of !threshold indexes.
+     */
+    @NotNull
+    public abstract List<Range<Integer>> getMyLimit();
+
+    @Override
+    public int getNodeOwner(@NotNull CoordinateNode node) throws IllegalArgumentException {
+        if (node.getOwner() == -1) {
+            int owner = getOwner(node.coordinates);
+            node.setOwner(owner);
+            return owner;
+        } else {
+            return node.getOwner();
+        }
+    }
+
+    @Override
+    public int getMyId() {
+        return rank;
+    }
+
+    /**
+     * Transitions of the abstraction only connect states that are adjacent in one dimension,
+     * so every pair of adjacent states is considered a possible edge.
+     * Large state spaces are estimated from a fixed random sample of states.
+     * @return Fraction of possible edges that connect states of different partitions (0 to 1).
+     */
+    public double estimateEdgeCut() {
+        long stateCount = model.getStateCount();
+        boolean sample = stateCount > SAMPLE_SIZE;
+        long inspected = sample ? SAMPLE_SIZE : stateCount;
+        @NotNull Random random = new Random(0);
+        @NotNull int[] coordinates = new int[model.getVariableCount()];
+        long edges = 0;
+        long cut = 0;
+        for (long i = 0; i < inspected; i++) {
+            model.nodeCoordinates(sample ? (long) (random.nextDouble() * stateCount) : i, coordinates);
+            int owner = getOwner(coordinates);
+            for (int dim = 0; dim < coordinates.length; dim++) {
+                if (coordinates[dim] < model.nodeIndexRange.get(dim).upperEndpoint()) {
+                    coordinates[dim]++;
+                    edges++;
+                    if (getOwner(coordinates) != owner) {
+                        cut++;
+                    }
+                    coordinates[dim]--;
+                }
+            }
+        }
+        return edges == 0 ? 0 : (double) cut / edges;
+    }
+
+    /**
+     * @return Copy of node index ranges of the whole model.
+     */
+    @NotNull
+    protected List<Range<Integer>> fullLimit() {
+        return new ArrayList<>(model.nodeIndexRange);
+    }
+}
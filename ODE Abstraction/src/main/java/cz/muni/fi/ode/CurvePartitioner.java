@@ -0,0 +1,173 @@
+package cz.muni.fi.ode;
+
+import com.google.common.collect.Range;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Orders states along a space filling curve and gives every machine a contiguous part of the curve.
+ * Consecutive states of the curve are close in all dimensions, so most edges stay inside one partition.
+ *
+ * Parts are balanced by the number of states: curve indexes of all states (or of a fixed random sample
+ * of states for large models) are sorted and split into parts of equal size.
+ */
+public class CurvePartitioner extends CoordinatePartitioner {
+
+    public enum Curve { MORTON, HILBERT }
+
+    @NotNull
+    private final Curve curve;
+    //bits per dimension
+    private final int bits;
+    @NotNull
+    private final int[] lower;
+
+    //first curve index of every partition except the first one
+    @NotNull
+    private final long[] splitters;
+
+    @NotNull
+    private final List<Range<Integer>> limit;
+
+    public CurvePartitioner(@NotNull OdeModel model, int size, int rank, @NotNull Curve curve) {
+        super(model, size, rank);
+        this.curve = curve;
+        int dimensions = model.getVariableCount();
+        lower = new int[dimensions];
+        int maxExtent = 1;
+        for (int i = 0; i < dimensions; i++) {
+            Range<Integer> range = model.nodeIndexRange.get(i);
+            lower[i] = range.lowerEndpoint();
+            maxExtent = Math.max(maxExtent, range.upperEndpoint() - range.lowerEndpoint() + 1);
+        }
+        bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(maxExtent - 1));
+        if (bits * dimensions > 63) {
+            throw new IllegalArgumentException("Curve index of "+dimensions+" dimensions with "+bits+" bits does not fit into long.");
+        }
+
+        //compute curve indexes of all or sampled states
+        long stateCount = model.getStateCount();
+        boolean sample = stateCount > SAMPLE_SIZE;
+        @NotNull long[] keys = new long[(int) (sample ? SAMPLE_SIZE : stateCount)];
+        @NotNull Random random = new Random(0);
+        @NotNull int[] coordinates = new int[dimensions];
+        for (int i = 0; i < keys.length; i++) {
+            model.nodeCoordinates(sample ? (long) (random.nextDouble() * stateCount) : i, coordinates);
+            keys[i] = curveIndex(coordinates);
+        }
+        Arrays.sort(keys);
+        splitters = new long[size - 1];
+        for (int i = 0; i < splitters.length; i++) {
+            splitters[i] = keys.length == 0 ? Long.MAX_VALUE : keys[(int) ((long) (i + 1) * keys.length / size)];
+        }
+
+        //if all states are known, compute exact enclosure of my states
+        if (sample) {
+            limit = fullLimit();
+        } else {
+            @NotNull int[] min = new int[dimensions];
+            @NotNull int[] max = new int[dimensions];
+            Arrays.fill(min, Integer.MAX_VALUE);
+            Arrays.fill(max, Integer.MIN_VALUE);
+            for (long i = 0; i < stateCount; i++) {
+                model.nodeCoordinates(i, coordinates);
+                if (getOwner(coordinates) == rank) {
+                    for (int d = 0; d < dimensions; d++) {
+                        min[d] = Math.min(min[d], coordinates[d]);
+                        max[d] = Math.max(max[d], coordinates[d]);
+                    }
+                }
+            }
+            limit = new ArrayList<>();
+            for (int d = 0; d < dimensions; d++) {
+                //no states for this machine
+                limit.add(min[d] <= max[d] ? Range.closed(min[d], max[d]) : Range.closed(lower[d], lower[d]));
+            }
+        }
+        System.err.println(rank+" Partitioner: "+curve+" curve with "+bits+" bits per dimension, My Ranges: "+Arrays.toString(limit.toArray()));
+    }
+
+    @Override
+    public int getOwner(@NotNull int[] coordinates) {
+        long key = curveIndex(coordinates);
+        //number of splitters that are lower or equal to key
+        int low = 0;
+        int high = splitters.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (splitters[middle] <= key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    @NotNull
+    @Override
+    public List<Range<Integer>> getMyLimit() {
+        return new ArrayList<>(limit);
+    }
+
+    /**
+     * @return Position of the state with given coordinates on the curve.
+     */
+    long curveIndex(@NotNull int[] coordinates) {
+        @NotNull int[] x = new int[coordinates.length];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = coordinates[i] - lower[i];
+        }
+        if (curve == Curve.HILBERT) {
+            axesToTranspose(x, bits);
+        }
+        //interleave bits, most significant first
+        long key = 0;
+        for (int bit = bits - 1; bit >= 0; bit--) {
+            for (int value : x) {
+                key = (key << 1) | ((value >>> bit) & 1);
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Transform coordinates into transposed Hilbert index (J. Skilling, Programming the Hilbert curve, 2004).
+     * Interleaving bits of the result gives the Hilbert index.
+     */
+    private static void axesToTranspose(@NotNull int[] x, int bits) {
+        int n = x.length;
+        if (n == 0) return;
+        int m = 1 << (bits - 1);
+        //inverse undo
+        for (int q = m; q > 1; q >>= 1) {
+            int p = q - 1;
+            for (int i = 0; i < n; i++) {
+                if ((x[i] & q) != 0) {
+                    x[0] ^= p;  //invert
+                } else {    //exchange
+                    int t = (x[0] ^ x[i]) & p;
+                    x[0] ^= t;
+                    x[i] ^= t;
+                }
+            }
+        }
+        //gray encode
+        for (int i = 1; i < n; i++) {
+            x[i] ^= x[i - 1];
+        }
+        int t = 0;
+        for (int q = m; q > 1; q >>= 1) {
+            if ((x[n - 1] & q) != 0) {
+                t ^= q - 1;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            x[i] ^= t;
+        }
+    }
+}
@@ -27,8 +27,8 @@ public class HashNode implements Node {
     public final short owner;
 
     //these are package private so we can use other classes to print them
-    final Map<Formula, TreeColorSet> formulae = new HashMap<>();
-    Map<HashNode, TreeColorSet> predecessors;
+    final Map<Formula, OdeColorSet> formulae = new HashMap<>();
+    Map<HashNode, OdeColorSet> predecessors;
 
     /**
      * @param hash Hash ID of the node.
@@ -49,7 +49,7 @@ public class HashNode implements Node {
     /**
      * @param predecessors Predecessors that should be saved in this node.
      */
-    public synchronized void savePredecessors(@NotNull Map<HashNode, TreeColorSet> predecessors) {
+    public synchronized void savePredecessors(@NotNull Map<HashNode, OdeColorSet> predecessors) {
         if (this.predecessors != null) {
             throw new IllegalStateException("Adding predecessors to state which already has them: "+toString());
         }
@@ -60,18 +60,20 @@ public class HashNode implements Node {
     /**
      * Return predecessors of this state (if they are available) constrained by given borders.
      * @param borders Parametric set that constrains the relevant edges.
+     * @param factory Factory used to create color sets of returned edges.
      * @return Predecessors of this node that satisfy given constrain.
      */
-    @NotNull public synchronized Map<HashNode, TreeColorSet> getPredecessors(@NotNull TreeColorSet borders) {
+    @NotNull public synchronized Map<HashNode, OdeColorSet> getPredecessors(@NotNull OdeColorSet borders, @NotNull OdeColorSet.Factory factory) {
         if (predecessors == null) {
             throw new IllegalStateException("Reading predecessors of state which does not have them: "+toString());
         }
-        @NotNull Map<HashNode, TreeColorSet> results = new HashMap<>();
-        for (@NotNull Map.Entry<HashNode, TreeColorSet> entry : predecessors.entrySet()) {
-            @NotNull TreeColorSet colorSet = TreeColorSet.createCopy(entry.getValue());
-            colorSet.intersect(borders);
-            if (!colorSet.isEmpty()) {
+        @NotNull Map<HashNode, OdeColorSet> results = new HashMap<>();
+        @NotNull OdeColorSet colorSet = factory.createEmpty(borders.parameterCount());
+        for (@NotNull Map.Entry<HashNode, OdeColorSet> entry : predecessors.entrySet()) {
+            //empty results are not returned, so their color set can be reused for next edge
+            if (!entry.getValue().intersectInto(borders, colorSet)) {
                 results.put(entry.getKey(), colorSet);
+                colorSet = factory.createEmpty(borders.parameterCount());
             }
         }
         return results;
@@ -79,16 +81,19 @@ public class HashNode implements Node {
 
     /**
      * Remove all saved data about specified formula. (This is mainly for memory usage optimization with deep formulas)
+     * @return Approximate number of freed bytes.
      */
-    public synchronized void purgeFormula(@NotNull Formula formula) {
-        formulae.remove(formula);
+    public synchronized long purgeFormula(@NotNull Formula formula) {
+        @Nullable OdeColorSet colors = formulae.remove(formula);
+        //map entry and the color set
+        return colors == null ? 0 : 32 + colors.estimatedSize();
     }
 
     /**
      * Return colors for which given formula holds in this node.
      * @return Null if formula does not hold in this node.
      */
-    @Nullable public synchronized TreeColorSet getValidColors(@NotNull Formula formula) {
+    @Nullable public synchronized OdeColorSet getValidColors(@NotNull Formula formula) {
         return formulae.get(formula);
     }
 
@@ -99,19 +104,14 @@ public class HashNode implements Node {
      * @param colors Color set for which formula holds.
      * @return True if any new information has been obtained, false otherwise.
      */
-    public synchronized boolean addFormula(Formula formula, @NotNull TreeColorSet colors) {
+    public synchronized boolean addFormula(Formula formula, @NotNull OdeColorSet colors) {
         if (colors.isEmpty()) return false;
-        TreeColorSet colorSet = formulae.get(formula);
+        OdeColorSet colorSet = formulae.get(formula);
         if (colorSet == null) {
-            formulae.put(formula, TreeColorSet.createCopy(colors));
+            formulae.put(formula, colors.copy());
             return true;
         } else {
-            if (colorSet.encloses(colors)) {
-                return false;
-            } else {
-                colorSet.union(colors);
-                return true;
-            }
+            return colorSet.union(colors);
         }
     }
 
@@ -1,7 +1,6 @@
 package cz.muni.fi.ode;
 
 import com.google.common.collect.Range;
-import cz.muni.fi.modelchecker.StateSpacePartitioner;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
@@ -10,22 +9,17 @@ import java.util.List;
 
 /**
  * Is responsible for splitting state space to several chunks that can be processed on each machine separately.
- * Also provides a minimal orthogonal enclosure around assigned state space for purposes of proposition evaluation.
+ * Every machine gets a contiguous chunk of node hashes.
  */
-public class HashPartitioner implements StateSpacePartitioner<CoordinateNode> {
+public class HashPartitioner extends CoordinatePartitioner {
 
 
-    private final int rank;
     private int statesPerMachine;
 
-    @NotNull
-    private final OdeModel model;
-
     private List<Range<Integer>> limit = new ArrayList<>();
 
     public HashPartitioner(@NotNull OdeModel odeModel, int size, int rank) {
-        this.rank = rank;
-        this.model = odeModel;
+        super(odeModel, size, rank);
 
         int stateCount = (int) model.getStateCount();
         //find out how much states a machine will be dealing with
@@ -74,10 +68,12 @@ public class HashPartitioner implements StateSpacePartitioner<CoordinateNode> {
     }
 
     @Override
-    public int getMyId() {
-        return rank;
+    public int getOwner(@NotNull int[] coordinates) {
+        return (int) (model.nodeHash(coordinates) / statesPerMachine);
     }
 
+    @NotNull
+    @Override
     public List<Range<Integer>> getMyLimit() {
         return new ArrayList<>(limit);
     }
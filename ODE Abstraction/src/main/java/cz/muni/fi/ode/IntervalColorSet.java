@@ -0,0 +1,507 @@
+package cz.muni.fi.ode;
+
+import com.google.common.collect.BoundType;
+import com.google.common.collect.Range;
+import cz.muni.fi.modelchecker.graph.ColorSet;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Color set that stores intervals of each parameter in a sorted primitive array of endpoints.
+ * Intervals of one parameter are disjoint and not touching (touching intervals are merged).
+ *
+ * Every endpoint is a cut that lies either just below or just above its value (closed lower and open upper
+ * endpoints lie below, open lower and closed upper endpoints lie above). Interval contains values between
+ * its two cuts, so subtraction leaves open endpoints exactly like TreeColorSet does.
+ * Only values are written by writeEndpoints, bound types of endpoints are written by writeOpenEndpoints.
+ * Sets created from a buffer without bound types are closed (same as TreeColorSet).
+ *
+ * All set operations are performed as a merge of two sorted arrays. Result is computed into
+ * a thread local scratch buffer and copied back, so no objects are allocated unless the set needs to grow.
+ *
+ * This class is not thread safe.
+ */
+public class IntervalColorSet implements OdeColorSet {
+
+    public static final Factory FACTORY = new Factory() {
+        @NotNull
+        @Override
+        public OdeColorSet createEmpty(int parameterCount) {
+            return new IntervalColorSet(parameterCount);
+        }
+
+        @NotNull
+        @Override
+        public OdeColorSet createFull(@NotNull List<Range<Double>> parameterRanges) {
+            @NotNull IntervalColorSet set = new IntervalColorSet(parameterRanges.size());
+            for (int i = 0; i < parameterRanges.size(); i++) {
+                @NotNull Range<Double> range = parameterRanges.get(i);
+                set.intervals[i] = new double[] { range.lowerEndpoint(), range.upperEndpoint() };
+                set.above[i] = new boolean[] {
+                        range.lowerBoundType() == BoundType.OPEN,
+                        range.upperBoundType() == BoundType.CLOSED
+                };
+                set.lengths[i] = 2;
+            }
+            return set;
+        }
+
+        @NotNull
+        @Override
+        public OdeColorSet createFromBuffer(@NotNull int[] lengths, @NotNull double[] data) {
+            @NotNull IntervalColorSet set = new IntervalColorSet(lengths.length);
+            int total = 0;
+            for (int i = 0; i < lengths.length; i++) {
+                set.intervals[i] = Arrays.copyOfRange(data, total, total + lengths[i]);
+                set.above[i] = closed(lengths[i]);
+                set.lengths[i] = lengths[i];
+                total += lengths[i];
+            }
+            return set;
+        }
+
+        @NotNull
+        @Override
+        public OdeColorSet createFromBuffer(@NotNull int[] lengths, @NotNull double[] data, @NotNull boolean[] open) {
+            @NotNull IntervalColorSet set = new IntervalColorSet(lengths.length);
+            int total = 0;
+            for (int i = 0; i < lengths.length; i++) {
+                set.intervals[i] = Arrays.copyOfRange(data, total, total + lengths[i]);
+                set.above[i] = new boolean[lengths[i]];
+                for (int j = 0; j < lengths[i]; j++) {
+                    //open lower and closed upper endpoints lie above
+                    set.above[i][j] = open[total + j] == (j % 2 == 0);
+                }
+                set.lengths[i] = lengths[i];
+                total += lengths[i];
+            }
+            return set;
+        }
+    };
+
+    private static final double[] EMPTY = new double[0];
+    private static final boolean[] EMPTY_CUTS = new boolean[0];
+
+    //merge results are written here and then copied into the modified set
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+        @NotNull
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch(16);
+        }
+    };
+
+    //for each parameter: [lower0, upper0, lower1, upper1, ...]
+    @NotNull
+    private final double[][] intervals;
+    //for each endpoint: true if the cut lies just above the value
+    @NotNull
+    private final boolean[][] above;
+    //number of valid endpoints in each intervals array
+    @NotNull
+    private final int[] lengths;
+
+    public IntervalColorSet(int parameterCount) {
+        intervals = new double[parameterCount][];
+        above = new boolean[parameterCount][];
+        lengths = new int[parameterCount];
+        Arrays.fill(intervals, EMPTY);
+        Arrays.fill(above, EMPTY_CUTS);
+    }
+
+    private IntervalColorSet(@NotNull IntervalColorSet other) {
+        intervals = new double[other.intervals.length][];
+        above = new boolean[other.above.length][];
+        lengths = Arrays.copyOf(other.lengths, other.lengths.length);
+        for (int i = 0; i < intervals.length; i++) {
+            intervals[i] = lengths[i] == 0 ? EMPTY : Arrays.copyOf(other.intervals[i], lengths[i]);
+            above[i] = lengths[i] == 0 ? EMPTY_CUTS : Arrays.copyOf(other.above[i], lengths[i]);
+        }
+    }
+
+    /** @return Cuts of given number of endpoints of closed intervals. */
+    @NotNull
+    private static boolean[] closed(int length) {
+        @NotNull boolean[] cuts = new boolean[length];
+        for (int i = 1; i < length; i += 2) {
+            cuts[i] = true;
+        }
+        return cuts;
+    }
+
+    @Override
+    public int parameterCount() {
+        return intervals.length;
+    }
+
+    @Override
+    public double lowerBound(int param) {
+        if (lengths[param] == 0) throw new NoSuchElementException("No values for parameter "+param);
+        return intervals[param][0];
+    }
+
+    @Override
+    public double upperBound(int param) {
+        if (lengths[param] == 0) throw new NoSuchElementException("No values for parameter "+param);
+        return intervals[param][lengths[param] - 1];
+    }
+
+    @Override
+    public int endpointCount(int param) {
+        return lengths[param];
+    }
+
+    @Override
+    public long estimatedSize() {
+        //object, all three arrays and every non empty interval and cut array (empty ones are shared)
+        long size = 16 + 2 * (16 + 8 * intervals.length) + 16 + 4 * lengths.length;
+        for (@NotNull double[] interval : intervals) {
+            if (interval != EMPTY) size += 16 + 8 * interval.length;
+        }
+        for (@NotNull boolean[] cuts : above) {
+            if (cuts != EMPTY_CUTS) size += 16 + cuts.length;
+        }
+        return size;
+    }
+
+    @Override
+    public int writeEndpoints(int param, @NotNull double[] buffer, int offset) {
+        System.arraycopy(intervals[param], 0, buffer, offset, lengths[param]);
+        return lengths[param];
+    }
+
+    @Override
+    public int writeOpenEndpoints(int param, @NotNull boolean[] buffer, int offset) {
+        for (int j = 0; j < lengths[param]; j++) {
+            buffer[offset + j] = above[param][j] == (j % 2 == 0);
+        }
+        return lengths[param];
+    }
+
+    @NotNull
+    @Override
+    public OdeColorSet copy() {
+        return new IntervalColorSet(this);
+    }
+
+    @NotNull
+    @Override
+    public OdeColorSet derive(int param, double lower, double upper) {
+        @NotNull IntervalColorSet result = new IntervalColorSet(this);
+        result.store(param, intersect(
+                intervals[param], above[param], lengths[param],
+                new double[] { lower, upper }, closed(2), 2,
+                scratch(lengths[param] + 2)
+        ));
+        return result;
+    }
+
+    @Override
+    public void intersect(@NotNull ColorSet set1) {
+        @NotNull IntervalColorSet set = (IntervalColorSet) set1;
+        for (int i = 0; i < intervals.length; i++) {
+            int length = intersect(
+                    intervals[i], above[i], lengths[i],
+                    set.intervals[i], set.above[i], set.lengths[i],
+                    scratch(lengths[i] + set.lengths[i])
+            );
+            store(i, length);
+        }
+    }
+
+    @Override
+    public void subtract(@NotNull ColorSet set1) {
+        @NotNull IntervalColorSet set = (IntervalColorSet) set1;
+        for (int i = 0; i < intervals.length; i++) {
+            if (lengths[i] == 0 || set.lengths[i] == 0) continue;
+            int length = subtract(
+                    intervals[i], above[i], lengths[i],
+                    set.intervals[i], set.above[i], set.lengths[i],
+                    scratch(lengths[i] + set.lengths[i])
+            );
+            store(i, length);
+        }
+    }
+
+    /**
+     * @return True if any new colors have been added to this set.
+     */
+    @Override
+    public boolean union(@NotNull ColorSet set1) {
+        @NotNull IntervalColorSet set = (IntervalColorSet) set1;
+        boolean change = false;
+        for (int i = 0; i < intervals.length; i++) {
+            if (set.lengths[i] == 0) continue;
+            @NotNull Scratch result = scratch(lengths[i] + set.lengths[i]);
+            int length = union(intervals[i], above[i], lengths[i], set.intervals[i], set.above[i], set.lengths[i], result);
+            //intervals are kept merged, so union is different if and only if the arrays are different
+            if (!rangeEquals(intervals[i], above[i], lengths[i], result.values, result.above, length)) {
+                change = true;
+                store(i, length);
+            }
+        }
+        return change;
+    }
+
+    @Override
+    public boolean intersectInto(@NotNull ColorSet set1, @NotNull ColorSet target1) {
+        @NotNull IntervalColorSet set = (IntervalColorSet) set1;
+        @NotNull IntervalColorSet target = (IntervalColorSet) target1;
+        boolean empty = false;
+        for (int i = 0; i < intervals.length; i++) {
+            int length = intersect(
+                    intervals[i], above[i], lengths[i],
+                    set.intervals[i], set.above[i], set.lengths[i],
+                    scratch(lengths[i] + set.lengths[i])
+            );
+            target.store(i, length);
+            empty = empty || length == 0;
+        }
+        return empty;
+    }
+
+    @Override
+    public boolean subtractAndTestEmpty(@NotNull ColorSet set) {
+        subtract(set);
+        return isEmpty();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (int length : lengths) {
+            if (length == 0) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean encloses(@NotNull ColorSet set1) {
+        @NotNull IntervalColorSet set = (IntervalColorSet) set1;
+        for (int i = 0; i < intervals.length; i++) {
+            if (!encloses(intervals[i], above[i], lengths[i], set.intervals[i], set.above[i], set.lengths[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof IntervalColorSet)) return false;
+        @NotNull IntervalColorSet set = (IntervalColorSet) o;
+        if (!Arrays.equals(lengths, set.lengths)) return false;
+        for (int i = 0; i < intervals.length; i++) {
+            if (!rangeEquals(intervals[i], above[i], lengths[i], set.intervals[i], set.above[i], lengths[i])) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 1;
+        for (int i = 0; i < intervals.length; i++) {
+            for (int j = 0; j < lengths[i]; j++) {
+                long bits = Double.doubleToLongBits(intervals[i][j]);
+                hash = 31 * hash + (int) (bits ^ (bits >>> 32));
+                hash = 2 * hash + (above[i][j] ? 1 : 0);
+            }
+            hash = 31 * hash + lengths[i];
+        }
+        return hash;
+    }
+
+    @NotNull
+    @Override
+    public String toString() {
+        @NotNull StringBuilder builder = new StringBuilder();
+        builder.append("ColorSet (");
+        for (int i = 0; i < intervals.length; i++) {
+            builder.append("[");
+            for (int j = 0; j < lengths[i]; j += 2) {
+                builder.append("<").append(intervals[i][j]).append(",").append(intervals[i][j+1]).append(">");
+            }
+            builder.append("] ");
+        }
+        builder.append(")");
+        return builder.toString();
+    }
+
+    /** Copy first length values of scratch buffer into given parameter. */
+    private void store(int param, int length) {
+        if (intervals[param].length < length) {
+            intervals[param] = new double[length];
+            above[param] = new boolean[length];
+        }
+        @NotNull Scratch scratch = SCRATCH.get();
+        System.arraycopy(scratch.values, 0, intervals[param], 0, length);
+        System.arraycopy(scratch.above, 0, above[param], 0, length);
+        lengths[param] = length;
+    }
+
+    @NotNull
+    private static Scratch scratch(int size) {
+        @NotNull Scratch buffer = SCRATCH.get();
+        if (buffer.values.length < size) {
+            buffer = new Scratch(Math.max(size, 2 * buffer.values.length));
+            SCRATCH.set(buffer);
+        }
+        return buffer;
+    }
+
+    private static class Scratch {
+
+        @NotNull
+        final double[] values;
+        @NotNull
+        final boolean[] above;
+
+        Scratch(int size) {
+            values = new double[size];
+            above = new boolean[size];
+        }
+
+        /** Write cut at given position and return next position. */
+        int write(int position, double value, boolean above) {
+            this.values[position] = value;
+            this.above[position] = above;
+            return position + 1;
+        }
+    }
+
+    private static boolean rangeEquals(
+            @NotNull double[] a, @NotNull boolean[] aAbove, int aLength,
+            @NotNull double[] b, @NotNull boolean[] bAbove, int bLength
+    ) {
+        if (aLength != bLength) return false;
+        for (int i = 0; i < aLength; i++) {
+            if (a[i] != b[i] || aAbove[i] != bAbove[i]) return false;
+        }
+        return true;
+    }
+
+    /** @return True if first cut lies strictly before the second one. */
+    private static boolean before(double value1, boolean above1, double value2, boolean above2) {
+        return value1 < value2 || (value1 == value2 && !above1 && above2);
+    }
+
+    /*
+     * Merge operations over sorted arrays of cuts. Each writes into result and returns its length.
+     * Interval is not empty if and only if its lower cut lies before its upper cut.
+     */
+
+    private static int intersect(
+            @NotNull double[] a, @NotNull boolean[] aAbove, int aLength,
+            @NotNull double[] b, @NotNull boolean[] bAbove, int bLength,
+            @NotNull Scratch result
+    ) {
+        int i = 0, j = 0, r = 0;
+        while (i < aLength && j < bLength) {
+            //later of the lower cuts and earlier of the upper cuts
+            boolean bStartsLater = before(a[i], aAbove[i], b[j], bAbove[j]);
+            double lower = bStartsLater ? b[j] : a[i];
+            boolean lowerAbove = bStartsLater ? bAbove[j] : aAbove[i];
+            boolean aEndsFirst = before(a[i+1], aAbove[i+1], b[j+1], bAbove[j+1]);
+            double upper = aEndsFirst ? a[i+1] : b[j+1];
+            boolean upperAbove = aEndsFirst ? aAbove[i+1] : bAbove[j+1];
+            if (before(lower, lowerAbove, upper, upperAbove)) {
+                r = result.write(r, lower, lowerAbove);
+                r = result.write(r, upper, upperAbove);
+            }
+            //move past the interval that ends first
+            if (aEndsFirst) {
+                i += 2;
+            } else {
+                j += 2;
+            }
+        }
+        return r;
+    }
+
+    private static int subtract(
+            @NotNull double[] a, @NotNull boolean[] aAbove, int aLength,
+            @NotNull double[] b, @NotNull boolean[] bAbove, int bLength,
+            @NotNull Scratch result
+    ) {
+        int j = 0, r = 0;
+        for (int i = 0; i < aLength; i += 2) {
+            double lower = a[i];
+            boolean lowerAbove = aAbove[i];
+            double upper = a[i+1];
+            boolean upperAbove = aAbove[i+1];
+            //skip intervals that end before this one starts (they can't overlap next intervals either)
+            while (j < bLength && !before(lower, lowerAbove, b[j+1], bAbove[j+1])) {
+                j += 2;
+            }
+            //cut out all intervals that start before this one ends
+            for (int k = j; k < bLength && before(b[k], bAbove[k], upper, upperAbove); k += 2) {
+                if (before(lower, lowerAbove, b[k], bAbove[k])) {
+                    r = result.write(r, lower, lowerAbove);
+                    r = result.write(r, b[k], bAbove[k]);
+                }
+                if (before(lower, lowerAbove, b[k+1], bAbove[k+1])) {
+                    lower = b[k+1];
+                    lowerAbove = bAbove[k+1];
+                }
+            }
+            if (before(lower, lowerAbove, upper, upperAbove)) {
+                r = result.write(r, lower, lowerAbove);
+                r = result.write(r, upper, upperAbove);
+            }
+        }
+        return r;
+    }
+
+    private static int union(
+            @NotNull double[] a, @NotNull boolean[] aAbove, int aLength,
+            @NotNull double[] b, @NotNull boolean[] bAbove, int bLength,
+            @NotNull Scratch result
+    ) {
+        int i = 0, j = 0, r = 0;
+        while (i < aLength || j < bLength) {
+            double lower, upper;
+            boolean lowerAbove, upperAbove;
+            //pick the interval that starts first
+            if (j >= bLength || (i < aLength && !before(b[j], bAbove[j], a[i], aAbove[i]))) {
+                lower = a[i];
+                lowerAbove = aAbove[i];
+                upper = a[i+1];
+                upperAbove = aAbove[i+1];
+                i += 2;
+            } else {
+                lower = b[j];
+                lowerAbove = bAbove[j];
+                upper = b[j+1];
+                upperAbove = bAbove[j+1];
+                j += 2;
+            }
+            if (r > 0 && !before(result.values[r-1], result.above[r-1], lower, lowerAbove)) {
+                //connected to previous interval
+                if (before(result.values[r-1], result.above[r-1], upper, upperAbove)) {
+                    result.write(r - 1, upper, upperAbove);
+                }
+            } else {
+                r = result.write(r, lower, lowerAbove);
+                r = result.write(r, upper, upperAbove);
+            }
+        }
+        return r;
+    }
+
+    private static boolean encloses(
+            @NotNull double[] a, @NotNull boolean[] aAbove, int aLength,
+            @NotNull double[] b, @NotNull boolean[] bAbove, int bLength
+    ) {
+        int i = 0;
+        for (int j = 0; j < bLength; j += 2) {
+            while (i < aLength && before(a[i+1], aAbove[i+1], b[j+1], bAbove[j+1])) {
+                i += 2;
+            }
+            if (i >= aLength || before(b[j], bAbove[j], a[i], aAbove[i])) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,29 @@
+package cz.muni.fi.ode;
+
+import com.google.common.collect.Range;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Assigns nodes to machines in round robin fashion by node hash modulo number of machines.
+ * Load is balanced almost perfectly, but nearly every edge crosses partitions.
+ */
+public class ModuloPartitioner extends CoordinatePartitioner {
+
+    public ModuloPartitioner(@NotNull OdeModel model, int size, int rank) {
+        super(model, size, rank);
+    }
+
+    @Override
+    public int getOwner(@NotNull int[] coordinates) {
+        return (int) (model.nodeHash(coordinates) % size);
+    }
+
+    @NotNull
+    @Override
+    public List<Range<Integer>> getMyLimit() {
+        //states of this machine are spread all over the state space
+        return fullLimit();
+    }
+}
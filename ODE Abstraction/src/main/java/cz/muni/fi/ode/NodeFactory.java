@@ -4,28 +4,89 @@ import cz.muni.fi.ctl.formula.Formula;
 import cz.muni.fi.ctl.formula.proposition.Contradiction;
 import cz.muni.fi.ctl.formula.proposition.FloatProposition;
 import cz.muni.fi.ctl.formula.proposition.Tautology;
+import cz.muni.fi.modelchecker.FormulaResultStore;
 import cz.muni.fi.modelchecker.ModelAdapter;
+import cz.muni.fi.modelchecker.graph.ColorPool;
+import cz.muni.fi.modelchecker.graph.CsrGraph;
+import cz.muni.fi.modelchecker.graph.NodeTable;
 import org.antlr.v4.runtime.misc.Nullable;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
-public class NodeFactory implements ModelAdapter<CoordinateNode, TreeColorSet> {
+/**
+ * Model adapter of ODE models. Nodes and their edges are computed on demand.
+ *
+ * All methods can be called concurrently: nodes are stored in a lock-free node table, formula results
+ * in a thread safe result store and edges are generated with thread confined buffers.
+ * Locks are only used when something is created (new node, predecessors of a node, proposition results).
+ */
+public class NodeFactory implements ModelAdapter<CoordinateNode, OdeColorSet> {
 
 
+    //propositions are added only after their results are stored
     @NotNull
-    private final Set<FloatProposition> revealedPropositions = new HashSet<>();
+    private final Set<FloatProposition> revealedPropositions = Collections.newSetFromMap(new ConcurrentHashMap<FloatProposition, Boolean>());
 
-    private final Map<Long, CoordinateNode> nodeCache = new HashMap<>();
-    private final Map<Long, CoordinateNode> borderNodes = new HashMap<>();
+    //nodes are keyed by their mixed radix hash, index of a local node in nodeCache is its id
+    @NotNull
+    private final NodeTable<CoordinateNode> nodeCache = new NodeTable<>();
+    @NotNull
+    private final NodeTable<CoordinateNode> borderNodes = new NodeTable<>();
+    @NotNull
+    private final FormulaResultStore<OdeColorSet> results = new FormulaResultStore<>(new FormulaResultStore.Copier<OdeColorSet>() {
+        @NotNull
+        @Override
+        public OdeColorSet copy(@NotNull OdeColorSet colors) {
+            return colors.copy();
+        }
+
+        @Override
+        public long sizeOf(@NotNull OdeColorSet colors) {
+            return colors.estimatedSize();
+        }
+    });
     private final OdeModel model;
     @NotNull
-    private final HashPartitioner partitioner;
+    private final CoordinatePartitioner partitioner;
     private final int myId;
-    private boolean hasAllNodes = false;
+    private volatile boolean hasAllNodes = false;
+    //guards enumeration of states (all nodes, proposition results), so that it is done only once
+    @NotNull
+    private final Object enumerationLock = new Object();
     private StateSpaceGenerator generator;
 
-    public NodeFactory(OdeModel model, @NotNull HashPartitioner partitioner) {
+    //edges of all local nodes computed in advance (see pregenerate), null if edges are computed on demand
+    //local nodes have the same index in the graph as their id
+    @org.jetbrains.annotations.Nullable
+    private volatile CsrGraph<CoordinateNode, OdeColorSet> graph;
+
+    @NotNull
+    private final CsrGraph.ColorFactory<OdeColorSet> colorFactory = new CsrGraph.ColorFactory<OdeColorSet>() {
+        @NotNull
+        @Override
+        public OdeColorSet createEmpty() {
+            return model.getEmptyColorSet();
+        }
+
+        @NotNull
+        @Override
+        public OdeColorSet copy(@NotNull OdeColorSet colors) {
+            return colors.copy();
+        }
+    };
+
+    //colors of stored edges (saved predecessors and pregenerated graph), equal sets are stored only once
+    @NotNull
+    private final ColorPool<OdeColorSet> colorPool = new ColorPool<>(colorFactory);
+
+    //number of nodes whose edges are generated by one fork join task
+    private static final int PREGENERATE_CHUNK = 64;
+
+    public NodeFactory(OdeModel model, @NotNull CoordinatePartitioner partitioner) {
         this.model = model;
         this.partitioner = partitioner;
         this.myId = partitioner.getMyId();
@@ -36,54 +97,119 @@ public class NodeFactory implements ModelAdapter<CoordinateNode, TreeColorSet> {
         return nodeCache.values();
     }
 
-    public synchronized CoordinateNode getNode(@NotNull int[] coordinates) {
+    /**
+     * @return True if node with given coordinates belongs to this partition.
+     */
+    public boolean isLocal(@NotNull int[] coordinates) {
+        return partitioner.getOwner(coordinates) == myId;
+    }
+
+    public CoordinateNode getNode(@NotNull int[] coordinates) {
         long hash = model.nodeHash(coordinates);
-        if (nodeCache.containsKey(hash)) {
-            return nodeCache.get(hash);
-        } else if (borderNodes.containsKey(hash)) {
-            return borderNodes.get(hash);
+        //lookups do not lock, only creation of new nodes is serialized
+        CoordinateNode n = nodeCache.get(hash);
+        if (n == null) {
+            n = borderNodes.get(hash);
+        }
+        if (n == null) {
+            n = createNode(coordinates, hash);
+        }
+        return n;
+    }
+
+    @NotNull
+    private synchronized CoordinateNode createNode(@NotNull int[] coordinates, long hash) {
+        CoordinateNode n = nodeCache.get(hash);
+        if (n == null) {
+            n = borderNodes.get(hash);
+        }
+        if (n != null) return n;    //created by other thread meanwhile
+        n = new CoordinateNode(coordinates, hash);
+        if (partitioner.getNodeOwner(n) == myId) {
+            n.setId(nodeCache.size());
+            return nodeCache.putIfAbsent(hash, n);
         } else {
-            @NotNull CoordinateNode n = new CoordinateNode(coordinates, hash);
-            if (partitioner.getNodeOwner(n) == myId) {
-                nodeCache.put(hash, n);
-            } else {
-                borderNodes.put(hash, n);
-            }
-            return n;
+            return borderNodes.putIfAbsent(hash, n);
         }
     }
 
     @NotNull
     @Override
-    public synchronized Map<CoordinateNode, TreeColorSet> predecessorsFor(@NotNull CoordinateNode to, @org.jetbrains.annotations.Nullable @Nullable TreeColorSet borders) {
+    public Map<CoordinateNode, OdeColorSet> predecessorsFor(@NotNull CoordinateNode to, @org.jetbrains.annotations.Nullable @Nullable OdeColorSet borders) {
+        @org.jetbrains.annotations.Nullable CsrGraph<CoordinateNode, OdeColorSet> graph = this.graph;
+        if (graph != null && graph.isSource(to.getId())) {
+            return graph.predecessorsOf(to.getId(), borders);
+        }
+        if (borders == null) {
+            borders = model.getFullColorSet();
+        }
+        ensurePredecessors(to);
+        return to.getPredecessors(borders, model.getColorSetFactory());
+    }
+
+    @Override
+    public void forEachPredecessor(@NotNull CoordinateNode to, @org.jetbrains.annotations.Nullable OdeColorSet borders, @NotNull EdgeConsumer<CoordinateNode, OdeColorSet> consumer) {
+        @org.jetbrains.annotations.Nullable CsrGraph<CoordinateNode, OdeColorSet> graph = this.graph;
+        if (graph != null && graph.isSource(to.getId())) {
+            graph.forEachPredecessor(to.getId(), borders, consumer);
+            return;
+        }
         if (borders == null) {
             borders = model.getFullColorSet();
         }
-        if (!to.hasPredecessorsFor()) {
-            Map<CoordinateNode, TreeColorSet> results = generator.getPredecessors(to, model.getFullColorSet());//getNativePredecessors(to.coordinates, model.getFullColorSet(), new HashMap<CoordinateNode, TreeColorSet>());
-            to.savePredecessors(results);
+        ensurePredecessors(to);
+        to.forEachPredecessor(borders, model.getColorSetFactory(), consumer);
+    }
+
+    private void ensurePredecessors(@NotNull CoordinateNode to) {
+        //predecessors of one node are computed only once, other nodes are not blocked meanwhile
+        synchronized (to) {
+            if (!to.hasPredecessorsFor()) {
+                Map<CoordinateNode, OdeColorSet> results = generator.getPredecessors(to, model.getFullColorSet());//getNativePredecessors(to.coordinates, model.getFullColorSet(), new HashMap<CoordinateNode, OdeColorSet>());
+                //saved colors are only read, so they can be shared with other edges
+                for (@NotNull Map.Entry<CoordinateNode, OdeColorSet> entry : results.entrySet()) {
+                    entry.setValue(colorPool.get(colorPool.intern(entry.getValue())));
+                }
+                to.savePredecessors(results);
+            }
         }
-        return to.getPredecessors(borders);
     }
 
     @NotNull
     @Override
-    public synchronized Map<CoordinateNode, TreeColorSet> successorsFor(@NotNull CoordinateNode from, @org.jetbrains.annotations.Nullable @Nullable TreeColorSet borders) {
+    public Map<CoordinateNode, OdeColorSet> successorsFor(@NotNull CoordinateNode from, @org.jetbrains.annotations.Nullable @Nullable OdeColorSet borders) {
+        @org.jetbrains.annotations.Nullable CsrGraph<CoordinateNode, OdeColorSet> graph = this.graph;
+        if (graph != null && graph.isSource(from.getId())) {
+            return graph.successorsOf(from.getId(), borders);
+        }
         if (borders == null) {
             borders = model.getFullColorSet();
         }
-        return generator.getSuccessors(from, borders); //getNativeSuccessors(from.coordinates, borders, new HashMap<CoordinateNode, TreeColorSet>());
+        return generator.getSuccessors(from, borders); //getNativeSuccessors(from.coordinates, borders, new HashMap<CoordinateNode, OdeColorSet>());
+    }
+
+    @Override
+    public void forEachSuccessor(@NotNull CoordinateNode from, @org.jetbrains.annotations.Nullable OdeColorSet borders, @NotNull EdgeConsumer<CoordinateNode, OdeColorSet> consumer) {
+        @org.jetbrains.annotations.Nullable CsrGraph<CoordinateNode, OdeColorSet> graph = this.graph;
+        if (graph != null && graph.isSource(from.getId())) {
+            graph.forEachSuccessor(from.getId(), borders, consumer);
+            return;
+        }
+        if (borders == null) {
+            borders = model.getFullColorSet();
+        }
+        //successors are generated on demand, so their colors are new sets anyway
+        for (@NotNull Map.Entry<CoordinateNode, OdeColorSet> successor : generator.getSuccessors(from, borders).entrySet()) {
+            consumer.accept(successor.getKey(), successor.getValue());
+        }
     }
 
     @NotNull
     @Override
-    public synchronized Map<CoordinateNode, TreeColorSet> initialNodes(@NotNull Formula formula) {
+    public Map<CoordinateNode, OdeColorSet> initialNodes(@NotNull Formula formula) {
         if (formula instanceof Tautology) {
-            if (!hasAllNodes) {
-                generator.cacheAllNodes();
-                hasAllNodes = true;
-            }
-            @NotNull Map<CoordinateNode, TreeColorSet> results = new HashMap<>();
+            cacheAllNodes();
+            @NotNull Map<CoordinateNode, OdeColorSet> results = new HashMap<>();
             for (CoordinateNode node : nodeCache.values()) {
                 results.put(node, model.getFullColorSet());
             }
@@ -93,20 +219,16 @@ public class NodeFactory implements ModelAdapter<CoordinateNode, TreeColorSet> {
             return new HashMap<>();
         }
         if (formula instanceof FloatProposition && !revealedPropositions.contains(formula)) {
-            @NotNull FloatProposition proposition = (FloatProposition) formula;
-            revealedPropositions.add(proposition);
-            for (CoordinateNode node : generator.initial(proposition)) {
-                //proposition is invariant to parameters
-                node.addFormula(proposition, model.getFullColorSet());
-            }
             //values are not exclusively our inner nodes, so we can't return them directly.
-            //return values;
+            revealProposition((FloatProposition) formula);
         }
-        @NotNull Map<CoordinateNode, TreeColorSet> results = new HashMap<>();
+        int slot = this.results.slotFor(formula);
+        @NotNull Map<CoordinateNode, OdeColorSet> results = new HashMap<>();
         for (CoordinateNode node : nodeCache.values()) {
-            TreeColorSet validColors = node.getValidColors(formula);
+            //store returns a copy
+            OdeColorSet validColors = this.results.get(slot, node.getId());
             if (validColors != null && !validColors.isEmpty()) {
-                results.put(node, TreeColorSet.createCopy(validColors));
+                results.put(node, validColors);
             }
         }
         return results;
@@ -114,15 +236,12 @@ public class NodeFactory implements ModelAdapter<CoordinateNode, TreeColorSet> {
 
     @NotNull
     @Override
-    public synchronized Map<CoordinateNode, TreeColorSet> invertNodeSet(@NotNull Map<CoordinateNode, TreeColorSet> nodes) {
-        if (!hasAllNodes) {
-            generator.cacheAllNodes();
-            hasAllNodes = true;
-        }
-        @NotNull Map<CoordinateNode, TreeColorSet> results = new HashMap<>();
+    public Map<CoordinateNode, OdeColorSet> invertNodeSet(@NotNull Map<CoordinateNode, OdeColorSet> nodes) {
+        cacheAllNodes();
+        @NotNull Map<CoordinateNode, OdeColorSet> results = new HashMap<>();
         for (CoordinateNode n : nodeCache.values()) {
-            @NotNull TreeColorSet full = model.getFullColorSet();
-            TreeColorSet anti = nodes.get(n);
+            @NotNull OdeColorSet full = model.getFullColorSet();
+            OdeColorSet anti = nodes.get(n);
             if (anti != null) {
                 full.subtract(anti);
             }
@@ -134,34 +253,130 @@ public class NodeFactory implements ModelAdapter<CoordinateNode, TreeColorSet> {
     }
 
     @Override
-    public synchronized boolean addFormula(@NotNull CoordinateNode node, @NotNull Formula formula, @NotNull TreeColorSet parameters) {
-        return node.addFormula(formula, parameters);
+    public boolean addFormula(@NotNull CoordinateNode node, @NotNull Formula formula, @NotNull OdeColorSet parameters) {
+        return results.add(results.slotFor(formula), node.getId(), parameters);
     }
 
     @NotNull
     @Override
-    public synchronized TreeColorSet validColorsFor(@NotNull CoordinateNode node, @NotNull Formula formula) {
+    public OdeColorSet validColorsFor(@NotNull CoordinateNode node, @NotNull Formula formula) {
         if (formula instanceof Tautology) return model.getFullColorSet();
-        if (formula instanceof Contradiction) return TreeColorSet.createEmpty(model.parameterCount());
+        if (formula instanceof Contradiction) return model.getEmptyColorSet();
         if (formula instanceof FloatProposition && !revealedPropositions.contains(formula)) {
-            @NotNull FloatProposition proposition = (FloatProposition) formula;
+            revealProposition((FloatProposition) formula);
+        }
+        OdeColorSet colorSet = results.get(results.slotFor(formula), node.getId());
+        if (colorSet == null) return model.getEmptyColorSet();
+        return colorSet;
+    }
+
+    private void revealProposition(@NotNull FloatProposition proposition) {
+        synchronized (enumerationLock) {
+            if (revealedPropositions.contains(proposition)) return;
+            int slot = results.slotFor(proposition);
+            for (CoordinateNode node : generator.initial(proposition)) {
+                //proposition is invariant to parameters
+                results.add(slot, node.getId(), model.getFullColorSet());
+            }
             revealedPropositions.add(proposition);
-            for (CoordinateNode n : generator.initial(proposition)) {
-                n.addFormula(proposition, model.getFullColorSet());
+        }
+    }
+
+    private void cacheAllNodes() {
+        if (hasAllNodes) return;
+        synchronized (enumerationLock) {
+            if (!hasAllNodes) {
+                generator.cacheAllNodes();
+                hasAllNodes = true;
             }
         }
-        TreeColorSet colorSet = node.getValidColors(formula);
-        if (colorSet == null) return TreeColorSet.createEmpty(model.parameterCount());
-        return TreeColorSet.createCopy(colorSet);
     }
 
-    @Override
-    public void purge(Formula formula) {
-        for (CoordinateNode node : nodeCache.values()) {
-            node.purgeFormula(formula);
+    /**
+     * Enumerate all local nodes and compute their successors and predecessors in parallel,
+     * so that verification does not have to generate the state space on demand.
+     * Must be called before verification starts.
+     * @param parallelism Number of threads used for the generation.
+     */
+    public void pregenerate(int parallelism) {
+        cacheAllNodes();
+        //index of a node in this list is its id
+        @NotNull List<CoordinateNode> nodes = nodeCache.values();
+        @NotNull CsrGraph.Builder<CoordinateNode, OdeColorSet> builder = new CsrGraph.Builder<>(nodes);
+        @NotNull ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            //invoke returns after all tasks are done, so their writes are visible here
+            pool.invoke(new PregenerateTask(nodes, builder, 0, nodes.size()));
+        } finally {
+            pool.shutdown();
+        }
+        graph = builder.build(colorPool);
+    }
+
+    /**
+     * @return Number of distinct colors of stored edges.
+     */
+    public int getDistinctColorCount() {
+        return colorPool.size();
+    }
+
+    /**
+     * @return Factory creating color sets of the model.
+     */
+    @NotNull
+    public CsrGraph.ColorFactory<OdeColorSet> getColorFactory() {
+        return colorFactory;
+    }
+
+    /**
+     * Generates edges of nodes in given range of ids, splits the range while it is too large.
+     */
+    //tasks are never serialized
+    @SuppressWarnings("serial")
+    private class PregenerateTask extends RecursiveAction {
+
+        @NotNull
+        private final List<CoordinateNode> nodes;
+        @NotNull
+        private final CsrGraph.Builder<CoordinateNode, OdeColorSet> builder;
+        private final int from;
+        private final int to;
+
+        private PregenerateTask(@NotNull List<CoordinateNode> nodes, @NotNull CsrGraph.Builder<CoordinateNode, OdeColorSet> builder, int from, int to) {
+            this.nodes = nodes;
+            this.builder = builder;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > PREGENERATE_CHUNK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new PregenerateTask(nodes, builder, from, middle), new PregenerateTask(nodes, builder, middle, to));
+            } else {
+                for (int id = from; id < to; id++) {
+                    @NotNull CoordinateNode node = nodes.get(id);
+                    builder.setSuccessors(id, generator.getSuccessors(node, model.getFullColorSet()));
+                    builder.setPredecessors(id, generator.getPredecessors(node, model.getFullColorSet()));
+                }
+            }
         }
     }
 
+    @Override
+    public long purge(@NotNull Formula formula) {
+        return results.purge(formula);
+    }
+
+    /**
+     * @return Coordinates of given node together with all formulas that hold in it.
+     */
+    @NotNull
+    public String fullString(@NotNull CoordinateNode node) {
+        return Arrays.toString(node.coordinates) +" formulae: "+results.describe(node.getId());
+    }
+
     public void setGenerator(StateSpaceGenerator generator) {
         this.generator = generator;
     }
@@ -0,0 +1,106 @@
+package cz.muni.fi.ode;
+
+import com.google.common.collect.Range;
+import cz.muni.fi.modelchecker.graph.ColorSet;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Color set over the parameter space of an ODE model.
+ * Every parameter is represented by its own set of intervals and color set is empty if any of those is empty.
+ *
+ * All color sets used during one computation should be created by the same factory,
+ * implementations are not required to cooperate with each other.
+ */
+public interface OdeColorSet extends ColorSet {
+
+    /**
+     * @return Number of parameters (dimensions) of this color set.
+     */
+    int parameterCount();
+
+    /**
+     * @param param Index of parameter.
+     * @return Lowest value of given parameter contained in this set.
+     * @throws java.util.NoSuchElementException Thrown if there are no values for given parameter.
+     */
+    double lowerBound(int param);
+
+    /**
+     * @param param Index of parameter.
+     * @return Highest value of given parameter contained in this set.
+     * @throws java.util.NoSuchElementException Thrown if there are no values for given parameter.
+     */
+    double upperBound(int param);
+
+    /**
+     * @param param Index of parameter.
+     * @return Number of interval endpoints stored for given parameter. (Two per interval)
+     */
+    int endpointCount(int param);
+
+    /**
+     * Write endpoints of all intervals of given parameter into buffer as [lower, upper, lower, upper, ...].
+     * Buffer has to have room for at least endpointCount(param) values.
+     * @param param Index of parameter.
+     * @param buffer Destination buffer.
+     * @param offset Index in buffer where first endpoint should be written.
+     * @return Number of written values.
+     */
+    int writeEndpoints(int param, @NotNull double[] buffer, int offset);
+
+    /**
+     * Write bound types of all endpoints of given parameter into buffer in the same order as writeEndpoints.
+     * @param param Index of parameter.
+     * @param buffer Destination buffer, true is written for open endpoints.
+     * @param offset Index in buffer where first bound type should be written.
+     * @return Number of written values.
+     */
+    int writeOpenEndpoints(int param, @NotNull boolean[] buffer, int offset);
+
+    /**
+     * @return Approximate number of bytes used by this set, including object headers. Used only for statistics.
+     */
+    long estimatedSize();
+
+    /**
+     * @return New independent color set with the same content.
+     */
+    @NotNull OdeColorSet copy();
+
+    /**
+     * Create a copy of this set where given parameter is restricted to values between lower and upper bound.
+     * Bounds themselves are kept in the set, infinite bounds do not restrict anything.
+     * @param param Index of restricted parameter.
+     * @param lower Lowest value that should be kept.
+     * @param upper Highest value that should be kept.
+     * @return New restricted color set.
+     */
+    @NotNull OdeColorSet derive(int param, double lower, double upper);
+
+    /**
+     * Creates new color sets of one specific implementation.
+     */
+    interface Factory {
+
+        @NotNull OdeColorSet createEmpty(int parameterCount);
+
+        @NotNull OdeColorSet createFull(@NotNull List<Range<Double>> parameterRanges);
+
+        /**
+         * @param lengths Number of endpoints for each parameter.
+         * @param data Endpoints of all parameters stored consecutively as written by writeEndpoints.
+         * @return Set of closed intervals.
+         */
+        @NotNull OdeColorSet createFromBuffer(@NotNull int[] lengths, @NotNull double[] data);
+
+        /**
+         * @param lengths Number of endpoints for each parameter.
+         * @param data Endpoints of all parameters stored consecutively as written by writeEndpoints.
+         * @param open Bound types of endpoints stored in the same way as written by writeOpenEndpoints.
+         */
+        @NotNull OdeColorSet createFromBuffer(@NotNull int[] lengths, @NotNull double[] data, @NotNull boolean[] open);
+
+    }
+}
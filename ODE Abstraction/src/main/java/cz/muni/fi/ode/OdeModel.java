@@ -15,6 +15,9 @@ public class OdeModel {
 
     private final String filename;
 
+    @NotNull
+    private final OdeColorSet.Factory colorSetFactory;
+
     //Do not touch -- used in jni
     @NotNull
     private final List<Range<Integer>> variableRange = new ArrayList<>();
@@ -32,14 +35,31 @@ public class OdeModel {
     //local support data
     private long[] dimensionMultipliers;
     private long stateCount;
+    private CompiledEquations compiledEquations;
 
     public OdeModel(String filename) {
+        this(filename, IntervalColorSet.FACTORY);
+    }
+
+    /**
+     * @param filename Path to the model file.
+     * @param colorSetFactory Factory that determines which color set implementation is used with this model.
+     */
+    public OdeModel(String filename, @NotNull OdeColorSet.Factory colorSetFactory) {
         this.filename = filename;
+        this.colorSetFactory = colorSetFactory;
     }
 
     public void load() {
         cppLoad(filename);
+        prepareIndex();
+        compileEquations();
+    }
 
+    /**
+     * Compute node index ranges and hash multipliers from loaded threshold ranges.
+     */
+    void prepareIndex() {
         for (Range<Integer> range : variableRange) {
             nodeIndexRange.add(Range.closed(range.lowerEndpoint(), range.upperEndpoint() - 1));
         }
@@ -55,6 +75,25 @@ public class OdeModel {
         System.err.println("Multipliers: "+ Arrays.toString(dimensionMultipliers));
     }
 
+    /**
+     * Translate loaded equations into compiled form, see getCompiledEquations().
+     */
+    void compileEquations() {
+        compiledEquations = new CompiledEquations(this);
+    }
+
+    /**
+     * Add variable to a model that is not loaded from file (used by tests and benchmarks).
+     * Call prepareIndex() and compileEquations() when all variables are added.
+     * @param equation Sum members of the equation, variables are indexed from 1 as in native code.
+     */
+    void addVariable(@NotNull String name, @NotNull List<Double> thresholds, @NotNull List<SumMember> equation) {
+        variableOrder.add(name);
+        variableRange.add(Range.closed(0, thresholds.size() - 1));
+        this.thresholds.add(new ArrayList<>(thresholds));
+        equations.add(new ArrayList<>(equation));
+    }
+
     public long nodeHash(@NotNull int[] nodeCoordinates) {
         long res = 0;
         for (int i=0; i < dimensionMultipliers.length; i++) {
@@ -63,6 +102,18 @@ public class OdeModel {
         return res;
     }
 
+    /**
+     * Inverse of nodeHash.
+     * @param hash Hash of some node.
+     * @param result Array where coordinates of the node are written.
+     */
+    public void nodeCoordinates(long hash, @NotNull int[] result) {
+        for (int i = dimensionMultipliers.length - 1; i >= 0; i--) {
+            result[i] = (int) (hash / dimensionMultipliers[i]);
+            hash -= result[i] * dimensionMultipliers[i];
+        }
+    }
+
     public String coordinateString(int[] coordinates) {
         StringBuilder sb = new StringBuilder();
         for (int i=0; i<coordinates.length; i++) {
@@ -100,12 +151,18 @@ public class OdeModel {
     }
 
     @NotNull
-    public TreeColorSet getFullColorSet() {
-        @NotNull TreeColorSet set = TreeColorSet.createEmpty(parameterRange.size());
-        for (int i = 0; i < set.size(); i++) {
-            set.get(i).add(parameterRange.get(i));
-        }
-        return set;
+    public OdeColorSet getFullColorSet() {
+        return colorSetFactory.createFull(parameterRange);
+    }
+
+    @NotNull
+    public OdeColorSet getEmptyColorSet() {
+        return colorSetFactory.createEmpty(parameterRange.size());
+    }
+
+    @NotNull
+    public OdeColorSet.Factory getColorSetFactory() {
+        return colorSetFactory;
     }
 
     public int getVariableIndexByName(String var) {
@@ -133,6 +190,14 @@ public class OdeModel {
         return Collections.unmodifiableList(equations.get(dim));
     }
 
+    /**
+     * @return Equations of all variables in a form suitable for fast evaluation. Available after the model is loaded.
+     */
+    @NotNull
+    public CompiledEquations getCompiledEquations() {
+        return compiledEquations;
+    }
+
     public int getThresholdCountForVariable(int varIndex) {
         return thresholds.get(varIndex).size();
     }
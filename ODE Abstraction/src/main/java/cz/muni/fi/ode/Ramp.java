@@ -6,11 +6,11 @@ public class Ramp {
 
     // dim is index to model.var_names but incremented by 1. Proper using is model.getVariable(dim -1)
     final int dim;		//Warning: index of var_name from Model.h but indexing from 1 (not 0)
-    private final double min;
-    private final double max;
-    private final double min_value;
-    private final double max_value;
-    private final boolean negative;
+    final double min;
+    final double max;
+    final double min_value;
+    final double max_value;
+    final boolean negative;
 
     public Ramp(int dim, double min, double max, double min_value, double max_value) {
         this(dim, min, max, min_value, max_value, false);
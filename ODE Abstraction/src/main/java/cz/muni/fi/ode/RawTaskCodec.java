@@ -0,0 +1,126 @@
+package cz.muni.fi.ode;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Codec that writes coordinates as ints and interval endpoints as doubles.
+ * Format of node: coordinates.
+ * Format of color set: for each parameter: number of endpoints, endpoints, bound types (one byte per endpoint, 1 if open).
+ * Values and bound types of all endpoints are kept, so the encoding is lossless.
+ */
+public class RawTaskCodec implements TaskCodec {
+
+    //changes whenever the format changes, so that stored results of older versions are not read
+    public static final int VERSION = 2;
+
+    @NotNull
+    private final OdeModel model;
+    @NotNull
+    private final NodeFactory factory;
+
+    @NotNull
+    private final ThreadLocal<double[]> endpoints = new ThreadLocal<double[]>() {
+        @NotNull
+        @Override
+        protected double[] initialValue() {
+            return new double[2];
+        }
+    };
+    @NotNull
+    private final ThreadLocal<boolean[]> openEndpoints = new ThreadLocal<boolean[]>() {
+        @NotNull
+        @Override
+        protected boolean[] initialValue() {
+            return new boolean[2];
+        }
+    };
+
+    public RawTaskCodec(@NotNull OdeModel model, @NotNull NodeFactory factory) {
+        this.model = model;
+        this.factory = factory;
+    }
+
+    @Override
+    public int nodeSize(@NotNull CoordinateNode node) {
+        return 4 * node.coordinates.length;
+    }
+
+    @Override
+    public void writeNode(@NotNull ByteBuffer buffer, @NotNull CoordinateNode node) {
+        for (int coordinate : node.coordinates) {
+            buffer.putInt(coordinate);
+        }
+    }
+
+    @NotNull
+    @Override
+    public CoordinateNode readNode(@NotNull ByteBuffer buffer) {
+        @NotNull int[] coordinates = new int[model.getVariableCount()];
+        for (int i=0; i<coordinates.length; i++) {
+            coordinates[i] = buffer.getInt();
+        }
+        return factory.getNode(coordinates);
+    }
+
+    @Override
+    public int colorsSize(@NotNull OdeColorSet colors) {
+        int size = 4 * colors.parameterCount();
+        for (int i=0; i<colors.parameterCount(); i++) {
+            size += 9 * colors.endpointCount(i);
+        }
+        return size;
+    }
+
+    @Override
+    public void writeColors(@NotNull ByteBuffer buffer, @NotNull OdeColorSet colors) {
+        double[] data = endpoints.get();
+        boolean[] open = openEndpoints.get();
+        for (int i=0; i<colors.parameterCount(); i++) {
+            int count = colors.endpointCount(i);
+            if (data.length < count) {
+                data = new double[2 * count];
+                endpoints.set(data);
+                open = new boolean[2 * count];
+                openEndpoints.set(open);
+            }
+            buffer.putInt(count);
+            colors.writeEndpoints(i, data, 0);
+            colors.writeOpenEndpoints(i, open, 0);
+            for (int j=0; j<count; j++) {
+                buffer.putDouble(data[j]);
+            }
+            for (int j=0; j<count; j++) {
+                buffer.put((byte) (open[j] ? 1 : 0));
+            }
+        }
+    }
+
+    @NotNull
+    @Override
+    public OdeColorSet readColors(@NotNull ByteBuffer buffer) {
+        @NotNull int[] lengths = new int[model.parameterCount()];
+        double[] data = endpoints.get();
+        boolean[] open = openEndpoints.get();
+        int offset = 0;
+        for (int i=0; i<lengths.length; i++) {
+            lengths[i] = buffer.getInt();
+            if (data.length < offset + lengths[i]) {
+                data = Arrays.copyOf(data, 2 * (offset + lengths[i]));
+                endpoints.set(data);
+                open = Arrays.copyOf(open, data.length);
+                openEndpoints.set(open);
+            }
+            for (int j=0; j<lengths[i]; j++) {
+                data[offset + j] = buffer.getDouble();
+            }
+            for (int j=0; j<lengths[i]; j++) {
+                open[offset + j] = buffer.get() != 0;
+            }
+            offset += lengths[i];
+        }
+        return model.getColorSetFactory().createFromBuffer(lengths, data, open);
+    }
+}
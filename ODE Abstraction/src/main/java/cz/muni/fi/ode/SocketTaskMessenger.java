@@ -0,0 +1,51 @@
+package cz.muni.fi.ode;
+
+import cz.muni.fi.modelchecker.mpi.socket.SocketTransport;
+import cz.muni.fi.modelchecker.mpi.tasks.OnTaskListener;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Task messenger for processes connected by a socket transport instead of MPI.
+ * Tasks for one process are sent in batches (see BatchingTaskMessenger) and polled from the transport.
+ */
+public class SocketTaskMessenger extends CodecTaskMessenger {
+
+    @NotNull
+    private final SocketTransport transport;
+    private final int TAG;
+
+    /**
+     * @param tag Tag of task messages, must not be used by other messages of the transport.
+     */
+    public SocketTaskMessenger(@NotNull SocketTransport transport, int tag, @NotNull TaskCodec codec) {
+        this(transport, tag, codec, MpiTaskMessenger.DEFAULT_BATCH_SIZE, MpiTaskMessenger.DEFAULT_MAX_DELAY);
+    }
+
+    /**
+     * @param tag Tag of task messages, must not be used by other messages of the transport.
+     * @param codec Binary format of the tasks. Has to be the same in all processes.
+     * @param batchSize Size of batch in bytes that is sent immediately.
+     * @param maxDelay Time in milliseconds after which batch is sent even if it is not full.
+     */
+    public SocketTaskMessenger(@NotNull SocketTransport transport, int tag, @NotNull TaskCodec codec, int batchSize, long maxDelay) {
+        super(transport.getSize(), codec, batchSize, maxDelay);
+        this.transport = transport;
+        this.TAG = tag;
+    }
+
+    @Override
+    protected void sendBatch(int destination, @NotNull byte[] data, int length) {
+        transport.send(destination, TAG, data, 0, length);
+    }
+
+    @Override
+    protected boolean receiveBatch(@NotNull OnTaskListener<CoordinateNode, OdeColorSet> taskListener) {
+        @Nullable SocketTransport.Message message = transport.poll(TAG);
+        if (message == null) return false;
+        dispatchBatch(message.source, ByteBuffer.wrap(message.data), taskListener);
+        return true;
+    }
+}
@@ -4,6 +4,7 @@ import com.google.common.collect.Range;
 import com.google.common.math.IntMath;
 import cz.muni.fi.ctl.formula.proposition.FloatProposition;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
 
@@ -11,6 +12,7 @@ import java.util.*;
  * Generates the state space from provided ODE model.
  * The provided node factory is used as a means of caching and organizing nodes.
  * The generated state space is restrained by given bounds.
+ * Generator can be used by several threads at once, every thread uses its own computation buffers.
  */
 public class StateSpaceGenerator {
 
@@ -19,25 +21,55 @@ public class StateSpaceGenerator {
     private final List<Range<Integer>> coordinateBounds;
 
     /**
-     * These arrays are used in every successor/predecessor computation with fixed size.
-     * We don't want them to be allocated every time all over again, so we just init them in constructor.
+     * Buffers used in every successor/predecessor computation with fixed size.
+     * We don't want them to be allocated every time all over again, so every thread gets its own instance
+     * and generator can be used by several threads at once.
      */
+    private static class Scratch {
 
-    //array of vertex coordinates that we wanted to compute
-    @NotNull private final int[][] results;
+        //array of vertex coordinates that we wanted to compute
+        @NotNull private final int[][] results;
 
-    //helper array that holds incomplete coordinates during computation
-    @NotNull private final int[] coordinateBuffer;
+        //helper array that holds incomplete coordinates during computation
+        @NotNull private final int[] coordinateBuffer;
 
-    //helper array that specifies whether the dimension is fully computed
-    @NotNull private final boolean[] needsMoreWork;
+        //helper array that specifies whether the dimension is fully computed
+        @NotNull private final boolean[] needsMoreWork;
+
+        //data computed by calculateValue function
+        private int parameterIndex = -1;
+        private double derivationValue = 0;
+        private double denominator = 0;
+
+        //derivation and denominator loaded from vertex cache or computed by compiled equations
+        @NotNull private final double[] cached = new double[2];
+
+        private Scratch(int variableCount) {
+            //number of border vertices that we need to consider in computation
+            //n-dimensional node has 2^n vertices, but we have one dimension fixed, therefore -1
+            int numberOfAdjacentNodes = IntMath.pow(2, variableCount - 1);
+            results = new int[numberOfAdjacentNodes][variableCount];
+            coordinateBuffer = new int[variableCount];
+            needsMoreWork = new boolean[variableCount];
+        }
+    }
+
+    @NotNull
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @NotNull
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch(model.getVariableCount());
+        }
+    };
 
+    //derivations in vertices are shared by neighbouring states, so they are computed only once
+    @Nullable
+    private final VertexCache vertexCache;
 
-    //global data used by calculateValue function
-    //global variables are ugly, but we need this to be really fast
-    private int parameterIndex = -1;
-    private double derivationValue = 0;
-    private double denominator = 0;
+    //index of parameter used in equation of every variable, -1 if there is none
+    @NotNull
+    private final int[] parameterIndexes;
 
     /**
      * @param model ODE model with proper abstraction used as a source of data.
@@ -45,17 +77,26 @@ public class StateSpaceGenerator {
      * @param coordinateBounds Bounds for state space generator represented by list of !threshold indexes. (Last index is therefore considered as upper bound of last state)
      */
     public StateSpaceGenerator(OdeModel model, NodeFactory factory, List<Range<Integer>> coordinateBounds) {
+        this(model, factory, coordinateBounds, true);
+    }
+
+    /**
+     * @param cacheDerivations If false, derivations are computed every time they are needed.
+     */
+    StateSpaceGenerator(OdeModel model, NodeFactory factory, List<Range<Integer>> coordinateBounds, boolean cacheDerivations) {
         this.model = model;
         this.factory = factory;
         this.coordinateBounds = coordinateBounds;
-
-        //number of border vertices that we need to consider in computation
-        //n-dimensional node has 2^n vertices, but we have one dimension fixed, therefore -1
-        int numberOfAdjacentNodes = IntMath.pow(2, model.getVariableCount() - 1);
-        results = new int[numberOfAdjacentNodes][model.getVariableCount()];
-        coordinateBuffer = new int[model.getVariableCount()];
-        needsMoreWork = new boolean[model.getVariableCount()];
-
+        this.vertexCache = cacheDerivations ? new VertexCache(model) : null;
+        this.parameterIndexes = new int[model.getVariableCount()];
+        for (int dim = 0; dim < parameterIndexes.length; dim++) {
+            parameterIndexes[dim] = -1;
+            for (@NotNull SumMember sumMember : model.getEquationForVariable(dim)) {
+                if (sumMember.hasParam()) {
+                    parameterIndexes[dim] = sumMember.getParam() - 1;
+                }
+            }
+        }
     }
 
     /**
@@ -65,7 +106,7 @@ public class StateSpaceGenerator {
      * @return A set of transitions in form of a map with "predecessor->transition borders" pairs.
      */
     @NotNull
-    public Map<CoordinateNode, TreeColorSet> getPredecessors(@NotNull CoordinateNode from, @NotNull TreeColorSet borders) {
+    public Map<CoordinateNode, OdeColorSet> getPredecessors(@NotNull CoordinateNode from, @NotNull OdeColorSet borders) {
         return getDirectedEdges(from, borders, false);
     }
 
@@ -76,7 +117,7 @@ public class StateSpaceGenerator {
      * @return A set of transitions in form of a map with "successor->transition borders" pairs.
      */
     @NotNull
-    public Map<CoordinateNode, TreeColorSet> getSuccessors(@NotNull CoordinateNode from, @NotNull TreeColorSet borders) {
+    public Map<CoordinateNode, OdeColorSet> getSuccessors(@NotNull CoordinateNode from, @NotNull OdeColorSet borders) {
         return getDirectedEdges(from, borders, true);
     }
 
@@ -135,9 +176,10 @@ public class StateSpaceGenerator {
     }
 
     @NotNull
-    private Map<CoordinateNode, TreeColorSet> getDirectedEdges(@NotNull CoordinateNode from, @NotNull TreeColorSet border, boolean successors) {
+    private Map<CoordinateNode, OdeColorSet> getDirectedEdges(@NotNull CoordinateNode from, @NotNull OdeColorSet border, boolean successors) {
 
-        @NotNull Map<CoordinateNode, TreeColorSet> results = new HashMap<>();
+        @NotNull Map<CoordinateNode, OdeColorSet> results = new HashMap<>();
+        @NotNull Scratch scratch = this.scratch.get();
 
         boolean hasSelfLoop = true;
 
@@ -149,7 +191,7 @@ public class StateSpaceGenerator {
             boolean upperPositiveDirection = false;
             boolean upperNegativeDirection = false;
 
-            @NotNull int[][] vertices = computeBorderVerticesForState(from, dimension, true);
+            @NotNull int[][] vertices = computeBorderVerticesForState(scratch, from, dimension, true);
 
             double upperParameterSplit = Double.POSITIVE_INFINITY;
             double lowerParameterSplit = Double.NEGATIVE_INFINITY;
@@ -157,25 +199,26 @@ public class StateSpaceGenerator {
             // cycle for every vertices in lower (n-1)-dimensional facet of this state
             for (int[] vertex : vertices) {
 
-                calculateValue(vertex, dimension);
+                calculateValue(scratch, vertex, dimension);
 
-                if (parameterIndex != -1) {
+                if (scratch.parameterIndex != -1) {
 
                     // lowest and highest values of parameter space for chosen variable
-                    Range<Double> paramBounds = border.get(parameterIndex).span();
+                    double lowerParamBound = border.lowerBound(scratch.parameterIndex);
+                    double upperParamBound = border.upperBound(scratch.parameterIndex);
 
-                    if (Math.abs(denominator) != 0) {
+                    if (Math.abs(scratch.denominator) != 0) {
 
-                        double parameterSplitValue = (-derivationValue/denominator) == -0 ? 0 : -derivationValue/denominator;
+                        double parameterSplitValue = (-scratch.derivationValue/scratch.denominator) == -0 ? 0 : -scratch.derivationValue/scratch.denominator;
 
                         if(successors) {
-                            if(denominator < 0 && paramBounds.upperEndpoint() >= parameterSplitValue) {
+                            if(scratch.denominator < 0 && upperParamBound >= parameterSplitValue) {
                                 lowerNegativeDirection = true;
 
                                 if(lowerParameterSplit == Double.NEGATIVE_INFINITY || (lowerParameterSplit > parameterSplitValue))
                                 lowerParameterSplit = parameterSplitValue;
                             }
-                            if(derivationValue < 0 && denominator > 0 && paramBounds.lowerEndpoint() <= parameterSplitValue) {
+                            if(scratch.derivationValue < 0 && scratch.denominator > 0 && lowerParamBound <= parameterSplitValue) {
                                 lowerNegativeDirection = true;
 
                                 if(upperParameterSplit == Double.POSITIVE_INFINITY || (upperParameterSplit < parameterSplitValue)) {
@@ -183,14 +226,14 @@ public class StateSpaceGenerator {
                                 }
                             }
                         } else {	// !successors
-                            if(denominator > 0 && paramBounds.upperEndpoint() >= parameterSplitValue) {
+                            if(scratch.denominator > 0 && upperParamBound >= parameterSplitValue) {
                                 lowerPositiveDirection = true;
 
                                 if(lowerParameterSplit == Double.NEGATIVE_INFINITY || (lowerParameterSplit > parameterSplitValue)) {
                                     lowerParameterSplit = parameterSplitValue;
                                 }
                             }
-                            if(derivationValue > 0 && denominator < 0 && paramBounds.lowerEndpoint() <= parameterSplitValue) {
+                            if(scratch.derivationValue > 0 && scratch.denominator < 0 && lowerParamBound <= parameterSplitValue) {
                                 lowerPositiveDirection = true;
 
                                 if(upperParameterSplit == Double.POSITIVE_INFINITY || (upperParameterSplit < parameterSplitValue)) {
@@ -200,21 +243,21 @@ public class StateSpaceGenerator {
                         }
                     } else {    // abs(denominator) == 0 (ERGO: it might be at border of state space)
                         if(successors) {
-                            if(derivationValue < 0) {
+                            if(scratch.derivationValue < 0) {
                                 lowerNegativeDirection = true;
-                                lowerParameterSplit = paramBounds.lowerEndpoint(); //Double.NEGATIVE_INFINITY;
-                                upperParameterSplit = paramBounds.upperEndpoint(); //Double.POSITIVE_INFINITY;
+                                lowerParameterSplit = lowerParamBound; //Double.NEGATIVE_INFINITY;
+                                upperParameterSplit = upperParamBound; //Double.POSITIVE_INFINITY;
                             }
                         } else {	// !successors
-                            if(derivationValue > 0) {
+                            if(scratch.derivationValue > 0) {
                                 lowerPositiveDirection = true;
-                                lowerParameterSplit = paramBounds.lowerEndpoint(); //Double.NEGATIVE_INFINITY;
-                                upperParameterSplit = paramBounds.upperEndpoint(); //Double.POSITIVE_INFINITY;
+                                lowerParameterSplit = lowerParamBound; //Double.NEGATIVE_INFINITY;
+                                upperParameterSplit = upperParamBound; //Double.POSITIVE_INFINITY;
                             }
                         }
                     }
                 } else {    // paramIndex == -1 (ERGO: no unknown parameter in equation)
-                    if (derivationValue < 0) {
+                    if (scratch.derivationValue < 0) {
                         lowerNegativeDirection = true;
                     } else {
                         lowerPositiveDirection = true;
@@ -229,45 +272,46 @@ public class StateSpaceGenerator {
                     @NotNull int[] newStateCoors = Arrays.copyOf(from.coordinates, from.coordinates.length);
                     newStateCoors[dimension] = newStateCoors[dimension] - 1;
 
-                    TreeColorSet newPS;
-                    if(parameterIndex != -1) {
-                        newPS = TreeColorSet.derivedColorSet(border, parameterIndex, lowerParameterSplit, upperParameterSplit);
+                    OdeColorSet newPS;
+                    if(scratch.parameterIndex != -1) {
+                        newPS = border.derive(scratch.parameterIndex, lowerParameterSplit, upperParameterSplit);
                     } else {
-                        newPS = TreeColorSet.createCopy(border);
+                        newPS = border.copy();
                     }
 
                     results.put(factory.getNode(newStateCoors), newPS);
                 }
             }
 
-            vertices = computeBorderVerticesForState(from, dimension, false);
-            parameterIndex = -1;
+            vertices = computeBorderVerticesForState(scratch, from, dimension, false);
+            scratch.parameterIndex = -1;
             upperParameterSplit = Double.POSITIVE_INFINITY;
             lowerParameterSplit = Double.NEGATIVE_INFINITY;
 
             // cycle for every vertices in higher (n-1)-dimensional facet of this state
             for (int[] vertex : vertices) {
 
-                calculateValue(vertex, dimension);
+                calculateValue(scratch, vertex, dimension);
 
-                if (parameterIndex != -1) {
+                if (scratch.parameterIndex != -1) {
 
                     // lowest and highest values of parameter space for chosen variable
-                    Range<Double> paramBounds = border.get(parameterIndex).span();
+                    double lowerParamBound = border.lowerBound(scratch.parameterIndex);
+                    double upperParamBound = border.upperBound(scratch.parameterIndex);
 
-                    if (Math.abs(denominator) != 0) {
+                    if (Math.abs(scratch.denominator) != 0) {
 
-                        double parameterSplit = (-derivationValue/denominator) == -0 ? 0 : -derivationValue/denominator;
+                        double parameterSplit = (-scratch.derivationValue/scratch.denominator) == -0 ? 0 : -scratch.derivationValue/scratch.denominator;
 
                         if(!successors) {
-                            if(denominator < 0 && paramBounds.upperEndpoint() >= parameterSplit) {
+                            if(scratch.denominator < 0 && upperParamBound >= parameterSplit) {
                                 upperNegativeDirection = true;
 
                                 if(lowerParameterSplit == Double.NEGATIVE_INFINITY || (lowerParameterSplit > parameterSplit)) {
                                     lowerParameterSplit = parameterSplit;
                                 }
                             }
-                            if(derivationValue < 0 && denominator > 0 && paramBounds.lowerEndpoint() <= parameterSplit) {
+                            if(scratch.derivationValue < 0 && scratch.denominator > 0 && lowerParamBound <= parameterSplit) {
                                 upperNegativeDirection = true;
 
                                 if(upperParameterSplit == Double.POSITIVE_INFINITY || (upperParameterSplit < parameterSplit)) {
@@ -275,14 +319,14 @@ public class StateSpaceGenerator {
                                 }
                             }
                         } else {	// successors
-                            if(denominator > 0 && paramBounds.upperEndpoint() >= parameterSplit) {
+                            if(scratch.denominator > 0 && upperParamBound >= parameterSplit) {
                                 upperPositiveDirection = true;
 
                                 if(lowerParameterSplit == Double.NEGATIVE_INFINITY || (lowerParameterSplit > parameterSplit)) {
                                     lowerParameterSplit = parameterSplit;
                                 }
                             }
-                            if(derivationValue > 0 && denominator < 0 && paramBounds.lowerEndpoint() <= parameterSplit) {
+                            if(scratch.derivationValue > 0 && scratch.denominator < 0 && lowerParamBound <= parameterSplit) {
                                 upperPositiveDirection = true;
 
                                 if(upperParameterSplit == Double.POSITIVE_INFINITY || (upperParameterSplit < parameterSplit)) {
@@ -293,22 +337,22 @@ public class StateSpaceGenerator {
                     } else {    // abs(denominator) == 0 (ERGO: it might be at border of state space)
 
                         if(!successors) {
-                            if(derivationValue < 0) {
+                            if(scratch.derivationValue < 0) {
                                 upperNegativeDirection = true;
-                                lowerParameterSplit = paramBounds.lowerEndpoint(); //Double.NEGATIVE_INFINITY;
-                                upperParameterSplit = paramBounds.upperEndpoint(); //Double.POSITIVE_INFINITY;
+                                lowerParameterSplit = lowerParamBound; //Double.NEGATIVE_INFINITY;
+                                upperParameterSplit = upperParamBound; //Double.POSITIVE_INFINITY;
                             }
                         } else {	// successors
-                            if(derivationValue > 0) {
+                            if(scratch.derivationValue > 0) {
                                 upperPositiveDirection = true;
-                                lowerParameterSplit = paramBounds.lowerEndpoint(); //Double.NEGATIVE_INFINITY;
-                                upperParameterSplit = paramBounds.upperEndpoint(); //Double.POSITIVE_INFINITY;
+                                lowerParameterSplit = lowerParamBound; //Double.NEGATIVE_INFINITY;
+                                upperParameterSplit = upperParamBound; //Double.POSITIVE_INFINITY;
                             }
                         }
                     }
 
                 } else {    // paramIndex == -1 (ERGO: no unknown parameter in equation)
-                    if (derivationValue < 0) {
+                    if (scratch.derivationValue < 0) {
                         upperNegativeDirection = true;
                     } else {
                         upperPositiveDirection = true;
@@ -322,11 +366,11 @@ public class StateSpaceGenerator {
                     @NotNull int[] newStateCoors = Arrays.copyOf(from.coordinates, from.coordinates.length);
                     newStateCoors[dimension] = newStateCoors[dimension] + 1;
 
-                    TreeColorSet newPS;
-                    if(parameterIndex != -1) {
-                        newPS = TreeColorSet.derivedColorSet(border, parameterIndex, lowerParameterSplit, upperParameterSplit);
+                    OdeColorSet newPS;
+                    if(scratch.parameterIndex != -1) {
+                        newPS = border.derive(scratch.parameterIndex, lowerParameterSplit, upperParameterSplit);
                     } else {
-                        newPS = TreeColorSet.createCopy(border);
+                        newPS = border.copy();
                     }
 
                     results.put(factory.getNode(newStateCoors), newPS);
@@ -351,14 +395,40 @@ public class StateSpaceGenerator {
 
     /**
      * Compute derivation in given vertex for specified dimension by evaluating the function for given variable.
-     * Modifies global variables to contain Derivation of specified variable in given vertex as given by function specified in the model.
+     * Modifies scratch data to contain Derivation of specified variable in given vertex as given by function specified in the model.
+     * Equations are evaluated in compiled form (see CompiledEquations).
      * @param vertex Coordinates of thresholds where the computation should be performed.
      * @param dim Index of variable whose function should be evaluated.
      */
-    private void calculateValue(int[] vertex, int dim) {
-        derivationValue = 0;
-        denominator = 0;
-        parameterIndex = -1;
+    private void calculateValue(@NotNull Scratch scratch, int[] vertex, int dim) {
+        //parameter index does not depend on the vertex
+        scratch.parameterIndex = parameterIndexes[dim];
+        long key = -1;
+        if (vertexCache != null) {
+            key = vertexCache.key(vertex, dim);
+            if (vertexCache.load(key, scratch.cached)) {
+                scratch.derivationValue = scratch.cached[0];
+                scratch.denominator = scratch.cached[1];
+                return;
+            }
+        }
+
+        model.getCompiledEquations().evaluate(vertex, dim, scratch.cached);
+        scratch.derivationValue = scratch.cached[0];
+        scratch.denominator = scratch.cached[1];
+        if (vertexCache != null) {
+            vertexCache.store(key, scratch.derivationValue, scratch.denominator);
+        }
+    }
+
+    /**
+     * Evaluate equation directly from sum members of the model. This is the reference implementation
+     * of compiled equations, it is slower and used only to check them.
+     * @param result Derivation without parametrised members is written to index 0, sum of parametrised members to index 1.
+     */
+    static void interpretEquation(@NotNull OdeModel model, @NotNull int[] vertex, int dim, @NotNull double[] result) {
+        double derivationValue = 0;
+        double denominator = 0;
 
         for (@NotNull SumMember sumMember : model.getEquationForVariable(dim)) {
             //init partial sum to constant part of the equation member
@@ -387,7 +457,6 @@ public class StateSpaceGenerator {
 
             if (sumMember.hasParam()) {
                 //we set values for following parameter splitting computation
-                parameterIndex = sumMember.getParam() - 1;
                 denominator += partialSum;
             } else {
                 //if sum member does not have a parameter, just add all of this to the final sum
@@ -395,6 +464,8 @@ public class StateSpaceGenerator {
             }
 
         }
+        result[0] = derivationValue;
+        result[1] = denominator;
     }
 
     /**
@@ -402,13 +473,18 @@ public class StateSpaceGenerator {
      * to only lower or higher threshold.
      * (Vertex - coordinates of thresholds; Node - coordinates of "space" between several vertices.)
      *
+     * @param scratch Buffers of calling thread, result is stored in its results array.
      * @param node Questioned node.
      * @param fixedDimension Index of fixed dimension.
      * @param lowerThreshold If true, only lower threshold is considered on fixed dimension. Higher otherwise.
      * @return Array of vertex coordinates that match given constrains.
      */
     @NotNull
-    private int[][] computeBorderVerticesForState(@NotNull CoordinateNode node, int fixedDimension, boolean lowerThreshold) {
+    private int[][] computeBorderVerticesForState(@NotNull Scratch scratch, @NotNull CoordinateNode node, int fixedDimension, boolean lowerThreshold) {
+
+        @NotNull int[][] results = scratch.results;
+        @NotNull int[] coordinateBuffer = scratch.coordinateBuffer;
+        @NotNull boolean[] needsMoreWork = scratch.needsMoreWork;
 
         int activeIndex = 0;        //which dimension of coordinates we are working on
         int resultCounter = 0;      //index in results where we want to write final coordinates
@@ -492,7 +568,10 @@ public class StateSpaceGenerator {
         while (activeIndex >= 0) {
             if (activeIndex == model.getVariableCount()) {
                 //if all dimensions are processed, put resulting node in the collection
-                results.add(factory.getNode(coordinateBuffer));
+                //(bounds can also enclose nodes of other partitions, these are never evaluated here)
+                if (factory.isLocal(coordinateBuffer)) {
+                    results.add(factory.getNode(coordinateBuffer));
+                }
                 activeIndex--;
                 //skip dimensions that are already completed
                 while (activeIndex >= 0 && remainingWork[activeIndex] < 0) {
@@ -5,9 +5,9 @@ import org.jetbrains.annotations.NotNull;
 public class Step {
 
     final int dim;		//Warning: index of var_name from Model.h but indexing from 1 (not 0)
-    private final double theta;
-    private final double a;
-    private final double b;
+    final double theta;
+    final double a;
+    final double b;
     private final boolean positive;
 
     public Step(int dim, double theta, double a, double b) {
@@ -0,0 +1,30 @@
+package cz.muni.fi.ode;
+
+import cz.muni.fi.modelchecker.ResultCache;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Binary format of nodes and color sets sent between processes.
+ * Both sides of the communication have to use the same codec.
+ * Implementations have to be safe to use from multiple threads.
+ * Lossless codecs can also be used to store results in a ResultCache.
+ */
+public interface TaskCodec extends ResultCache.Codec<CoordinateNode, OdeColorSet> {
+
+    /** @return Upper bound on the number of bytes written by writeNode. */
+    int nodeSize(@NotNull CoordinateNode node);
+
+    void writeNode(@NotNull ByteBuffer buffer, @NotNull CoordinateNode node);
+
+    @NotNull CoordinateNode readNode(@NotNull ByteBuffer buffer);
+
+    /** @return Upper bound on the number of bytes written by writeColors. */
+    int colorsSize(@NotNull OdeColorSet colors);
+
+    void writeColors(@NotNull ByteBuffer buffer, @NotNull OdeColorSet colors);
+
+    @NotNull OdeColorSet readColors(@NotNull ByteBuffer buffer);
+
+}
@@ -1,16 +1,49 @@
 package cz.muni.fi.ode;
 
+import com.google.common.collect.BoundType;
 import com.google.common.collect.Range;
 import com.google.common.collect.RangeSet;
 import com.google.common.collect.TreeRangeSet;
 import cz.muni.fi.modelchecker.graph.ColorSet;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
-public class TreeColorSet extends ArrayList<RangeSet<Double>> implements ColorSet {
+public class TreeColorSet extends ArrayList<RangeSet<Double>> implements OdeColorSet {
+
+    public static final Factory FACTORY = new Factory() {
+        @NotNull
+        @Override
+        public OdeColorSet createEmpty(int parameterCount) {
+            return TreeColorSet.createEmpty(parameterCount);
+        }
+
+        @NotNull
+        @Override
+        public OdeColorSet createFull(@NotNull List<Range<Double>> parameterRanges) {
+            @NotNull TreeColorSet set = TreeColorSet.createEmpty(parameterRanges.size());
+            for (int i = 0; i < set.size(); i++) {
+                set.get(i).add(parameterRanges.get(i));
+            }
+            return set;
+        }
+
+        @NotNull
+        @Override
+        public OdeColorSet createFromBuffer(@NotNull int[] lengths, @NotNull double[] data) {
+            return TreeColorSet.createFromBuffer(lengths, data);
+        }
+
+        @NotNull
+        @Override
+        public OdeColorSet createFromBuffer(@NotNull int[] lengths, @NotNull double[] data, @NotNull boolean[] open) {
+            return TreeColorSet.createFromBuffer(lengths, data, open);
+        }
+    };
 
     @NotNull
     public static TreeColorSet createEmpty(int dimensions) {
@@ -91,12 +124,25 @@ public class TreeColorSet extends ArrayList<RangeSet<Double>> implements ColorSe
 
     @NotNull
     public static TreeColorSet createFromBuffer(@NotNull int[] lengths, double[] data) {
+        return createFromBuffer(lengths, data, null);
+    }
+
+    /**
+     * @param open Bound types of endpoints (true for open), null if all intervals are closed.
+     */
+    @NotNull
+    public static TreeColorSet createFromBuffer(@NotNull int[] lengths, double[] data, @Nullable boolean[] open) {
         @NotNull TreeColorSet newSet = new TreeColorSet(lengths.length);
         int total = 0;
         for (int length : lengths) {
             @NotNull RangeSet<Double> ranges = TreeRangeSet.create();
             for (int i = 0; i < length; i+=2) {
-                ranges.add(Range.closed(data[total+i], data[total+i+1]));
+                if (open == null) {
+                    ranges.add(Range.closed(data[total+i], data[total+i+1]));
+                } else {
+                    ranges.add(Range.range(data[total+i], open[total+i] ? BoundType.OPEN : BoundType.CLOSED,
+                            data[total+i+1], open[total+i+1] ? BoundType.OPEN : BoundType.CLOSED));
+                }
             }
             newSet.add(ranges);
             total += length;
@@ -118,7 +164,9 @@ public class TreeColorSet extends ArrayList<RangeSet<Double>> implements ColorSe
         return false;
     }
 
-    public boolean encloses(@NotNull TreeColorSet set) {
+    @Override
+    public boolean encloses(@NotNull ColorSet set1) {
+        @NotNull TreeColorSet set = (TreeColorSet) set1;
         for (int i=0; i<size(); i++) {
             if (!get(i).enclosesAll(set.get(i))) {
                 return false;
@@ -127,6 +175,68 @@ public class TreeColorSet extends ArrayList<RangeSet<Double>> implements ColorSe
         return true;
     }
 
+    @Override
+    public int parameterCount() {
+        return size();
+    }
+
+    @Override
+    public double lowerBound(int param) {
+        return get(param).span().lowerEndpoint();
+    }
+
+    @Override
+    public double upperBound(int param) {
+        return get(param).span().upperEndpoint();
+    }
+
+    @Override
+    public int endpointCount(int param) {
+        return 2 * get(param).asRanges().size();
+    }
+
+    @Override
+    public int writeEndpoints(int param, @NotNull double[] buffer, int offset) {
+        int i = offset;
+        for (@NotNull Range<Double> range : get(param).asRanges()) {
+            buffer[i++] = range.lowerEndpoint();
+            buffer[i++] = range.upperEndpoint();
+        }
+        return i - offset;
+    }
+
+    @Override
+    public int writeOpenEndpoints(int param, @NotNull boolean[] buffer, int offset) {
+        int i = offset;
+        for (@NotNull Range<Double> range : get(param).asRanges()) {
+            buffer[i++] = range.lowerBoundType() == BoundType.OPEN;
+            buffer[i++] = range.upperBoundType() == BoundType.OPEN;
+        }
+        return i - offset;
+    }
+
+    @Override
+    public long estimatedSize() {
+        //list with one tree range set per parameter, every range is a tree map entry with a range, two cuts and two doubles
+        long size = 40 + 8 * size();
+        for (@NotNull RangeSet<Double> ranges : this) {
+            size += 64 + 128 * ranges.asRanges().size();
+        }
+        return size;
+    }
+
+    @NotNull
+    @Override
+    public OdeColorSet copy() {
+        return createCopy(this);
+    }
+
+    @NotNull
+    @Override
+    public OdeColorSet derive(int param, double lower, double upper) {
+        return derivedColorSet(this, param, lower, upper);
+    }
+
     @NotNull
     @SuppressWarnings("UnusedDeclaration")
     public Range<Double>[] asArrayForParam(int i) {
@@ -155,11 +265,33 @@ public class TreeColorSet extends ArrayList<RangeSet<Double>> implements ColorSe
     @Override
     public void intersect(ColorSet set1) {
         @NotNull TreeColorSet set = (TreeColorSet) set1;
+        if (set == this) return;
+        for (int i=0; i<size(); i++) {
+            //complement is just a view, so no temporary copy is needed
+            get(i).removeAll(set.get(i).complement());
+        }
+    }
+
+    @Override
+    public boolean intersectInto(ColorSet set1, ColorSet target1) {
+        @NotNull TreeColorSet set = (TreeColorSet) set1;
+        @NotNull TreeColorSet target = (TreeColorSet) target1;
+        boolean empty = false;
         for (int i=0; i<size(); i++) {
-            @NotNull RangeSet<Double> diff = TreeRangeSet.create(get(i));
-            diff.removeAll(set.get(i));
-            get(i).removeAll(diff);
+            @NotNull RangeSet<Double> result = TreeRangeSet.create();
+            for (@NotNull Range<Double> range : set.get(i).asRanges()) {
+                result.addAll(get(i).subRangeSet(range));
+            }
+            target.set(i, result);
+            empty = empty || result.isEmpty();
         }
+        return empty;
+    }
+
+    @Override
+    public boolean subtractAndTestEmpty(ColorSet set) {
+        subtract(set);
+        return isEmpty();
     }
 
     @Override
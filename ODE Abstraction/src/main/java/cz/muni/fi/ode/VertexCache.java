@@ -0,0 +1,131 @@
+package cz.muni.fi.ode;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Caches derivations computed in vertices of the threshold grid, so that vertices shared by neighbouring
+ * states are evaluated only once.
+ *
+ * Vertex is identified by a mixed radix index of its threshold coordinates, every vertex has one entry per dimension.
+ * When all entries fit into DENSE_LIMIT, they are stored in a dense array. Otherwise a direct mapped cache
+ * of fixed size is used and colliding entries replace each other.
+ *
+ * Values are deterministic, so concurrent threads can compute and store the same entry without locking.
+ * If vertex indexes don't fit into long, nothing is cached.
+ */
+class VertexCache {
+
+    //maximal number of entries in dense mode (two longs per entry)
+    private static final long DENSE_LIMIT = 1 << 21;
+    //number of entries in direct mapped mode
+    private static final int SPARSE_SIZE = 1 << 18;
+
+    private final int dimensions;
+    @Nullable
+    private final long[] multipliers;
+
+    //dense mode: derivation and denominator bits of entry i are at 2*i and 2*i+1, NaN means not computed
+    @Nullable
+    private final AtomicLongArray dense;
+    //sparse mode: immutable entries, so they can be replaced without locking
+    @Nullable
+    private final Entry[] sparse;
+
+    private static class Entry {
+
+        private final long key;
+        private final double derivation;
+        private final double denominator;
+
+        private Entry(long key, double derivation, double denominator) {
+            this.key = key;
+            this.derivation = derivation;
+            this.denominator = denominator;
+        }
+    }
+
+    VertexCache(@NotNull OdeModel model) {
+        dimensions = model.getVariableCount();
+        @NotNull long[] multipliers = new long[dimensions];
+        long entries = dimensions;
+        boolean overflow = false;
+        for (int i = 0; i < dimensions && !overflow; i++) {
+            multipliers[i] = entries;
+            int thresholds = Math.max(1, model.getThresholdCountForVariable(i));
+            overflow = entries > Long.MAX_VALUE / thresholds;
+            entries *= thresholds;
+        }
+        if (overflow) {
+            this.multipliers = null;
+            dense = null;
+            sparse = null;
+        } else if (entries <= DENSE_LIMIT) {
+            this.multipliers = multipliers;
+            dense = new AtomicLongArray((int) (2 * entries));
+            long nan = Double.doubleToRawLongBits(Double.NaN);
+            for (int i = 0; i < dense.length(); i++) {
+                dense.set(i, nan);
+            }
+            sparse = null;
+        } else {
+            this.multipliers = multipliers;
+            dense = null;
+            sparse = new Entry[SPARSE_SIZE];
+        }
+    }
+
+    /**
+     * @return Key of given vertex and dimension or -1 if nothing can be cached.
+     */
+    long key(@NotNull int[] vertex, int dimension) {
+        if (multipliers == null) return -1;
+        long key = dimension;
+        for (int i = 0; i < dimensions; i++) {
+            key += multipliers[i] * vertex[i];
+        }
+        return key;
+    }
+
+    /**
+     * @param result Array where derivation and denominator are written.
+     * @return True if entry has been found.
+     */
+    boolean load(long key, @NotNull double[] result) {
+        if (key < 0) return false;
+        if (dense != null) {
+            double derivation = Double.longBitsToDouble(dense.get(2 * (int) key));
+            double denominator = Double.longBitsToDouble(dense.get(2 * (int) key + 1));
+            if (Double.isNaN(derivation) || Double.isNaN(denominator)) return false;
+            result[0] = derivation;
+            result[1] = denominator;
+            return true;
+        } else if (sparse != null) {
+            @Nullable Entry entry = sparse[slot(key)];
+            if (entry == null || entry.key != key) return false;
+            result[0] = entry.derivation;
+            result[1] = entry.denominator;
+            return true;
+        }
+        return false;
+    }
+
+    void store(long key, double derivation, double denominator) {
+        if (key < 0) return;
+        if (dense != null) {
+            dense.lazySet(2 * (int) key, Double.doubleToRawLongBits(derivation));
+            dense.lazySet(2 * (int) key + 1, Double.doubleToRawLongBits(denominator));
+        } else if (sparse != null) {
+            sparse[slot(key)] = new Entry(key, derivation, denominator);
+        }
+    }
+
+    private static int slot(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key & (SPARSE_SIZE - 1);
+    }
+}
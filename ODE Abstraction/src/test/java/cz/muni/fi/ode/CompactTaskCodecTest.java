@@ -0,0 +1,155 @@
+package cz.muni.fi.ode;
+
+import com.google.common.collect.Range;
+import cz.muni.fi.ctl.formula.proposition.Tautology;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for compact task codec.
+ */
+public class CompactTaskCodecTest {
+
+    @NotNull
+    private static OdeModel model() {
+        //model is not loaded, only parameter ranges are needed for color encoding
+        @NotNull OdeModel model = new OdeModel("none");
+        model.getParameterRange().add(Range.closed(0.0, 10.0));
+        model.getParameterRange().add(Range.closed(-1.0, 1.0));
+        return model;
+    }
+
+    @NotNull
+    private static OdeColorSet roundTrip(@NotNull TaskCodec codec, @NotNull OdeColorSet colors) {
+        @NotNull ByteBuffer buffer = ByteBuffer.allocate(codec.colorsSize(colors));
+        codec.writeColors(buffer, colors);
+        buffer.flip();
+        @NotNull OdeColorSet result = codec.readColors(buffer);
+        assertEquals(0, buffer.remaining());
+        return result;
+    }
+
+    @Test
+    public void colorsAreEncodedLosslessly() {
+        @NotNull OdeModel model = model();
+        @NotNull NodeFactory factory = new NodeFactory(model, new HashPartitioner(model, 1, 0));
+        @NotNull TaskCodec codec = new CompactTaskCodec(model, factory);
+        @NotNull OdeColorSet full = model.getFullColorSet();
+        assertEquals(full, roundTrip(codec, full));
+        @NotNull OdeColorSet quantized = full.derive(0, 2.5, 7.5);
+        assertEquals(quantized, roundTrip(codec, quantized));
+        @NotNull OdeColorSet arbitrary = full.derive(1, -1.0 / 3, Math.PI / 10);
+        assertEquals(arbitrary, roundTrip(codec, arbitrary));
+        @NotNull OdeColorSet empty = model.getEmptyColorSet();
+        assertTrue(roundTrip(codec, empty).isEmpty());
+    }
+
+    /**
+     * @return Colors of some edge generated from the model that are split inside of the parameter range.
+     */
+    @NotNull
+    private static OdeColorSet splitEdge(@NotNull OdeModel model, @NotNull NodeFactory factory) {
+        for (@NotNull CoordinateNode node : factory.initialNodes(Tautology.INSTANCE).keySet()) {
+            for (@NotNull OdeColorSet colors : factory.successorsFor(node, null).values()) {
+                for (int i = 0; i < model.parameterCount(); i++) {
+                    if (!colors.isEmpty() && colors.endpointCount(i) > 0
+                            && colors.lowerBound(i) > model.getParameterRange().get(i).lowerEndpoint()) {
+                        return colors;
+                    }
+                }
+            }
+        }
+        throw new AssertionError("Model has no split edges.");
+    }
+
+    private static int size(@NotNull TaskCodec codec, @NotNull OdeColorSet colors) {
+        @NotNull ByteBuffer buffer = ByteBuffer.allocate(codec.colorsSize(colors));
+        codec.writeColors(buffer, colors);
+        return buffer.position();
+    }
+
+    @Test
+    public void generatedSplitsAreQuantized() {
+        @NotNull OdeModel model = TestModels.ring(2, 5);
+        @NotNull CoordinatePartitioner partitioner = new HashPartitioner(model, 1, 0);
+        @NotNull NodeFactory factory = new NodeFactory(model, partitioner);
+        factory.setGenerator(new StateSpaceGenerator(model, factory, partitioner.getMyLimit()));
+        @NotNull OdeColorSet colors = splitEdge(model, factory);
+        @NotNull TaskCodec raw = new RawTaskCodec(model, factory);
+        @NotNull TaskCodec lossless = new CompactTaskCodec(model, factory);
+        @NotNull TaskCodec quantized = new CompactTaskCodec(model, factory, true);
+        //split values are arbitrary doubles, so only quantization makes them smaller
+        assertEquals(colors, roundTrip(lossless, colors));
+        assertTrue(size(lossless, colors) <= size(raw, colors));
+        assertTrue(size(quantized, colors) * 4 <= size(raw, colors));
+        @NotNull OdeColorSet approximation = roundTrip(quantized, colors);
+        assertTrue(approximation.encloses(colors));
+        assertFalse(approximation.equals(colors));
+        //every endpoint moves by at most one grid step
+        for (int i = 0; i < model.parameterCount(); i++) {
+            double step = (model.getParameterRange().get(i).upperEndpoint() - model.getParameterRange().get(i).lowerEndpoint()) / 0xFFFF;
+            assertEquals(colors.lowerBound(i), approximation.lowerBound(i), step);
+            assertEquals(colors.upperBound(i), approximation.upperBound(i), step);
+        }
+    }
+
+    @Test
+    public void overlappingQuantizedIntervalsAreMerged() {
+        @NotNull OdeModel model = model();
+        @NotNull NodeFactory factory = new NodeFactory(model, new HashPartitioner(model, 1, 0));
+        //both intervals are rounded to the same grid points
+        @NotNull OdeColorSet colors = model.getFullColorSet().derive(0, 1e-7, 2e-7);
+        colors.union(model.getFullColorSet().derive(0, 3e-7, 4e-7));
+        @NotNull OdeColorSet approximation = roundTrip(new CompactTaskCodec(model, factory, true), colors);
+        assertTrue(approximation.encloses(colors));
+        assertEquals(2, approximation.endpointCount(0));
+    }
+
+    @Test
+    public void openEndpointsAreKept() {
+        for (@NotNull OdeColorSet.Factory colorSetFactory : new OdeColorSet.Factory[] { IntervalColorSet.FACTORY, TreeColorSet.FACTORY }) {
+            @NotNull OdeModel model = new OdeModel("none", colorSetFactory);
+            model.getParameterRange().add(Range.closed(0.0, 10.0));
+            @NotNull NodeFactory factory = new NodeFactory(model, new HashPartitioner(model, 1, 0));
+            //(0, 2.5), (7.5, 8) and (3 * pi, 10]
+            @NotNull OdeColorSet colors = model.getFullColorSet();
+            colors.subtract(model.getFullColorSet().derive(0, 0.0, 0.0));
+            colors.subtract(model.getFullColorSet().derive(0, 2.5, 7.5));
+            colors.subtract(model.getFullColorSet().derive(0, 8.0, 3 * Math.PI));
+            for (@NotNull TaskCodec codec : new TaskCodec[] { new RawTaskCodec(model, factory), new CompactTaskCodec(model, factory) }) {
+                assertEquals(colors, roundTrip(codec, colors));
+            }
+            //lower bound of the range is not rounded, so it stays open
+            @NotNull OdeColorSet approximation = roundTrip(new CompactTaskCodec(model, factory, true), colors);
+            assertTrue(approximation.encloses(colors));
+            assertFalse(approximation.encloses(model.getFullColorSet().derive(0, 0.0, 0.0)));
+        }
+    }
+
+    @Test
+    public void compactIsSmallerThanRaw() {
+        @NotNull OdeModel model = model();
+        @NotNull NodeFactory factory = new NodeFactory(model, new HashPartitioner(model, 1, 0));
+        @NotNull OdeColorSet colors = model.getFullColorSet().derive(0, 2.5, 10);
+        assertTrue(size(new CompactTaskCodec(model, factory), colors) * 4 <= size(new RawTaskCodec(model, factory), colors));
+    }
+
+    @Test
+    public void varLongRoundTrip() {
+        @NotNull ByteBuffer buffer = ByteBuffer.allocate(64);
+        long[] values = { 0, 1, 127, 128, 300, Integer.MAX_VALUE, Long.MAX_VALUE };
+        for (long value : values) {
+            CompactTaskCodec.writeVarLong(buffer, value);
+        }
+        buffer.flip();
+        for (long value : values) {
+            assertEquals(value, CompactTaskCodec.readVarLong(buffer));
+        }
+    }
+}
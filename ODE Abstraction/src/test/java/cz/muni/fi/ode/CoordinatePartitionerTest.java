@@ -0,0 +1,101 @@
+package cz.muni.fi.ode;
+
+import com.google.common.collect.Range;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for coordinate partitioners.
+ */
+public class CoordinatePartitionerTest {
+
+    private static final String[] TYPES = { "hash", "modulo", "block", "morton", "hilbert" };
+
+    @NotNull
+    private static OdeModel model(int... thresholdCounts) {
+        //model is not loaded, only threshold ranges are needed for partitioning
+        @NotNull OdeModel model = new OdeModel("none");
+        for (int count : thresholdCounts) {
+            model.getThresholdRanges().add(Range.closed(0, count - 1));
+        }
+        model.prepareIndex();
+        return model;
+    }
+
+    @NotNull
+    private static List<CoordinatePartitioner> partitioners(@NotNull String type, @NotNull OdeModel model, int size) {
+        @NotNull List<CoordinatePartitioner> result = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            result.add(CoordinatePartitioner.create(type, model, size, i));
+        }
+        return result;
+    }
+
+    @Test
+    public void everyStateHasOneOwnerInsideItsLimit() {
+        @NotNull OdeModel model = model(10, 7, 5);
+        int size = 6;
+        for (@NotNull String type : TYPES) {
+            @NotNull List<CoordinatePartitioner> partitioners = partitioners(type, model, size);
+            @NotNull int[] counts = new int[size];
+            @NotNull int[] coordinates = new int[3];
+            for (long hash = 0; hash < model.getStateCount(); hash++) {
+                model.nodeCoordinates(hash, coordinates);
+                int owner = partitioners.get(0).getOwner(coordinates);
+                assertTrue(type, owner >= 0 && owner < size);
+                counts[owner]++;
+                //all partitioners agree on the owner
+                for (@NotNull CoordinatePartitioner partitioner : partitioners) {
+                    assertEquals(type, owner, partitioner.getOwner(coordinates));
+                }
+                @NotNull List<Range<Integer>> limit = partitioners.get(owner).getMyLimit();
+                for (int d = 0; d < coordinates.length; d++) {
+                    assertTrue(type, limit.get(d).contains(coordinates[d]));
+                }
+            }
+            for (int count : counts) {
+                //all partitioners are reasonably balanced on this model
+                assertTrue(type+" "+count, count > 0 && count <= 2 * model.getStateCount() / size);
+            }
+        }
+    }
+
+    @Test
+    public void localityReducesEdgeCut() {
+        @NotNull OdeModel model = model(17, 17, 17);
+        double hash = CoordinatePartitioner.create("hash", model, 8, 0).estimateEdgeCut();
+        double modulo = CoordinatePartitioner.create("modulo", model, 8, 0).estimateEdgeCut();
+        assertTrue(hash < modulo);
+        for (@NotNull String type : new String[] { "block", "morton", "hilbert" }) {
+            assertTrue(type, CoordinatePartitioner.create(type, model, 8, 0).estimateEdgeCut() < hash);
+        }
+    }
+
+    @Test
+    public void hilbertCurveIsContinuous() {
+        @NotNull OdeModel model = model(9, 9, 9);
+        @NotNull CurvePartitioner partitioner = new CurvePartitioner(model, 1, 0, CurvePartitioner.Curve.HILBERT);
+        @NotNull long[] keys = new long[(int) model.getStateCount()];
+        @NotNull int[][] byKey = new int[keys.length][];
+        @NotNull int[] coordinates = new int[3];
+        for (int hash = 0; hash < keys.length; hash++) {
+            model.nodeCoordinates(hash, coordinates);
+            long key = partitioner.curveIndex(coordinates);
+            byKey[(int) key] = coordinates.clone();
+        }
+        //consecutive states on the curve differ in exactly one coordinate by one
+        for (int i = 1; i < byKey.length; i++) {
+            int distance = 0;
+            for (int d = 0; d < 3; d++) {
+                distance += Math.abs(byKey[i][d] - byKey[i - 1][d]);
+            }
+            assertEquals(1, distance);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package cz.muni.fi.ode;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Random;
+
+/**
+ * Compares evaluation of equations from sum members with compiled equations and checks that
+ * both give exactly the same derivations. Run main method manually, this is not a part of the test suite.
+ */
+public class EquationBenchmark {
+
+    private static final int VARIABLES = 6;
+    private static final int THRESHOLDS = 30;
+    private static final int VERTICES = 200000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        @NotNull OdeModel model = TestModels.ring(VARIABLES, THRESHOLDS);
+        @NotNull Random random = new Random(42);
+        @NotNull int[][] vertices = new int[VERTICES][VARIABLES];
+        for (@NotNull int[] vertex : vertices) {
+            for (int i = 0; i < VARIABLES; i++) {
+                vertex[i] = random.nextInt(THRESHOLDS);
+            }
+        }
+
+        //check
+        @NotNull double[] expected = new double[2];
+        @NotNull double[] actual = new double[2];
+        for (@NotNull int[] vertex : vertices) {
+            for (int dim = 0; dim < VARIABLES; dim++) {
+                StateSpaceGenerator.interpretEquation(model, vertex, dim, expected);
+                model.getCompiledEquations().evaluate(vertex, dim, actual);
+                if (Double.doubleToLongBits(expected[0]) != Double.doubleToLongBits(actual[0]) ||
+                        Double.doubleToLongBits(expected[1]) != Double.doubleToLongBits(actual[1])) {
+                    throw new IllegalStateException("Different results in dimension "+dim+": "+
+                            expected[0]+", "+expected[1]+" (sum members) vs "+actual[0]+", "+actual[1]+" (compiled)");
+                }
+            }
+        }
+        System.out.println("Both evaluators give identical results.");
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.currentTimeMillis();
+            //sums prevent the JIT from removing the computation
+            double interpreted = 0;
+            for (@NotNull int[] vertex : vertices) {
+                for (int dim = 0; dim < VARIABLES; dim++) {
+                    StateSpaceGenerator.interpretEquation(model, vertex, dim, expected);
+                    interpreted += expected[0] + expected[1];
+                }
+            }
+            long middle = System.currentTimeMillis();
+            double compiled = 0;
+            for (@NotNull int[] vertex : vertices) {
+                for (int dim = 0; dim < VARIABLES; dim++) {
+                    model.getCompiledEquations().evaluate(vertex, dim, actual);
+                    compiled += actual[0] + actual[1];
+                }
+            }
+            long end = System.currentTimeMillis();
+            //first rounds are just a warm up
+            if (round >= ROUNDS / 2) {
+                System.out.println("Sum members: "+(middle - start)+"ms Compiled: "+(end - middle)+"ms (checksum "+(interpreted - compiled)+")");
+            }
+        }
+    }
+}
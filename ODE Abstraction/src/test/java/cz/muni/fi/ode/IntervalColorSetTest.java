@@ -0,0 +1,184 @@
+package cz.muni.fi.ode;
+
+import com.google.common.collect.Range;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for interval color set.
+ */
+public class IntervalColorSetTest {
+
+    @NotNull
+    private static OdeColorSet set(@NotNull OdeColorSet.Factory factory, @NotNull double[]... params) {
+        @NotNull int[] lengths = new int[params.length];
+        int total = 0;
+        for (int i = 0; i < params.length; i++) {
+            lengths[i] = params[i].length;
+            total += lengths[i];
+        }
+        @NotNull double[] data = new double[total];
+        total = 0;
+        for (@NotNull double[] param : params) {
+            System.arraycopy(param, 0, data, total, param.length);
+            total += param.length;
+        }
+        return factory.createFromBuffer(lengths, data);
+    }
+
+    @NotNull
+    private static double[] endpoints(@NotNull OdeColorSet set, int param) {
+        @NotNull double[] result = new double[set.endpointCount(param)];
+        set.writeEndpoints(param, result, 0);
+        return result;
+    }
+
+    @Test
+    public void unionMergesConnectedIntervals() {
+        OdeColorSet set = set(IntervalColorSet.FACTORY, new double[] {0, 1, 4, 5});
+        assertTrue(set.union(set(IntervalColorSet.FACTORY, new double[] {1, 2, 3, 4})));
+        assertArrayEquals(new double[] {0, 2, 3, 5}, endpoints(set, 0), 0);
+        assertFalse(set.union(set(IntervalColorSet.FACTORY, new double[] {0.5, 1.5, 3, 5})));
+        assertArrayEquals(new double[] {0, 2, 3, 5}, endpoints(set, 0), 0);
+        assertTrue(set.union(set(IntervalColorSet.FACTORY, new double[] {2, 3})));
+        assertArrayEquals(new double[] {0, 5}, endpoints(set, 0), 0);
+    }
+
+    @Test
+    public void subtractKeepsRemainders() {
+        OdeColorSet set = set(IntervalColorSet.FACTORY, new double[] {0, 10}, new double[] {0, 1});
+        set.subtract(set(IntervalColorSet.FACTORY, new double[] {2, 3, 5, 6}, new double[] {}));
+        assertArrayEquals(new double[] {0, 2, 3, 5, 6, 10}, endpoints(set, 0), 0);
+        assertArrayEquals(new double[] {0, 1}, endpoints(set, 1), 0);
+        set.subtract(set(IntervalColorSet.FACTORY, new double[] {0, 2, 3, 5}, new double[] {}));
+        assertArrayEquals(new double[] {6, 10}, endpoints(set, 0), 0);
+        assertFalse(set.isEmpty());
+        set.subtract(set(IntervalColorSet.FACTORY, new double[] {6, 10}, new double[] {}));
+        assertTrue(set.isEmpty());
+    }
+
+    @Test
+    public void subtractLeavesOpenEndpoints() {
+        OdeColorSet full = set(IntervalColorSet.FACTORY, new double[] {0, 10});
+        OdeColorSet set = full.copy();
+        set.subtract(set(IntervalColorSet.FACTORY, new double[] {3, 3}));
+        assertArrayEquals(new double[] {0, 3, 3, 10}, endpoints(set, 0), 0);
+        assertFalse(set.encloses(set(IntervalColorSet.FACTORY, new double[] {3, 3})));
+        assertTrue(set.encloses(set(IntervalColorSet.FACTORY, new double[] {2, 2.5})));
+        assertTrue(set.union(full));
+        assertEquals(full, set);
+        assertFalse(set.union(full));
+        //open endpoints of touching remainders connect again
+        set.subtract(set(IntervalColorSet.FACTORY, new double[] {4, 5}));
+        assertTrue(set.union(set(IntervalColorSet.FACTORY, new double[] {4, 4.5})));
+        set.union(set(IntervalColorSet.FACTORY, new double[] {4.5, 5}));
+        assertEquals(full, set);
+    }
+
+    @Test
+    public void intersectIntoLeavesOperandsIntact() {
+        OdeColorSet set = set(IntervalColorSet.FACTORY, new double[] {0, 2, 4, 6});
+        OdeColorSet other = set(IntervalColorSet.FACTORY, new double[] {1, 5});
+        OdeColorSet target = set(IntervalColorSet.FACTORY, new double[] {7, 8});
+        assertFalse(set.intersectInto(other, target));
+        assertArrayEquals(new double[] {1, 2, 4, 5}, endpoints(target, 0), 0);
+        assertArrayEquals(new double[] {0, 2, 4, 6}, endpoints(set, 0), 0);
+        assertArrayEquals(new double[] {1, 5}, endpoints(other, 0), 0);
+        assertTrue(set.intersectInto(set(IntervalColorSet.FACTORY, new double[] {2.5, 3.5}), target));
+        assertTrue(target.isEmpty());
+    }
+
+    @Test
+    public void deriveRestrictsSingleParameter() {
+        OdeColorSet full = IntervalColorSet.FACTORY.createFull(Arrays.asList(Range.closed(0.0, 10.0), Range.closed(1.0, 2.0)));
+        OdeColorSet derived = full.derive(0, 3, Double.POSITIVE_INFINITY);
+        assertEquals(3, derived.lowerBound(0), 0);
+        assertEquals(10, derived.upperBound(0), 0);
+        assertEquals(0, full.lowerBound(0), 0);
+        assertArrayEquals(new double[] {1, 2}, endpoints(derived, 1), 0);
+        assertTrue(full.encloses(derived));
+        assertFalse(derived.encloses(full));
+    }
+
+    @Test
+    public void matchesTreeColorSet() {
+        @NotNull Random random = new Random(42);
+        for (int round = 0; round < 1000; round++) {
+            @NotNull double[][] a = randomIntervals(random);
+            @NotNull double[][] b = randomIntervals(random);
+            OdeColorSet interval = set(IntervalColorSet.FACTORY, a);
+            OdeColorSet tree = set(TreeColorSet.FACTORY, a);
+            OdeColorSet intervalOther = set(IntervalColorSet.FACTORY, b);
+            OdeColorSet treeOther = set(TreeColorSet.FACTORY, b);
+
+            assertEquals(tree.encloses(treeOther), interval.encloses(intervalOther));
+            OdeColorSet treeTarget = TreeColorSet.FACTORY.createEmpty(tree.parameterCount());
+            OdeColorSet intervalTarget = IntervalColorSet.FACTORY.createEmpty(tree.parameterCount());
+            assertEquals(tree.intersectInto(treeOther, treeTarget), interval.intersectInto(intervalOther, intervalTarget));
+            for (int i = 0; i < tree.parameterCount(); i++) {
+                assertArrayEquals(endpoints(treeTarget, i), endpoints(intervalTarget, i), 0);
+            }
+            //apply the operation twice, so that results of subtraction (with open endpoints) are used again
+            for (int step = 0; step < 2; step++) {
+                int operation = random.nextInt(3);
+                if (operation == 0) {
+                    assertEquals(tree.union(treeOther), interval.union(intervalOther));
+                } else if (operation == 1) {
+                    tree.intersect(treeOther);
+                    interval.intersect(intervalOther);
+                } else {
+                    tree.subtract(treeOther);
+                    interval.subtract(intervalOther);
+                }
+                assertEquals(tree.isEmpty(), interval.isEmpty());
+                for (int i = 0; i < tree.parameterCount(); i++) {
+                    assertArrayEquals(endpoints(tree, i), endpoints(interval, i), 0);
+                }
+                //endpoints are the same, but they have to be open or closed in both sets
+                for (int x = 0; x < 20; x++) {
+                    for (int y = 0; y < 20; y++) {
+                        assertEquals(tree.encloses(set(TreeColorSet.FACTORY, new double[] {x, x}, new double[] {y, y})),
+                                interval.encloses(set(IntervalColorSet.FACTORY, new double[] {x, x}, new double[] {y, y})));
+                    }
+                }
+                treeOther = set(TreeColorSet.FACTORY, randomIntervals(random));
+                intervalOther = set(IntervalColorSet.FACTORY, endpointsOf(treeOther));
+            }
+        }
+    }
+
+    @NotNull
+    private static double[][] endpointsOf(@NotNull OdeColorSet set) {
+        @NotNull double[][] result = new double[set.parameterCount()][];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = endpoints(set, i);
+        }
+        return result;
+    }
+
+    @NotNull
+    private static double[][] randomIntervals(@NotNull Random random) {
+        @NotNull double[][] result = new double[2][];
+        for (int i = 0; i < result.length; i++) {
+            @NotNull double[] points = new double[2 * random.nextInt(4)];
+            for (int j = 0; j < points.length; j++) {
+                points[j] = random.nextInt(20);
+            }
+            Arrays.sort(points);
+            //make intervals disjoint and not touching, as they would be in a valid set
+            for (int j = 1; j < points.length; j++) {
+                if (points[j] <= points[j-1]) points[j] = points[j-1] + (j % 2 == 0 ? 1 : 0);
+            }
+            result[i] = points;
+        }
+        return result;
+    }
+}
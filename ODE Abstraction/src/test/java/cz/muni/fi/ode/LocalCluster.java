@@ -0,0 +1,169 @@
+package cz.muni.fi.ode;
+
+import cz.muni.fi.modelchecker.ModelChecker;
+import cz.muni.fi.modelchecker.mpi.tasks.LocalTaskMessenger;
+import cz.muni.fi.modelchecker.mpi.termination.LocalTokenMessenger;
+import cz.muni.fi.modelchecker.mpi.termination.Terminator;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a computation on all partitions of one model, every partition in its own thread.
+ * Partitions are connected by local messengers, every lane has its own task and token network.
+ */
+class LocalCluster {
+
+    /**
+     * Computation executed by every partition.
+     */
+    interface Job {
+        void run(@NotNull Partition partition);
+    }
+
+    /**
+     * One partition of the model with its own node factory and messengers.
+     */
+    static class Partition {
+
+        private final int id;
+        @NotNull
+        private final CoordinatePartitioner partitioner;
+        @NotNull
+        private final NodeFactory factory;
+        @NotNull
+        private final List<ModelChecker.Lane<CoordinateNode, OdeColorSet>> lanes = new ArrayList<>();
+        @NotNull
+        private final List<LocalTaskMessenger<CoordinateNode, OdeColorSet>> taskMessengers = new ArrayList<>();
+        @NotNull
+        private final List<Terminator.TerminatorFactory> terminatorFactories = new ArrayList<>();
+
+        private Partition(@NotNull OdeModel model, int partitionCount, int id,
+                          @NotNull List<LocalTaskMessenger.Network<CoordinateNode, OdeColorSet>> taskNetworks,
+                          @NotNull List<LocalTokenMessenger.Network> tokenNetworks) {
+            this.id = id;
+            this.partitioner = new HashPartitioner(model, partitionCount, id);
+            this.factory = new NodeFactory(model, partitioner);
+            factory.setGenerator(new StateSpaceGenerator(model, factory, partitioner.getMyLimit()));
+            for (int lane = 0; lane < taskNetworks.size(); lane++) {
+                @NotNull LocalTaskMessenger<CoordinateNode, OdeColorSet> taskMessenger = new LocalTaskMessenger<>(taskNetworks.get(lane), id,
+                        new LocalTaskMessenger.NodeResolver<CoordinateNode>() {
+                            @NotNull
+                            @Override
+                            public CoordinateNode resolve(@NotNull CoordinateNode node) {
+                                return factory.getNode(node.coordinates);
+                            }
+                        }
+                );
+                @NotNull Terminator.TerminatorFactory terminatorFactory = new Terminator.TerminatorFactory(
+                        new LocalTokenMessenger(tokenNetworks.get(lane), id));
+                taskMessengers.add(taskMessenger);
+                terminatorFactories.add(terminatorFactory);
+                lanes.add(new ModelChecker.Lane<>(taskMessenger, terminatorFactory));
+            }
+        }
+
+        int getId() {
+            return id;
+        }
+
+        @NotNull
+        CoordinatePartitioner getPartitioner() {
+            return partitioner;
+        }
+
+        @NotNull
+        NodeFactory getFactory() {
+            return factory;
+        }
+
+        /**
+         * @return Task messenger of the first lane.
+         */
+        @NotNull
+        LocalTaskMessenger<CoordinateNode, OdeColorSet> getTaskMessenger() {
+            return taskMessengers.get(0);
+        }
+
+        /**
+         * @return Terminator factory of the first lane.
+         */
+        @NotNull
+        Terminator.TerminatorFactory getTerminatorFactory() {
+            return terminatorFactories.get(0);
+        }
+
+        @NotNull
+        List<ModelChecker.Lane<CoordinateNode, OdeColorSet>> getLanes() {
+            return lanes;
+        }
+
+        private void close() {
+            for (@NotNull LocalTaskMessenger<CoordinateNode, OdeColorSet> taskMessenger : taskMessengers) {
+                taskMessenger.close();
+            }
+        }
+    }
+
+    @NotNull
+    private final OdeModel model;
+    private final int partitionCount;
+    private final int laneCount;
+
+    LocalCluster(@NotNull OdeModel model, int partitionCount) {
+        this(model, partitionCount, 1);
+    }
+
+    LocalCluster(@NotNull OdeModel model, int partitionCount, int laneCount) {
+        this.model = model;
+        this.partitionCount = partitionCount;
+        this.laneCount = laneCount;
+    }
+
+    /**
+     * Run job on all partitions and wait until all of them are finished. Messengers are closed afterwards.
+     * Failure of any partition is thrown again by this method.
+     * @return Node factories of all partitions, indexed by partition id.
+     */
+    @NotNull
+    List<NodeFactory> run(@NotNull final Job job) throws InterruptedException {
+        @NotNull List<LocalTaskMessenger.Network<CoordinateNode, OdeColorSet>> taskNetworks = new ArrayList<>();
+        @NotNull List<LocalTokenMessenger.Network> tokenNetworks = new ArrayList<>();
+        for (int lane = 0; lane < laneCount; lane++) {
+            taskNetworks.add(new LocalTaskMessenger.Network<CoordinateNode, OdeColorSet>(partitionCount));
+            tokenNetworks.add(new LocalTokenMessenger.Network(partitionCount));
+        }
+        @NotNull List<NodeFactory> factories = new ArrayList<>();
+        @NotNull List<Thread> threads = new ArrayList<>();
+        @NotNull final List<Throwable> failures = new ArrayList<>();
+        for (int i = 0; i < partitionCount; i++) {
+            @NotNull final Partition partition = new Partition(model, partitionCount, i, taskNetworks, tokenNetworks);
+            factories.add(partition.getFactory());
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        job.run(partition);
+                    } catch (Throwable e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    } finally {
+                        partition.close();
+                    }
+                }
+            }));
+        }
+        for (@NotNull Thread thread : threads) {
+            thread.start();
+        }
+        for (@NotNull Thread thread : threads) {
+            thread.join();
+        }
+        if (!failures.isEmpty()) {
+            throw new AssertionError(failures.get(0));
+        }
+        return factories;
+    }
+}
@@ -0,0 +1,71 @@
+package cz.muni.fi.ode;
+
+import cz.muni.fi.ctl.formula.Formula;
+import cz.muni.fi.ctl.formula.FormulaImpl;
+import cz.muni.fi.ctl.formula.operator.BinaryOperator;
+import cz.muni.fi.ctl.formula.operator.UnaryOperator;
+import cz.muni.fi.ctl.formula.proposition.FloatProposition;
+import cz.muni.fi.ctl.formula.proposition.Tautology;
+import cz.muni.fi.modelchecker.ModelChecker;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class for concurrent verification of independent sub formulas.
+ */
+public class ModelCheckerLanesTest {
+
+    @NotNull
+    private static NodeFactory verify(@NotNull OdeModel model, @NotNull final Formula formula, int laneCount, final boolean purge) throws InterruptedException {
+        return new LocalCluster(model, 1, laneCount).run(new LocalCluster.Job() {
+            @Override
+            public void run(@NotNull LocalCluster.Partition partition) {
+                @NotNull ModelChecker<CoordinateNode, OdeColorSet> modelChecker = new ModelChecker<>(
+                        partition.getFactory(), partition.getPartitioner(), partition.getLanes(), 2);
+                modelChecker.setPurgeResults(purge);
+                modelChecker.verify(formula);
+                assertEquals(purge, modelChecker.getPurgedBytes() > 0);
+            }
+        }).get(0);
+    }
+
+    @NotNull
+    private final OdeModel model = TestModels.ring(2, 5);
+    @NotNull
+    private final Formula high = new FloatProposition(0.6, "x0", FloatProposition.Operator.GT);
+    @NotNull
+    private final Formula low = new FloatProposition(0.3, "x1", FloatProposition.Operator.LT);
+    //reach, always and next do not depend on each other, so they are verified concurrently
+    @NotNull
+    private final Formula reach = new FormulaImpl(BinaryOperator.EXISTS_UNTIL, Tautology.INSTANCE, high);
+    @NotNull
+    private final Formula always = new FormulaImpl(BinaryOperator.ALL_UNTIL, low, high);
+    @NotNull
+    private final Formula next = new FormulaImpl(UnaryOperator.EXISTS_NEXT, new FormulaImpl(UnaryOperator.NEGATION, high));
+    @NotNull
+    private final Formula formula = new FormulaImpl(BinaryOperator.AND,
+            new FormulaImpl(BinaryOperator.OR, always, next), reach
+    );
+
+    @Test
+    public void lanesGiveSameResults() throws InterruptedException {
+        @NotNull NodeFactory sequential = verify(model, formula, 1, false);
+        @NotNull NodeFactory concurrent = verify(model, formula, 3, false);
+        for (@NotNull Formula checked : new Formula[] { reach, always, next, formula }) {
+            assertEquals(sequential.initialNodes(checked), concurrent.initialNodes(checked));
+        }
+    }
+
+    @Test
+    public void subFormulasArePurged() throws InterruptedException {
+        @NotNull NodeFactory kept = verify(model, formula, 1, false);
+        @NotNull NodeFactory purged = verify(model, formula, 3, true);
+        assertEquals(kept.initialNodes(formula), purged.initialNodes(formula));
+        assertFalse(kept.initialNodes(reach).isEmpty());
+        for (@NotNull Formula checked : new Formula[] { reach, always, next }) {
+            assertTrue(purged.initialNodes(checked).isEmpty());
+        }
+    }
+}
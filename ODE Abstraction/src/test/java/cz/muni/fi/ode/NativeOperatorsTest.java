@@ -0,0 +1,154 @@
+package cz.muni.fi.ode;
+
+import cz.muni.fi.ctl.formula.Formula;
+import cz.muni.fi.ctl.formula.FormulaImpl;
+import cz.muni.fi.ctl.formula.operator.BinaryOperator;
+import cz.muni.fi.ctl.formula.operator.UnaryOperator;
+import cz.muni.fi.ctl.formula.proposition.FloatProposition;
+import cz.muni.fi.ctl.formula.proposition.Tautology;
+import cz.muni.fi.modelchecker.ModelAdapter;
+import cz.muni.fi.modelchecker.ModelChecker;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Test class for EF, AF and EG operators verified without until and negations and for the all until they replace.
+ * Distributed results are compared with fixpoints computed naively on one partition.
+ */
+public class NativeOperatorsTest {
+
+    private static final int PARTITIONS = 3;
+
+    @NotNull
+    private final OdeModel model = TestModels.ring(2, 5);
+    @NotNull
+    private final Formula high = new FloatProposition(0.6, "x0", FloatProposition.Operator.GT);
+    @NotNull
+    private final Formula low = new FloatProposition(0.3, "x1", FloatProposition.Operator.LT);
+
+    /**
+     * @return Results of all partitions.
+     */
+    @NotNull
+    private Map<CoordinateNode, OdeColorSet> verify(@NotNull final Formula formula) throws InterruptedException {
+        @NotNull List<NodeFactory> factories = new LocalCluster(model, PARTITIONS).run(new LocalCluster.Job() {
+            @Override
+            public void run(@NotNull LocalCluster.Partition partition) {
+                new ModelChecker<>(partition.getFactory(), partition.getPartitioner(), partition.getTaskMessenger(),
+                        partition.getTerminatorFactory(), 2).verify(formula);
+            }
+        });
+        @NotNull Map<CoordinateNode, OdeColorSet> results = new HashMap<>();
+        for (@NotNull NodeFactory factory : factories) {
+            results.putAll(factory.initialNodes(formula));
+        }
+        return results;
+    }
+
+    @NotNull
+    private static Map<CoordinateNode, OdeColorSet> successors(@NotNull NodeFactory factory, @NotNull CoordinateNode node) {
+        @NotNull final Map<CoordinateNode, OdeColorSet> successors = new HashMap<>();
+        factory.forEachSuccessor(node, null, new ModelAdapter.EdgeConsumer<CoordinateNode, OdeColorSet>() {
+            @Override
+            public boolean accept(@NotNull CoordinateNode successor, @NotNull OdeColorSet colors) {
+                successors.put(successor, colors);
+                return true;
+            }
+        });
+        return successors;
+    }
+
+    @NotNull
+    private static Map<CoordinateNode, OdeColorSet> nonEmpty(@NotNull Map<CoordinateNode, OdeColorSet> nodes) {
+        @NotNull Map<CoordinateNode, OdeColorSet> results = new HashMap<>();
+        for (@NotNull Map.Entry<CoordinateNode, OdeColorSet> entry : nodes.entrySet()) {
+            if (!entry.getValue().isEmpty()) results.put(entry.getKey(), entry.getValue());
+        }
+        return results;
+    }
+
+    /**
+     * Iterate Z = f & next(Z) from all colors (for greatest fixpoint) or Z = f | (g & next(Z)) from no colors
+     * (for least fixpoint) until it stops changing. Next is EX for exists and AX for all.
+     * @param path Formula g, null if it always holds.
+     */
+    @NotNull
+    private Map<CoordinateNode, OdeColorSet> fixpoint(@Nullable Formula path, @NotNull Formula sub, boolean exists, boolean greatest) {
+        @NotNull NodeFactory factory = new NodeFactory(model, new HashPartitioner(model, 1, 0));
+        factory.setGenerator(new StateSpaceGenerator(model, factory, new HashPartitioner(model, 1, 0).getMyLimit()));
+        @NotNull Map<CoordinateNode, OdeColorSet> all = factory.initialNodes(Tautology.INSTANCE);
+        @NotNull Map<CoordinateNode, OdeColorSet> current = new HashMap<>();
+        for (@NotNull CoordinateNode node : all.keySet()) {
+            current.put(node, greatest ? model.getFullColorSet() : model.getEmptyColorSet());
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            @NotNull Map<CoordinateNode, OdeColorSet> next = new HashMap<>();
+            for (@NotNull CoordinateNode node : all.keySet()) {
+                @NotNull OdeColorSet step = exists ? model.getEmptyColorSet() : model.getFullColorSet();
+                for (@NotNull Map.Entry<CoordinateNode, OdeColorSet> edge : successors(factory, node).entrySet()) {
+                    if (exists) {
+                        @NotNull OdeColorSet colors = edge.getValue().copy();
+                        colors.intersect(current.get(edge.getKey()));
+                        step.union(colors);
+                    } else {
+                        @NotNull OdeColorSet colors = edge.getValue().copy();
+                        colors.subtract(current.get(edge.getKey()));
+                        step.subtract(colors);
+                    }
+                }
+                if (path != null) {
+                    step.intersect(factory.validColorsFor(node, path));
+                }
+                @NotNull OdeColorSet colors = factory.validColorsFor(node, sub);
+                if (greatest) {
+                    colors.intersect(step);
+                } else {
+                    colors.union(step);
+                }
+                changed |= !colors.equals(current.get(node));
+                next.put(node, colors);
+            }
+            current = next;
+        }
+        return nonEmpty(current);
+    }
+
+    @Test
+    public void existsFuture() throws InterruptedException {
+        @NotNull Map<CoordinateNode, OdeColorSet> results = verify(new FormulaImpl(UnaryOperator.EXISTS_FUTURE, high));
+        assertFalse(results.isEmpty());
+        assertEquals(fixpoint(null, high, true, false), results);
+    }
+
+    @Test
+    public void allFuture() throws InterruptedException {
+        @NotNull Map<CoordinateNode, OdeColorSet> results = verify(new FormulaImpl(UnaryOperator.ALL_FUTURE, low));
+        assertFalse(results.isEmpty());
+        assertEquals(fixpoint(null, low, false, false), results);
+    }
+
+    @Test
+    public void existsGlobal() throws InterruptedException {
+        @NotNull Map<CoordinateNode, OdeColorSet> results = verify(new FormulaImpl(UnaryOperator.EXISTS_GLOBAL, low));
+        assertFalse(results.isEmpty());
+        assertEquals(fixpoint(null, low, true, true), results);
+    }
+
+    @Test
+    public void allUntil() throws InterruptedException {
+        //targets are valid too, same as in all future
+        @NotNull Map<CoordinateNode, OdeColorSet> results = verify(new FormulaImpl(BinaryOperator.ALL_UNTIL, high, low));
+        assertFalse(results.isEmpty());
+        assertEquals(fixpoint(high, low, false, false), results);
+    }
+}
@@ -0,0 +1,66 @@
+package cz.muni.fi.ode;
+
+import cz.muni.fi.ctl.formula.proposition.Tautology;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures throughput of node factory when successors and predecessors are computed by several threads at once.
+ * Run main method manually, this is not a part of the test suite.
+ *
+ * Model is the synthetic ring of TestModels.
+ */
+public class NodeFactoryBenchmark {
+
+    private static final int VARIABLES = 4;
+    private static final int THRESHOLDS = 16;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        @NotNull OdeModel model = TestModels.ring(VARIABLES, THRESHOLDS);
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            for (int round = 0; round < ROUNDS; round++) {
+                long time = measure(model, threads);
+                //first rounds are just a warm up
+                if (round >= ROUNDS / 2) {
+                    System.out.println("Threads: "+threads+" Nodes: "+model.getStateCount()+" Time: "+time+"ms " +
+                            "Throughput: "+(model.getStateCount() * 1000 / Math.max(1, time))+" nodes/s");
+                }
+            }
+        }
+    }
+
+    private static long measure(@NotNull OdeModel model, int threadCount) throws InterruptedException {
+        //new factory every time, so that predecessors are computed again
+        @NotNull CoordinatePartitioner partitioner = new HashPartitioner(model, 1, 0);
+        @NotNull final NodeFactory factory = new NodeFactory(model, partitioner);
+        factory.setGenerator(new StateSpaceGenerator(model, factory, partitioner.getMyLimit()));
+        @NotNull final List<CoordinateNode> nodes = new ArrayList<>(factory.initialNodes(Tautology.INSTANCE).keySet());
+        @NotNull Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            final int offset = t;
+            final int step = threadCount;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = offset; i < nodes.size(); i += step) {
+                        @NotNull CoordinateNode node = nodes.get(i);
+                        factory.successorsFor(node, null);
+                        factory.predecessorsFor(node, null);
+                    }
+                }
+            });
+        }
+        long start = System.currentTimeMillis();
+        for (@NotNull Thread thread : threads) {
+            thread.start();
+        }
+        for (@NotNull Thread thread : threads) {
+            thread.join();
+        }
+        return System.currentTimeMillis() - start;
+    }
+}
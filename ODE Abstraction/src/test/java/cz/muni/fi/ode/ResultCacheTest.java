@@ -0,0 +1,106 @@
+package cz.muni.fi.ode;
+
+import cz.muni.fi.ctl.formula.Formula;
+import cz.muni.fi.ctl.formula.FormulaImpl;
+import cz.muni.fi.ctl.formula.operator.BinaryOperator;
+import cz.muni.fi.ctl.formula.operator.UnaryOperator;
+import cz.muni.fi.ctl.formula.proposition.FloatProposition;
+import cz.muni.fi.ctl.formula.proposition.Tautology;
+import cz.muni.fi.modelchecker.ModelChecker;
+import cz.muni.fi.modelchecker.ResultCache;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class for result cache.
+ */
+public class ResultCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @NotNull
+    private final Formula high = new FloatProposition(0.6, "x0", FloatProposition.Operator.GT);
+    @NotNull
+    private final Formula low = new FloatProposition(0.3, "x1", FloatProposition.Operator.LT);
+
+    @NotNull
+    private static NodeFactory verify(@NotNull final OdeModel model, @NotNull final Formula formula, @Nullable final File directory) throws InterruptedException {
+        return new LocalCluster(model, 1).run(new LocalCluster.Job() {
+            @Override
+            public void run(@NotNull LocalCluster.Partition partition) {
+                @NotNull ModelChecker<CoordinateNode, OdeColorSet> modelChecker = new ModelChecker<>(partition.getFactory(),
+                        partition.getPartitioner(), partition.getTaskMessenger(), partition.getTerminatorFactory());
+                if (directory != null) {
+                    modelChecker.setResultCache(new ResultCache<>(directory, "model", partition.getId(), 1,
+                            new RawTaskCodec(model, partition.getFactory())));
+                }
+                modelChecker.verify(formula);
+            }
+        }).get(0);
+    }
+
+    @Test
+    public void commutativeOperandsShareKey() {
+        assertEquals(
+                ResultCache.canonical(new FormulaImpl(BinaryOperator.AND, high, low)),
+                ResultCache.canonical(new FormulaImpl(BinaryOperator.AND, low, high))
+        );
+        assertNotEquals(
+                ResultCache.canonical(new FormulaImpl(BinaryOperator.EXISTS_UNTIL, high, low)),
+                ResultCache.canonical(new FormulaImpl(BinaryOperator.EXISTS_UNTIL, low, high))
+        );
+    }
+
+    @Test
+    public void resultsAreReloaded() throws Exception {
+        @NotNull OdeModel model = TestModels.ring(2, 5);
+        @NotNull File directory = folder.newFolder();
+        @NotNull Formula reach = new FormulaImpl(BinaryOperator.EXISTS_UNTIL, Tautology.INSTANCE, high);
+        @NotNull Formula formula = new FormulaImpl(BinaryOperator.AND, reach, low);
+
+        @NotNull NodeFactory expected = verify(model, formula, null);
+        verify(model, formula, directory);
+        assertEquals(2, directory.listFiles().length);
+
+        //sub formulas of cached formulas are not needed
+        @NotNull Formula swapped = new FormulaImpl(BinaryOperator.AND, low, reach);
+        @NotNull NodeFactory cached = verify(model, swapped, directory);
+        @NotNull Map<CoordinateNode, OdeColorSet> results = cached.initialNodes(swapped);
+        assertFalse(results.isEmpty());
+        assertEquals(expected.initialNodes(formula), results);
+        assertTrue(cached.initialNodes(reach).isEmpty());
+    }
+
+    @Test
+    public void openEndpointsAreReloaded() throws Exception {
+        @NotNull OdeModel model = TestModels.ring(2, 5);
+        @NotNull File directory = folder.newFolder();
+        //negation leaves open endpoints where the reachable colors end
+        @NotNull Formula formula = new FormulaImpl(UnaryOperator.NEGATION,
+                new FormulaImpl(BinaryOperator.EXISTS_UNTIL, Tautology.INSTANCE, high));
+
+        @NotNull Map<CoordinateNode, OdeColorSet> expected = verify(model, formula, null).initialNodes(formula);
+        boolean open = false;
+        for (@NotNull OdeColorSet colors : expected.values()) {
+            for (int i = 0; i < colors.parameterCount(); i++) {
+                @NotNull boolean[] bounds = new boolean[colors.endpointCount(i)];
+                colors.writeOpenEndpoints(i, bounds, 0);
+                for (boolean bound : bounds) {
+                    open |= bound;
+                }
+            }
+        }
+        assertTrue(open);
+        verify(model, formula, directory);
+        assertEquals(expected, verify(model, formula, directory).initialNodes(formula));
+    }
+}
@@ -0,0 +1,121 @@
+package cz.muni.fi.ode;
+
+import cz.muni.fi.ctl.formula.proposition.Tautology;
+import cz.muni.fi.modelchecker.ModelAdapter;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Test class for state space generator.
+ */
+public class StateSpaceGeneratorTest {
+
+    @NotNull
+    private static NodeFactory factory(@NotNull OdeModel model, boolean cacheDerivations) {
+        @NotNull CoordinatePartitioner partitioner = new HashPartitioner(model, 1, 0);
+        @NotNull NodeFactory factory = new NodeFactory(model, partitioner);
+        factory.setGenerator(new StateSpaceGenerator(model, factory, partitioner.getMyLimit(), cacheDerivations));
+        return factory;
+    }
+
+    @Test
+    public void compiledEquationsMatchSumMembers() {
+        @NotNull OdeModel model = TestModels.ring(3, 7);
+        @NotNull int[] vertex = new int[3];
+        @NotNull double[] expected = new double[2];
+        @NotNull double[] actual = new double[2];
+        //all vertices
+        for (int i = 0; i < 7 * 7 * 7; i++) {
+            vertex[0] = i % 7;
+            vertex[1] = (i / 7) % 7;
+            vertex[2] = i / 49;
+            for (int dim = 0; dim < 3; dim++) {
+                StateSpaceGenerator.interpretEquation(model, vertex, dim, expected);
+                model.getCompiledEquations().evaluate(vertex, dim, actual);
+                assertEquals(Double.doubleToLongBits(expected[0]), Double.doubleToLongBits(actual[0]));
+                assertEquals(Double.doubleToLongBits(expected[1]), Double.doubleToLongBits(actual[1]));
+            }
+        }
+    }
+
+    @Test
+    public void cachedDerivationsGiveSameEdges() {
+        @NotNull OdeModel model = TestModels.ring(3, 7);
+        @NotNull NodeFactory plain = factory(model, false);
+        @NotNull NodeFactory cached = factory(model, true);
+        int edges = 0;
+        //second pass only uses cached values
+        for (int pass = 0; pass < 2; pass++) {
+            for (@NotNull CoordinateNode node : plain.initialNodes(Tautology.INSTANCE).keySet()) {
+                @NotNull CoordinateNode other = cached.getNode(node.coordinates);
+                @NotNull Map<CoordinateNode, OdeColorSet> expected = plain.successorsFor(node, null);
+                assertEquals(expected, cached.successorsFor(other, null));
+                assertEquals(plain.predecessorsFor(node, null), cached.predecessorsFor(other, null));
+                edges += expected.size();
+            }
+        }
+        assertFalse(edges == 0);
+    }
+
+    @Test
+    public void pregeneratedEdgesMatchGeneratedEdges() {
+        @NotNull OdeModel model = TestModels.ring(3, 7);
+        @NotNull NodeFactory lazy = factory(model, true);
+        @NotNull NodeFactory eager = factory(model, true);
+        eager.pregenerate(3);
+        //restricted colors are intersected with stored edges
+        @NotNull OdeColorSet borders = model.getFullColorSet().derive(0, 0.5, 1.5);
+        for (@NotNull CoordinateNode node : lazy.initialNodes(Tautology.INSTANCE).keySet()) {
+            @NotNull CoordinateNode other = eager.getNode(node.coordinates);
+            assertEquals(lazy.successorsFor(node, null), eager.successorsFor(other, null));
+            assertEquals(lazy.predecessorsFor(node, null), eager.predecessorsFor(other, null));
+            assertEquals(lazy.predecessorsFor(node, borders), eager.predecessorsFor(other, borders));
+            assertEquals(lazy.successorsFor(node, borders), eager.successorsFor(other, borders));
+        }
+    }
+
+    @Test
+    public void visitedEdgesMatchEdgeMaps() {
+        @NotNull OdeModel model = TestModels.ring(3, 7);
+        @NotNull NodeFactory lazy = factory(model, true);
+        @NotNull NodeFactory eager = factory(model, true);
+        eager.pregenerate(1);
+        @NotNull OdeColorSet borders = model.getFullColorSet().derive(0, 0.5, 1.5);
+        for (@NotNull NodeFactory factory : new NodeFactory[] { lazy, eager }) {
+            for (@NotNull CoordinateNode node : factory.initialNodes(Tautology.INSTANCE).keySet()) {
+                assertEquals(factory.predecessorsFor(node, borders), predecessors(factory, node, borders));
+                assertEquals(factory.predecessorsFor(node, null), predecessors(factory, node, null));
+                @NotNull final Map<CoordinateNode, OdeColorSet> successors = new HashMap<>();
+                factory.forEachSuccessor(node, borders, new ModelAdapter.EdgeConsumer<CoordinateNode, OdeColorSet>() {
+                    @Override
+                    public boolean accept(@NotNull CoordinateNode successor, @NotNull OdeColorSet colors) {
+                        successors.put(successor, colors);
+                        return true;
+                    }
+                });
+                assertEquals(factory.successorsFor(node, borders), successors);
+            }
+        }
+    }
+
+    //consumer keeps only every other set, so reused sets have to be overwritten correctly
+    @NotNull
+    private static Map<CoordinateNode, OdeColorSet> predecessors(@NotNull NodeFactory factory, @NotNull CoordinateNode node, OdeColorSet borders) {
+        @NotNull final Map<CoordinateNode, OdeColorSet> results = new HashMap<>();
+        factory.forEachPredecessor(node, borders, new ModelAdapter.EdgeConsumer<CoordinateNode, OdeColorSet>() {
+            @Override
+            public boolean accept(@NotNull CoordinateNode predecessor, @NotNull OdeColorSet colors) {
+                boolean keep = results.size() % 2 == 0;
+                results.put(predecessor, keep ? colors : colors.copy());
+                return keep;
+            }
+        });
+        return results;
+    }
+}
@@ -0,0 +1,144 @@
+package cz.muni.fi.ode;
+
+import cz.muni.fi.ctl.formula.proposition.Tautology;
+import cz.muni.fi.modelchecker.ModelAdapter;
+import cz.muni.fi.modelchecker.verification.TerminalComponents;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for distributed terminal component decomposition.
+ * Results are compared with terminal components computed naively on one partition.
+ */
+public class TerminalComponentsTest {
+
+    private static final int PARTITIONS = 3;
+
+    @NotNull
+    private final OdeModel model = TestModels.bistable(5);
+
+    /**
+     * @return Components of all partitions, merged by index.
+     */
+    @NotNull
+    private List<Map<CoordinateNode, OdeColorSet>> decompose() throws InterruptedException {
+        @NotNull final List<List<Map<CoordinateNode, OdeColorSet>>> results = new ArrayList<>();
+        for (int i = 0; i < PARTITIONS; i++) {
+            results.add(null);
+        }
+        new LocalCluster(model, PARTITIONS).run(new LocalCluster.Job() {
+            @Override
+            public void run(@NotNull LocalCluster.Partition partition) {
+                @NotNull NodeFactory factory = partition.getFactory();
+                @NotNull List<Map<CoordinateNode, OdeColorSet>> components = new TerminalComponents<>(
+                        factory, partition.getPartitioner(), PARTITIONS, factory.getColorFactory(),
+                        partition.getTaskMessenger(), partition.getTerminatorFactory(), 2
+                ).decompose(factory.initialNodes(Tautology.INSTANCE));
+                synchronized (results) {
+                    results.set(partition.getId(), components);
+                }
+            }
+        });
+        @NotNull List<Map<CoordinateNode, OdeColorSet>> components = new ArrayList<>();
+        for (@NotNull List<Map<CoordinateNode, OdeColorSet>> partition : results) {
+            assertEquals(results.get(0).size(), partition.size());
+        }
+        for (int i = 0; i < results.get(0).size(); i++) {
+            @NotNull Map<CoordinateNode, OdeColorSet> component = new HashMap<>();
+            for (@NotNull List<Map<CoordinateNode, OdeColorSet>> partition : results) {
+                component.putAll(partition.get(i));
+            }
+            components.add(component);
+        }
+        return components;
+    }
+
+    /**
+     * @return Nodes reachable from given node (or reaching it), for every color.
+     */
+    @NotNull
+    private Map<CoordinateNode, OdeColorSet> reach(@NotNull NodeFactory factory, @NotNull CoordinateNode from, boolean forward) {
+        @NotNull final Map<CoordinateNode, OdeColorSet> reached = new HashMap<>();
+        @NotNull final List<CoordinateNode> stack = new ArrayList<>();
+        reached.put(from, model.getFullColorSet());
+        stack.add(from);
+        while (!stack.isEmpty()) {
+            @NotNull final CoordinateNode node = stack.remove(stack.size() - 1);
+            @NotNull ModelAdapter.EdgeConsumer<CoordinateNode, OdeColorSet> consumer = new ModelAdapter.EdgeConsumer<CoordinateNode, OdeColorSet>() {
+                @Override
+                public boolean accept(@NotNull CoordinateNode next, @NotNull OdeColorSet colors) {
+                    @NotNull OdeColorSet candidates = colors.copy();
+                    candidates.intersect(reached.get(node));
+                    if (!reached.containsKey(next)) {
+                        reached.put(next, model.getEmptyColorSet());
+                    }
+                    if (reached.get(next).union(candidates)) {
+                        stack.add(next);
+                    }
+                    return false;
+                }
+            };
+            if (forward) {
+                factory.forEachSuccessor(node, null, consumer);
+            } else {
+                factory.forEachPredecessor(node, null, consumer);
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * Node is in a terminal component for color c if every node it reaches with c reaches it back with c.
+     */
+    @NotNull
+    private Map<CoordinateNode, OdeColorSet> terminal() {
+        @NotNull NodeFactory factory = new NodeFactory(model, new HashPartitioner(model, 1, 0));
+        factory.setGenerator(new StateSpaceGenerator(model, factory, new HashPartitioner(model, 1, 0).getMyLimit()));
+        @NotNull Map<CoordinateNode, OdeColorSet> results = new HashMap<>();
+        for (@NotNull CoordinateNode node : factory.initialNodes(Tautology.INSTANCE).keySet()) {
+            @NotNull Map<CoordinateNode, OdeColorSet> forward = reach(factory, node, true);
+            @NotNull Map<CoordinateNode, OdeColorSet> backward = reach(factory, node, false);
+            @NotNull OdeColorSet colors = model.getFullColorSet();
+            for (@NotNull Map.Entry<CoordinateNode, OdeColorSet> entry : forward.entrySet()) {
+                @NotNull OdeColorSet escape = entry.getValue().copy();
+                if (backward.containsKey(entry.getKey())) {
+                    escape.subtract(backward.get(entry.getKey()));
+                }
+                colors.subtract(escape);
+            }
+            if (!colors.isEmpty()) results.put(node, colors);
+        }
+        return results;
+    }
+
+    @Test
+    public void terminalComponentsAreFound() throws InterruptedException {
+        @NotNull List<Map<CoordinateNode, OdeColorSet>> components = decompose();
+        //model is bistable for some parameters, so sub-problems are decomposed too
+        assertTrue(components.size() > 1);
+        @NotNull Map<CoordinateNode, OdeColorSet> union = new HashMap<>();
+        for (@NotNull Map<CoordinateNode, OdeColorSet> component : components) {
+            assertFalse(component.isEmpty());
+            for (@NotNull Map.Entry<CoordinateNode, OdeColorSet> entry : component.entrySet()) {
+                if (!union.containsKey(entry.getKey())) {
+                    union.put(entry.getKey(), model.getEmptyColorSet());
+                }
+                @NotNull OdeColorSet common = entry.getValue().copy();
+                common.intersect(union.get(entry.getKey()));
+                //every node and color belongs to at most one component
+                assertTrue(common.isEmpty());
+                union.get(entry.getKey()).union(entry.getValue());
+            }
+        }
+        assertEquals(terminal(), union);
+    }
+}
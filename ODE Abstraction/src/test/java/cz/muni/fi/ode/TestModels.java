@@ -0,0 +1,79 @@
+package cz.muni.fi.ode;
+
+import com.google.common.collect.Range;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Synthetic models shared by tests and benchmarks. None of them needs native code.
+ */
+class TestModels {
+
+    /**
+     * Model is a ring of variables, where every variable is produced depending on the previous one
+     * (with an unknown production rate), has a basal production repressed by the previous one and is degraded linearly.
+     * @return Ring model with given number of variables and thresholds.
+     */
+    @NotNull
+    static OdeModel ring(int variables, int thresholds) {
+        @NotNull OdeModel model = new OdeModel("none");
+        @NotNull List<Double> values = thresholds(thresholds);
+        for (int v = 0; v < variables; v++) {
+            int previous = (v + variables - 1) % variables;
+            //indexes of variables and parameters start at 1
+            @NotNull SumMember production = new SumMember(1.0, v + 1, Collections.<Integer>emptyList(),
+                    Arrays.asList(new Ramp(previous + 1, 0.2, 0.8, 0.0, 1.0)), Collections.<Step>emptyList());
+            model.addVariable("x"+v, values, Arrays.asList(production, degradation(v), basal(previous)));
+            model.getParameterRange().add(Range.closed(0.0, 2.0));
+        }
+        model.prepareIndex();
+        model.compileEquations();
+        return model;
+    }
+
+    @NotNull
+    private static List<Double> thresholds(int count) {
+        @NotNull List<Double> values = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            values.add((double) i / (count - 1));
+        }
+        return values;
+    }
+
+    @NotNull
+    private static SumMember degradation(int variable) {
+        return new SumMember(-0.5, 0, Arrays.asList(variable + 1),
+                Collections.<Ramp>emptyList(), Collections.<Step>emptyList());
+    }
+
+    @NotNull
+    private static SumMember basal(int repressor) {
+        return new SumMember(0.1, 0, Collections.<Integer>emptyList(),
+                Collections.<Ramp>emptyList(), Arrays.asList(new Step(repressor + 1, 0.5, 1.0, 0.0)));
+    }
+
+    /**
+     * Model has two variables that activate themselves (with one shared unknown production rate), have a basal
+     * production repressed by the other one and are degraded linearly. It has several attractors for some parameters.
+     * Color set operations work on every parameter separately, so they are exact only for one parameter.
+     * @return Model with two variables, given number of thresholds and one parameter.
+     */
+    @NotNull
+    static OdeModel bistable(int thresholds) {
+        @NotNull OdeModel model = new OdeModel("none");
+        @NotNull List<Double> values = thresholds(thresholds);
+        for (int v = 0; v < 2; v++) {
+            @NotNull SumMember production = new SumMember(1.0, 1, Collections.<Integer>emptyList(),
+                    Arrays.asList(new Ramp(v + 1, 0.2, 0.8, 0.0, 1.0)), Collections.<Step>emptyList());
+            model.addVariable("x"+v, values, Arrays.asList(production, degradation(v), basal(1 - v)));
+        }
+        model.getParameterRange().add(Range.closed(0.0, 2.0));
+        model.prepareIndex();
+        model.compileEquations();
+        return model;
+    }
+}
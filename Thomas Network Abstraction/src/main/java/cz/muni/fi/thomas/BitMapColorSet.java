@@ -2,6 +2,10 @@ package cz.muni.fi.thomas;
 
 import com.googlecode.javaewah.EWAHCompressedBitmap;
 import cz.muni.fi.modelchecker.graph.ColorSet;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * This set stores a set of parameters in compressed bitmap.
@@ -42,10 +46,73 @@ public class BitMapColorSet implements ColorSet {
     @Override
     public boolean union(ColorSet set1) {
         BitMapColorSet set = (BitMapColorSet) set1;
+        //enclosure test does not materialize any bitmap, so it is cheaper than or + compare
+        if (encloses(set)) {
+            return false;
+        }
         values = values.or(set.values);
         return true;
     }
 
+    @Override
+    public boolean intersectInto(ColorSet set1, ColorSet target1) {
+        BitMapColorSet set = (BitMapColorSet) set1;
+        BitMapColorSet target = (BitMapColorSet) target1;
+        //this set is not modified, so there is no need to clone it first
+        target.values = values.and(set.values);
+        return target.values.isEmpty();
+    }
+
+    @Override
+    public boolean subtractAndTestEmpty(ColorSet set) {
+        subtract(set);
+        return values.isEmpty();
+    }
+
+    /**
+     * @return Approximate number of bytes used by this set, including object headers. Used only for statistics.
+     */
+    public long estimatedSize() {
+        return 16 + 32 + values.sizeInBytes();
+    }
+
+    /**
+     * @return Number of bytes written by writeTo.
+     */
+    public int serializedSize() {
+        return values.serializedSizeInBytes();
+    }
+
+    /**
+     * Write the compressed bitmap to given buffer in EWAH serialization format.
+     */
+    public void writeTo(@NotNull ByteBuffer buffer) {
+        @NotNull ByteArrayOutputStream bytes = new ByteArrayOutputStream(serializedSize());
+        try {
+            values.serialize(new DataOutputStream(bytes));
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't serialize bitmap to memory.", e);
+        }
+        buffer.put(bytes.toByteArray());
+    }
+
+    /**
+     * Read set written by writeTo from given heap buffer. Buffer is positioned after the set.
+     */
+    @NotNull
+    public static BitMapColorSet readFrom(@NotNull ByteBuffer buffer) {
+        @NotNull BitMapColorSet result = new BitMapColorSet();
+        try {
+            result.values.deserialize(new DataInputStream(
+                    new ByteArrayInputStream(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining())
+            ));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Buffer does not contain a valid bitmap.", e);
+        }
+        buffer.position(buffer.position() + result.serializedSize());
+        return result;
+    }
+
     //used by native initializer
     public void unset(int i) {
         values.clear(i);
@@ -65,8 +132,20 @@ public class BitMapColorSet implements ColorSet {
         return values.cardinality() == values.sizeInBits();
     }
 
-    public boolean encloses(BitMapColorSet set) {
-        //if or does not add any new elements, we are super set of given parameter
-        return values.cardinality() == values.orCardinality(set.values);
+    @Override
+    public boolean encloses(ColorSet set1) {
+        BitMapColorSet set = (BitMapColorSet) set1;
+        //if given set has no elements outside of this set, we are super set of given parameter
+        return set.values.andNotCardinality(values) == 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof BitMapColorSet && values.equals(((BitMapColorSet) o).values);
+    }
+
+    @Override
+    public int hashCode() {
+        return values.hashCode();
     }
 }
@@ -1,6 +1,6 @@
 package cz.muni.fi.thomas;
 
-import cz.muni.fi.ctl.formula.Formula;
+import cz.muni.fi.modelchecker.ModelAdapter;
 import cz.muni.fi.modelchecker.graph.Node;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -15,8 +15,13 @@ public class LevelNode implements Node {
 
     private int owner = -1;
 
-    @NotNull
-    private final Map<Formula, BitMapColorSet> formulae = new HashMap<>();
+    //model that stores this node if it belongs to local partition
+    //edges of other nodes are never inspected, so they are not stored at all
+    @Nullable
+    private NetworkModel storage;
+
+    //dense id of local node used by formula result store, -1 for nodes of other machines
+    private int id = -1;
 
     private Map<LevelNode, BitMapColorSet> predecessors = new HashMap<>();
 
@@ -26,28 +31,112 @@ public class LevelNode implements Node {
         this.levels = Arrays.copyOf(levels, levels.length);
     }
 
+    /**
+     * @return 64 bit hash of given levels, used to identify nodes in node tables and by partitioner.
+     */
+    public static long key(@NotNull int[] levels) {
+        long hash = 17;
+        for (int level : levels) {
+            hash = 31 * hash + level;
+        }
+        //finalizer of murmur hash, so that similar level vectors are spread evenly
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
     public int getLevel(int dimension) {
         return levels[dimension];
     }
 
+    void setStorage(@NotNull NetworkModel storage) {
+        this.storage = storage;
+    }
+
     public synchronized void addPredecessor(LevelNode predecessor, BitMapColorSet transitionColors) {
-        predecessors.put(predecessor, transitionColors);
+        if (storage != null) {
+            predecessors.put(storage.resolve(predecessor), storage.intern(transitionColors));
+        }
     }
 
     public synchronized void addSuccessor(LevelNode successor, BitMapColorSet transitionColors) {
-        successors.put(successor, transitionColors);
+        if (storage != null) {
+            successors.put(storage.resolve(successor), storage.intern(transitionColors));
+        }
+    }
+
+    /**
+     * Give up stored predecessors, so that they can be moved into compact graph of the model.
+     * @return Stored predecessors of this node.
+     */
+    @NotNull
+    synchronized Map<LevelNode, BitMapColorSet> releasePredecessors() {
+        @NotNull Map<LevelNode, BitMapColorSet> released = predecessors;
+        predecessors = new HashMap<>();
+        return released;
+    }
+
+    /**
+     * Give up stored successors, so that they can be moved into compact graph of the model.
+     * @return Stored successors of this node.
+     */
+    @NotNull
+    synchronized Map<LevelNode, BitMapColorSet> releaseSuccessors() {
+        @NotNull Map<LevelNode, BitMapColorSet> released = successors;
+        successors = new HashMap<>();
+        return released;
+    }
+
+    /**
+     * Pass stored predecessors restricted by borders to the consumer, see ModelAdapter.forEachPredecessor.
+     */
+    public void forEachPredecessor(@Nullable BitMapColorSet borders, @NotNull ModelAdapter.EdgeConsumer<LevelNode, BitMapColorSet> consumer) {
+        @NotNull Map<LevelNode, BitMapColorSet> stored;
+        synchronized (this) {
+            stored = predecessors;
+        }
+        visit(stored, borders, consumer);
+    }
+
+    /**
+     * Pass stored successors restricted by borders to the consumer, see ModelAdapter.forEachSuccessor.
+     */
+    public void forEachSuccessor(@Nullable BitMapColorSet borders, @NotNull ModelAdapter.EdgeConsumer<LevelNode, BitMapColorSet> consumer) {
+        @NotNull Map<LevelNode, BitMapColorSet> stored;
+        synchronized (this) {
+            stored = successors;
+        }
+        visit(stored, borders, consumer);
+    }
+
+    //edges are added only while the model is loaded, so the map can be read without holding the lock while consumer runs
+    private static void visit(@NotNull Map<LevelNode, BitMapColorSet> edges, @Nullable BitMapColorSet borders, @NotNull ModelAdapter.EdgeConsumer<LevelNode, BitMapColorSet> consumer) {
+        @NotNull BitMapColorSet colorSet = new BitMapColorSet();
+        for (@NotNull Map.Entry<LevelNode, BitMapColorSet> entry : edges.entrySet()) {
+            //intersection of a set with itself is its copy
+            if (!entry.getValue().intersectInto(borders == null ? entry.getValue() : borders, colorSet)
+                    && consumer.accept(entry.getKey(), colorSet)) {
+                colorSet = new BitMapColorSet();
+            }
+        }
     }
 
     @NotNull
     public synchronized Map<LevelNode, BitMapColorSet> getPredecessors(@Nullable BitMapColorSet borders) {
         @NotNull Map<LevelNode, BitMapColorSet> results = new HashMap<>();
+        @NotNull BitMapColorSet colorSet = new BitMapColorSet();
         for (@NotNull Map.Entry<LevelNode, BitMapColorSet> entry : predecessors.entrySet()) {
-            @NotNull BitMapColorSet colorSet = BitMapColorSet.createCopy(entry.getValue());
-            if (borders != null) {
-                colorSet.intersect(borders);
-            }
-            if (!colorSet.isEmpty()) {
+            if (borders == null) {
+                if (!entry.getValue().isEmpty()) {
+                    results.put(entry.getKey(), BitMapColorSet.createCopy(entry.getValue()));
+                }
+            } else if (!entry.getValue().intersectInto(borders, colorSet)) {
+                //empty results are not returned, so their color set can be reused for next edge
                 results.put(entry.getKey(), colorSet);
+                colorSet = new BitMapColorSet();
             }
         }
         return results;
@@ -56,38 +145,21 @@ public class LevelNode implements Node {
     @NotNull
     public synchronized Map<LevelNode, BitMapColorSet> getSuccessors(@Nullable BitMapColorSet borders) {
         @NotNull Map<LevelNode, BitMapColorSet> results = new HashMap<>();
+        @NotNull BitMapColorSet colorSet = new BitMapColorSet();
         for (@NotNull Map.Entry<LevelNode, BitMapColorSet> entry : successors.entrySet()) {
-            @NotNull BitMapColorSet colorSet = BitMapColorSet.createCopy(entry.getValue());
-            if (borders != null) {
-                colorSet.intersect(borders);
-            }
-            if (!colorSet.isEmpty()) {
+            if (borders == null) {
+                if (!entry.getValue().isEmpty()) {
+                    results.put(entry.getKey(), BitMapColorSet.createCopy(entry.getValue()));
+                }
+            } else if (!entry.getValue().intersectInto(borders, colorSet)) {
+                //empty results are not returned, so their color set can be reused for next edge
                 results.put(entry.getKey(), colorSet);
+                colorSet = new BitMapColorSet();
             }
         }
         return results;
     }
 
-    public synchronized BitMapColorSet getValidColors(Formula formula) {
-        return formulae.get(formula);
-    }
-
-    public synchronized boolean addFormula(Formula formula, @NotNull BitMapColorSet colors) {
-        if (colors.isEmpty()) return false;
-        BitMapColorSet colorSet = formulae.get(formula);
-        if (colorSet == null) {
-            formulae.put(formula, BitMapColorSet.createCopy(colors));
-            return true;
-        } else {
-            if (colorSet.encloses(colors)) {
-                return false;
-            } else {
-                colorSet.union(colors);
-                return true;
-            }
-        }
-    }
-
     @Override
     public int hashCode() {
         return Arrays.hashCode(levels);
@@ -113,6 +185,14 @@ public class LevelNode implements Node {
         return toString() + " Successors: " + Arrays.toString(successors.entrySet().toArray())+" Predecessors: " + Arrays.toString(predecessors.entrySet().toArray());
     }
 
+    public int getId() {
+        return id;
+    }
+
+    void setId(int id) {
+        this.id = id;
+    }
+
     public int getOwner() {
         return owner;
     }
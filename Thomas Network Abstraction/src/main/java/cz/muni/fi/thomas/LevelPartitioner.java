@@ -0,0 +1,46 @@
+package cz.muni.fi.thomas;
+
+import cz.muni.fi.modelchecker.StateSpacePartitioner;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Assigns nodes to machines by a hash of their levels.
+ * Level bounds are not known before the model is loaded, so the state space can't be split
+ * into orthogonal blocks, but a well mixed hash keeps machines balanced.
+ */
+public class LevelPartitioner implements StateSpacePartitioner<LevelNode> {
+
+    private final int size;
+    private final int rank;
+
+    public LevelPartitioner(int size, int rank) {
+        if (rank < 0 || rank >= size) {
+            throw new IllegalArgumentException("Rank "+rank+" is not valid for "+size+" partitions.");
+        }
+        this.size = size;
+        this.rank = rank;
+    }
+
+    @Override
+    public int getNodeOwner(@NotNull LevelNode node) throws IllegalArgumentException {
+        if (node.getOwner() == -1) {
+            int owner = getOwner(node.levels);
+            node.setOwner(owner);
+            return owner;
+        } else {
+            return node.getOwner();
+        }
+    }
+
+    /**
+     * @return Id of machine that owns node with given levels.
+     */
+    public int getOwner(@NotNull int[] levels) {
+        return (int) ((LevelNode.key(levels) & Long.MAX_VALUE) % size);
+    }
+
+    @Override
+    public int getMyId() {
+        return rank;
+    }
+}
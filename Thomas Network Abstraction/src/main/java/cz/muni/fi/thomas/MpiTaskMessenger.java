@@ -0,0 +1,78 @@
+package cz.muni.fi.thomas;
+
+import cz.muni.fi.modelchecker.mpi.tasks.MpiBatchingTaskMessenger;
+import cz.muni.fi.modelchecker.mpi.tasks.OnTaskListener;
+import mpi.Comm;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Sends secondary tasks of Thomas network models between MPI processes.
+ * Tasks for one process are sent in batches, see MpiBatchingTaskMessenger.
+ *
+ * Task structure: source levels|destination levels|colors in EWAH serialization format.
+ * Every level is written as a short, number of levels is given by the model.
+ */
+public class MpiTaskMessenger extends MpiBatchingTaskMessenger<LevelNode, BitMapColorSet> {
+
+    @NotNull
+    private final NetworkModel model;
+
+    public MpiTaskMessenger(Comm comm, @NotNull NetworkModel model) {
+        this(comm, model, DEFAULT_BATCH_SIZE, DEFAULT_MAX_DELAY);
+    }
+
+    /**
+     * @param model Loaded model, received nodes are replaced by nodes stored in this model.
+     * @param batchSize Size of batch in bytes that is sent immediately.
+     * @param maxDelay Time in milliseconds after which batch is sent even if it is not full.
+     */
+    public MpiTaskMessenger(Comm comm, @NotNull NetworkModel model, int batchSize, long maxDelay) {
+        this(comm, model, batchSize, maxDelay, DEFAULT_TAG);
+    }
+
+    /**
+     * @param tag MPI tag of the batches, different for every messenger using the same communicator.
+     */
+    public MpiTaskMessenger(Comm comm, @NotNull NetworkModel model, int batchSize, long maxDelay, int tag) {
+        super(comm, batchSize, maxDelay, tag);
+        this.model = model;
+    }
+
+    @Override
+    protected int encodedSize(@NotNull LevelNode internal, @NotNull LevelNode external, @NotNull BitMapColorSet colors) {
+        return 2 * (internal.levels.length + external.levels.length) + colors.serializedSize();
+    }
+
+    @Override
+    protected void encodeTask(@NotNull ByteBuffer buffer, @NotNull LevelNode internal, @NotNull LevelNode external, @NotNull BitMapColorSet colors) {
+        writeLevels(buffer, internal.levels);
+        writeLevels(buffer, external.levels);
+        colors.writeTo(buffer);
+    }
+
+    @Override
+    protected void decodeTask(int sender, @NotNull ByteBuffer buffer, @NotNull OnTaskListener<LevelNode, BitMapColorSet> taskListener) {
+        @NotNull LevelNode source = model.getNode(readLevels(buffer));
+        @NotNull LevelNode dest = model.getNode(readLevels(buffer));
+        @NotNull BitMapColorSet colorSet = BitMapColorSet.readFrom(buffer);
+        taskListener.onTask(sender, source, dest, colorSet);
+    }
+
+    private static void writeLevels(@NotNull ByteBuffer buffer, @NotNull int[] levels) {
+        for (int level : levels) {
+            buffer.putShort((short) level);
+        }
+    }
+
+    @NotNull
+    private int[] readLevels(@NotNull ByteBuffer buffer) {
+        @NotNull int[] levels = new int[model.variableOrdering.size()];
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = buffer.getShort();
+        }
+        return levels;
+    }
+
+}
@@ -19,8 +19,14 @@ public class NativeModel {
         this.fileName = fileName;
     }
 
+    /**
+     * Fill node storage with the state space of the model. Only the local partition of given storage
+     * and border nodes connected to it are kept, all other states and transitions are dropped while loading.
+     * Edges are moved into compact graph when loading is finished.
+     */
     public void loadModel(NetworkModel nodeStorage) {
         loadNative(fileName, nodeStorage);
+        nodeStorage.compactEdges();
         /*for (Map.Entry<String, Map<String, List<Byte>>> entry : specieContextTargetMapping.entrySet()) {
             System.out.println("Specie: "+entry.getKey());
             for (Map.Entry<String, List<Byte>> context : entry.getValue().entrySet()) {
@@ -4,12 +4,17 @@ import cz.muni.fi.ctl.formula.Formula;
 import cz.muni.fi.ctl.formula.proposition.Contradiction;
 import cz.muni.fi.ctl.formula.proposition.FloatProposition;
 import cz.muni.fi.ctl.formula.proposition.Tautology;
+import cz.muni.fi.modelchecker.FormulaResultStore;
 import cz.muni.fi.modelchecker.ModelAdapter;
 import cz.muni.fi.modelchecker.StateSpacePartitioner;
+import cz.muni.fi.modelchecker.graph.ColorPool;
+import cz.muni.fi.modelchecker.graph.CsrGraph;
+import cz.muni.fi.modelchecker.graph.NodeTable;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Data if filled by C++ state space generator by calling load(). Nothing is computed on the fly, everything is prepared before verification.
@@ -17,14 +22,51 @@ import java.util.*;
 public class NetworkModel implements ModelAdapter<LevelNode, BitMapColorSet> {
 
 
+    //propositions are added only after their results are stored, formulas can be verified concurrently
     @NotNull
-    private final Set<FloatProposition> revealedPropositions = new HashSet<>();
+    private final Set<FloatProposition> revealedPropositions = Collections.newSetFromMap(new ConcurrentHashMap<FloatProposition, Boolean>());
 
+    //nodes are keyed by 64 bit hash of their levels, index of a local node in nodeCache is its id
     @NotNull
-    private final Map<Integer, LevelNode> nodeCache = new HashMap<>();
+    private final NodeTable<LevelNode> nodeCache = new NodeTable<>();
 
     @NotNull
-    private final Map<Integer, LevelNode> borderNodes = new HashMap<>();
+    private final NodeTable<LevelNode> borderNodes = new NodeTable<>();
+
+    @NotNull
+    private final FormulaResultStore<BitMapColorSet> results = new FormulaResultStore<>(new FormulaResultStore.Copier<BitMapColorSet>() {
+        @NotNull
+        @Override
+        public BitMapColorSet copy(@NotNull BitMapColorSet colors) {
+            return BitMapColorSet.createCopy(colors);
+        }
+
+        @Override
+        public long sizeOf(@NotNull BitMapColorSet colors) {
+            return colors.estimatedSize();
+        }
+    });
+
+    //edges of local nodes moved out of the nodes after loading (see compactEdges), null before that
+    //local nodes have the same index in the graph as their id
+    @Nullable
+    private volatile CsrGraph<LevelNode, BitMapColorSet> graph;
+
+    //colors of all edges, many transitions share the same parameters, so equal sets are stored only once
+    @NotNull
+    private final ColorPool<BitMapColorSet> colorPool = new ColorPool<>(new CsrGraph.ColorFactory<BitMapColorSet>() {
+        @NotNull
+        @Override
+        public BitMapColorSet createEmpty() {
+            return new BitMapColorSet();
+        }
+
+        @NotNull
+        @Override
+        public BitMapColorSet copy(@NotNull BitMapColorSet colors) {
+            return BitMapColorSet.createCopy(colors);
+        }
+    });
 
     //filled by native code
     @NotNull
@@ -46,36 +88,138 @@ public class NetworkModel implements ModelAdapter<LevelNode, BitMapColorSet> {
         return nodeCache.values();
     }
 
-    public synchronized LevelNode getNode(@NotNull int[] coordinates) {
-        int hash = Arrays.hashCode(coordinates);
-        if (nodeCache.containsKey(hash)) {
-            return nodeCache.get(hash);
-        } else if (borderNodes.containsKey(hash)) {
-            return borderNodes.get(hash);
-        } else {
-            @NotNull LevelNode n = new LevelNode(coordinates);
+    /**
+     * Nodes of other partitions are remembered only if they are connected to a local node (see resolve),
+     * otherwise a new temporary node is returned every time.
+     */
+    public LevelNode getNode(@NotNull int[] coordinates) {
+        long key = LevelNode.key(coordinates);
+        //lookups do not lock, only creation of new nodes is serialized
+        LevelNode n = find(key, coordinates);
+        if (n != null) return n;
+        synchronized (this) {
+            n = find(key, coordinates);
+            if (n != null) return n;
+            n = new LevelNode(coordinates);
             if (partitioner.getNodeOwner(n) == myId) {
-                nodeCache.put(hash, n);
-            } else {
-                borderNodes.put(hash, n);
+                n.setStorage(this);
+                n.setId(nodeCache.size());
+                nodeCache.putIfAbsent(key, n);
             }
             return n;
         }
     }
 
+    @Nullable
+    private LevelNode find(long key, @NotNull int[] levels) {
+        LevelNode n = nodeCache.get(key);
+        if (n == null) {
+            n = borderNodes.get(key);
+        }
+        if (n != null && !Arrays.equals(n.levels, levels)) {
+            //64 bit keys are not expected to collide, but merging two states silently would give wrong results
+            throw new IllegalStateException("Hash collision: "+Arrays.toString(levels)+" and "+Arrays.toString(n.levels));
+        }
+        return n;
+    }
+
+    /**
+     * Called when a node is connected by an edge to a local node.
+     * @return Stored instance of given node. Nodes of other partitions are stored as border nodes.
+     */
+    synchronized LevelNode resolve(@NotNull LevelNode node) {
+        long key = LevelNode.key(node.levels);
+        LevelNode stored = find(key, node.levels);
+        if (stored == null) {
+            stored = node;
+            if (partitioner.getNodeOwner(node) == myId) {
+                node.setStorage(this);
+                node.setId(nodeCache.size());
+                nodeCache.putIfAbsent(key, node);
+            } else {
+                borderNodes.putIfAbsent(key, node);
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * @return Number of nodes of other partitions that are connected to local nodes.
+     */
+    public int getBorderNodeCount() {
+        return borderNodes.size();
+    }
+
+
+    /**
+     * Move edges of all local nodes into a compact graph, which needs several times less memory per edge.
+     * Called when the model is loaded, edges that are added afterwards are not used.
+     */
+    public void compactEdges() {
+        @NotNull List<LevelNode> nodes = nodeCache.values();
+        @NotNull CsrGraph.Builder<LevelNode, BitMapColorSet> builder = new CsrGraph.Builder<>(nodes);
+        for (@NotNull LevelNode node : nodes) {
+            builder.setSuccessors(node.getId(), node.releaseSuccessors());
+            builder.setPredecessors(node.getId(), node.releasePredecessors());
+        }
+        graph = builder.build(colorPool);
+    }
+
+    /**
+     * @return Pooled color set equal to given set. Returned set is shared by many edges, so it must not be modified.
+     */
+    @NotNull
+    BitMapColorSet intern(@NotNull BitMapColorSet colors) {
+        return colorPool.get(colorPool.intern(colors));
+    }
+
+    /**
+     * @return Number of distinct colors of edges.
+     */
+    public int getDistinctColorCount() {
+        return colorPool.size();
+    }
 
     @NotNull
     @Override
     public Map<LevelNode, BitMapColorSet> predecessorsFor(@NotNull LevelNode to, @Nullable BitMapColorSet borders) {
+        @Nullable CsrGraph<LevelNode, BitMapColorSet> graph = this.graph;
+        if (graph != null && graph.isSource(to.getId())) {
+            return graph.predecessorsOf(to.getId(), borders);
+        }
         return to.getPredecessors(borders);
     }
 
     @NotNull
     @Override
     public Map<LevelNode, BitMapColorSet> successorsFor(@NotNull LevelNode from, @Nullable BitMapColorSet borders) {
+        @Nullable CsrGraph<LevelNode, BitMapColorSet> graph = this.graph;
+        if (graph != null && graph.isSource(from.getId())) {
+            return graph.successorsOf(from.getId(), borders);
+        }
         return from.getSuccessors(borders);
     }
 
+    @Override
+    public void forEachPredecessor(@NotNull LevelNode to, @Nullable BitMapColorSet borders, @NotNull EdgeConsumer<LevelNode, BitMapColorSet> consumer) {
+        @Nullable CsrGraph<LevelNode, BitMapColorSet> graph = this.graph;
+        if (graph != null && graph.isSource(to.getId())) {
+            graph.forEachPredecessor(to.getId(), borders, consumer);
+        } else {
+            to.forEachPredecessor(borders, consumer);
+        }
+    }
+
+    @Override
+    public void forEachSuccessor(@NotNull LevelNode from, @Nullable BitMapColorSet borders, @NotNull EdgeConsumer<LevelNode, BitMapColorSet> consumer) {
+        @Nullable CsrGraph<LevelNode, BitMapColorSet> graph = this.graph;
+        if (graph != null && graph.isSource(from.getId())) {
+            graph.forEachSuccessor(from.getId(), borders, consumer);
+        } else {
+            from.forEachSuccessor(borders, consumer);
+        }
+    }
+
     @NotNull
     @Override
     public Map<LevelNode, BitMapColorSet> initialNodes(@NotNull Formula formula) {
@@ -92,9 +236,10 @@ public class NetworkModel implements ModelAdapter<LevelNode, BitMapColorSet> {
         if (formula instanceof FloatProposition && !revealedPropositions.contains(formula)) {
             revealProposition((FloatProposition) formula);
         }
+        int slot = this.results.slotFor(formula);
         @NotNull Map<LevelNode, BitMapColorSet> results = new HashMap<>();
         for (@NotNull LevelNode n : nodeCache.values()) {
-            BitMapColorSet validColors = n.getValidColors(formula);
+            BitMapColorSet validColors = this.results.get(slot, n.getId());
             if (validColors != null && !validColors.isEmpty()) {
                 results.put(n, validColors);
             }
@@ -121,7 +266,7 @@ public class NetworkModel implements ModelAdapter<LevelNode, BitMapColorSet> {
 
     @Override
     public boolean addFormula(@NotNull LevelNode node, @NotNull Formula formula, @NotNull BitMapColorSet parameters) {
-        return node.addFormula(formula, parameters);
+        return results.add(results.slotFor(formula), node.getId(), parameters);
     }
 
     @NotNull
@@ -132,19 +277,21 @@ public class NetworkModel implements ModelAdapter<LevelNode, BitMapColorSet> {
         if (formula instanceof FloatProposition && !revealedPropositions.contains(formula)) {
             revealProposition((FloatProposition) formula);
         }
-        BitMapColorSet colorSet = node.getValidColors(formula);
+        BitMapColorSet colorSet = results.get(results.slotFor(formula), node.getId());
         return colorSet == null ? new BitMapColorSet() : colorSet;
     }
 
     @Override
-    public void purge(Formula formula) {
-
+    public long purge(@NotNull Formula formula) {
+        return results.purge(formula);
     }
 
-    private void revealProposition(FloatProposition proposition) {
+    private synchronized void revealProposition(FloatProposition proposition) {
+        if (revealedPropositions.contains(proposition)) return;
+        int slot = results.slotFor(proposition);
         for (LevelNode entry : nodeCache.values()) {
             if (proposition.evaluate((double) entry.getLevel(variableOrdering.indexOf(proposition.getVariable())))) {
-                entry.addFormula(proposition, BitMapColorSet.createFull(paramSpaceWidth));
+                results.add(slot, entry.getId(), BitMapColorSet.createFull(paramSpaceWidth));
             }
         }
         revealedPropositions.add(proposition);
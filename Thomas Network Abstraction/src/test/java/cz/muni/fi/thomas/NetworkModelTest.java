@@ -0,0 +1,118 @@
+package cz.muni.fi.thomas;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for partitioned loading of network models.
+ */
+public class NetworkModelTest {
+
+    private static final int SIZE = 8;
+    private static final int PARAMS = 100;
+
+    /** Loads a two dimensional grid the same way as the native loader: every state, then all its transitions. */
+    private static void loadGrid(@NotNull NetworkModel model) {
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < SIZE; y++) {
+                for (int[] target : new int[][] { {x + 1, y}, {x, y + 1}, {x - 1, y}, {x, y - 1} }) {
+                    if (target[0] >= 0 && target[0] < SIZE && target[1] >= 0 && target[1] < SIZE) {
+                        @NotNull LevelNode node = model.getNode(new int[] {x, y});
+                        @NotNull LevelNode other = model.getNode(target);
+                        @NotNull BitMapColorSet colors = BitMapColorSet.createFull(PARAMS);
+                        node.addSuccessor(other, colors);
+                        other.addPredecessor(node, colors);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void onlyLocalAndBorderNodesAreStored() {
+        int processes = 3;
+        int localTotal = 0;
+        for (int rank = 0; rank < processes; rank++) {
+            @NotNull LevelPartitioner partitioner = new LevelPartitioner(processes, rank);
+            @NotNull NetworkModel model = new NetworkModel(partitioner);
+            loadGrid(model);
+            localTotal += model.getNodes().size();
+            @NotNull Set<LevelNode> border = new HashSet<>();
+            for (@NotNull LevelNode node : model.getNodes()) {
+                assertEquals(rank, partitioner.getNodeOwner(node));
+                int neighbours = 0;
+                for (int d = 0; d < 2; d++) {
+                    if (node.levels[d] > 0) neighbours++;
+                    if (node.levels[d] < SIZE - 1) neighbours++;
+                }
+                @NotNull Map<LevelNode, BitMapColorSet> successors = model.successorsFor(node, null);
+                assertEquals(neighbours, successors.size());
+                assertEquals(neighbours, model.predecessorsFor(node, null).size());
+                for (@NotNull LevelNode successor : successors.keySet()) {
+                    //stored instance is returned for known nodes
+                    assertSame(successor, model.getNode(successor.levels));
+                    if (partitioner.getNodeOwner(successor) != rank) {
+                        border.add(successor);
+                        //edges of remote nodes are not stored
+                        assertTrue(successor.getSuccessors(null).isEmpty());
+                    }
+                }
+            }
+            assertEquals(border.size(), model.getBorderNodeCount());
+        }
+        assertEquals(SIZE * SIZE, localTotal);
+    }
+
+    @Test
+    public void compactedEdgesMatchLoadedEdges() {
+        @NotNull LevelPartitioner partitioner = new LevelPartitioner(2, 0);
+        @NotNull NetworkModel model = new NetworkModel(partitioner);
+        loadGrid(model);
+        @NotNull BitMapColorSet borders = BitMapColorSet.createFull(PARAMS / 2);
+        @NotNull Map<LevelNode, Map<LevelNode, BitMapColorSet>> successors = new HashMap<>();
+        @NotNull Map<LevelNode, Map<LevelNode, BitMapColorSet>> predecessors = new HashMap<>();
+        for (@NotNull LevelNode node : model.getNodes()) {
+            successors.put(node, model.successorsFor(node, null));
+            predecessors.put(node, model.predecessorsFor(node, borders));
+        }
+        model.compactEdges();
+        for (@NotNull LevelNode node : model.getNodes()) {
+            assertTrue(node.getSuccessors(null).isEmpty());
+            assertEquals(successors.get(node).keySet(), model.successorsFor(node, null).keySet());
+            @NotNull Map<LevelNode, BitMapColorSet> restricted = model.predecessorsFor(node, borders);
+            assertEquals(predecessors.get(node).keySet(), restricted.keySet());
+            for (@NotNull Map.Entry<LevelNode, BitMapColorSet> entry : restricted.entrySet()) {
+                assertTrue(entry.getValue().encloses(borders));
+                assertTrue(borders.encloses(entry.getValue()));
+            }
+        }
+    }
+
+    @Test
+    public void bitmapSerialization() {
+        @NotNull BitMapColorSet colors = BitMapColorSet.createFull(1000);
+        for (int i = 0; i < 1000; i += 7) {
+            colors.unset(i);
+        }
+        @NotNull ByteBuffer buffer = ByteBuffer.allocate(colors.serializedSize() + 10);
+        buffer.putInt(42);
+        colors.writeTo(buffer);
+        buffer.putInt(43);
+        buffer.flip();
+        assertEquals(42, buffer.getInt());
+        @NotNull BitMapColorSet read = BitMapColorSet.readFrom(buffer);
+        assertEquals(43, buffer.getInt());
+        assertTrue(read.encloses(colors));
+        assertTrue(colors.encloses(read));
+    }
+}